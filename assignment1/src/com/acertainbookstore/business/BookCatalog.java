@@ -0,0 +1,69 @@
+package com.acertainbookstore.business;
+
+/**
+ * {@link BookCatalog} maps ISBNs to the {@link BookStoreBook}s of a bookstore.
+ * Unlike a {@link java.util.Map}, it takes primitive ISBNs, so lookups do not
+ * box.
+ *
+ * Implementations need not serialize writers; the store must do so. Reads may
+ * run concurrently with each other.
+ */
+public interface BookCatalog extends Iterable<BookStoreBook> {
+
+	/**
+	 * Gets the book with the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the book, or null if there is none
+	 */
+	public BookStoreBook get(int isbn);
+
+	/**
+	 * Checks if there is a book with the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return true, if there is a book with the ISBN
+	 */
+	public boolean containsKey(int isbn);
+
+	/**
+	 * Adds the book under the ISBN, replacing any previous book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param book
+	 *            the book
+	 * @return the previous book, or null if there was none
+	 */
+	public BookStoreBook put(int isbn, BookStoreBook book);
+
+	/**
+	 * Removes the book with the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the removed book, or null if there was none
+	 */
+	public BookStoreBook remove(int isbn);
+
+	/**
+	 * Removes all books.
+	 */
+	public void clear();
+
+	/**
+	 * Gets the number of books.
+	 *
+	 * @return the number of books
+	 */
+	public int size();
+
+	/**
+	 * Gets the ISBNs of all books, in no particular order.
+	 *
+	 * @return the ISBNs
+	 */
+	public int[] keys();
+}
@@ -1,16 +1,9 @@
 package com.acertainbookstore.business;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 
 import com.acertainbookstore.interfaces.BookStore;
@@ -29,7 +22,16 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class CertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
 
 	/**
 	 * Instantiates a new {@link CertainBookStore}.
@@ -37,7 +39,10 @@ public class CertainBookStore implements BookStore, StockManager {
 	public CertainBookStore() {
 
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
 	}
 
 	/*
@@ -84,10 +89,18 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
 		for (StockBook book : bookSet) {
 			int isbn = book.getISBN();
-			bookMap.put(isbn, new BookStoreBook(book));
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(isbn, bookStoreBook);
+			topRatedIndex.update(bookStoreBook);
+			addedBooks.add(bookStoreBook);
+			inDemandIndex.update(bookStoreBook);
 		}
+
+		editorPickIndex.update(addedBooks);
 	}
 
 	/*
@@ -129,6 +142,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			numCopies = bookCopy.getNumCopies();
 			book = bookMap.get(isbn);
 			book.addCopies(numCopies);
+			inDemandIndex.update(book);
 		}
 	}
 
@@ -139,9 +153,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized List<StockBook> getBooks() {
 		List<StockBook> listBooks = new ArrayList<>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-		for (BookStoreBook book : bookMapValues) {
+		for (BookStoreBook book : bookMap) {
 			listBooks.add(book.immutableStockBook());
 		}
 
@@ -176,9 +188,15 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
 		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+			BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+			book.setEditorPick(editorPickArg.isEditorPick());
+			updatedBooks.add(book);
 		}
+
+		editorPickIndex.update(updatedBooks);
 	}
 
 	/*
@@ -229,6 +247,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
 				book = bookMap.get(saleMissEntry.getKey());
 				book.addSaleMiss(saleMissEntry.getValue());
+				inDemandIndex.update(book);
 			}
 			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 		}
@@ -311,50 +330,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
-		List<Book> listEditorPicks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-		BookStoreBook book;
-
-		// Get all books that are editor picks.
-		while (it.hasNext()) {
-			Entry<Integer, BookStoreBook> pair = it.next();
-			book = pair.getValue();
-
-			if (book.isEditorPick()) {
-				listAllEditorPicks.add(book);
-			}
-		}
-
-		// Find numBooks random indices of books that will be picked.
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<>();
-		int rangePicks = listAllEditorPicks.size();
-
-		if (rangePicks <= numBooks) {
-
-			// We need to add all books.
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-
-			// We need to pick randomly the books that need to be returned.
-			int randNum;
-
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
-			}
-		}
-
-		// Get the numBooks random books.
-		for (Integer index : tobePicked) {
-			book = listAllEditorPicks.get(index);
-			listEditorPicks.add(book.immutableBook());
-		}
-
-		return listEditorPicks;
+		return editorPickIndex.getEditorPicks(numBooks);
 	}
 
 	/*
@@ -367,66 +343,8 @@ public class CertainBookStore implements BookStore, StockManager {
 		if (numBooks < 0) {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
-		
-		List<BookStoreBook> listSortedRatedBooks = new ArrayList<BookStoreBook>();
-		List<Book> listTopRatedBooks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-	    BookStoreBook book;
-	    
-	    //Get all books
-	    while (it.hasNext()) {
-			Entry<Integer, BookStoreBook> pair = it.next();
-			book = pair.getValue();
-			listSortedRatedBooks.add(book);
-		}
-	    
-    	// Sort all books that are rated
-	    Collections.sort(listSortedRatedBooks,new Comparator <BookStoreBook>(){
-	    	public int compare( BookStoreBook b1,BookStoreBook b2){
-	    		float averageRate1 = b1.getAverageRating();
-	    		float averageRate2 = b2.getAverageRating();
-//	    		String averageRate1 = Float.toString(b1.getAverageRating());
-//	    		String averageRate2 = Float.toString(b2.getAverageRating());
-	    		if (averageRate1 < averageRate2 )
-	    			return 1;
-	    		else{
-	    			if (averageRate1 == averageRate2 )
-	    				return 0;
-	    			else 
-	    				return -1;
-	    		}
-//	    		return -(averageRate1.compareTo(averageRate2));
-	    	}
-	    });
-	    		
-		// Find numBooks descending indices of books that will be picked.
-				Set<Integer> tobePicked = new HashSet<>();
-				int rangePicks = listSortedRatedBooks.size();
-
-				if (rangePicks <= numBooks) {
-
-					// We need to add all books.
-					for (int i = 0; i < rangePicks; i++) {
-						tobePicked.add(i);
-					}
-				} else {
-
-					// We need to pick top k rated books that need to be returned.
-					int indexNum = 0;
-
-					while (tobePicked.size() < numBooks) {
-						indexNum++;
-						tobePicked.add(indexNum);
-					}
-				}
-
-				// Get the numBooks books.
-				for (Integer index : tobePicked) {
-					book = listSortedRatedBooks.get(index);
-					listTopRatedBooks.add(book.immutableBook());
-				}
-
-				return listTopRatedBooks;
+
+		return topRatedIndex.getTopRatedBooks(numBooks);
 	}
 
 	/*
@@ -436,16 +354,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
-		
-		List<StockBook> listBooks = new ArrayList<>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-        
-		for (BookStoreBook book : bookMapValues) {
-			if (book.hadSaleMiss() == true)
-				listBooks.add(book.immutableStockBook());
-		}
-
-		return listBooks;
+		return inDemandIndex.getBooksInDemand();
 	}
 
 	/*
@@ -491,6 +400,7 @@ public class CertainBookStore implements BookStore, StockManager {
 		for (BookRating bookToRate : bookRating) {
 			book = bookMap.get(bookToRate.getISBN());
 			book.addRating(bookToRate.getRating());
+			topRatedIndex.update(book);
 		}
 		
 	}
@@ -502,6 +412,9 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized void removeAllBooks() throws BookStoreException {
 		bookMap.clear();
+		topRatedIndex.clear();
+		editorPickIndex.clear();
+		inDemandIndex.clear();
 	}
 
 	/*
@@ -527,6 +440,10 @@ public class CertainBookStore implements BookStore, StockManager {
 
 		for (int isbn : isbnSet) {
 			bookMap.remove(isbn);
+			topRatedIndex.remove(isbn);
+			inDemandIndex.remove(isbn);
 		}
+
+		editorPickIndex.remove(isbnSet);
 	}
 }
@@ -0,0 +1,225 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link EditorPickIndex} keeps the books that are editor picks in an array,
+ * so that a random sample of them can be drawn without scanning the catalog.
+ *
+ * The index is thread-safe. Every update that changes the editor picks
+ * publishes a copy of the array, so readers sample the copy without taking
+ * any lock while updates copy the array under the monitor of the index. The
+ * store must call {@link #update(BookStoreBook)} or
+ * {@link #update(Collection)} whenever the editor pick flag of a book may have
+ * changed and {@link #remove(int)} or {@link #remove(Collection)} when the
+ * book is removed. Since every change copies the array, a batch of books is
+ * passed in a single call.
+ */
+public class EditorPickIndex {
+
+	/** The initial capacity of the array. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The editor picks, in slots [0, size). */
+	private BookStoreBook[] picks = new BookStoreBook[INITIAL_CAPACITY];
+
+	/** The copy of the editor picks that readers see, never modified. */
+	private volatile BookStoreBook[] published = new BookStoreBook[0];
+
+	/** The number of editor picks. */
+	private int size = 0;
+
+	/** The slot of every editor pick. */
+	private final Map<Integer, Integer> slots = new HashMap<>();
+
+	/**
+	 * Adds or removes the book according to its editor pick flag.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public synchronized void update(BookStoreBook book) {
+		if (apply(book)) {
+			publish();
+		}
+	}
+
+	/**
+	 * Adds or removes the books according to their editor pick flags. Readers
+	 * see either none or all of the changes.
+	 *
+	 * @param books
+	 *            the books
+	 */
+	public synchronized void update(Collection<BookStoreBook> books) {
+		boolean changed = false;
+
+		for (BookStoreBook book : books) {
+			changed |= apply(book);
+		}
+
+		if (changed) {
+			publish();
+		}
+	}
+
+	/**
+	 * Removes the book if it is an editor pick.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	public synchronized void remove(int isbn) {
+		if (removeSlot(isbn)) {
+			publish();
+		}
+	}
+
+	/**
+	 * Removes the books that are editor picks. Readers see either none or all
+	 * of the changes.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 */
+	public synchronized void remove(Collection<Integer> isbns) {
+		boolean changed = false;
+
+		for (int isbn : isbns) {
+			changed |= removeSlot(isbn);
+		}
+
+		if (changed) {
+			publish();
+		}
+	}
+
+	/**
+	 * Removes all books.
+	 */
+	public synchronized void clear() {
+		picks = new BookStoreBook[INITIAL_CAPACITY];
+		size = 0;
+		slots.clear();
+		publish();
+	}
+
+	/**
+	 * Gets <code>numBooks</code> distinct editor picks chosen uniformly at
+	 * random, or all of them if there are fewer. The sample is drawn with a
+	 * partial Fisher-Yates shuffle, whose swaps are kept in a map instead of
+	 * the array, so the cost depends on <code>numBooks</code> only.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the editor picks
+	 */
+	public List<Book> getEditorPicks(int numBooks) {
+		BookStoreBook[] snapshot = published;
+		int numPicks = snapshot.length;
+		List<Book> listEditorPicks = new ArrayList<>(Math.min(numBooks, numPicks));
+
+		if (numBooks >= numPicks) {
+			// We need to add all books.
+			for (int i = 0; i < numPicks; i++) {
+				listEditorPicks.add(snapshot[i].immutableBook());
+			}
+
+			return listEditorPicks;
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Map<Integer, Integer> swapped = new HashMap<>();
+
+		for (int i = 0; i < numBooks; i++) {
+			int j = i + random.nextInt(numPicks - i);
+			Integer atJ = swapped.get(j);
+			Integer atI = swapped.get(i);
+			listEditorPicks.add(snapshot[(atJ != null) ? atJ : j].immutableBook());
+			swapped.put(j, (atI != null) ? atI : i);
+		}
+
+		return listEditorPicks;
+	}
+
+	/**
+	 * Adds or removes the book according to its editor pick flag, without
+	 * publishing the change.
+	 *
+	 * @param book
+	 *            the book
+	 * @return whether the editor picks changed
+	 */
+	private boolean apply(BookStoreBook book) {
+		if (book.isEditorPick()) {
+			return add(book);
+		}
+
+		return removeSlot(book.getISBN());
+	}
+
+	/**
+	 * Publishes a copy of the editor picks to the readers.
+	 */
+	private void publish() {
+		published = Arrays.copyOf(picks, size);
+	}
+
+	/**
+	 * Removes the book if it is an editor pick, without publishing the change.
+	 * The last editor pick is moved into its slot.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return whether the book was an editor pick
+	 */
+	private boolean removeSlot(int isbn) {
+		Integer slot = slots.remove(isbn);
+
+		if (slot == null) {
+			return false;
+		}
+
+		BookStoreBook last = picks[--size];
+		picks[size] = null;
+
+		if (slot < size) {
+			picks[slot] = last;
+			slots.put(last.getISBN(), slot);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the book unless it is already in the index.
+	 *
+	 * @param book
+	 *            the book
+	 * @return whether the editor picks changed
+	 */
+	private boolean add(BookStoreBook book) {
+		Integer slot = slots.get(book.getISBN());
+
+		if (slot != null) {
+			// A book added again under the same ISBN replaces the old one.
+			boolean replaced = picks[slot] != book;
+			picks[slot] = book;
+			return replaced;
+		}
+
+		if (size == picks.length) {
+			picks = Arrays.copyOf(picks, size * 2);
+		}
+
+		picks[size] = book;
+		slots.put(book.getISBN(), size++);
+		return true;
+	}
+}
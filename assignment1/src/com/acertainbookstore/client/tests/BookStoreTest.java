@@ -510,6 +510,46 @@ public class BookStoreTest {
     }
    
     
+	/**
+	 * Tests that the top rated books are returned in descending order of
+	 * average rating and that rerated and removed books move accordingly.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testTopRatedBooksOrder() throws BookStoreException {
+		addBooks(1, 3);
+		addBooks(2, 3);
+		addBooks(3, 3);
+
+		HashSet<BookRating> ratings = new HashSet<>();
+		ratings.add(new BookRating(1, 1));
+		ratings.add(new BookRating(2, 3));
+		ratings.add(new BookRating(3, 5));
+		client.rateBooks(ratings);
+
+		List<Book> topRated = client.getTopRatedBooks(3);
+		assertEquals(3, topRated.size());
+		assertEquals(3, topRated.get(0).getISBN());
+		assertEquals(2, topRated.get(1).getISBN());
+		assertEquals(1, topRated.get(2).getISBN());
+
+		// Book 1 now averages 3, book 3 averages 3.
+		ratings.clear();
+		ratings.add(new BookRating(1, 5));
+		ratings.add(new BookRating(3, 1));
+		client.rateBooks(ratings);
+		Set<Integer> removed = new HashSet<>();
+		removed.add(2);
+		storeManager.removeBooks(removed);
+
+		topRated = client.getTopRatedBooks(2);
+		assertEquals(2, topRated.size());
+		assertEquals(1, topRated.get(0).getISBN());
+		assertEquals(3, topRated.get(1).getISBN());
+	}
+
 	/**
 	 * validGetTopRatedBooks
 	 * Check K validation (positive, zero and negative integers)
@@ -384,6 +384,43 @@ public class StockManagerTest {
 		assertTrue(editorPick.equals(defaultBookAdded));
 	}
 
+	/**
+	 * Tests that a sample of editor picks is distinct and only contains
+	 * current editor picks.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testSampleEditorPicks() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		Set<BookEditorPick> editorPicksVals = new HashSet<BookEditorPick>();
+
+		for (int isbn = 1; isbn <= 10; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Pick", "Author", (float) 10, NUM_COPIES, 0, 0, 0, false));
+			editorPicksVals.add(new BookEditorPick(isbn, true));
+		}
+
+		storeManager.addBooks(booksToAdd);
+		storeManager.updateEditorPicks(editorPicksVals);
+		addEditorPick(5, false);
+
+		for (int i = 0; i < 100; i++) {
+			List<Book> editorPicks = client.getEditorPicks(4);
+			Set<Integer> isbns = new HashSet<Integer>();
+
+			for (Book book : editorPicks) {
+				isbns.add(book.getISBN());
+			}
+
+			assertEquals(4, isbns.size());
+			assertFalse(isbns.contains(5));
+			assertFalse(isbns.contains(TEST_ISBN));
+		}
+
+		assertEquals(9, client.getEditorPicks(20).size());
+	}
+
 	/**
 	 * Checks that a book can be removed.
 	 *
@@ -428,6 +465,39 @@ public class StockManagerTest {
 		assertTrue(booksInStoreList.containsAll(booksAdded) && booksInStoreList.size() == booksAdded.size());
 	}
 
+	/**
+	 * Checks that many books can be added and every other one removed, while
+	 * the rest stay reachable by ISBN.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testRemoveManyBooks() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		Set<Integer> isbnsToKeep = new HashSet<Integer>();
+
+		for (int isbn = 1; isbn <= 1000; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Book", "Author", (float) 10, NUM_COPIES, 0, 0, 0, false));
+			(isbn % 2 == 0 ? isbnsToRemove : isbnsToKeep).add(isbn);
+		}
+
+		storeManager.addBooks(booksToAdd);
+		storeManager.removeBooks(isbnsToRemove);
+
+		List<StockBook> booksInStoreList = storeManager.getBooksByISBN(isbnsToKeep);
+		assertEquals(isbnsToKeep.size(), booksInStoreList.size());
+		assertEquals(isbnsToKeep.size() + 1, storeManager.getBooks().size());
+
+		try {
+			storeManager.getBooksByISBN(isbnsToRemove);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
 	/**
 	 * Tests basic getBooksByISBN for the default book.
 	 *
@@ -1,6 +1,7 @@
 package com.acertainbookstore.interfaces;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * {@link BookStoreSerializer} specifies the serialization and de-serialization
@@ -29,4 +30,15 @@ public interface BookStoreSerializer {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	Object deserialize(byte[] bytes) throws IOException;
+
+	/**
+	 * De-serializes an object from a stream, without an intermediate array.
+	 *
+	 * @param in
+	 *            the stream, left open
+	 * @return the object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	Object deserialize(InputStream in) throws IOException;
 }
@@ -24,7 +24,6 @@ import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link BookStoreHTTPMessageHandler} implements the message handler class
@@ -164,9 +163,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -216,9 +213,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -243,9 +238,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void buyBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -270,10 +263,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void updateEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) serializer.get()
-				.deserialize(serializedRequestContent);
+		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -314,9 +304,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addCopies(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> listBookCopies = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> listBookCopies = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -341,9 +329,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<StockBook> newBooks = (Set<StockBook>) serializer.get().deserialize(serializedRequestContent);
+		Set<StockBook> newBooks = (Set<StockBook>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -389,9 +375,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void removeBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> bookSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> bookSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -416,9 +400,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void rateBooks(HttpServletRequest request,  HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookRating> bookRating = (Set<BookRating>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookRating> bookRating = (Set<BookRating>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -480,17 +462,16 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	}
 	
 	/**
-	 * Gets the serialized request content.
+	 * Decodes the request content directly from the input stream of the
+	 * request, so that bodies of unknown length, e.g. chunked ones, are read
+	 * too.
 	 *
 	 * @param request the request
-	 * @return the serialized request content
+	 * @return the request content
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+	private Object readRequestContent(HttpServletRequest request) throws IOException {
+		return serializer.get().deserialize(request.getInputStream());
 	}
 	
 }
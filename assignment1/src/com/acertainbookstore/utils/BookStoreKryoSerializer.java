@@ -59,4 +59,17 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 			return binaryStream.readClassAndObject(in);
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) {
+		// The input is not closed, which would close the stream.
+		return binaryStream.readClassAndObject(new Input(in));
+	}
 }
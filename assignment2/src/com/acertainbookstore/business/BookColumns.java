@@ -0,0 +1,559 @@
+package com.acertainbookstore.business;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * {@link BookColumns} keeps the mutable counters of the books in columns of
+ * direct, i.e. off-heap, buffers, one column per counter. Every book owns a
+ * dense slot in [0, size), so a scan over one counter is a sequential sweep
+ * of one buffer. The immutable parts of a book (ISBN, title, author and
+ * price) stay on the heap, one {@link ImmutableBook} per slot.
+ *
+ * When a book is removed, the book in the last slot is moved into its slot.
+ * The columns are not thread-safe; the store must serialize writers and
+ * exclude them from readers.
+ */
+public class BookColumns {
+
+	/** The initial number of slots. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** The width of the ISBN column. */
+	private static final int ISBN_BYTES = Integer.BYTES;
+
+	/** The width of the number of copies column. */
+	private static final int NUM_COPIES_BYTES = Integer.BYTES;
+
+	/** The width of the total rating column. */
+	private static final int TOTAL_RATING_BYTES = Long.BYTES;
+
+	/** The width of the number of times rated column. */
+	private static final int NUM_TIMES_RATED_BYTES = Long.BYTES;
+
+	/** The width of the number of sale misses column. */
+	private static final int NUM_SALE_MISSES_BYTES = Long.BYTES;
+
+	/** The width of the editor pick column. */
+	private static final int EDITOR_PICK_BYTES = 1;
+
+	/** The number of slots the columns have room for. */
+	private int capacity;
+
+	/** The number of books. */
+	private int size = 0;
+
+	/** The number of additions and removals of books. */
+	private long modCount = 0;
+
+	/** The ISBNs, sorted for {@link #getBooksPage(int, int)}. */
+	private final SortedIsbns sortedIsbns = new SortedIsbns();
+
+	/** The slot of every ISBN. */
+	private final IntSlotMap slots = new IntSlotMap();
+
+	/** The immutable parts of the books. */
+	private ImmutableBook[] descriptors;
+
+	/** The ISBNs, so that sweeps need not touch the descriptors. */
+	private ByteBuffer isbns;
+
+	/** The numbers of copies. */
+	private ByteBuffer numCopies;
+
+	/** The total ratings. */
+	private ByteBuffer totalRatings;
+
+	/** The numbers of times rated. */
+	private ByteBuffer numTimesRated;
+
+	/** The numbers of sale misses. */
+	private ByteBuffer numSaleMisses;
+
+	/** The editor pick flags. */
+	private ByteBuffer editorPicks;
+
+	/**
+	 * Instantiates a new, empty {@link BookColumns}.
+	 */
+	public BookColumns() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Allocates empty columns.
+	 *
+	 * @param newCapacity
+	 *            the number of slots
+	 */
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		descriptors = new ImmutableBook[newCapacity];
+		isbns = column(newCapacity, ISBN_BYTES);
+		numCopies = column(newCapacity, NUM_COPIES_BYTES);
+		totalRatings = column(newCapacity, TOTAL_RATING_BYTES);
+		numTimesRated = column(newCapacity, NUM_TIMES_RATED_BYTES);
+		numSaleMisses = column(newCapacity, NUM_SALE_MISSES_BYTES);
+		editorPicks = column(newCapacity, EDITOR_PICK_BYTES);
+	}
+
+	/**
+	 * Allocates a direct buffer for a column.
+	 *
+	 * @param slots
+	 *            the number of slots
+	 * @param width
+	 *            the width of a slot in bytes
+	 * @return the buffer
+	 */
+	private static ByteBuffer column(int slots, int width) {
+		if ((long) slots * width > Integer.MAX_VALUE) {
+			throw new IllegalStateException("A column cannot hold " + slots + " books");
+		}
+
+		return ByteBuffer.allocateDirect(slots * width).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copies the first <code>bytes</code> of a column into a larger one.
+	 *
+	 * @param from
+	 *            the old column
+	 * @param to
+	 *            the new column
+	 * @param bytes
+	 *            the number of bytes in use
+	 * @return the new column
+	 */
+	private static ByteBuffer copy(ByteBuffer from, ByteBuffer to, int bytes) {
+		int i = 0;
+
+		for (; i + Long.BYTES <= bytes; i += Long.BYTES) {
+			to.putLong(i, from.getLong(i));
+		}
+
+		for (; i < bytes; i++) {
+			to.put(i, from.get(i));
+		}
+
+		return to;
+	}
+
+	/**
+	 * Doubles the number of slots.
+	 */
+	private void grow() {
+		int newCapacity = capacity << 1;
+		descriptors = Arrays.copyOf(descriptors, newCapacity);
+		isbns = copy(isbns, column(newCapacity, ISBN_BYTES), size * ISBN_BYTES);
+		numCopies = copy(numCopies, column(newCapacity, NUM_COPIES_BYTES), size * NUM_COPIES_BYTES);
+		totalRatings = copy(totalRatings, column(newCapacity, TOTAL_RATING_BYTES), size * TOTAL_RATING_BYTES);
+		numTimesRated = copy(numTimesRated, column(newCapacity, NUM_TIMES_RATED_BYTES),
+				size * NUM_TIMES_RATED_BYTES);
+		numSaleMisses = copy(numSaleMisses, column(newCapacity, NUM_SALE_MISSES_BYTES),
+				size * NUM_SALE_MISSES_BYTES);
+		editorPicks = copy(editorPicks, column(newCapacity, EDITOR_PICK_BYTES), size * EDITOR_PICK_BYTES);
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Gets the number of books.
+	 *
+	 * @return the number of books
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the slot of the book with the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the slot, or -1 if there is no such book
+	 */
+	public int slotOf(int isbn) {
+		return slots.get(isbn);
+	}
+
+	/**
+	 * Checks if there is a book with the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return true, if there is a book with the ISBN
+	 */
+	public boolean contains(int isbn) {
+		return slots.get(isbn) >= 0;
+	}
+
+	/**
+	 * Adds a book that is not in the columns yet.
+	 *
+	 * @param book
+	 *            the book
+	 * @return the slot of the book
+	 */
+	public int add(StockBook book) {
+		if (size == capacity) {
+			grow();
+		}
+
+		int slot = size++;
+		descriptors[slot] = new ImmutableBook(book.getISBN(), book.getTitle(), book.getAuthor(), book.getPrice());
+		isbns.putInt(slot * ISBN_BYTES, book.getISBN());
+		numCopies.putInt(slot * NUM_COPIES_BYTES, book.getNumCopies());
+		totalRatings.putLong(slot * TOTAL_RATING_BYTES, book.getTotalRating());
+		numTimesRated.putLong(slot * NUM_TIMES_RATED_BYTES, book.getNumTimesRated());
+		numSaleMisses.putLong(slot * NUM_SALE_MISSES_BYTES, book.getNumSaleMisses());
+		editorPicks.put(slot * EDITOR_PICK_BYTES, (byte) (book.isEditorPick() ? 1 : 0));
+		slots.put(book.getISBN(), slot);
+		modCount++;
+		return slot;
+	}
+
+	/**
+	 * Removes the book with the ISBN, moving the last book into its slot.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	public void remove(int isbn) {
+		int slot = slots.get(isbn);
+
+		if (slot < 0) {
+			return;
+		}
+
+		int last = --size;
+		slots.remove(isbn);
+
+		if (slot != last) {
+			descriptors[slot] = descriptors[last];
+			isbns.putInt(slot * ISBN_BYTES, isbns.getInt(last * ISBN_BYTES));
+			numCopies.putInt(slot * NUM_COPIES_BYTES, numCopies.getInt(last * NUM_COPIES_BYTES));
+			totalRatings.putLong(slot * TOTAL_RATING_BYTES, totalRatings.getLong(last * TOTAL_RATING_BYTES));
+			numTimesRated.putLong(slot * NUM_TIMES_RATED_BYTES, numTimesRated.getLong(last * NUM_TIMES_RATED_BYTES));
+			numSaleMisses.putLong(slot * NUM_SALE_MISSES_BYTES, numSaleMisses.getLong(last * NUM_SALE_MISSES_BYTES));
+			editorPicks.put(slot * EDITOR_PICK_BYTES, editorPicks.get(last * EDITOR_PICK_BYTES));
+			slots.put(descriptors[slot].getISBN(), slot);
+		}
+
+		descriptors[last] = null;
+		modCount++;
+	}
+
+	/**
+	 * Removes all books and releases the columns.
+	 */
+	public void clear() {
+		slots.clear();
+		size = 0;
+		modCount++;
+		sortedIsbns.clear();
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Gets the number of copies of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the number of copies
+	 */
+	public int getNumCopies(int slot) {
+		return numCopies.getInt(slot * NUM_COPIES_BYTES);
+	}
+
+	/**
+	 * Gets the number of sale misses of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the number of sale misses
+	 */
+	public long getNumSaleMisses(int slot) {
+		return numSaleMisses.getLong(slot * NUM_SALE_MISSES_BYTES);
+	}
+
+	/**
+	 * Checks if the book in the slot had sale misses.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return true, if the book had sale misses
+	 */
+	public boolean hadSaleMiss(int slot) {
+		return getNumSaleMisses(slot) > 0;
+	}
+
+	/**
+	 * Gets the average rating of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the average rating, or -1 if the book was never rated
+	 */
+	public float getAverageRating(int slot) {
+		long timesRated = numTimesRated.getLong(slot * NUM_TIMES_RATED_BYTES);
+		return (timesRated == 0 ? -1.0f : (float) totalRatings.getLong(slot * TOTAL_RATING_BYTES) / timesRated);
+	}
+
+	/**
+	 * Checks if the book in the slot is an editor pick.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return true, if the book is an editor pick
+	 */
+	public boolean isEditorPick(int slot) {
+		return editorPicks.get(slot * EDITOR_PICK_BYTES) != 0;
+	}
+
+	/**
+	 * Adds copies to the book in the slot and resets its sale misses.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param numNewCopies
+	 *            the number of new copies
+	 */
+	public void addCopies(int slot, int numNewCopies) {
+		numCopies.putInt(slot * NUM_COPIES_BYTES, getNumCopies(slot) + numNewCopies);
+		numSaleMisses.putLong(slot * NUM_SALE_MISSES_BYTES, 0);
+	}
+
+	/**
+	 * Removes copies of the book in the slot. The caller must have checked that
+	 * there are enough.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param numCopiesToBuy
+	 *            the number of copies
+	 */
+	public void buyCopies(int slot, int numCopiesToBuy) {
+		numCopies.putInt(slot * NUM_COPIES_BYTES, getNumCopies(slot) - numCopiesToBuy);
+	}
+
+	/**
+	 * Adds sale misses to the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param numMisses
+	 *            the number of sale misses
+	 */
+	public void addSaleMiss(int slot, int numMisses) {
+		numSaleMisses.putLong(slot * NUM_SALE_MISSES_BYTES, getNumSaleMisses(slot) + numMisses);
+	}
+
+	/**
+	 * Adds a rating to the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param rating
+	 *            the rating
+	 */
+	public void addRating(int slot, int rating) {
+		totalRatings.putLong(slot * TOTAL_RATING_BYTES, totalRatings.getLong(slot * TOTAL_RATING_BYTES) + rating);
+		numTimesRated.putLong(slot * NUM_TIMES_RATED_BYTES, numTimesRated.getLong(slot * NUM_TIMES_RATED_BYTES) + 1);
+	}
+
+	/**
+	 * Sets the editor pick flag of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param editorPick
+	 *            the new editor pick flag
+	 */
+	public void setEditorPick(int slot, boolean editorPick) {
+		editorPicks.put(slot * EDITOR_PICK_BYTES, (byte) (editorPick ? 1 : 0));
+	}
+
+	/**
+	 * Returns a {@link Book} copy of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the book
+	 */
+	public Book immutableBook(int slot) {
+		return descriptors[slot];
+	}
+
+	/**
+	 * Returns a {@link StockBook} copy of the book in the slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the stock book
+	 */
+	public StockBook immutableStockBook(int slot) {
+		ImmutableBook book = descriptors[slot];
+		return new ImmutableStockBook(book.getISBN(), book.getTitle(), book.getAuthor(), book.getPrice(),
+				getNumCopies(slot), getNumSaleMisses(slot), numTimesRated.getLong(slot * NUM_TIMES_RATED_BYTES),
+				totalRatings.getLong(slot * TOTAL_RATING_BYTES), isEditorPick(slot));
+	}
+
+	/**
+	 * Gets all books by sweeping the columns.
+	 *
+	 * @return the books
+	 */
+	public List<StockBook> getBooks() {
+		List<StockBook> listBooks = new ArrayList<>(size);
+
+		for (int slot = 0; slot < size; slot++) {
+			listBooks.add(immutableStockBook(slot));
+		}
+
+		return listBooks;
+	}
+
+	/**
+	 * Gets the books with the smallest ISBNs greater than the given one. The
+	 * ISBN column is swept and sorted only after books were added or removed.
+	 *
+	 * @param afterIsbn
+	 *            the ISBN
+	 * @param maxBooks
+	 *            the maximum number of books
+	 * @return the books, in ISBN order
+	 */
+	public List<StockBook> getBooksPage(int afterIsbn, int maxBooks) {
+		int[] pageIsbns = sortedIsbns.keysAfter(modCount, this::isbnColumn, afterIsbn, maxBooks);
+		List<StockBook> listBooks = new ArrayList<>(pageIsbns.length);
+
+		for (int isbn : pageIsbns) {
+			listBooks.add(immutableStockBook(slots.get(isbn)));
+		}
+
+		return listBooks;
+	}
+
+	/**
+	 * Copies the ISBN column.
+	 *
+	 * @return the ISBNs, in slot order
+	 */
+	private int[] isbnColumn() {
+		int[] column = new int[size];
+
+		for (int slot = 0; slot < size; slot++) {
+			column[slot] = isbns.getInt(slot * ISBN_BYTES);
+		}
+
+		return column;
+	}
+
+	/**
+	 * Gets the books that had sale misses by sweeping the sale misses column.
+	 *
+	 * @return the books in demand
+	 */
+	public List<StockBook> getBooksInDemand() {
+		List<StockBook> listBooks = new ArrayList<>();
+
+		for (int slot = 0; slot < size; slot++) {
+			if (numSaleMisses.getLong(slot * NUM_SALE_MISSES_BYTES) > 0) {
+				listBooks.add(immutableStockBook(slot));
+			}
+		}
+
+		return listBooks;
+	}
+
+	/**
+	 * Counts the editor picks by sweeping the editor pick column.
+	 *
+	 * @return the number of editor picks
+	 */
+	public int countEditorPicks() {
+		int numPicks = 0;
+
+		for (int slot = 0; slot < size; slot++) {
+			if (editorPicks.get(slot * EDITOR_PICK_BYTES) != 0) {
+				numPicks++;
+			}
+		}
+
+		return numPicks;
+	}
+
+	/**
+	 * Gets the slots of the editor picks by sweeping the editor pick column.
+	 *
+	 * @return the slots
+	 */
+	public int[] getEditorPickSlots() {
+		int[] pickSlots = new int[size];
+		int numPicks = 0;
+
+		for (int slot = 0; slot < size; slot++) {
+			if (editorPicks.get(slot * EDITOR_PICK_BYTES) != 0) {
+				pickSlots[numPicks++] = slot;
+			}
+		}
+
+		return Arrays.copyOf(pickSlots, numPicks);
+	}
+
+	/**
+	 * Gets the books with the highest average rating, with ties broken by
+	 * ascending ISBN, by sweeping the rating columns and keeping the best
+	 * <code>numBooks</code> in a heap.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the top rated books, in descending rating order
+	 */
+	public List<Book> getTopRatedBooks(int numBooks) {
+		int k = Math.min(numBooks, size);
+
+		if (k == 0) {
+			return new ArrayList<>();
+		}
+
+		// The root is the worst of the best books seen so far.
+		PriorityQueue<Integer> best = new PriorityQueue<>(k, (a, b) -> compareRating(b, a));
+
+		for (int slot = 0; slot < size; slot++) {
+			if (best.size() < k) {
+				best.add(slot);
+			} else if (compareRating(slot, best.peek()) < 0) {
+				best.poll();
+				best.add(slot);
+			}
+		}
+
+		Book[] topRated = new Book[best.size()];
+
+		for (int i = topRated.length - 1; i >= 0; i--) {
+			topRated[i] = descriptors[best.poll()];
+		}
+
+		return new ArrayList<>(Arrays.asList(topRated));
+	}
+
+	/**
+	 * Compares two slots in top rated order.
+	 *
+	 * @param a
+	 *            a slot
+	 * @param b
+	 *            another slot
+	 * @return a negative number if <code>a</code> ranks before <code>b</code>
+	 */
+	private int compareRating(int a, int b) {
+		int byRating = Float.compare(getAverageRating(b), getAverageRating(a));
+		return (byRating != 0) ? byRating
+				: Integer.compare(isbns.getInt(a * ISBN_BYTES), isbns.getInt(b * ISBN_BYTES));
+	}
+}
@@ -1,11 +1,16 @@
 package com.acertainbookstore.business;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * {@link BookStoreBook} implements all parts of the book. Only parts of it are
  * available in the bookstore client and stock manager, cf. the {@link Book} and
  * {@link StockBook} interfaces.
+ *
+ * The number of copies is changed with compare-and-set, so that purchases of
+ * the book need not exclude each other.
  * 
  * @see Book
  * @see StockBook
@@ -13,8 +18,12 @@ import com.acertainbookstore.utils.BookStoreUtility;
  */
 public class BookStoreBook extends ImmutableBook {
 
+	/** Updates the number of copies atomically. */
+	private static final AtomicIntegerFieldUpdater<BookStoreBook> NUM_COPIES = AtomicIntegerFieldUpdater
+			.newUpdater(BookStoreBook.class, "numCopies");
+
 	/** The number of copies. */
-	private int numCopies;
+	private volatile int numCopies;
 
 	/** The total rating. */
 	private long totalRating;
@@ -187,19 +196,29 @@ public class BookStoreBook extends ImmutableBook {
 	}
 
 	/**
-	 * Reduces the number of copies of the books.
+	 * Reduces the number of copies of the books, if that many are available.
+	 * Concurrent purchases never sell more copies than there are.
 	 *
 	 * @param numCopies
 	 *            the number of copies
 	 * @return true, if successful
 	 */
 	public boolean buyCopies(int numCopies) {
-		if (!BookStoreUtility.isInvalidNoCopies(numCopies) && areCopiesInStore(numCopies)) {
-			this.numCopies -= numCopies;
-			return true;
+		if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
+			return false;
 		}
 
-		return false;
+		while (true) {
+			int available = this.numCopies;
+
+			if (available < numCopies) {
+				return false;
+			}
+
+			if (NUM_COPIES.compareAndSet(this, available, available - numCopies)) {
+				return true;
+			}
+		}
 	}
 
 	/**
@@ -210,7 +229,7 @@ public class BookStoreBook extends ImmutableBook {
 	 */
 	public void addCopies(int numNewCopies) {
 		if (!BookStoreUtility.isInvalidNoCopies(numNewCopies)) {
-			this.numCopies += numNewCopies;
+			NUM_COPIES.addAndGet(this, numNewCopies);
 			this.numSaleMisses = 0;
 		}
 	}
@@ -0,0 +1,132 @@
+package com.acertainbookstore.business;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link Checkpointer} periodically writes a {@link CheckpointFile} of a
+ * bookstore. The file is written after the snapshot is copied in memory,
+ * while the store keeps serving requests. Only the time to load a checkpoint
+ * at startup is reported on the standard output; CheckpointBenchmark measures
+ * the time to take and write one.
+ */
+public class Checkpointer implements Closeable {
+
+	/**
+	 * Captures a snapshot of a bookstore.
+	 */
+	public interface Source {
+
+		/**
+		 * Copies the books and the sequence number of the last operation,
+		 * consistently with each other.
+		 *
+		 * @return the snapshot
+		 * @throws BookStoreException
+		 *             the book store exception
+		 */
+		CheckpointFile capture() throws BookStoreException;
+	}
+
+	/** The source of the snapshots. */
+	private final Source source;
+
+	/** The checkpoint file. */
+	private final Path file;
+
+	/** The thread that writes the periodic checkpoints. */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpointer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Instantiates a new {@link Checkpointer}.
+	 *
+	 * @param source
+	 *            the source of the snapshots
+	 * @param file
+	 *            the checkpoint file
+	 */
+	public Checkpointer(Source source, Path file) {
+		this.source = source;
+		this.file = file;
+	}
+
+	/**
+	 * Starts writing a checkpoint every <code>intervalSeconds</code>.
+	 *
+	 * @param intervalSeconds
+	 *            the interval between checkpoints
+	 */
+	public void start(long intervalSeconds) {
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				checkpoint();
+			} catch (BookStoreException | IOException ex) {
+				System.err.println("Checkpoint failed: " + ex);
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Writes a checkpoint now.
+	 *
+	 * @return the checkpoint
+	 * @throws BookStoreException
+	 *             if the snapshot cannot be captured
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public synchronized CheckpointFile checkpoint() throws BookStoreException, IOException {
+		CheckpointFile checkpoint = source.capture();
+		checkpoint.write(file);
+		return checkpoint;
+	}
+
+	/**
+	 * Stops the periodic checkpoints and writes a last one.
+	 *
+	 * @throws IOException
+	 *             if the last checkpoint cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		scheduler.shutdownNow();
+
+		try {
+			checkpoint();
+		} catch (BookStoreException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Reads the checkpoint file, if there is one, and reports the time taken.
+	 *
+	 * @param file
+	 *            the checkpoint file
+	 * @return the checkpoint, or null if there is none
+	 * @throws IOException
+	 *             if the checkpoint cannot be read
+	 */
+	public static CheckpointFile load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		CheckpointFile checkpoint = CheckpointFile.read(file);
+		System.out.printf("Loaded a checkpoint of %d books at %d from %s in %.1f ms%n", checkpoint.getBooks().size(),
+				checkpoint.getSequence(), file, (System.nanoTime() - start) / 1e6);
+		return checkpoint;
+	}
+}
@@ -0,0 +1,496 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ * {@link ColumnarConcurrentCertainBookStore} implements the {@link BookStore}
+ * and {@link StockManager} functionalities on top of {@link BookColumns}, so
+ * that the counters of the books live off-heap. Like
+ * {@link SingleLockConcurrentCertainBookStore}, it protects the whole store
+ * with one read-write lock. The books in demand, the editor picks and the top
+ * rated books are found by sweeping the columns instead of through indexes.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class ColumnarConcurrentCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
+
+	/** The columns of the books. */
+	private BookColumns columns = null;
+
+	/** Global lock for the bookstore state. */
+	private ReadWriteLock readWriteLock = null;
+
+	/**
+	 * Instantiates a new {@link ColumnarConcurrentCertainBookStore}.
+	 */
+	public ColumnarConcurrentCertainBookStore() {
+		// Constructors are not synchronized
+		columns = new BookColumns();
+		readWriteLock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Checks that the ISBN is valid and in the store.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the slot of the book
+	 * @throws BookStoreException
+	 *             if the ISBN is invalid or not in the store
+	 */
+	private int validateISBN(int isbn) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(isbn)) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		int slot = columns.slotOf(isbn);
+
+		if (slot < 0) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		return slot;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			// Check if all are there
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+
+				if (BookStoreUtility.isInvalidISBN(isbn) || BookStoreUtility.isEmpty(book.getTitle())
+						|| BookStoreUtility.isEmpty(book.getAuthor())
+						|| BookStoreUtility.isInvalidNoCopies(book.getNumCopies()) || book.getPrice() < 0.0) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (columns.contains(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+				}
+			}
+
+			for (StockBook book : bookSet) {
+				columns.add(book);
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			for (StockBook book : books) {
+				columns.remove(book.getISBN());
+				columns.add(book);
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			for (BookCopy bookCopy : bookCopiesSet) {
+				validateISBN(bookCopy.getISBN());
+
+				if (BookStoreUtility.isInvalidNoCopies(bookCopy.getNumCopies())) {
+					throw new BookStoreException(
+							BookStoreConstants.NUM_COPIES + bookCopy.getNumCopies() + BookStoreConstants.INVALID);
+				}
+			}
+
+			// Update the number of copies
+			for (BookCopy bookCopy : bookCopiesSet) {
+				columns.addCopies(columns.slotOf(bookCopy.getISBN()), bookCopy.getNumCopies());
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			// Check that all ISBNs that we add/remove are there first.
+			for (BookEditorPick editorPickArg : editorPicks) {
+				validateISBN(editorPickArg.getISBN());
+			}
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				columns.setEditorPick(columns.slotOf(editorPickArg.getISBN()), editorPickArg.isEditorPick());
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			// Check that all ISBNs that we buy are there first.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				if (bookCopyToBuy.getNumCopies() < 0) {
+					throw new BookStoreException(
+							BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
+				}
+
+				int slot = validateISBN(bookCopyToBuy.getISBN());
+				int numCopies = columns.getNumCopies(slot);
+
+				if (numCopies < bookCopyToBuy.getNumCopies()) {
+					// If we cannot sell the copies of the book, it is a miss.
+					salesMisses.put(slot, bookCopyToBuy.getNumCopies() - numCopies);
+				}
+			}
+
+			// We throw exception now since we want to see how many books in the
+			// order incurred misses which is used by books in demand
+			if (!salesMisses.isEmpty()) {
+				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+					columns.addSaleMiss(saleMissEntry.getKey(), saleMissEntry.getValue());
+				}
+
+				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+			}
+
+			// Then make the purchase.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				columns.buyCopies(columns.slotOf(bookCopyToBuy.getISBN()), bookCopyToBuy.getNumCopies());
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.readLock().lock();
+
+		try {
+			for (Integer ISBN : isbnSet) {
+				validateISBN(ISBN);
+			}
+
+			List<StockBook> listBooks = new ArrayList<>(isbnSet.size());
+
+			for (Integer isbn : isbnSet) {
+				listBooks.add(columns.immutableStockBook(columns.slotOf(isbn)));
+			}
+
+			return listBooks;
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() {
+		readWriteLock.readLock().lock();
+
+		try {
+			return columns.getBooks();
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+		readWriteLock.readLock().lock();
+
+		try {
+			return new StockBookPage(columns.getBooksPage(continuationToken, maxBooks), maxBooks);
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.readLock().lock();
+
+		try {
+			for (Integer ISBN : isbnSet) {
+				validateISBN(ISBN);
+			}
+
+			List<Book> listBooks = new ArrayList<>(isbnSet.size());
+
+			for (Integer isbn : isbnSet) {
+				listBooks.add(columns.immutableBook(columns.slotOf(isbn)));
+			}
+
+			return listBooks;
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		readWriteLock.readLock().lock();
+
+		try {
+			int[] pickSlots = columns.getEditorPickSlots();
+			int numPicks = Math.min(numBooks, pickSlots.length);
+			List<Book> listEditorPicks = new ArrayList<>(numPicks);
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+
+			// A partial Fisher-Yates shuffle of the sweep result.
+			for (int i = 0; i < numPicks; i++) {
+				int j = i + random.nextInt(pickSlots.length - i);
+				int slot = pickSlots[j];
+				pickSlots[j] = pickSlots[i];
+				listEditorPicks.add(columns.immutableBook(slot));
+			}
+
+			return listEditorPicks;
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		readWriteLock.readLock().lock();
+
+		try {
+			return columns.countEditorPicks();
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		readWriteLock.readLock().lock();
+
+		try {
+			return columns.getTopRatedBooks(numBooks);
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		readWriteLock.readLock().lock();
+
+		try {
+			return columns.getBooksInDemand();
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			// Check that all ISBNs that we rate are there first.
+			for (BookRating bookToRate : bookRating) {
+				int slot = validateISBN(bookToRate.getISBN());
+
+				if (BookStoreUtility.isInvalidRating(bookToRate.getRating())) {
+					throw new BookStoreException(
+							BookStoreConstants.RATING + bookToRate.getRating() + BookStoreConstants.INVALID);
+				}
+
+				if (columns.hadSaleMiss(slot)) {
+					throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			for (BookRating bookToRate : bookRating) {
+				columns.addRating(columns.slotOf(bookToRate.getISBN()), bookToRate.getRating());
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		readWriteLock.writeLock().lock();
+
+		try {
+			columns.clear();
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		readWriteLock.writeLock().lock();
+
+		try {
+			for (Integer ISBN : isbnSet) {
+				validateISBN(ISBN);
+			}
+
+			for (int isbn : isbnSet) {
+				columns.remove(isbn);
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.acertainbookstore.business;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link CommandRing} is a bounded, preallocated ring buffer with many
+ * producers and a single consumer, in the style of a Disruptor sequencer. A
+ * producer claims the next sequence number with one atomic increment, writes
+ * its entry into the slot of that sequence and then publishes the sequence
+ * in the slot. The consumer takes the entries in sequence order. Producers
+ * wait while the ring is full.
+ *
+ * @param <E>
+ *            the type of the entries
+ */
+final class CommandRing<E> {
+
+	/** The times the consumer checks for an entry before it parks. */
+	private static final int MAX_SPINS = (Runtime.getRuntime().availableProcessors() > 1) ? 256 : 0;
+
+	/** The time a producer waits for the consumer when the ring is full. */
+	private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/** The entries, indexed by sequence number modulo the size. */
+	private final Object[] entries;
+
+	/** The sequence number last published in every slot. */
+	private final AtomicLongArray published;
+
+	/** The mask of the slot index. */
+	private final int mask;
+
+	/** The last sequence number claimed by a producer. */
+	private final AtomicLong claimed = new AtomicLong(-1);
+
+	/** The last sequence number taken by the consumer. */
+	private volatile long consumed = -1;
+
+	/** The consumer thread. */
+	private volatile Thread consumer;
+
+	/** Whether the consumer is parked, or about to park. */
+	private volatile boolean consumerParked;
+
+	/**
+	 * Instantiates a new {@link CommandRing}.
+	 *
+	 * @param size
+	 *            the number of slots, rounded up to a power of two
+	 */
+	CommandRing(int size) {
+		int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+		entries = new Object[capacity];
+		published = new AtomicLongArray(capacity);
+		mask = capacity - 1;
+
+		for (int slot = 0; slot < capacity; slot++) {
+			// No slot holds its first sequence number yet.
+			published.set(slot, slot - capacity);
+		}
+	}
+
+	/**
+	 * Publishes an entry, waiting while the ring is full.
+	 *
+	 * @param entry
+	 *            the entry
+	 */
+	void publish(E entry) {
+		long sequence = claimed.incrementAndGet();
+
+		while (sequence - entries.length > consumed) {
+			LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+		}
+
+		int slot = (int) sequence & mask;
+		entries[slot] = entry;
+		published.set(slot, sequence);
+
+		if (consumerParked) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Takes the next entry if it is published. Only the consumer calls it.
+	 *
+	 * @return the entry, or null
+	 */
+	@SuppressWarnings("unchecked")
+	E poll() {
+		long next = consumed + 1;
+		int slot = (int) next & mask;
+
+		if (published.get(slot) != next) {
+			return null;
+		}
+
+		E entry = (E) entries[slot];
+		entries[slot] = null;
+		consumed = next;
+		return entry;
+	}
+
+	/**
+	 * Waits for the next entry and takes it. Only the consumer calls it.
+	 *
+	 * @return the entry
+	 */
+	E take() {
+		consumer = Thread.currentThread();
+
+		for (int spins = MAX_SPINS; spins > 0; spins--) {
+			E entry = poll();
+
+			if (entry != null) {
+				return entry;
+			}
+		}
+
+		while (true) {
+			consumerParked = true;
+
+			try {
+				// Checked again after the flag is set, so no publication is missed.
+				E entry = poll();
+
+				if (entry != null) {
+					return entry;
+				}
+
+				LockSupport.park(this);
+			} finally {
+				consumerParked = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,555 @@
+package com.acertainbookstore.business;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreRetryableException;
+
+/**
+ * {@link DurableCertainBookStore} makes any bookstore durable by recording
+ * its mutating operations in a {@link WriteAheadLog}. On construction, the
+ * log is replayed into the store; afterwards every mutating operation is
+ * applied to the store, appended to the log and only returns once the log
+ * record is durable. Reads go straight to the store.
+ *
+ * A record holds the books as the operation left them, or the ISBNs it
+ * removed, rather than the operation itself. Replaying a record twice thus
+ * leaves the store as replaying it once, so a checkpoint can copy the books
+ * while operations go on, and the records appended during the copy are
+ * simply replayed over it. Logs holding operations are still replayed.
+ *
+ * A mutation is applied and appended under the locks of the stripes of its
+ * books, so that the log orders the mutations of every book as the store saw
+ * them and a replay reaches the same state. Mutations of books on other
+ * stripes run concurrently, and only the append itself is serialized by the
+ * log. Waiting for the log happens outside the locks, so concurrent mutations
+ * share a sync. A read may see a mutation before it is durable.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class DurableCertainBookStore implements SampleableBookStore, StockManager {
+
+	/**
+	 * An operation on the underlying store.
+	 */
+	private interface Mutation {
+
+		/**
+		 * Applies the operation.
+		 *
+		 * @throws BookStoreException
+		 *             the book store exception
+		 */
+		void apply() throws BookStoreException;
+	}
+
+	/** The underlying book store. */
+	private final SampleableBookStore bookStore;
+
+	/** The underlying stock manager, the same object as the book store. */
+	private final CheckpointableStockManager stockManager;
+
+	/** The log. */
+	private final WriteAheadLog log;
+
+	/** Orders the mutations of the books of every stripe in the log. */
+	private final StripedLockTable lockTable = new StripedLockTable(BookStoreConstants.DEFAULT_LOCK_STRIPES);
+
+	/** All stripes, for the mutations of the whole store. */
+	private final int[] allStripes;
+
+	/**
+	 * Instantiates a new {@link DurableCertainBookStore} and replays the log
+	 * into the store, which should be empty.
+	 *
+	 * @param <T>
+	 *            the type of the store
+	 * @param store
+	 *            the store
+	 * @param log
+	 *            the log
+	 * @throws IOException
+	 *             if the log cannot be read
+	 */
+	public <T extends SampleableBookStore & CheckpointableStockManager> DurableCertainBookStore(T store,
+			WriteAheadLog log) throws IOException {
+		this(store, log, 0);
+	}
+
+	/**
+	 * Instantiates a new {@link DurableCertainBookStore} and replays the log
+	 * from an offset into the store, which should hold the checkpoint taken
+	 * at that offset.
+	 *
+	 * @param <T>
+	 *            the type of the store
+	 * @param store
+	 *            the store
+	 * @param log
+	 *            the log
+	 * @param fromOffset
+	 *            the offset saved with the checkpoint
+	 * @throws IOException
+	 *             if the log cannot be read
+	 * @see #checkpoint()
+	 */
+	public <T extends SampleableBookStore & CheckpointableStockManager> DurableCertainBookStore(T store,
+			WriteAheadLog log, long fromOffset) throws IOException {
+		this.bookStore = store;
+		this.stockManager = store;
+		this.log = log;
+		allStripes = new int[lockTable.size()];
+
+		for (int stripe = 0; stripe < allStripes.length; stripe++) {
+			allStripes[stripe] = stripe;
+		}
+
+		log.recover(this::replay, fromOffset);
+	}
+
+	/**
+	 * Copies the books page by page, together with the log offset to replay
+	 * from, which is read before the first page. Writes only wait while the
+	 * store copies one page under its read locks. Every record before the
+	 * offset was applied before the copy starts, and the records after it,
+	 * including those of the operations the copy already sees, are replayed
+	 * over it.
+	 *
+	 * @return the checkpoint, whose sequence number is the log offset
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public CheckpointFile checkpoint() throws BookStoreException {
+		long offset = log.getAppendedOffset();
+		List<StockBook> books = new ArrayList<>();
+		int continuationToken = StockBookPage.FIRST_PAGE;
+
+		do {
+			StockBookPage page = stockManager.getBooksPage(continuationToken, BookStoreConstants.STREAM_PAGE_SIZE);
+			books.addAll(page.getBooks());
+			continuationToken = page.getContinuationToken();
+		} while (continuationToken != StockBookPage.NO_MORE_PAGES);
+
+		return new CheckpointFile(offset, books);
+	}
+
+	/**
+	 * Gets the stripes of the books of a mutation.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param items
+	 *            the arguments of the mutation, or null
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @return the sorted, distinct stripes
+	 */
+	private <E> int[] stripesOf(Collection<E> items, ToIntFunction<E> isbnOf) {
+		if (items == null) {
+			// The store rejects the mutation without changing anything.
+			return new int[0];
+		}
+
+		int[] isbns = new int[items.size()];
+		int numIsbns = 0;
+
+		for (E item : items) {
+			isbns[numIsbns++] = isbnOf.applyAsInt(item);
+		}
+
+		return lockTable.stripesOf(isbns);
+	}
+
+	/**
+	 * Takes the locks of stripes in ascending order.
+	 *
+	 * @param stripes
+	 *            the sorted stripes
+	 */
+	private void lockStripes(int[] stripes) {
+		for (int stripe : stripes) {
+			lockTable.getStripe(stripe).writeLock().lock();
+		}
+	}
+
+	/**
+	 * Releases the locks of stripes.
+	 *
+	 * @param stripes
+	 *            the sorted stripes
+	 */
+	private void unlockStripes(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			lockTable.getStripe(stripes[i]).writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Applies a log record to the store. Books are restored as they were
+	 * logged, and removed one at a time, since a book removed again is
+	 * already gone. Operations logged as such, which failed originally, fail
+	 * again in the same way, so their errors are ignored.
+	 *
+	 * @param tag
+	 *            the operation
+	 * @param inputValue
+	 *            the argument of the operation
+	 */
+	@SuppressWarnings("unchecked")
+	private void replay(BookStoreMessageTag tag, Object inputValue) {
+		try {
+			switch (tag) {
+			case ADDBOOKS:
+				stockManager.addBooks((Set<StockBook>) inputValue);
+				break;
+
+			case ADDCOPIES:
+				stockManager.addCopies((Set<BookCopy>) inputValue);
+				break;
+
+			case BUYBOOKS:
+				bookStore.buyBooks((Set<BookCopy>) inputValue);
+				break;
+
+			case RATEBOOKS:
+				bookStore.rateBooks((Set<BookRating>) inputValue);
+				break;
+
+			case UPDATEEDITORPICKS:
+				stockManager.updateEditorPicks((Set<BookEditorPick>) inputValue);
+				break;
+
+			case RESTOREBOOKS:
+				stockManager.restoreBooks((Collection<StockBook>) inputValue);
+				break;
+
+			case REMOVEBOOKS:
+				for (Integer isbn : (Set<Integer>) inputValue) {
+					try {
+						stockManager.removeBooks(Collections.singleton(isbn));
+					} catch (BookStoreException ex) {
+						;
+					}
+				}
+
+				break;
+
+			case REMOVEALLBOOKS:
+				stockManager.removeAllBooks();
+				break;
+
+			default:
+				throw new IllegalStateException("Unexpected log record " + tag);
+			}
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Applies a mutation of books, logs the books it left and waits until the
+	 * log record is durable.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param items
+	 *            the arguments of the operation
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @param logFailure
+	 *            whether the operation changes the store even if it fails
+	 * @param mutation
+	 *            the mutation
+	 * @throws BookStoreException
+	 *             if the mutation fails or cannot be logged
+	 */
+	private <E> void mutateBooks(Set<E> items, ToIntFunction<E> isbnOf, boolean logFailure, Mutation mutation)
+			throws BookStoreException {
+		Set<Integer> isbns = new HashSet<>();
+
+		if (items != null) {
+			for (E item : items) {
+				isbns.add(isbnOf.applyAsInt(item));
+			}
+		}
+
+		mutate(BookStoreMessageTag.RESTOREBOOKS, () -> getAfterImages(isbns), stripesOf(isbns, Integer::intValue),
+				logFailure, mutation);
+	}
+
+	/**
+	 * Gets the books of a mutation as it left them, while the locks of their
+	 * stripes are held. Books that are not in the store are left out.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the books
+	 */
+	private List<StockBook> getAfterImages(Set<Integer> isbns) {
+		try {
+			return new ArrayList<>(stockManager.getBooksByISBN(isbns));
+		} catch (BookStoreException ex) {
+			List<StockBook> books = new ArrayList<>();
+
+			for (Integer isbn : isbns) {
+				while (true) {
+					try {
+						books.addAll(stockManager.getBooksByISBN(Collections.singleton(isbn)));
+						break;
+					} catch (BookStoreRetryableException retry) {
+						// The book is in the store and must be logged.
+					} catch (BookStoreException notAvailable) {
+						break;
+					}
+				}
+			}
+
+			return books;
+		}
+	}
+
+	/**
+	 * The argument of a log record, built while the locks of the stripes of
+	 * the operation are held.
+	 */
+	@FunctionalInterface
+	private interface RecordArgument {
+
+		/**
+		 * Builds the argument.
+		 *
+		 * @return the argument
+		 */
+		Object get();
+	}
+
+	/**
+	 * Applies a mutation, logs it and waits until the log record is durable.
+	 *
+	 * @param tag
+	 *            the tag of the record
+	 * @param inputValue
+	 *            builds the argument of the record
+	 * @param stripes
+	 *            the sorted stripes of the books of the operation
+	 * @param logFailure
+	 *            whether the operation changes the store even if it fails
+	 * @param mutation
+	 *            the mutation
+	 * @throws BookStoreException
+	 *             if the mutation fails or cannot be logged
+	 */
+	private void mutate(BookStoreMessageTag tag, RecordArgument inputValue, int[] stripes, boolean logFailure,
+			Mutation mutation) throws BookStoreException {
+		BookStoreException failure = null;
+		long lsn;
+		lockStripes(stripes);
+
+		try {
+			try {
+				mutation.apply();
+			} catch (BookStoreRetryableException ex) {
+				// Nothing was changed.
+				throw ex;
+			} catch (BookStoreException ex) {
+				if (!logFailure) {
+					throw ex;
+				}
+
+				failure = ex;
+			}
+
+			try {
+				lsn = log.append(tag, inputValue.get());
+			} catch (IOException ex) {
+				throw new BookStoreException("The operation could not be logged", ex);
+			}
+		} finally {
+			unlockStripes(stripes);
+		}
+
+		try {
+			log.awaitDurable(lsn);
+		} catch (IOException ex) {
+			throw new BookStoreException("The operation could not be logged", ex);
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	@Override
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		mutateBooks(bookSet, StockBook::getISBN, false, () -> stockManager.addBooks(bookSet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	@Override
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		mutateBooks(bookCopiesSet, BookCopy::getISBN, false, () -> stockManager.addCopies(bookCopiesSet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	@Override
+	public void buyBooks(Set<BookCopy> booksToBuy) throws BookStoreException {
+		// A buy that fails for lack of copies still records sale misses.
+		mutateBooks(booksToBuy, BookCopy::getISBN, true, () -> bookStore.buyBooks(booksToBuy));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		mutateBooks(bookRating, BookRating::getISBN, false, () -> bookStore.rateBooks(bookRating));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	@Override
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		mutateBooks(editorPicks, BookEditorPick::getISBN, false, () -> stockManager.updateEditorPicks(editorPicks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	@Override
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		mutate(BookStoreMessageTag.REMOVEBOOKS, () -> isbnSet, stripesOf(isbnSet, Integer::intValue), false,
+				() -> stockManager.removeBooks(isbnSet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	@Override
+	public void removeAllBooks() throws BookStoreException {
+		mutate(BookStoreMessageTag.REMOVEALLBOOKS, () -> null, allStripes, false, stockManager::removeAllBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	@Override
+	public List<StockBook> getBooks() throws BookStoreException {
+		return stockManager.getBooks();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	@Override
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		return stockManager.getBooksPage(continuationToken, maxBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	@Override
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		return stockManager.getBooksByISBN(isbnSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return stockManager.getBooksInDemand();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	@Override
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		return bookStore.getBooks(isbnSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	@Override
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		return bookStore.getEditorPicks(numBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		return bookStore.getNumEditorPicks();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		return bookStore.getTopRatedBooks(numBooks);
+	}
+}
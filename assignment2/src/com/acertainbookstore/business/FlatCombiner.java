@@ -0,0 +1,221 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link FlatCombiner} runs the operations that threads submit on the same
+ * hot spot in batches. A submitting thread queues its operation and tries to
+ * become the combiner: the combiner takes the pending operations and applies
+ * them all at once, for example under a single lock hold, while the other
+ * threads park until their operation is done. Every operation still succeeds
+ * or fails on its own.
+ *
+ * @param <T>
+ *            the type of the operations
+ */
+final class FlatCombiner<T> {
+
+	/**
+	 * Applies a batch of operations.
+	 *
+	 * @param <T>
+	 *            the type of the operations
+	 */
+	@FunctionalInterface
+	interface BatchHandler<T> {
+
+		/**
+		 * Applies the operations of a batch, and fails those that cannot be
+		 * applied. An exception fails the whole batch.
+		 *
+		 * @param batch
+		 *            the operations, in the order they were submitted
+		 * @throws BookStoreException
+		 *             if no operation of the batch could be applied
+		 */
+		void apply(List<Operation<T>> batch) throws BookStoreException;
+	}
+
+	/**
+	 * An operation submitted to the combiner, with its outcome.
+	 *
+	 * @param <T>
+	 *            the type of the operation
+	 */
+	static final class Operation<T> {
+
+		/** The operation. */
+		private final T request;
+
+		/** The thread waiting for the operation. */
+		private final Thread waiter;
+
+		/** Why the operation failed, or null. */
+		private BookStoreException failure;
+
+		/** Whether the operation was applied or failed. */
+		private volatile boolean done;
+
+		/**
+		 * Instantiates a new {@link Operation}.
+		 *
+		 * @param request
+		 *            the operation
+		 * @param waiter
+		 *            the thread waiting for the operation
+		 */
+		private Operation(T request, Thread waiter) {
+			this.request = request;
+			this.waiter = waiter;
+		}
+
+		/**
+		 * Gets the operation.
+		 *
+		 * @return the operation
+		 */
+		T getRequest() {
+			return request;
+		}
+
+		/**
+		 * Fails the operation.
+		 *
+		 * @param ex
+		 *            why the operation failed
+		 */
+		void fail(BookStoreException ex) {
+			failure = ex;
+		}
+	}
+
+	/**
+	 * The times a thread checks whether its operation is done before it
+	 * parks, only worth it when the combiner runs on another processor.
+	 */
+	private static final int MAX_SPINS = (Runtime.getRuntime().availableProcessors() > 1) ? 128 : 0;
+
+	/** The operations not taken by a combiner yet. */
+	private final ConcurrentLinkedQueue<Operation<T>> pending = new ConcurrentLinkedQueue<>();
+
+	/** Whether a thread is combining. */
+	private final AtomicBoolean combining = new AtomicBoolean();
+
+	/** The most operations applied in one batch. */
+	private final int maxBatchSize;
+
+	/**
+	 * Instantiates a new {@link FlatCombiner}.
+	 *
+	 * @param maxBatchSize
+	 *            the most operations applied in one batch
+	 */
+	FlatCombiner(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Submits an operation and waits until it is applied, by this thread or by
+	 * the current combiner.
+	 *
+	 * @param request
+	 *            the operation
+	 * @param handler
+	 *            applies a batch of operations
+	 * @throws BookStoreException
+	 *             if the operation failed
+	 */
+	void submit(T request, BatchHandler<T> handler) throws BookStoreException {
+		Operation<T> operation = new Operation<>(request, Thread.currentThread());
+		pending.add(operation);
+		int spins = MAX_SPINS;
+
+		while (!operation.done) {
+			if (combining.compareAndSet(false, true)) {
+				try {
+					combine(handler);
+				} finally {
+					combining.set(false);
+				}
+
+				// An operation queued after the last batch has to combine itself.
+				Operation<T> next = pending.peek();
+
+				if (next != null) {
+					LockSupport.unpark(next.waiter);
+				}
+			} else if (spins > 0) {
+				spins--;
+			} else {
+				LockSupport.park(this);
+			}
+		}
+
+		if (operation.failure != null) {
+			throw operation.failure;
+		}
+	}
+
+	/**
+	 * Applies the pending operations in batches until none is left.
+	 *
+	 * @param handler
+	 *            applies a batch of operations
+	 */
+	private void combine(BatchHandler<T> handler) {
+		List<Operation<T>> batch = new ArrayList<>();
+
+		while (true) {
+			Operation<T> operation;
+
+			while (batch.size() < maxBatchSize && (operation = pending.poll()) != null) {
+				batch.add(operation);
+			}
+
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			try {
+				handler.apply(batch);
+			} catch (BookStoreException ex) {
+				failAll(batch, ex);
+			} catch (RuntimeException | Error ex) {
+				failAll(batch, new BookStoreException(ex));
+				throw ex;
+			} finally {
+				for (Operation<T> applied : batch) {
+					applied.done = true;
+
+					if (applied.waiter != Thread.currentThread()) {
+						LockSupport.unpark(applied.waiter);
+					}
+				}
+
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Fails the operations of a batch that did not fail yet.
+	 *
+	 * @param batch
+	 *            the operations
+	 * @param ex
+	 *            why they failed
+	 */
+	private static <T> void failAll(List<Operation<T>> batch, BookStoreException ex) {
+		for (Operation<T> operation : batch) {
+			if (operation.failure == null) {
+				operation.fail(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link InDemandIndex} keeps the books that had sale misses since they were
+ * last restocked, so that the books in demand can be listed without scanning
+ * the catalog.
+ *
+ * The set is thread-safe. The store must call {@link #update(BookStoreBook)}
+ * whenever the sale misses of a book change, i.e. after
+ * {@link BookStoreBook#addSaleMiss(int)} and
+ * {@link BookStoreBook#addCopies(int)}, and {@link #remove(int)} when the book
+ * is removed.
+ */
+public class InDemandIndex {
+
+	/** The books in demand. */
+	private final Map<Integer, BookStoreBook> booksInDemand = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds or removes the book according to whether it had sale misses.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void update(BookStoreBook book) {
+		if (book.hadSaleMiss()) {
+			booksInDemand.put(book.getISBN(), book);
+		} else {
+			booksInDemand.remove(book.getISBN());
+		}
+	}
+
+	/**
+	 * Removes the book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	public void remove(int isbn) {
+		booksInDemand.remove(isbn);
+	}
+
+	/**
+	 * Removes all books.
+	 */
+	public void clear() {
+		booksInDemand.clear();
+	}
+
+	/**
+	 * Gets a live view of the ISBNs of the books in demand.
+	 *
+	 * @return the ISBNs
+	 */
+	public Set<Integer> getISBNs() {
+		return booksInDemand.keySet();
+	}
+
+	/**
+	 * Gets copies of the books in demand. The caller must hold the locks that
+	 * protect the books, since the copies read their stock fields.
+	 *
+	 * @return the books in demand
+	 */
+	public List<StockBook> getBooksInDemand() {
+		List<StockBook> listBooks = new ArrayList<>(booksInDemand.size());
+
+		for (BookStoreBook book : booksInDemand.values()) {
+			// A book may have been restocked since it was looked up.
+			if (book.hadSaleMiss()) {
+				listBooks.add(book.immutableStockBook());
+			}
+		}
+
+		return listBooks;
+	}
+}
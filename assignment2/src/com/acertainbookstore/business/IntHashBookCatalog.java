@@ -0,0 +1,320 @@
+package com.acertainbookstore.business;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link IntHashBookCatalog} is a {@link BookCatalog} backed by an open
+ * addressing hash table with linear probing by {@link IsbnProbing}. The ISBNs
+ * are kept in an <code>int</code> array next to the array of books, so there
+ * are no entry nodes and no boxed keys.
+ *
+ * Writers must be serialized by the store. Readers take no locks: they read
+ * the current table once and never block. A reader running concurrently with
+ * a writer may miss a book that is being moved, but it never returns a book
+ * under the wrong ISBN and always terminates. Stores that let reads overlap
+ * writes must therefore validate such reads, as the optimistic store does.
+ */
+public class IntHashBookCatalog implements BookCatalog {
+
+	/** The default initial capacity. */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The arrays of the table. They are replaced together when the table is
+	 * resized or cleared.
+	 */
+	private static final class Table {
+
+		/** The ISBNs, or {@link IsbnProbing#EMPTY}. */
+		final int[] keys;
+
+		/** The books. */
+		final BookStoreBook[] books;
+
+		/**
+		 * Instantiates a new {@link Table}.
+		 *
+		 * @param capacity
+		 *            the capacity, a power of two
+		 */
+		Table(int capacity) {
+			keys = new int[capacity];
+			books = new BookStoreBook[capacity];
+		}
+	}
+
+	/** The current table. */
+	private volatile Table table;
+
+	/** The number of books. */
+	private volatile int size = 0;
+
+	/** The number of insertions and removals of ISBNs. */
+	private volatile long modCount = 0;
+
+	/** The ISBNs, sorted for {@link #keysAfter(int, int)}. */
+	private final SortedIsbns sortedIsbns = new SortedIsbns();
+
+	/**
+	 * Instantiates a new {@link IntHashBookCatalog}.
+	 */
+	public IntHashBookCatalog() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new {@link IntHashBookCatalog} that holds
+	 * <code>expectedSize</code> books without resizing.
+	 *
+	 * @param expectedSize
+	 *            the expected number of books
+	 */
+	public IntHashBookCatalog(int expectedSize) {
+		table = new Table(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Gets the capacity that keeps the load factor at most one half.
+	 *
+	 * @param expectedSize
+	 *            the expected number of books
+	 * @return the capacity, a power of two
+	 */
+	private static int capacityFor(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+
+		while (capacity < 2L * expectedSize) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#get(int)
+	 */
+	@Override
+	public BookStoreBook get(int isbn) {
+		Table t = table;
+		int slot = IsbnProbing.find(t.keys, isbn);
+
+		if (slot < 0) {
+			return null;
+		}
+
+		BookStoreBook book = t.books[slot];
+		return (book != null && book.getISBN() == isbn) ? book : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#containsKey(int)
+	 */
+	@Override
+	public boolean containsKey(int isbn) {
+		return get(isbn) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#put(int,
+	 * com.acertainbookstore.business.BookStoreBook)
+	 */
+	@Override
+	public BookStoreBook put(int isbn, BookStoreBook book) {
+		if (isbn == IsbnProbing.EMPTY || book == null || book.getISBN() != isbn) {
+			throw new IllegalArgumentException("ISBN " + isbn + " does not match the book " + book);
+		}
+
+		Table t = table;
+		int slot = IsbnProbing.find(t.keys, isbn);
+
+		if (slot >= 0) {
+			BookStoreBook previous = t.books[slot];
+			t.books[slot] = book;
+			return previous;
+		}
+
+		if (2L * (size + 1) > t.keys.length) {
+			t = resize(t, t.keys.length << 1);
+		}
+
+		insert(t, isbn, book);
+		size = size + 1;
+		modCount = modCount + 1;
+		return null;
+	}
+
+	/**
+	 * Inserts an ISBN that is not in the table yet.
+	 *
+	 * @param t
+	 *            the table
+	 * @param isbn
+	 *            the ISBN
+	 * @param book
+	 *            the book
+	 */
+	private static void insert(Table t, int isbn, BookStoreBook book) {
+		int slot = IsbnProbing.freePosition(t.keys, isbn);
+
+		// The book goes first, so that a reader finding the key finds it too.
+		t.books[slot] = book;
+		t.keys[slot] = isbn;
+	}
+
+	/**
+	 * Copies the books into a larger table and publishes it.
+	 *
+	 * @param t
+	 *            the current table
+	 * @param capacity
+	 *            the new capacity
+	 * @return the new table
+	 */
+	private Table resize(Table t, int capacity) {
+		Table resized = new Table(capacity);
+
+		for (int slot = 0; slot < t.keys.length; slot++) {
+			if (t.keys[slot] != IsbnProbing.EMPTY) {
+				insert(resized, t.keys[slot], t.books[slot]);
+			}
+		}
+
+		table = resized;
+		return resized;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#remove(int)
+	 */
+	@Override
+	public BookStoreBook remove(int isbn) {
+		Table t = table;
+		int slot = IsbnProbing.find(t.keys, isbn);
+
+		if (slot < 0) {
+			return null;
+		}
+
+		BookStoreBook removed = t.books[slot];
+		int hole = IsbnProbing.remove(t.keys, slot, (from, to) -> t.books[to] = t.books[from]);
+		t.books[hole] = null;
+		size = size - 1;
+		modCount = modCount + 1;
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#clear()
+	 */
+	@Override
+	public void clear() {
+		table = new Table(DEFAULT_CAPACITY);
+		size = 0;
+		modCount = modCount + 1;
+		sortedIsbns.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#keys()
+	 */
+	@Override
+	public int[] keys() {
+		Table t = table;
+		int[] keys = new int[t.keys.length];
+		int numKeys = 0;
+
+		for (int key : t.keys) {
+			if (key != IsbnProbing.EMPTY) {
+				keys[numKeys++] = key;
+			}
+		}
+
+		return Arrays.copyOf(keys, numKeys);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.business.BookCatalog#keysAfter(int, int)
+	 */
+	@Override
+	public int[] keysAfter(int isbn, int maxKeys) {
+		return sortedIsbns.keysAfter(modCount, this::keys, isbn, maxKeys);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<BookStoreBook> iterator() {
+		final BookStoreBook[] books = table.books;
+
+		return new Iterator<BookStoreBook>() {
+
+			/** The slot after the next book. */
+			private int slot = 0;
+
+			/** The next book, or null if there is none. */
+			private BookStoreBook nextBook = advance();
+
+			/**
+			 * Finds the next book, reading every slot only once.
+			 *
+			 * @return the next book, or null if there is none
+			 */
+			private BookStoreBook advance() {
+				while (slot < books.length) {
+					BookStoreBook book = books[slot++];
+
+					if (book != null) {
+						return book;
+					}
+				}
+
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nextBook != null;
+			}
+
+			@Override
+			public BookStoreBook next() {
+				if (nextBook == null) {
+					throw new NoSuchElementException();
+				}
+
+				BookStoreBook book = nextBook;
+				nextBook = advance();
+				return book;
+			}
+		};
+	}
+}
@@ -0,0 +1,117 @@
+package com.acertainbookstore.business;
+
+/**
+ * {@link IntSlotMap} maps ISBNs to the slots of {@link BookColumns}. It is an
+ * open addressing hash table over two <code>int</code> arrays, so neither keys
+ * nor values are boxed, probed like {@link IntHashBookCatalog} by
+ * {@link IsbnProbing}.
+ *
+ * The map is not thread-safe.
+ */
+class IntSlotMap {
+
+	/** The initial capacity. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The ISBNs, or {@link IsbnProbing#EMPTY}. */
+	private int[] keys = new int[INITIAL_CAPACITY];
+
+	/** The slots. */
+	private int[] values = new int[INITIAL_CAPACITY];
+
+	/** The number of ISBNs. */
+	private int size = 0;
+
+	/**
+	 * Gets the slot of the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the slot, or -1 if the ISBN is not in the map
+	 */
+	int get(int isbn) {
+		int pos = IsbnProbing.find(keys, isbn);
+		return (pos < 0) ? -1 : values[pos];
+	}
+
+	/**
+	 * Sets the slot of the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param slot
+	 *            the slot
+	 */
+	void put(int isbn, int slot) {
+		int pos = IsbnProbing.find(keys, isbn);
+
+		if (pos >= 0) {
+			values[pos] = slot;
+			return;
+		}
+
+		if (2 * (size + 1) > keys.length) {
+			resize(keys.length << 1);
+		}
+
+		insert(isbn, slot);
+		size++;
+	}
+
+	/**
+	 * Inserts an ISBN that is not in the table yet.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param slot
+	 *            the slot
+	 */
+	private void insert(int isbn, int slot) {
+		int pos = IsbnProbing.freePosition(keys, isbn);
+		keys[pos] = isbn;
+		values[pos] = slot;
+	}
+
+	/**
+	 * Rehashes the ISBNs into larger arrays.
+	 *
+	 * @param capacity
+	 *            the new capacity, a power of two
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+
+		for (int pos = 0; pos < oldKeys.length; pos++) {
+			if (oldKeys[pos] != IsbnProbing.EMPTY) {
+				insert(oldKeys[pos], oldValues[pos]);
+			}
+		}
+	}
+
+	/**
+	 * Removes the ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	void remove(int isbn) {
+		int pos = IsbnProbing.find(keys, isbn);
+
+		if (pos >= 0) {
+			IsbnProbing.remove(keys, pos, (from, to) -> values[to] = values[from]);
+			size--;
+		}
+	}
+
+	/**
+	 * Removes all ISBNs.
+	 */
+	void clear() {
+		keys = new int[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+}
@@ -0,0 +1,144 @@
+package com.acertainbookstore.business;
+
+/**
+ * {@link IsbnProbing} implements the linear probing over an <code>int</code>
+ * array of ISBNs that is shared by the open addressing hash tables of the
+ * store, {@link IntHashBookCatalog} and {@link IntSlotMap}. The tables keep
+ * their values in an array next to the ISBNs, at the same positions, and
+ * move them when a removal shifts a probe run back.
+ *
+ * The capacity of the arrays is a power of two.
+ */
+final class IsbnProbing {
+
+	/** The ISBN of an empty position. ISBNs are always positive. */
+	static final int EMPTY = 0;
+
+	/**
+	 * Moves the value of a table from one position to another when a removal
+	 * shifts a probe run back.
+	 */
+	@FunctionalInterface
+	interface ValueMover {
+
+		/**
+		 * Moves the value.
+		 *
+		 * @param from
+		 *            the position of the value
+		 * @param to
+		 *            the position to move the value to
+		 */
+		void move(int from, int to);
+	}
+
+	/**
+	 * Instantiates a new {@link IsbnProbing}; it has only static methods.
+	 */
+	private IsbnProbing() {
+	}
+
+	/**
+	 * Mixes the bits of the ISBN (the MurmurHash3 finalizer), so that
+	 * consecutive ISBNs do not form long probe runs.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the mixed hash
+	 */
+	static int mix(int isbn) {
+		int h = isbn;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Finds the position of the ISBN. The probe is bounded, so that a reader
+	 * racing a writer cannot loop forever.
+	 *
+	 * @param keys
+	 *            the ISBNs of the table
+	 * @param isbn
+	 *            the ISBN
+	 * @return the position, or -1 if the ISBN is not in the table
+	 */
+	static int find(int[] keys, int isbn) {
+		int mask = keys.length - 1;
+		int pos = mix(isbn) & mask;
+
+		for (int probes = 0; probes <= mask; probes++) {
+			int key = keys[pos];
+
+			if (key == isbn) {
+				return pos;
+			}
+
+			if (key == EMPTY) {
+				return -1;
+			}
+
+			pos = (pos + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the position where an ISBN that is not in the table yet goes. The
+	 * table must have an empty position.
+	 *
+	 * @param keys
+	 *            the ISBNs of the table
+	 * @param isbn
+	 *            the ISBN
+	 * @return the empty position
+	 */
+	static int freePosition(int[] keys, int isbn) {
+		int mask = keys.length - 1;
+		int pos = mix(isbn) & mask;
+
+		while (keys[pos] != EMPTY) {
+			pos = (pos + 1) & mask;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * Removes the ISBN at a position, shifting the rest of its probe run back
+	 * instead of leaving a tombstone. Every value is moved before its ISBN.
+	 *
+	 * @param keys
+	 *            the ISBNs of the table
+	 * @param pos
+	 *            the position of the ISBN
+	 * @param mover
+	 *            moves the values of the table
+	 * @return the position left empty, whose value the table must clear
+	 */
+	static int remove(int[] keys, int pos, ValueMover mover) {
+		int mask = keys.length - 1;
+		int hole = pos;
+		int next = (hole + 1) & mask;
+
+		while (keys[next] != EMPTY) {
+			int home = mix(keys[next]) & mask;
+
+			// Move the entry if the hole lies on its probe path from home.
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				mover.move(next, hole);
+				keys[hole] = keys[next];
+				hole = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		keys[hole] = EMPTY;
+		return hole;
+	}
+}
@@ -0,0 +1,876 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreRetryableException;
+
+/**
+ * {@link LockManager} hands out the global lock and the stripe locks of a
+ * {@link StripedLockTable}, and keeps track of who holds and who waits for
+ * every one of them.
+ *
+ * A request waiting for a lock looks for a deadlock every
+ * {@link BookStoreConstants#DEFAULT_DEADLOCK_CHECK_MILLIS}: it builds the
+ * wait-for graph of the threads, where a waiter points to the holders of the
+ * lock it waits for, and follows it from itself. If it comes back, the
+ * youngest request of the cycle, the one that took its first lock last, is
+ * the victim: it stops waiting and fails with a
+ * {@link BookStoreRetryableException}, so the others can go on. Requests
+ * that take their locks in a canonical order never deadlock; the check only
+ * runs while a request waits, so it costs nothing when locks are free.
+ *
+ * For every lock, the manager also counts the acquisitions and the
+ * contentions, and sums the wait and hold times, see
+ * {@link #getLockStatistics(int)}. The statistics of a stripe are those of all
+ * the books it guards.
+ */
+public class LockManager {
+
+	/** The locks, striped over the ISBNs. */
+	private final StripedLockTable lockTable;
+
+	/** The managed locks of the stripes, and last the global lock. */
+	private final ManagedReadWriteLock[] locks;
+
+	/** The time to wait for a lock, in nanoseconds. */
+	private final long lockTimeoutNanos;
+
+	/** The time to wait before looking for a deadlock, in nanoseconds. */
+	private final long deadlockCheckNanos;
+
+	/** The lock timeout, in milliseconds, for the error message. */
+	private final long lockTimeoutMillis;
+
+	/**
+	 * The threads that hold or wait for a lock, with their locks. A thread is
+	 * removed once it holds no lock, so that short-lived threads, such as one
+	 * virtual thread per request, are not kept alive.
+	 */
+	private final Map<Thread, LockOwner> owners = new ConcurrentHashMap<>();
+
+	/** The lock owner of the current thread, while it is registered. */
+	private final ThreadLocal<LockOwner> currentOwner = ThreadLocal.withInitial(this::register);
+
+	/** The acquisitions of every lock. */
+	private final LongAdder[] acquisitions;
+
+	/** The contentions of every lock. */
+	private final LongAdder[] contentions;
+
+	/** The wait time of every lock, in nanoseconds. */
+	private final LongAdder[] waitNanos;
+
+	/** The hold time of every lock, in nanoseconds. */
+	private final LongAdder[] holdNanos;
+
+	/** The requests aborted to break deadlocks. */
+	private final LongAdder deadlocks = new LongAdder();
+
+	/**
+	 * The locks and the waits of a thread. Only the thread itself records its
+	 * locks; other threads read them without locking to look for deadlocks,
+	 * and may see a lock that was just taken or released.
+	 */
+	private static final class LockOwner {
+
+		/** Publishes the number of held locks. */
+		private static final AtomicIntegerFieldUpdater<LockOwner> NUM_HELD = AtomicIntegerFieldUpdater
+				.newUpdater(LockOwner.class, "numHeld");
+
+		/** The thread. */
+		private final Thread thread;
+
+		/** The lock the thread waits for, or null. */
+		private volatile ManagedLock waitingFor;
+
+		/** The locks the thread holds, in the order they were taken. */
+		private volatile ManagedLock[] held = new ManagedLock[8];
+
+		/** When every held lock was taken, only read by the thread. */
+		private long[] heldSince = new long[8];
+
+		/** The number of held locks. */
+		private volatile int numHeld;
+
+		/** When the thread took the first of its held locks. */
+		private long firstLockNanos;
+
+		/** When the thread last took a lock, only read by the thread. */
+		private long lastNanos;
+
+		/**
+		 * Instantiates a new {@link LockOwner}.
+		 *
+		 * @param thread
+		 *            the thread
+		 */
+		private LockOwner(Thread thread) {
+			this.thread = thread;
+		}
+
+		/**
+		 * Records a lock as held.
+		 *
+		 * @param lock
+		 *            the lock
+		 * @param now
+		 *            the time it was taken
+		 */
+		private void hold(ManagedLock lock, long now) {
+			int count = numHeld;
+			ManagedLock[] locks = held;
+
+			if (count == locks.length) {
+				heldSince = Arrays.copyOf(heldSince, 2 * count);
+				locks = Arrays.copyOf(locks, 2 * count);
+				held = locks;
+			}
+
+			if (count == 0) {
+				firstLockNanos = now;
+			}
+
+			locks[count] = lock;
+			heldSince[count] = now;
+			lastNanos = now;
+			NUM_HELD.lazySet(this, count + 1);
+		}
+
+		/**
+		 * Records a lock as released, the last one taken first.
+		 *
+		 * @param lock
+		 *            the lock
+		 * @return when the lock was taken, or -1 if it was not held
+		 */
+		private long release(ManagedLock lock) {
+			int count = numHeld;
+			ManagedLock[] locks = held;
+
+			for (int i = count - 1; i >= 0; i--) {
+				if (locks[i] == lock) {
+					long since = heldSince[i];
+					System.arraycopy(locks, i + 1, locks, i, count - i - 1);
+					System.arraycopy(heldSince, i + 1, heldSince, i, count - i - 1);
+					NUM_HELD.lazySet(this, count - 1);
+					locks[count - 1] = null;
+					return since;
+				}
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Copies the held locks.
+		 *
+		 * @return the held locks
+		 */
+		private ManagedLock[] heldLocks() {
+			int count = numHeld;
+			ManagedLock[] locks = held;
+			ManagedLock[] copy = new ManagedLock[Math.min(count, locks.length)];
+			int numCopied = 0;
+
+			for (int i = 0; i < copy.length; i++) {
+				ManagedLock lock = locks[i];
+
+				if (lock != null) {
+					copy[numCopied++] = lock;
+				}
+			}
+
+			return (numCopied == copy.length) ? copy : Arrays.copyOf(copy, numCopied);
+		}
+
+		/**
+		 * Gets when the thread took the first of its held locks.
+		 *
+		 * @return the time
+		 */
+		private long getFirstLockNanos() {
+			return (numHeld > 0) ? firstLockNanos : 0;
+		}
+	}
+
+	/**
+	 * A snapshot of the wait-for graph, with the time every lock holder in it
+	 * took its first lock.
+	 */
+	private static final class WaitForGraph {
+
+		/** The owners every waiting owner waits for. */
+		private final Map<LockOwner, Set<LockOwner>> edges = new LinkedHashMap<>();
+
+		/** When every owner holding locks took the first of them. */
+		private final Map<LockOwner, Long> firstLockNanos = new HashMap<>();
+
+		/**
+		 * Checks whether a request took its first lock after another one. A
+		 * request that holds no lock yet is younger than any that does.
+		 *
+		 * @param owner
+		 *            the owner of the request
+		 * @param other
+		 *            the owner of the other request
+		 * @return true if the request is younger
+		 */
+		private boolean isYounger(LockOwner owner, LockOwner other) {
+			Long ownerStart = firstLockNanos.get(owner);
+			Long otherStart = firstLockNanos.get(other);
+
+			if (ownerStart == null && otherStart != null) {
+				return true;
+			} else if (ownerStart != null && otherStart == null) {
+				return false;
+			} else if (ownerStart != null && ownerStart.longValue() != otherStart.longValue()) {
+				return ownerStart - otherStart > 0;
+			}
+
+			return owner.thread.getId() > other.thread.getId();
+		}
+	}
+
+	/**
+	 * A read or write lock of a stripe, or of the global lock, whose owners
+	 * are tracked.
+	 */
+	private final class ManagedLock implements Lock {
+
+		/** The lock. */
+		private final Lock lock;
+
+		/** The index of the lock, the number of stripes for the global lock. */
+		private final int slot;
+
+		/** Whether it is a write lock. */
+		private final boolean write;
+
+		/**
+		 * Instantiates a new {@link ManagedLock}.
+		 *
+		 * @param lock
+		 *            the lock
+		 * @param slot
+		 *            the index of the lock
+		 * @param write
+		 *            whether it is a write lock
+		 */
+		private ManagedLock(Lock lock, int slot, boolean write) {
+			this.lock = lock;
+			this.slot = slot;
+			this.write = write;
+		}
+
+		/**
+		 * Checks whether a request holding this lock blocks a request waiting
+		 * for another lock.
+		 *
+		 * @param wanted
+		 *            the lock waited for
+		 * @return true if the locks conflict
+		 */
+		private boolean conflicts(ManagedLock wanted) {
+			return slot == wanted.slot && (write || wanted.write);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#lock()
+		 */
+		@Override
+		public void lock() {
+			LockOwner owner = currentOwner.get();
+			owner.waitingFor = this;
+
+			try {
+				lock.lock();
+			} finally {
+				owner.waitingFor = null;
+			}
+
+			held(owner, System.nanoTime());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#lockInterruptibly()
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			LockOwner owner = currentOwner.get();
+			owner.waitingFor = this;
+
+			boolean acquired = false;
+
+			try {
+				lock.lockInterruptibly();
+				acquired = true;
+			} finally {
+				owner.waitingFor = null;
+
+				if (!acquired) {
+					deregisterIfIdle(owner);
+				}
+			}
+
+			held(owner, System.nanoTime());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#tryLock()
+		 */
+		@Override
+		public boolean tryLock() {
+			if (!lock.tryLock()) {
+				return false;
+			}
+
+			held(currentOwner.get(), System.nanoTime());
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#tryLock(long,
+		 * java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			LockOwner owner = currentOwner.get();
+			owner.waitingFor = this;
+
+			boolean acquired = false;
+
+			try {
+				acquired = lock.tryLock(time, unit);
+			} finally {
+				owner.waitingFor = null;
+
+				if (!acquired) {
+					deregisterIfIdle(owner);
+				}
+			}
+
+			if (!acquired) {
+				return false;
+			}
+
+			held(owner, System.nanoTime());
+			return true;
+		}
+
+		/**
+		 * Records the lock as held by the current thread.
+		 *
+		 * @param owner
+		 *            the lock owner of the current thread
+		 * @param now
+		 *            the time it was taken
+		 */
+		private void held(LockOwner owner, long now) {
+			owner.hold(this, now);
+			acquisitions[slot].increment();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#unlock()
+		 */
+		@Override
+		public void unlock() {
+			release(currentOwner.get(), System.nanoTime());
+		}
+
+		/**
+		 * Releases the lock held by a thread.
+		 *
+		 * @param owner
+		 *            the lock owner of the thread
+		 * @param now
+		 *            the time it is released
+		 */
+		private void release(LockOwner owner, long now) {
+			long since = owner.release(this);
+			lock.unlock();
+
+			if (since >= 0) {
+				holdNanos[slot].add(now - since);
+			}
+
+			deregisterIfIdle(owner);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.Lock#newCondition()
+		 */
+		@Override
+		public Condition newCondition() {
+			return lock.newCondition();
+		}
+	}
+
+	/**
+	 * The managed read and write locks of a stripe or of the global lock.
+	 */
+	private static final class ManagedReadWriteLock implements ReadWriteLock {
+
+		/** The read lock. */
+		private final Lock readLock;
+
+		/** The write lock. */
+		private final Lock writeLock;
+
+		/**
+		 * Instantiates a new {@link ManagedReadWriteLock}.
+		 *
+		 * @param readLock
+		 *            the read lock
+		 * @param writeLock
+		 *            the write lock
+		 */
+		private ManagedReadWriteLock(Lock readLock, Lock writeLock) {
+			this.readLock = readLock;
+			this.writeLock = writeLock;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.ReadWriteLock#readLock()
+		 */
+		@Override
+		public Lock readLock() {
+			return readLock;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.locks.ReadWriteLock#writeLock()
+		 */
+		@Override
+		public Lock writeLock() {
+			return writeLock;
+		}
+	}
+
+	/**
+	 * Instantiates a new {@link LockManager}.
+	 *
+	 * @param numStripes
+	 *            the number of stripes, rounded up to a power of two
+	 * @param lockTimeoutMillis
+	 *            the time to wait for a lock, in milliseconds
+	 * @param deadlockCheckMillis
+	 *            the time to wait before looking for a deadlock, in
+	 *            milliseconds
+	 */
+	public LockManager(int numStripes, long lockTimeoutMillis, long deadlockCheckMillis) {
+		lockTable = new StripedLockTable(numStripes);
+		this.lockTimeoutMillis = lockTimeoutMillis;
+		this.lockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lockTimeoutMillis);
+		this.deadlockCheckNanos = TimeUnit.MILLISECONDS.toNanos(deadlockCheckMillis);
+
+		int numLocks = lockTable.size() + 1;
+		locks = new ManagedReadWriteLock[numLocks];
+		acquisitions = new LongAdder[numLocks];
+		contentions = new LongAdder[numLocks];
+		waitNanos = new LongAdder[numLocks];
+		holdNanos = new LongAdder[numLocks];
+
+		for (int slot = 0; slot < numLocks; slot++) {
+			ReadWriteLock lock = (slot < lockTable.size()) ? lockTable.getStripe(slot) : new ReentrantReadWriteLock();
+			locks[slot] = new ManagedReadWriteLock(new ManagedLock(lock.readLock(), slot, false),
+					new ManagedLock(lock.writeLock(), slot, true));
+			acquisitions[slot] = new LongAdder();
+			contentions[slot] = new LongAdder();
+			waitNanos[slot] = new LongAdder();
+			holdNanos[slot] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Registers the current thread as a lock owner.
+	 *
+	 * @return the lock owner
+	 */
+	private LockOwner register() {
+		LockOwner owner = new LockOwner(Thread.currentThread());
+		owners.put(owner.thread, owner);
+		return owner;
+	}
+
+	/**
+	 * Removes the current thread as a lock owner if it holds no lock and waits
+	 * for none. Its next lock registers it again.
+	 *
+	 * @param owner
+	 *            the lock owner of the current thread
+	 */
+	private void deregisterIfIdle(LockOwner owner) {
+		if (owner.numHeld == 0 && owner.waitingFor == null) {
+			owners.remove(owner.thread, owner);
+			currentOwner.remove();
+		}
+	}
+
+	/**
+	 * Gets the table of the stripes.
+	 *
+	 * @return the table
+	 */
+	public StripedLockTable getLockTable() {
+		return lockTable;
+	}
+
+	/**
+	 * Gets the global lock.
+	 *
+	 * @return the lock
+	 */
+	public ReadWriteLock getGlobalLock() {
+		return locks[lockTable.size()];
+	}
+
+	/**
+	 * Gets the lock of a stripe.
+	 *
+	 * @param stripe
+	 *            the stripe index
+	 * @return the lock
+	 */
+	public ReadWriteLock getStripe(int stripe) {
+		return locks[stripe];
+	}
+
+	/**
+	 * Acquires a lock of this manager within the lock timeout, unless the
+	 * request is chosen to break a deadlock.
+	 *
+	 * @param lock
+	 *            the read or write lock of the global lock or of a stripe
+	 * @throws BookStoreRetryableException
+	 *             if the lock could not be acquired in time, or the request
+	 *             was aborted to break a deadlock
+	 */
+	public void acquire(Lock lock) throws BookStoreRetryableException {
+		ManagedLock managedLock = (ManagedLock) lock;
+		LockOwner owner = currentOwner.get();
+
+		if (managedLock.lock.tryLock()) {
+			// Locks taken right away share the time of the first lock of the
+			// request or of the last wait, which saves reading the clock.
+			managedLock.held(owner, (owner.numHeld == 0) ? System.nanoTime() : owner.lastNanos);
+			return;
+		}
+
+		int slot = managedLock.slot;
+		long start = System.nanoTime();
+		long deadline = start + lockTimeoutNanos;
+		contentions[slot].increment();
+		owner.waitingFor = managedLock;
+		boolean acquired = false;
+
+		try {
+			while (true) {
+				long remainingNanos = deadline - System.nanoTime();
+
+				if (remainingNanos <= 0) {
+					throw new BookStoreRetryableException(BookStoreConstants.LOCK_TIMEOUT + lockTimeoutMillis);
+				}
+
+				if (managedLock.lock.tryLock(Math.min(remainingNanos, deadlockCheckNanos), TimeUnit.NANOSECONDS)) {
+					acquired = true;
+					break;
+				}
+
+				if (isDeadlockVictim(owner)) {
+					deadlocks.increment();
+					throw new BookStoreRetryableException(BookStoreConstants.DEADLOCK);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new BookStoreRetryableException(BookStoreConstants.LOCK_TIMEOUT + lockTimeoutMillis, ex);
+		} finally {
+			owner.waitingFor = null;
+			owner.lastNanos = System.nanoTime();
+			waitNanos[slot].add(owner.lastNanos - start);
+
+			if (!acquired) {
+				deregisterIfIdle(owner);
+			}
+		}
+
+		managedLock.held(owner, owner.lastNanos);
+	}
+
+	/**
+	 * Releases the locks of a request in the reverse order of acquisition.
+	 *
+	 * @param heldLocks
+	 *            the locks held by the request, the last one taken first
+	 */
+	public void releaseAll(Deque<Lock> heldLocks) {
+		if (heldLocks.isEmpty()) {
+			return;
+		}
+
+		LockOwner owner = currentOwner.get();
+		long now = System.nanoTime();
+
+		while (!heldLocks.isEmpty()) {
+			((ManagedLock) heldLocks.pop()).release(owner, now);
+		}
+	}
+
+	/**
+	 * Builds the wait-for graph of the lock owners: every waiting owner points
+	 * to the owners holding a lock that conflicts with the one it waits for.
+	 * A request waiting for a read lock also waits for the requests queued for
+	 * the write lock of the same stripe, which go first. The locks of every
+	 * owner are read once, together with the time it took the first of them,
+	 * so that the edges and the ages of a snapshot agree with each other.
+	 *
+	 * @return the snapshot of the graph
+	 */
+	private WaitForGraph buildWaitForGraph() {
+		WaitForGraph graph = new WaitForGraph();
+		Map<LockOwner, ManagedLock[]> heldLocks = new HashMap<>();
+		Map<Integer, List<LockOwner>> holders = new HashMap<>();
+		Map<Integer, List<LockOwner>> writeWaiters = new HashMap<>();
+		Map<LockOwner, ManagedLock> waiters = new LinkedHashMap<>();
+
+		for (LockOwner owner : owners.values()) {
+			if (!owner.thread.isAlive()) {
+				owners.remove(owner.thread);
+				continue;
+			}
+
+			ManagedLock wanted = owner.waitingFor;
+			long firstLockNanos = owner.getFirstLockNanos();
+			ManagedLock[] locks = owner.heldLocks();
+
+			if (locks.length > 0 && firstLockNanos != 0) {
+				graph.firstLockNanos.put(owner, firstLockNanos);
+				heldLocks.put(owner, locks);
+
+				for (ManagedLock lock : locks) {
+					holders.computeIfAbsent(lock.slot, slot -> new ArrayList<>()).add(owner);
+				}
+			}
+
+			if (wanted != null) {
+				waiters.put(owner, wanted);
+
+				if (wanted.write) {
+					writeWaiters.computeIfAbsent(wanted.slot, slot -> new ArrayList<>()).add(owner);
+				}
+			}
+		}
+
+		for (Map.Entry<LockOwner, ManagedLock> waiting : waiters.entrySet()) {
+			LockOwner waiter = waiting.getKey();
+			ManagedLock wanted = waiting.getValue();
+			Set<LockOwner> blockers = new LinkedHashSet<>();
+
+			for (LockOwner holder : holders.getOrDefault(wanted.slot, Collections.emptyList())) {
+				for (ManagedLock lock : heldLocks.get(holder)) {
+					if (holder != waiter && lock.conflicts(wanted)) {
+						blockers.add(holder);
+					}
+				}
+			}
+
+			if (!wanted.write) {
+				for (LockOwner writer : writeWaiters.getOrDefault(wanted.slot, Collections.emptyList())) {
+					if (writer != waiter) {
+						blockers.add(writer);
+					}
+				}
+			}
+
+			graph.edges.put(waiter, blockers);
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Looks for a cycle of the wait-for graph through a waiting owner, and
+	 * checks whether that owner is the youngest of it. The ages are those of
+	 * the snapshot, since a member that has aborted in the meantime no longer
+	 * has one. The owner only aborts if a second snapshot still has the same
+	 * cycle, with the same requests in it.
+	 *
+	 * @param waiter
+	 *            the waiting owner
+	 * @return true if the owner must abort to break a deadlock
+	 */
+	private boolean isDeadlockVictim(LockOwner waiter) {
+		WaitForGraph graph = buildWaitForGraph();
+		List<LockOwner> cycle = findCycle(graph, waiter);
+
+		if (cycle == null) {
+			return false;
+		}
+
+		for (LockOwner member : cycle) {
+			if (graph.isYounger(member, waiter)) {
+				return false;
+			}
+		}
+
+		WaitForGraph current = buildWaitForGraph();
+
+		for (int i = 0; i < cycle.size(); i++) {
+			LockOwner member = cycle.get(i);
+			LockOwner next = cycle.get((i + 1) % cycle.size());
+
+			if (!current.edges.getOrDefault(member, Collections.emptySet()).contains(next)
+					|| !Objects.equals(graph.firstLockNanos.get(member), current.firstLockNanos.get(member))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Looks for a cycle of a wait-for graph through a waiting owner.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param waiter
+	 *            the waiting owner
+	 * @return the members of the cycle in the order they wait for each other,
+	 *         starting with the waiter, or null if there is no cycle
+	 */
+	private static List<LockOwner> findCycle(WaitForGraph graph, LockOwner waiter) {
+		// Depth-first search for a path back to the waiter.
+		Map<LockOwner, LockOwner> parents = new HashMap<>();
+		Deque<LockOwner> pending = new ArrayDeque<>();
+		Set<LockOwner> visited = new HashSet<>();
+		pending.push(waiter);
+		visited.add(waiter);
+
+		while (!pending.isEmpty()) {
+			LockOwner owner = pending.pop();
+
+			for (LockOwner blocker : graph.edges.getOrDefault(owner, Collections.emptySet())) {
+				if (blocker == waiter) {
+					// The cycle is the path from the waiter to the owner.
+					List<LockOwner> cycle = new ArrayList<>();
+
+					for (LockOwner member = owner; member != waiter; member = parents.get(member)) {
+						cycle.add(member);
+					}
+
+					cycle.add(waiter);
+					Collections.reverse(cycle);
+					return cycle;
+				}
+
+				if (visited.add(blocker)) {
+					parents.put(blocker, owner);
+					pending.push(blocker);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the wait-for graph of the threads waiting for locks right now.
+	 *
+	 * @return the threads every waiting thread waits for
+	 */
+	public Map<Thread, Set<Thread>> getWaitForGraph() {
+		Map<Thread, Set<Thread>> threadGraph = new LinkedHashMap<>();
+
+		for (Map.Entry<LockOwner, Set<LockOwner>> waiter : buildWaitForGraph().edges.entrySet()) {
+			Set<Thread> blockers = new LinkedHashSet<>();
+
+			for (LockOwner blocker : waiter.getValue()) {
+				blockers.add(blocker.thread);
+			}
+
+			threadGraph.put(waiter.getKey().thread, blockers);
+		}
+
+		return threadGraph;
+	}
+
+	/**
+	 * Gets the statistics of the lock of a book, which it shares with the
+	 * other books of its stripe.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the statistics
+	 */
+	public LockStatistics getLockStatistics(int isbn) {
+		return statisticsOf(lockTable.stripeOf(isbn));
+	}
+
+	/**
+	 * Gets the statistics of the global lock.
+	 *
+	 * @return the statistics
+	 */
+	public LockStatistics getGlobalLockStatistics() {
+		return statisticsOf(lockTable.size());
+	}
+
+	/**
+	 * Gets the statistics of a lock.
+	 *
+	 * @param slot
+	 *            the index of the lock
+	 * @return the statistics
+	 */
+	private LockStatistics statisticsOf(int slot) {
+		return new LockStatistics(acquisitions[slot].sum(), contentions[slot].sum(), waitNanos[slot].sum(),
+				holdNanos[slot].sum());
+	}
+
+	/**
+	 * Gets the number of requests aborted to break deadlocks.
+	 *
+	 * @return the number of deadlocks
+	 */
+	public long getDeadlocks() {
+		return deadlocks.sum();
+	}
+}
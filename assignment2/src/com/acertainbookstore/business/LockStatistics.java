@@ -0,0 +1,89 @@
+package com.acertainbookstore.business;
+
+/**
+ * {@link LockStatistics} is a snapshot of the use of a lock of a
+ * {@link LockManager}: how often it was taken, how often a request had to
+ * wait for it, and for how long it was waited for and held in total.
+ */
+public final class LockStatistics {
+
+	/** The number of times the lock was taken. */
+	private final long acquisitions;
+
+	/** The number of times a request had to wait for the lock. */
+	private final long contentions;
+
+	/** The total time requests waited for the lock, in nanoseconds. */
+	private final long waitNanos;
+
+	/** The total time requests held the lock, in nanoseconds. */
+	private final long holdNanos;
+
+	/**
+	 * Instantiates a new {@link LockStatistics}.
+	 *
+	 * @param acquisitions
+	 *            the number of times the lock was taken
+	 * @param contentions
+	 *            the number of times a request had to wait for the lock
+	 * @param waitNanos
+	 *            the total wait time, in nanoseconds
+	 * @param holdNanos
+	 *            the total hold time, in nanoseconds
+	 */
+	public LockStatistics(long acquisitions, long contentions, long waitNanos, long holdNanos) {
+		this.acquisitions = acquisitions;
+		this.contentions = contentions;
+		this.waitNanos = waitNanos;
+		this.holdNanos = holdNanos;
+	}
+
+	/**
+	 * Gets the number of times the lock was taken.
+	 *
+	 * @return the number of acquisitions
+	 */
+	public long getAcquisitions() {
+		return acquisitions;
+	}
+
+	/**
+	 * Gets the number of times a request had to wait for the lock, including
+	 * waits that timed out or were aborted.
+	 *
+	 * @return the number of contentions
+	 */
+	public long getContentions() {
+		return contentions;
+	}
+
+	/**
+	 * Gets the total time requests waited for the lock.
+	 *
+	 * @return the wait time, in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return waitNanos;
+	}
+
+	/**
+	 * Gets the total time requests held the lock. Read locks held at the same
+	 * time all count.
+	 *
+	 * @return the hold time, in nanoseconds
+	 */
+	public long getHoldNanos() {
+		return holdNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "acquisitions=" + acquisitions + ", contentions=" + contentions + ", waitNanos=" + waitNanos
+				+ ", holdNanos=" + holdNanos;
+	}
+}
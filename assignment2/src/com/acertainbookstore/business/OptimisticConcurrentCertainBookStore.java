@@ -0,0 +1,633 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ * {@link OptimisticConcurrentCertainBookStore} implements the {@link BookStore}
+ * and {@link StockManager} functionalities using a single {@link StampedLock}.
+ * Updates take the write lock, so they have the same all-or-nothing semantics
+ * as in {@link SingleLockConcurrentCertainBookStore}. Reads first run
+ * optimistically without acquiring any lock and only fall back to the read
+ * lock if a concurrent update invalidated the stamp.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class OptimisticConcurrentCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
+
+	/** The mapping of books from ISBN to {@link BookStoreBook}. */
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
+
+	/** Global lock for the bookstore state. */
+	private StampedLock stampedLock = null;
+
+	/**
+	 * A read of the bookstore state which may be run optimistically, i.e.
+	 * concurrently with an update, and must therefore not modify any state.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 */
+	private interface OptimisticRead<T> {
+
+		/**
+		 * Reads the bookstore state.
+		 *
+		 * @return the result
+		 * @throws BookStoreException
+		 *             the book store exception
+		 */
+		T read() throws BookStoreException;
+	}
+
+	/**
+	 * Instantiates a new {@link OptimisticConcurrentCertainBookStore}.
+	 */
+	public OptimisticConcurrentCertainBookStore() {
+		// Constructors are not synchronized
+		// The map must tolerate readers running concurrently with an update.
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
+		stampedLock = new StampedLock();
+	}
+
+	private long takeWriteLock() { return stampedLock.writeLock(); }
+	private void releaseWriteLock(long stamp) { stampedLock.unlockWrite(stamp); }
+
+	/**
+	 * Runs the read without taking a lock and validates the stamp afterwards.
+	 * If an update happened in the meantime the result (or exception) may be
+	 * based on inconsistent state, so the read is repeated under the read
+	 * lock.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param optimisticRead
+	 *            the read to perform
+	 * @return the result
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private <T> T read(OptimisticRead<T> optimisticRead) throws BookStoreException {
+		long stamp = stampedLock.tryOptimisticRead();
+
+		if (stamp != 0L) {
+			try {
+				T result = optimisticRead.read();
+
+				if (stampedLock.validate(stamp)) {
+					return result;
+				}
+			} catch (BookStoreException ex) {
+				if (stampedLock.validate(stamp)) {
+					throw ex;
+				}
+			} catch (RuntimeException ex) {
+				// The read observed a half-finished update, retry it below.
+			}
+		}
+
+		stamp = stampedLock.readLock();
+
+		try {
+			return optimisticRead.read();
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		long stamp = takeWriteLock();
+		try {
+			if (bookSet == null) {
+				throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+			}
+
+			// Check if all are there
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+				String bookTitle = book.getTitle();
+				String bookAuthor = book.getAuthor();
+				int noCopies = book.getNumCopies();
+				float bookPrice = book.getPrice();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (BookStoreUtility.isEmpty(bookTitle)) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (BookStoreUtility.isEmpty(bookAuthor)) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (BookStoreUtility.isInvalidNoCopies(noCopies)) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (bookPrice < 0.0) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (bookMap.containsKey(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+				}
+			}
+
+			List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(isbn, bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
+			}
+
+			editorPickIndex.update(addedBooks);
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = takeWriteLock();
+
+		try {
+			List<BookStoreBook> addedBooks = new ArrayList<>(books.size());
+
+			for (StockBook book : books) {
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(book.getISBN(), bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
+			}
+
+			editorPickIndex.update(addedBooks);
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		int isbn;
+		int numCopies;
+
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = takeWriteLock();
+		try {
+			for (BookCopy bookCopy : bookCopiesSet) {
+				isbn = bookCopy.getISBN();
+				numCopies = bookCopy.getNumCopies();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
+					throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+				}
+			}
+
+			// Update the number of copies
+			BookStoreBook book;
+			for (BookCopy bookCopy : bookCopiesSet) {
+				isbn = bookCopy.getISBN();
+				numCopies = bookCopy.getNumCopies();
+				book = bookMap.get(isbn);
+				book.addCopies(numCopies);
+				inDemandIndex.update(book);
+			}
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		// Check that all ISBNs that we add/remove are there first.
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = takeWriteLock();
+		try {
+			int isbnValue;
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				isbnValue = editorPickArg.getISBN();
+
+				if (BookStoreUtility.isInvalidISBN(isbnValue)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbnValue + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(isbnValue)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbnValue + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+				book.setEditorPick(editorPickArg.isEditorPick());
+				updatedBooks.add(book);
+			}
+
+			editorPickIndex.update(updatedBooks);
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int isbn;
+		BookStoreBook book;
+		Boolean saleMiss = false;
+
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		long stamp = takeWriteLock();
+		try {
+			// Check that all ISBNs that we buy are there first.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				isbn = bookCopyToBuy.getISBN();
+
+				if (bookCopyToBuy.getNumCopies() < 0) {
+					throw new BookStoreException(
+							BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
+				}
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				book = bookMap.get(isbn);
+
+				if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+					// If we cannot sell the copies of the book, it is a miss.
+					salesMisses.put(isbn, bookCopyToBuy.getNumCopies() - book.getNumCopies());
+					saleMiss = true;
+				}
+			}
+
+			// We throw exception now since we want to see how many books in the
+			// order incurred misses which is used by books in demand
+			if (saleMiss) {
+				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+					book = bookMap.get(saleMissEntry.getKey());
+					book.addSaleMiss(saleMissEntry.getValue());
+					inDemandIndex.update(book);
+				}
+				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+			}
+
+			// Then make the purchase.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				book = bookMap.get(bookCopyToBuy.getISBN());
+				book.buyCopies(bookCopyToBuy.getNumCopies());
+			}
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		return read(() -> {
+			List<StockBook> listBooks = new ArrayList<>();
+
+			for (Integer ISBN : isbnSet) {
+				if (BookStoreUtility.isInvalidISBN(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+				}
+
+				BookStoreBook book = bookMap.get(ISBN);
+
+				if (book == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				listBooks.add(book.immutableStockBook());
+			}
+
+			return listBooks;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() throws BookStoreException {
+		return read(() -> {
+			List<StockBook> listBooks = new ArrayList<>();
+			for (BookStoreBook book : bookMap) {
+				listBooks.add(book.immutableStockBook());
+			}
+
+			return listBooks;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+
+		return read(() -> {
+			int[] isbns = bookMap.keysAfter(continuationToken, maxBooks);
+			List<StockBook> listBooks = new ArrayList<>(isbns.length);
+
+			for (int isbn : isbns) {
+				BookStoreBook book = bookMap.get(isbn);
+
+				// A concurrent removal fails the validation of this read.
+				if (book != null) {
+					listBooks.add(book.immutableStockBook());
+				}
+			}
+
+			return new StockBookPage(listBooks, maxBooks);
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		return read(() -> {
+			List<Book> listBooks = new ArrayList<>();
+
+			// Check that all ISBNs that we rate are there to start with.
+			for (Integer ISBN : isbnSet) {
+				if (BookStoreUtility.isInvalidISBN(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+				}
+
+				BookStoreBook book = bookMap.get(ISBN);
+
+				if (book == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				listBooks.add(book.immutableBook());
+			}
+
+			return listBooks;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// The index is thread-safe, so it may be sampled optimistically.
+		return read(() -> editorPickIndex.getEditorPicks(numBooks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		return read(editorPickIndex::size);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// The index is thread-safe, so it may be walked optimistically.
+		return read(() -> topRatedIndex.getTopRatedBooks(numBooks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return read(() -> inDemandIndex.getBooksInDemand());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int isbn;
+		int ratings;
+		BookStoreBook book;
+
+		long stamp = takeWriteLock();
+		try {
+			// Check that all ISBNs that we rate are there first.
+			for (BookRating bookToRate : bookRating) {
+				isbn = bookToRate.getISBN();
+				ratings = bookToRate.getRating();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				if (BookStoreUtility.isInvalidRating(ratings)) {
+					throw new BookStoreException(BookStoreConstants.RATING + ratings + BookStoreConstants.INVALID);
+				}
+
+				book = bookMap.get(isbn);
+
+				if (book.hadSaleMiss()) {
+					throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			// Update the sum of ratings and the number of ratings.
+			for (BookRating bookToRate : bookRating) {
+				book = bookMap.get(bookToRate.getISBN());
+				book.addRating(bookToRate.getRating());
+				topRatedIndex.update(book);
+			}
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		long stamp = takeWriteLock();
+		try {
+			bookMap.clear();
+			topRatedIndex.clear();
+			editorPickIndex.clear();
+			inDemandIndex.clear();
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = takeWriteLock();
+		try {
+			for (Integer ISBN : isbnSet) {
+				if (BookStoreUtility.isInvalidISBN(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			for (int isbn : isbnSet) {
+				bookMap.remove(isbn);
+				topRatedIndex.remove(isbn);
+				inDemandIndex.remove(isbn);
+			}
+
+			editorPickIndex.remove(isbnSet);
+		} finally {
+			releaseWriteLock(stamp);
+		}
+	}
+}
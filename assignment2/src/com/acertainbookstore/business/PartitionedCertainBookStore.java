@@ -0,0 +1,789 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ * {@link PartitionedCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities on a catalog split by ISBN hash into
+ * independent partitions, each with its own catalog, indexes and read-write
+ * lock. A request locks only the partitions of its books, in ascending order,
+ * so requests on different partitions run in parallel and multi-book requests
+ * stay all-or-nothing.
+ *
+ * Requests over the whole store take the read locks of all partitions, so
+ * they see a consistent store, and then scan the partitions in parallel on a
+ * {@link ForkJoinPool} and merge the results.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class PartitionedCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
+
+	/**
+	 * One partition of the store.
+	 */
+	private static final class Partition {
+
+		/** The mapping of books from ISBN to {@link BookStoreBook}. */
+		private final BookCatalog bookMap = new IntHashBookCatalog();
+
+		/** The books ordered by average rating. */
+		private final TopRatedIndex topRatedIndex = new TopRatedIndex();
+
+		/** The books that are editor picks. */
+		private final EditorPickIndex editorPickIndex = new EditorPickIndex();
+
+		/** The books that had sale misses since they were last restocked. */
+		private final InDemandIndex inDemandIndex = new InDemandIndex();
+	}
+
+	/** The order of the top rated books: descending rating, then ISBN. */
+	private final Comparator<Book> topRatedOrder = Comparator
+			.comparingDouble((Book book) -> -lookup(book.getISBN()).getAverageRating())
+			.thenComparingInt(Book::getISBN);
+
+	/** The lock of every partition, which also maps ISBNs to partitions. */
+	private final StripedLockTable lockTable;
+
+	/** The partitions, indexed by stripe. */
+	private final Partition[] partitions;
+
+	/** The pool that scans the partitions. */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Instantiates a new {@link PartitionedCertainBookStore} with
+	 * {@link BookStoreConstants#DEFAULT_PARTITIONS} partitions, scanned on the
+	 * common pool.
+	 */
+	public PartitionedCertainBookStore() {
+		this(BookStoreConstants.DEFAULT_PARTITIONS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Instantiates a new {@link PartitionedCertainBookStore}.
+	 *
+	 * @param numPartitions
+	 *            the minimum number of partitions, rounded up to a power of
+	 *            two
+	 * @param pool
+	 *            the pool that scans the partitions
+	 */
+	public PartitionedCertainBookStore(int numPartitions, ForkJoinPool pool) {
+		lockTable = new StripedLockTable(numPartitions);
+		partitions = new Partition[lockTable.size()];
+		this.pool = pool;
+
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new Partition();
+		}
+	}
+
+	/**
+	 * Gets the partition of a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the partition
+	 */
+	private Partition partitionOf(int isbn) {
+		return partitions[lockTable.stripeOf(isbn)];
+	}
+
+	/**
+	 * Gets a book from its partition, whose lock must be held.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the book, or null if it is not in the store
+	 */
+	private BookStoreBook lookup(int isbn) {
+		return partitionOf(isbn).bookMap.get(isbn);
+	}
+
+	/**
+	 * Takes the locks of the partitions of the books in ascending order.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @param write
+	 *            whether to take the write locks
+	 * @return the partitions locked, to be passed to
+	 *         {@link #releaseLocks(int[], boolean)}
+	 */
+	private int[] takeLocks(int[] isbns, boolean write) {
+		int[] lockOrder = lockTable.stripesOf(isbns);
+
+		for (int partition : lockOrder) {
+			lockOf(partition, write).lock();
+		}
+
+		return lockOrder;
+	}
+
+	/**
+	 * Takes the locks of all partitions in ascending order.
+	 *
+	 * @param write
+	 *            whether to take the write locks
+	 * @return the partitions locked, to be passed to
+	 *         {@link #releaseLocks(int[], boolean)}
+	 */
+	private int[] takeAllLocks(boolean write) {
+		int[] lockOrder = new int[partitions.length];
+
+		for (int partition = 0; partition < partitions.length; partition++) {
+			lockOrder[partition] = partition;
+			lockOf(partition, write).lock();
+		}
+
+		return lockOrder;
+	}
+
+	/**
+	 * Releases the locks of the partitions in reverse order.
+	 *
+	 * @param lockOrder
+	 *            the partitions locked
+	 * @param write
+	 *            whether the write locks were taken
+	 */
+	private void releaseLocks(int[] lockOrder, boolean write) {
+		for (int i = lockOrder.length - 1; i >= 0; i--) {
+			lockOf(lockOrder[i], write).unlock();
+		}
+	}
+
+	/**
+	 * Gets the read or write lock of a partition.
+	 *
+	 * @param partition
+	 *            the partition index
+	 * @param write
+	 *            whether to get the write lock
+	 * @return the lock
+	 */
+	private Lock lockOf(int partition, boolean write) {
+		return write ? lockTable.getStripe(partition).writeLock() : lockTable.getStripe(partition).readLock();
+	}
+
+	/**
+	 * Runs a read-only task on every partition in parallel. The caller must
+	 * hold the read locks of all partitions; the task runs on the caller for
+	 * the first partition and on the pool for the others, unless there is a
+	 * single core.
+	 *
+	 * @param <R>
+	 *            the type of the results
+	 * @param task
+	 *            the task
+	 * @return the result of every partition, in partition order
+	 */
+	private <R> List<R> scanPartitions(Function<Partition, R> task) {
+		// With one core, forking only makes the writers wait for the pool.
+		int numForked = (Runtime.getRuntime().availableProcessors() > 1) ? partitions.length - 1 : 0;
+		List<ForkJoinTask<R>> forked = new ArrayList<>(numForked);
+
+		for (int i = 1; i <= numForked; i++) {
+			Partition partition = partitions[i];
+			forked.add(pool.submit(() -> task.apply(partition)));
+		}
+
+		List<R> results = new ArrayList<>(partitions.length);
+		results.add(task.apply(partitions[0]));
+
+		for (ForkJoinTask<R> partitionTask : forked) {
+			results.add(partitionTask.join());
+		}
+
+		for (int i = numForked + 1; i < partitions.length; i++) {
+			results.add(task.apply(partitions[i]));
+		}
+
+		return results;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(bookSet.stream().mapToInt(StockBook::getISBN).toArray(), true);
+
+		try {
+			// Check if all are there
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+
+				if (BookStoreUtility.isInvalidISBN(isbn) || BookStoreUtility.isEmpty(book.getTitle())
+						|| BookStoreUtility.isEmpty(book.getAuthor())
+						|| BookStoreUtility.isInvalidNoCopies(book.getNumCopies()) || book.getPrice() < 0.0) {
+					throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+				}
+
+				if (lookup(isbn) != null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+				}
+			}
+
+			putAll(bookSet);
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/**
+	 * Puts books into their partitions, whose write locks must be held. The
+	 * editor picks of every partition are updated once.
+	 *
+	 * @param books
+	 *            the books
+	 */
+	private void putAll(Collection<StockBook> books) {
+		Map<Partition, List<BookStoreBook>> addedBooks = new HashMap<>();
+
+		for (StockBook book : books) {
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			Partition partition = partitionOf(book.getISBN());
+			partition.bookMap.put(book.getISBN(), bookStoreBook);
+			partition.topRatedIndex.update(bookStoreBook);
+			partition.inDemandIndex.update(bookStoreBook);
+			addedBooks.computeIfAbsent(partition, key -> new ArrayList<>()).add(bookStoreBook);
+		}
+
+		addedBooks.forEach((partition, partitionBooks) -> partition.editorPickIndex.update(partitionBooks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(books.stream().mapToInt(StockBook::getISBN).toArray(), true);
+
+		try {
+			putAll(books);
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(bookCopiesSet.stream().mapToInt(BookCopy::getISBN).toArray(), true);
+
+		try {
+			for (BookCopy bookCopy : bookCopiesSet) {
+				int isbn = bookCopy.getISBN();
+				int numCopies = bookCopy.getNumCopies();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				if (lookup(isbn) == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
+					throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+				}
+			}
+
+			// Update the number of copies
+			for (BookCopy bookCopy : bookCopiesSet) {
+				BookStoreBook book = lookup(bookCopy.getISBN());
+				book.addCopies(bookCopy.getNumCopies());
+				partitionOf(book.getISBN()).inDemandIndex.update(book);
+			}
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(editorPicks.stream().mapToInt(BookEditorPick::getISBN).toArray(), true);
+
+		try {
+			// Check that all ISBNs that we add/remove are there first.
+			for (BookEditorPick editorPickArg : editorPicks) {
+				int isbn = editorPickArg.getISBN();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				if (lookup(isbn) == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			Map<Partition, List<BookStoreBook>> updatedBooks = new HashMap<>();
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				BookStoreBook book = lookup(editorPickArg.getISBN());
+				book.setEditorPick(editorPickArg.isEditorPick());
+				updatedBooks.computeIfAbsent(partitionOf(book.getISBN()), key -> new ArrayList<>()).add(book);
+			}
+
+			updatedBooks.forEach((partition, partitionBooks) -> partition.editorPickIndex.update(partitionBooks));
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+		int[] lockOrder = takeLocks(bookCopiesToBuy.stream().mapToInt(BookCopy::getISBN).toArray(), true);
+
+		try {
+			// Check that all ISBNs that we buy are there first.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				int isbn = bookCopyToBuy.getISBN();
+
+				if (bookCopyToBuy.getNumCopies() < 0) {
+					throw new BookStoreException(
+							BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
+				}
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				BookStoreBook book = lookup(isbn);
+
+				if (book == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+					// If we cannot sell the copies of the book, it is a miss.
+					salesMisses.put(isbn, bookCopyToBuy.getNumCopies() - book.getNumCopies());
+				}
+			}
+
+			// We throw exception now since we want to see how many books in the
+			// order incurred misses which is used by books in demand
+			if (!salesMisses.isEmpty()) {
+				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+					BookStoreBook book = lookup(saleMissEntry.getKey());
+					book.addSaleMiss(saleMissEntry.getValue());
+					partitionOf(book.getISBN()).inDemandIndex.update(book);
+				}
+
+				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+			}
+
+			// Then make the purchase.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				lookup(bookCopyToBuy.getISBN()).buyCopies(bookCopyToBuy.getNumCopies());
+			}
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(isbnSet.stream().mapToInt(Integer::intValue).toArray(), false);
+
+		try {
+			validateBooks(isbnSet);
+			List<StockBook> listBooks = new ArrayList<>(isbnSet.size());
+
+			for (int isbn : isbnSet) {
+				listBooks.add(lookup(isbn).immutableStockBook());
+			}
+
+			return listBooks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/**
+	 * Checks that the books are in the store. The locks of their partitions
+	 * must be held.
+	 *
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @throws BookStoreException
+	 *             if an ISBN is invalid or not in the store
+	 */
+	private void validateBooks(Set<Integer> isbnSet) throws BookStoreException {
+		for (Integer isbn : isbnSet) {
+			if (BookStoreUtility.isInvalidISBN(isbn)) {
+				throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+			}
+
+			if (lookup(isbn) == null) {
+				throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() {
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			List<List<StockBook>> partitionBooks = scanPartitions(partition -> {
+				List<StockBook> listBooks = new ArrayList<>(partition.bookMap.size());
+
+				for (BookStoreBook book : partition.bookMap) {
+					listBooks.add(book.immutableStockBook());
+				}
+
+				return listBooks;
+			});
+
+			List<StockBook> listBooks = new ArrayList<>();
+
+			for (List<StockBook> books : partitionBooks) {
+				listBooks.addAll(books);
+			}
+
+			return listBooks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			// The page is among the first maxBooks ISBNs of every partition.
+			List<int[]> partitionIsbns = scanPartitions(
+					partition -> partition.bookMap.keysAfter(continuationToken, maxBooks));
+			int[] isbns = partitionIsbns.stream().flatMapToInt(Arrays::stream).sorted().limit(maxBooks)
+					.toArray();
+			List<StockBook> listBooks = new ArrayList<>(isbns.length);
+
+			for (int isbn : isbns) {
+				listBooks.add(lookup(isbn).immutableStockBook());
+			}
+
+			return new StockBookPage(listBooks, maxBooks);
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(isbnSet.stream().mapToInt(Integer::intValue).toArray(), false);
+
+		try {
+			validateBooks(isbnSet);
+			List<Book> listBooks = new ArrayList<>(isbnSet.size());
+
+			for (int isbn : isbnSet) {
+				listBooks.add(lookup(isbn).immutableBook());
+			}
+
+			return listBooks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			// Split the sample over the partitions, then let every partition
+			// draw its share.
+			int[] sizes = new int[partitions.length];
+
+			for (int i = 0; i < partitions.length; i++) {
+				sizes[i] = partitions[i].editorPickIndex.size();
+			}
+
+			int[] shares = EditorPickIndex.shares(sizes, numBooks);
+			List<Book> listEditorPicks = new ArrayList<>();
+
+			for (int i = 0; i < partitions.length; i++) {
+				if (shares[i] > 0) {
+					listEditorPicks.addAll(partitions[i].editorPickIndex.getEditorPicks(shares[i]));
+				}
+			}
+
+			return listEditorPicks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			int numPicks = 0;
+
+			for (Partition partition : partitions) {
+				numPicks += partition.editorPickIndex.size();
+			}
+
+			return numPicks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			List<Book> candidates = new ArrayList<>();
+
+			for (List<Book> books : scanPartitions(partition -> partition.topRatedIndex.getTopRatedBooks(numBooks))) {
+				candidates.addAll(books);
+			}
+
+			candidates.sort(topRatedOrder);
+			return new ArrayList<>(candidates.subList(0, Math.min(numBooks, candidates.size())));
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		int[] lockOrder = takeAllLocks(false);
+
+		try {
+			List<StockBook> listBooks = new ArrayList<>();
+
+			for (List<StockBook> books : scanPartitions(partition -> partition.inDemandIndex.getBooksInDemand())) {
+				listBooks.addAll(books);
+			}
+
+			return listBooks;
+		} finally {
+			releaseLocks(lockOrder, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(bookRating.stream().mapToInt(BookRating::getISBN).toArray(), true);
+
+		try {
+			// Check that all ISBNs that we rate are there first.
+			for (BookRating bookToRate : bookRating) {
+				int isbn = bookToRate.getISBN();
+				int rating = bookToRate.getRating();
+
+				if (BookStoreUtility.isInvalidISBN(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+				}
+
+				BookStoreBook book = lookup(isbn);
+
+				if (book == null) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				if (BookStoreUtility.isInvalidRating(rating)) {
+					throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+				}
+
+				if (book.hadSaleMiss()) {
+					throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			// update the sum of ratings and the number of ratings
+			for (BookRating bookToRate : bookRating) {
+				BookStoreBook book = lookup(bookToRate.getISBN());
+				book.addRating(bookToRate.getRating());
+				partitionOf(book.getISBN()).topRatedIndex.update(book);
+			}
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		int[] lockOrder = takeAllLocks(true);
+
+		try {
+			for (Partition partition : partitions) {
+				partition.bookMap.clear();
+				partition.topRatedIndex.clear();
+				partition.editorPickIndex.clear();
+				partition.inDemandIndex.clear();
+			}
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		int[] lockOrder = takeLocks(isbnSet.stream().mapToInt(Integer::intValue).toArray(), true);
+
+		try {
+			validateBooks(isbnSet);
+
+			Map<Partition, List<Integer>> removedIsbns = new HashMap<>();
+
+			for (int isbn : isbnSet) {
+				Partition partition = partitionOf(isbn);
+				partition.bookMap.remove(isbn);
+				partition.topRatedIndex.remove(isbn);
+				partition.inDemandIndex.remove(isbn);
+				removedIsbns.computeIfAbsent(partition, key -> new ArrayList<>()).add(isbn);
+			}
+
+			removedIsbns.forEach((partition, partitionIsbns) -> partition.editorPickIndex.remove(partitionIsbns));
+		} finally {
+			releaseLocks(lockOrder, true);
+		}
+	}
+}
@@ -0,0 +1,1357 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ * {@link SequencedCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities with a single writer thread.
+ *
+ * Requests that change the store are published as commands into a
+ * {@link CommandRing}. The writer thread takes them in sequence and applies
+ * them one after the other to a catalog and indexes that no other thread
+ * touches, so it needs no locks, and every command is trivially
+ * all-or-nothing. The caller waits until its command is applied.
+ *
+ * Reads never wait for the writer behind other commands. The writer applies
+ * every command under the write lock of a {@link StampedLock}, and then
+ * publishes an immutable copy of the books it touched; the indexes are
+ * updated in place by the command itself. A reader reads the published books
+ * and the indexes directly in optimistic mode, and retries until its stamp
+ * validates. Those structures are all safe to traverse concurrently with the
+ * writer, so a read that overlaps a command returns or throws, and the stamp
+ * only makes the reads of several of them agree.
+ *
+ * A reader that keeps running into commands falls back to an immutable
+ * snapshot of the whole store, and waits for one that holds every change
+ * applied when the read started. The writer collects the latest copy of every
+ * book it changed and hands them over at the end of a batch of commands, once
+ * the previous handover was taken, to a snapshot thread. That thread applies
+ * them to a replica of the catalog and its indexes, and periodically copies
+ * the replica into a new snapshot once a reader asked for one. The writer
+ * thus never copies the catalog, and the pending changes never outgrow it.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class SequencedCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
+
+	/** The times a caller checks whether its command is done before it parks. */
+	private static final int MAX_SPINS = (Runtime.getRuntime().availableProcessors() > 1) ? 256 : 0;
+
+	/** The times a reader retries before it falls back to the snapshot. */
+	private static final int MAX_READ_ATTEMPTS = 16;
+
+	/** The time between two updates of the replica of the snapshot thread. */
+	private static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	/** The time a parked caller waits before it checks that the writer runs. */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * The kinds of commands.
+	 */
+	private enum CommandType {
+
+		/** Adds books. */
+		ADD_BOOKS,
+
+		/** Restores books from a checkpoint. */
+		RESTORE_BOOKS,
+
+		/** Adds copies of books. */
+		ADD_COPIES,
+
+		/** Updates the editor picks. */
+		UPDATE_EDITOR_PICKS,
+
+		/** Buys copies of books. */
+		BUY_BOOKS,
+
+		/** Rates books. */
+		RATE_BOOKS,
+
+		/** Removes books. */
+		REMOVE_BOOKS,
+
+		/** Removes all books. */
+		REMOVE_ALL_BOOKS,
+
+		/** Stops the writer. */
+		STOP
+	}
+
+	/**
+	 * A command for the writer, and its outcome once it is done.
+	 */
+	private static final class Command {
+
+		/** The kind of command. */
+		private final CommandType type;
+
+		/** The argument of the request. */
+		private final Object argument;
+
+		/** The thread waiting for the command. */
+		private final Thread caller;
+
+		/** Why the command failed, or null. */
+		private BookStoreException failure;
+
+		/** Whether the command was applied or failed. */
+		private volatile boolean done;
+
+		/**
+		 * Instantiates a new {@link Command}.
+		 *
+		 * @param type
+		 *            the kind of command
+		 * @param argument
+		 *            the argument of the request
+		 * @param caller
+		 *            the thread waiting for the command
+		 */
+		private Command(CommandType type, Object argument, Thread caller) {
+			this.type = type;
+			this.argument = argument;
+			this.caller = caller;
+		}
+	}
+
+	/**
+	 * The state of the store as a reader sees it.
+	 */
+	private interface View {
+
+		/**
+		 * Gets the books.
+		 *
+		 * @return the books by ISBN
+		 */
+		NavigableMap<Integer, StockBook> books();
+
+		/**
+		 * Gets the top rated books.
+		 *
+		 * @param numBooks
+		 *            the number of books
+		 * @return the books, in descending rating order
+		 */
+		List<Book> getTopRatedBooks(int numBooks);
+
+		/**
+		 * Gets editor picks chosen at random.
+		 *
+		 * @param numBooks
+		 *            the number of books
+		 * @return the editor picks
+		 */
+		List<Book> getEditorPicks(int numBooks);
+
+		/**
+		 * Gets the number of editor picks.
+		 *
+		 * @return the number of editor picks
+		 */
+		int getNumEditorPicks();
+
+		/**
+		 * Gets the books in demand.
+		 *
+		 * @return the books in demand
+		 */
+		List<StockBook> getBooksInDemand();
+	}
+
+	/**
+	 * A read of a view of the store, which may run concurrently with the
+	 * writer and must therefore not modify any state.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 */
+	private interface SequencedRead<T> {
+
+		/**
+		 * Reads the view.
+		 *
+		 * @param view
+		 *            the view
+		 * @return the result
+		 * @throws BookStoreException
+		 *             the book store exception
+		 */
+		T read(View view) throws BookStoreException;
+	}
+
+	/**
+	 * An immutable copy of the store.
+	 */
+	private static final class Snapshot implements View {
+
+		/** The number of commands applied when the snapshot was taken. */
+		private final long version;
+
+		/** The books by ISBN. */
+		private final NavigableMap<Integer, StockBook> books;
+
+		/** All books, in descending rating order. */
+		private final List<Book> topRatedBooks;
+
+		/** All editor picks. */
+		private final Book[] editorPicks;
+
+		/** The books in demand. */
+		private final List<StockBook> booksInDemand;
+
+		/**
+		 * Instantiates a new {@link Snapshot}.
+		 *
+		 * @param version
+		 *            the number of commands applied
+		 * @param books
+		 *            the books by ISBN
+		 * @param topRatedBooks
+		 *            all books, in descending rating order
+		 * @param editorPicks
+		 *            all editor picks
+		 * @param booksInDemand
+		 *            the books in demand
+		 */
+		private Snapshot(long version, NavigableMap<Integer, StockBook> books, List<Book> topRatedBooks,
+				Book[] editorPicks, List<StockBook> booksInDemand) {
+			this.version = version;
+			this.books = books;
+			this.topRatedBooks = topRatedBooks;
+			this.editorPicks = editorPicks;
+			this.booksInDemand = booksInDemand;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * com.acertainbookstore.business.SequencedCertainBookStore.View#books()
+		 */
+		@Override
+		public NavigableMap<Integer, StockBook> books() {
+			return books;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getTopRatedBooks(int)
+		 */
+		@Override
+		public List<Book> getTopRatedBooks(int numBooks) {
+			return new ArrayList<>(topRatedBooks.subList(0, Math.min(numBooks, topRatedBooks.size())));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getEditorPicks(int)
+		 */
+		@Override
+		public List<Book> getEditorPicks(int numBooks) {
+			int[] chosen = EditorPickIndex.sample(editorPicks.length, numBooks);
+			List<Book> listEditorPicks = new ArrayList<>(chosen.length);
+
+			for (int slot : chosen) {
+				listEditorPicks.add(editorPicks[slot]);
+			}
+
+			return listEditorPicks;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getNumEditorPicks()
+		 */
+		@Override
+		public int getNumEditorPicks() {
+			return editorPicks.length;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getBooksInDemand()
+		 */
+		@Override
+		public List<StockBook> getBooksInDemand() {
+			return new ArrayList<>(booksInDemand);
+		}
+	}
+
+	/**
+	 * The books changed by a run of commands, handed by the writer to the
+	 * snapshot thread.
+	 */
+	private static final class Change {
+
+		/** The number of commands applied after the last of them. */
+		private final long version;
+
+		/** Whether the commands removed all books before the other changes. */
+		private final boolean cleared;
+
+		/** The latest copy of every changed book, or null if it was removed. */
+		private final Map<Integer, StockBook> books;
+
+		/**
+		 * Instantiates a new {@link Change}.
+		 *
+		 * @param version
+		 *            the number of commands applied after the last of them
+		 * @param cleared
+		 *            whether the commands removed all books first
+		 * @param books
+		 *            the latest copy of every changed book, or null if it was
+		 *            removed
+		 */
+		private Change(long version, boolean cleared, Map<Integer, StockBook> books) {
+			this.version = version;
+			this.cleared = cleared;
+			this.books = books;
+		}
+	}
+
+	/**
+	 * A copy of the catalog and its indexes that only the snapshot thread
+	 * touches, kept up to date from the changes of the writer.
+	 */
+	private static final class Replica {
+
+		/** The books by ISBN. */
+		private final NavigableMap<Integer, StockBook> books = new TreeMap<>();
+
+		/** The books ordered by average rating. */
+		private final TopRatedIndex topRatedIndex = new TopRatedIndex();
+
+		/** The books that are editor picks. */
+		private final EditorPickIndex editorPickIndex = new EditorPickIndex();
+
+		/** The books that had sale misses since they were last restocked. */
+		private final InDemandIndex inDemandIndex = new InDemandIndex();
+
+		/** The number of commands applied to the replica. */
+		private long version = 0;
+
+		/**
+		 * Applies the changes of a run of commands.
+		 *
+		 * @param change
+		 *            the change
+		 */
+		private void apply(Change change) {
+			if (change.cleared) {
+				books.clear();
+				topRatedIndex.clear();
+				editorPickIndex.clear();
+				inDemandIndex.clear();
+			}
+
+			List<BookStoreBook> changedBooks = new ArrayList<>(change.books.size());
+			List<Integer> removedIsbns = new ArrayList<>();
+
+			for (Map.Entry<Integer, StockBook> entry : change.books.entrySet()) {
+				int isbn = entry.getKey();
+				StockBook book = entry.getValue();
+
+				if (book == null) {
+					books.remove(isbn);
+					topRatedIndex.remove(isbn);
+					inDemandIndex.remove(isbn);
+					removedIsbns.add(isbn);
+				} else {
+					BookStoreBook bookStoreBook = new BookStoreBook(book);
+					books.put(isbn, book);
+					topRatedIndex.update(bookStoreBook);
+					inDemandIndex.update(bookStoreBook);
+					changedBooks.add(bookStoreBook);
+				}
+			}
+
+			editorPickIndex.update(changedBooks);
+			editorPickIndex.remove(removedIsbns);
+			version = change.version;
+		}
+
+		/**
+		 * Copies the replica into a new snapshot.
+		 *
+		 * @return the snapshot
+		 */
+		private Snapshot snapshot() {
+			List<Book> editorPicks = editorPickIndex.getEditorPicks(Integer.MAX_VALUE);
+
+			return new Snapshot(version, Collections.unmodifiableNavigableMap(new TreeMap<>(books)),
+					topRatedIndex.getTopRatedBooks(Integer.MAX_VALUE), editorPicks.toArray(new Book[editorPicks.size()]),
+					inDemandIndex.getBooksInDemand());
+		}
+	}
+
+	/**
+	 * The published books and the indexes of the writer, which are consistent
+	 * only while the writer is between commands.
+	 */
+	private final class LiveView implements View {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * com.acertainbookstore.business.SequencedCertainBookStore.View#books()
+		 */
+		@Override
+		public NavigableMap<Integer, StockBook> books() {
+			return publishedBooks;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getTopRatedBooks(int)
+		 */
+		@Override
+		public List<Book> getTopRatedBooks(int numBooks) {
+			return topRatedIndex.getTopRatedBooks(numBooks);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getEditorPicks(int)
+		 */
+		@Override
+		public List<Book> getEditorPicks(int numBooks) {
+			return editorPickIndex.getEditorPicks(numBooks);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getNumEditorPicks()
+		 */
+		@Override
+		public int getNumEditorPicks() {
+			return editorPickIndex.size();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see com.acertainbookstore.business.SequencedCertainBookStore.View#
+		 * getBooksInDemand()
+		 */
+		@Override
+		public List<StockBook> getBooksInDemand() {
+			return inDemandIndex.getBooksInDemand();
+		}
+	}
+
+	/** The mapping of books from ISBN to {@link BookStoreBook}. */
+	private final BookCatalog bookMap = new IntHashBookCatalog();
+
+	/** The books ordered by average rating. */
+	private final TopRatedIndex topRatedIndex = new TopRatedIndex();
+
+	/** The books that are editor picks. */
+	private final EditorPickIndex editorPickIndex = new EditorPickIndex();
+
+	/** The books that had sale misses since they were last restocked. */
+	private final InDemandIndex inDemandIndex = new InDemandIndex();
+
+	/** The commands waiting for the writer. */
+	private final CommandRing<Command> ring;
+
+	/** The writer thread. */
+	private final Thread writer;
+
+	/** The thread that keeps the replica and takes the snapshots. */
+	private final Thread snapshotter;
+
+	/** The changes handed over by the writer, or null once taken. */
+	private final AtomicReference<Change> handover = new AtomicReference<>();
+
+	/**
+	 * The latest copy of every book changed since the last handover, or null
+	 * if it was removed. Only the writer touches it.
+	 */
+	private Map<Integer, StockBook> pendingBooks = new HashMap<>();
+
+	/** Whether all books were removed since the last handover. */
+	private boolean pendingCleared = false;
+
+	/** Whether a reader fell back to a snapshot older than the replica. */
+	private volatile boolean snapshotWanted = false;
+
+	/** The immutable copies of the books, written by the writer. */
+	private final ConcurrentSkipListMap<Integer, StockBook> publishedBooks = new ConcurrentSkipListMap<>();
+
+	/** The view of the published books and the indexes. */
+	private final View live = new LiveView();
+
+	/** Held for writing while the writer applies a command. */
+	private final StampedLock sequenceLock = new StampedLock();
+
+	/** The number of commands that changed the store, written by the writer. */
+	private volatile long applied = 0;
+
+	/** The latest snapshot. */
+	private volatile Snapshot snapshot = new Snapshot(0, Collections.emptyNavigableMap(), Collections.emptyList(),
+			new Book[0], Collections.emptyList());
+
+	/** Whether the store was stopped. */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Instantiates a new {@link SequencedCertainBookStore} with the default
+	 * ring size.
+	 */
+	public SequencedCertainBookStore() {
+		this(BookStoreConstants.DEFAULT_COMMAND_RING_SIZE);
+	}
+
+	/**
+	 * Instantiates a new {@link SequencedCertainBookStore} and starts its
+	 * writer thread.
+	 *
+	 * @param ringSize
+	 *            the number of commands that can wait for the writer, rounded
+	 *            up to a power of two
+	 */
+	public SequencedCertainBookStore(int ringSize) {
+		ring = new CommandRing<>(ringSize);
+		writer = new Thread(this::runWriter, "bookstore-writer");
+		writer.setDaemon(true);
+		snapshotter = new Thread(this::runSnapshotter, "bookstore-snapshotter");
+		snapshotter.setDaemon(true);
+		writer.start();
+		snapshotter.start();
+	}
+
+	/**
+	 * Stops the writer thread once the commands published so far are applied.
+	 * Later requests fail.
+	 *
+	 * @throws BookStoreException
+	 *             if the store was already stopped
+	 */
+	public void stop() throws BookStoreException {
+		execute(CommandType.STOP, null);
+	}
+
+	/**
+	 * Publishes a command and waits until the writer is done with it.
+	 *
+	 * @param type
+	 *            the kind of command
+	 * @param argument
+	 *            the argument of the request
+	 * @return the command
+	 * @throws BookStoreException
+	 *             if the command failed or the store is stopped
+	 */
+	private Command execute(CommandType type, Object argument) throws BookStoreException {
+		if (stopped) {
+			throw new BookStoreException(BookStoreConstants.STORE_STOPPED);
+		}
+
+		Command command = new Command(type, argument, Thread.currentThread());
+		ring.publish(command);
+
+		for (int spins = MAX_SPINS; !command.done && spins > 0; spins--) {
+			// Spin while the writer is likely to finish soon.
+		}
+
+		while (!command.done) {
+			if (!writer.isAlive() && !command.done) {
+				// The command was published after the writer stopped.
+				throw new BookStoreException(BookStoreConstants.STORE_STOPPED);
+			}
+
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+
+		if (command.failure != null) {
+			throw command.failure;
+		}
+
+		return command;
+	}
+
+	/**
+	 * Marks a command as done and wakes up its caller.
+	 *
+	 * @param command
+	 *            the command
+	 */
+	private static void complete(Command command) {
+		command.done = true;
+		LockSupport.unpark(command.caller);
+	}
+
+	/**
+	 * Applies the commands in sequence, in batches of the commands published
+	 * so far, and hands the books changed to the snapshot thread at the end of
+	 * a batch.
+	 */
+	private void runWriter() {
+		int maxBatchSize = BookStoreConstants.DEFAULT_COMMAND_RING_SIZE;
+
+		while (true) {
+			Command command = ring.take();
+			Command stop = null;
+
+			for (int batchSize = 1; command != null; batchSize++) {
+				if (command.type == CommandType.STOP) {
+					stopped = true;
+					stop = command;
+				} else {
+					long stamp = sequenceLock.writeLock();
+
+					try {
+						apply(command);
+					} catch (BookStoreException ex) {
+						command.failure = ex;
+					} catch (RuntimeException ex) {
+						command.failure = new BookStoreException(ex);
+					} finally {
+						republish(command);
+						sequenceLock.unlockWrite(stamp);
+					}
+
+					// Even a failed command may have counted a sale miss.
+					applied = applied + 1;
+					complete(command);
+				}
+
+				command = (stop == null && batchSize < maxBatchSize) ? ring.poll() : null;
+			}
+
+			handOver();
+
+			if (stop != null) {
+				complete(stop);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Applies a command that changes the store.
+	 *
+	 * @param command
+	 *            the command
+	 * @throws BookStoreException
+	 *             if the request is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	private void apply(Command command) throws BookStoreException {
+		switch (command.type) {
+		case ADD_BOOKS:
+			applyAddBooks((Set<StockBook>) command.argument);
+			break;
+		case RESTORE_BOOKS:
+			applyRestoreBooks((Collection<StockBook>) command.argument);
+			break;
+		case ADD_COPIES:
+			applyAddCopies((Set<BookCopy>) command.argument);
+			break;
+		case UPDATE_EDITOR_PICKS:
+			applyUpdateEditorPicks((Set<BookEditorPick>) command.argument);
+			break;
+		case BUY_BOOKS:
+			applyBuyBooks((Set<BookCopy>) command.argument);
+			break;
+		case RATE_BOOKS:
+			applyRateBooks((Set<BookRating>) command.argument);
+			break;
+		case REMOVE_BOOKS:
+			applyRemoveBooks((Set<Integer>) command.argument);
+			break;
+		case REMOVE_ALL_BOOKS:
+			applyRemoveAllBooks();
+			break;
+		default:
+			throw new IllegalArgumentException("Unexpected command " + command.type);
+		}
+	}
+
+	/**
+	 * Publishes immutable copies of the books a command touched, and records
+	 * them for the snapshot thread. Only the writer calls it.
+	 *
+	 * @param command
+	 *            the command
+	 */
+	private void republish(Command command) {
+		if (command.type == CommandType.REMOVE_ALL_BOOKS) {
+			publishedBooks.clear();
+			pendingBooks.clear();
+			pendingCleared = true;
+			return;
+		}
+
+		for (Object element : (Collection<?>) command.argument) {
+			Integer isbn = isbnOf(element);
+
+			if (isbn != null) {
+				BookStoreBook book = bookMap.get(isbn);
+
+				if (book == null) {
+					if (publishedBooks.remove(isbn) != null) {
+						pendingBooks.put(isbn, null);
+					}
+				} else {
+					StockBook copy = book.immutableStockBook();
+					publishedBooks.put(isbn, copy);
+					pendingBooks.put(isbn, copy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands the books changed since the last handover to the snapshot thread,
+	 * unless it did not take the last handover yet. Only the writer calls it.
+	 */
+	private void handOver() {
+		if (pendingBooks.isEmpty() && !pendingCleared) {
+			return;
+		}
+
+		if (handover.compareAndSet(null, new Change(applied, pendingCleared, pendingBooks))) {
+			pendingBooks = new HashMap<>();
+			pendingCleared = false;
+		}
+	}
+
+	/**
+	 * Gets the ISBN an element of the argument of a command refers to.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the ISBN, or null
+	 */
+	private static Integer isbnOf(Object element) {
+		if (element instanceof StockBook) {
+			return ((StockBook) element).getISBN();
+		} else if (element instanceof BookCopy) {
+			return ((BookCopy) element).getISBN();
+		} else if (element instanceof BookRating) {
+			return ((BookRating) element).getISBN();
+		} else if (element instanceof BookEditorPick) {
+			return ((BookEditorPick) element).getISBN();
+		} else if (element instanceof Integer) {
+			return (Integer) element;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Applies the changes of the writer to the replica periodically, and
+	 * copies the replica into a new snapshot if a reader asked for one since
+	 * the last snapshot. Stops with the writer.
+	 */
+	private void runSnapshotter() {
+		Replica replica = new Replica();
+
+		while (!stopped) {
+			LockSupport.parkNanos(this, SNAPSHOT_INTERVAL_NANOS);
+			Change change = handover.getAndSet(null);
+
+			if (change != null) {
+				replica.apply(change);
+			}
+
+			if (snapshotWanted && snapshot.version != replica.version) {
+				snapshotWanted = false;
+				snapshot = replica.snapshot();
+			}
+		}
+	}
+
+	/**
+	 * Reads the published books and the indexes, and repeats the read until
+	 * no command ran in the meantime. If commands keep running, the read is
+	 * served from the first snapshot that holds every change applied before
+	 * the call.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param sequencedRead
+	 *            the read to perform
+	 * @return the result
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private <T> T read(SequencedRead<T> sequencedRead) throws BookStoreException {
+		long needed = applied;
+
+		for (int attempt = 1;; attempt++) {
+			long stamp = sequenceLock.tryOptimisticRead();
+
+			if (stamp != 0L) {
+				try {
+					T result = sequencedRead.read(live);
+
+					if (sequenceLock.validate(stamp)) {
+						return result;
+					}
+				} catch (BookStoreException ex) {
+					if (sequenceLock.validate(stamp)) {
+						throw ex;
+					}
+				} catch (RuntimeException ex) {
+					// The read observed a half-applied command, retry it.
+				}
+			}
+
+			if (attempt >= MAX_READ_ATTEMPTS) {
+				Snapshot current = snapshot;
+
+				if (current.version >= needed) {
+					return sequencedRead.read(current);
+				}
+
+				snapshotWanted = true;
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Reads a few books at once.
+	 *
+	 * @param view
+	 *            the view of the store
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @return the books
+	 * @throws BookStoreException
+	 *             if an ISBN is invalid or not in the store
+	 */
+	private static List<StockBook> readBooks(View view, Set<Integer> isbnSet) throws BookStoreException {
+		List<StockBook> listBooks = new ArrayList<>(isbnSet.size());
+
+		for (Integer isbn : isbnSet) {
+			listBooks.add(lookup(view, isbn));
+		}
+
+		return listBooks;
+	}
+
+	/**
+	 * Checks that the ISBN is valid and in the view.
+	 *
+	 * @param view
+	 *            the view of the store
+	 * @param isbn
+	 *            the ISBN
+	 * @return the book
+	 * @throws BookStoreException
+	 *             if the ISBN is invalid or not in the view
+	 */
+	private static StockBook lookup(View view, Integer isbn) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(isbn)) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		StockBook book = view.books().get(isbn);
+
+		if (book == null) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		return book;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.ADD_BOOKS, bookSet);
+	}
+
+	/**
+	 * Adds the books. Only the writer calls it.
+	 *
+	 * @param bookSet
+	 *            the books
+	 * @throws BookStoreException
+	 *             if a book is invalid or already in the store
+	 */
+	private void applyAddBooks(Set<StockBook> bookSet) throws BookStoreException {
+		// Check if all are there
+		for (StockBook book : bookSet) {
+			int isbn = book.getISBN();
+			String bookTitle = book.getTitle();
+			String bookAuthor = book.getAuthor();
+			int noCopies = book.getNumCopies();
+			float bookPrice = book.getPrice();
+
+			if (BookStoreUtility.isInvalidISBN(isbn) || BookStoreUtility.isEmpty(bookTitle)
+					|| BookStoreUtility.isEmpty(bookAuthor) || BookStoreUtility.isInvalidNoCopies(noCopies)
+					|| bookPrice < 0.0) {
+				throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+			}
+
+			if (bookMap.containsKey(isbn)) {
+				throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+			}
+		}
+
+		applyRestoreBooks(bookSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.RESTORE_BOOKS, books);
+	}
+
+	/**
+	 * Puts the books into the store as they are. Only the writer calls it.
+	 *
+	 * @param books
+	 *            the books
+	 */
+	private void applyRestoreBooks(Collection<StockBook> books) {
+		List<BookStoreBook> addedBooks = new ArrayList<>(books.size());
+
+		for (StockBook book : books) {
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(book.getISBN(), bookStoreBook);
+			topRatedIndex.update(bookStoreBook);
+			addedBooks.add(bookStoreBook);
+			inDemandIndex.update(bookStoreBook);
+		}
+
+		editorPickIndex.update(addedBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.ADD_COPIES, bookCopiesSet);
+	}
+
+	/**
+	 * Adds the copies. Only the writer calls it.
+	 *
+	 * @param bookCopiesSet
+	 *            the copies
+	 * @throws BookStoreException
+	 *             if a book is invalid or not in the store
+	 */
+	private void applyAddCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		for (BookCopy bookCopy : bookCopiesSet) {
+			int isbn = bookCopy.getISBN();
+			int numCopies = bookCopy.getNumCopies();
+			validate(isbn);
+
+			if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
+				throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+			}
+		}
+
+		for (BookCopy bookCopy : bookCopiesSet) {
+			BookStoreBook book = bookMap.get(bookCopy.getISBN());
+			book.addCopies(bookCopy.getNumCopies());
+			inDemandIndex.update(book);
+		}
+	}
+
+	/**
+	 * Checks that the ISBN is valid and in the store. Only the writer calls
+	 * it.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @throws BookStoreException
+	 *             if the ISBN is invalid or not in the store
+	 */
+	private void validate(int isbn) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(isbn)) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		if (!bookMap.containsKey(isbn)) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.UPDATE_EDITOR_PICKS, editorPicks);
+	}
+
+	/**
+	 * Updates the editor picks. Only the writer calls it.
+	 *
+	 * @param editorPicks
+	 *            the editor picks
+	 * @throws BookStoreException
+	 *             if a book is invalid or not in the store
+	 */
+	private void applyUpdateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		for (BookEditorPick editorPickArg : editorPicks) {
+			validate(editorPickArg.getISBN());
+		}
+
+		List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+			book.setEditorPick(editorPickArg.isEditorPick());
+			updatedBooks.add(book);
+		}
+
+		editorPickIndex.update(updatedBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.BUY_BOOKS, bookCopiesToBuy);
+	}
+
+	/**
+	 * Buys the copies if all of them are in store, or else records the sale
+	 * misses. Only the writer calls it.
+	 *
+	 * @param bookCopiesToBuy
+	 *            the copies to buy
+	 * @throws BookStoreException
+	 *             if a book is invalid, not in the store, or some copies are
+	 *             not in store
+	 */
+	private void applyBuyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		BookStoreBook book;
+		boolean saleMiss = false;
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		// Check that all ISBNs that we buy are there first.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			int isbn = bookCopyToBuy.getISBN();
+
+			if (bookCopyToBuy.getNumCopies() < 0) {
+				throw new BookStoreException(
+						BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
+			}
+
+			validate(isbn);
+			book = bookMap.get(isbn);
+
+			if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+				// If we cannot sell the copies of the book, it is a miss.
+				salesMisses.put(isbn, bookCopyToBuy.getNumCopies() - book.getNumCopies());
+				saleMiss = true;
+			}
+		}
+
+		if (saleMiss) {
+			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+				book = bookMap.get(saleMissEntry.getKey());
+				book.addSaleMiss(saleMissEntry.getValue());
+				inDemandIndex.update(book);
+			}
+
+			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		// Then make the purchase.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			bookMap.get(bookCopyToBuy.getISBN()).buyCopies(bookCopyToBuy.getNumCopies());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.RATE_BOOKS, bookRating);
+	}
+
+	/**
+	 * Rates the books. Only the writer calls it.
+	 *
+	 * @param bookRating
+	 *            the ratings
+	 * @throws BookStoreException
+	 *             if a book or rating is invalid, or a book is not in the store
+	 *             or had a sale miss
+	 */
+	private void applyRateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		for (BookRating bookToRate : bookRating) {
+			int isbn = bookToRate.getISBN();
+			int rating = bookToRate.getRating();
+			validate(isbn);
+
+			if (BookStoreUtility.isInvalidRating(rating)) {
+				throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+			}
+
+			if (bookMap.get(isbn).hadSaleMiss()) {
+				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+			}
+		}
+
+		for (BookRating bookToRate : bookRating) {
+			BookStoreBook book = bookMap.get(bookToRate.getISBN());
+			book.addRating(bookToRate.getRating());
+			topRatedIndex.update(book);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		execute(CommandType.REMOVE_BOOKS, isbnSet);
+	}
+
+	/**
+	 * Removes the books. Only the writer calls it.
+	 *
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @throws BookStoreException
+	 *             if a book is invalid or not in the store
+	 */
+	private void applyRemoveBooks(Set<Integer> isbnSet) throws BookStoreException {
+		for (Integer isbn : isbnSet) {
+			validate(isbn);
+		}
+
+		for (int isbn : isbnSet) {
+			bookMap.remove(isbn);
+			topRatedIndex.remove(isbn);
+			inDemandIndex.remove(isbn);
+		}
+
+		editorPickIndex.remove(isbnSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		execute(CommandType.REMOVE_ALL_BOOKS, null);
+	}
+
+	/**
+	 * Removes all books. Only the writer calls it.
+	 */
+	private void applyRemoveAllBooks() {
+		bookMap.clear();
+		topRatedIndex.clear();
+		editorPickIndex.clear();
+		inDemandIndex.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		return read(view -> readBooks(view, isbnSet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() throws BookStoreException {
+		return read(view -> new ArrayList<>(view.books().values()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+
+		return read(view -> {
+			List<StockBook> listBooks = new ArrayList<>();
+
+			for (StockBook book : view.books().tailMap(continuationToken, false).values()) {
+				if (listBooks.size() >= maxBooks) {
+					break;
+				}
+
+				listBooks.add(book);
+			}
+
+			return new StockBookPage(listBooks, maxBooks);
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<Book> listBooks = new ArrayList<>(isbnSet.size());
+
+		for (StockBook book : read(view -> readBooks(view, isbnSet))) {
+			listBooks.add(new ImmutableBook(book.getISBN(), book.getTitle(), book.getAuthor(), book.getPrice()));
+		}
+
+		return listBooks;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		return read(view -> view.getEditorPicks(numBooks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		return read(View::getNumEditorPicks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		return read(view -> view.getTopRatedBooks(numBooks));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return read(View::getBooksInDemand);
+	}
+}
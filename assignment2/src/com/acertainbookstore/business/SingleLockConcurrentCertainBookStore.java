@@ -2,20 +2,16 @@ package com.acertainbookstore.business;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.*;
 
 import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
@@ -27,10 +23,19 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * @see BookStore
  * @see StockManager
  */
-public class SingleLockConcurrentCertainBookStore implements BookStore, StockManager {
+public class SingleLockConcurrentCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
 	/** Global lock for the bookstore state. */
 	private ReadWriteLock readWriteLock = null;
 
@@ -39,7 +44,10 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 	 */
 	public SingleLockConcurrentCertainBookStore() {
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
 		readWriteLock = new ReentrantReadWriteLock();
 	}
 
@@ -94,10 +102,50 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 				}
 			}
 
+			List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
 			for (StockBook book : bookSet) {
 				int isbn = book.getISBN();
-				bookMap.put(isbn, new BookStoreBook(book));
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(isbn, bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
+			}
+
+			editorPickIndex.update(addedBooks);
+		} finally {
+			releaseWriteLock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		takeWriteLock();
+
+		try {
+			List<BookStoreBook> addedBooks = new ArrayList<>(books.size());
+
+			for (StockBook book : books) {
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(book.getISBN(), bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
 			}
+
+			editorPickIndex.update(addedBooks);
 		} finally {
 			releaseWriteLock();
 		}
@@ -143,6 +191,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 				numCopies = bookCopy.getNumCopies();
 				book = bookMap.get(isbn);
 				book.addCopies(numCopies);
+				inDemandIndex.update(book);
 			}
 		} finally {
 			releaseWriteLock();
@@ -179,9 +228,15 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 				}
 			}
 
+			List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
 			for (BookEditorPick editorPickArg : editorPicks) {
-				bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+				BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+				book.setEditorPick(editorPickArg.isEditorPick());
+				updatedBooks.add(book);
 			}
+
+			editorPickIndex.update(updatedBooks);
 		} finally {
 			releaseWriteLock();
 		}
@@ -237,6 +292,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
 					book = bookMap.get(saleMissEntry.getKey());
 					book.addSaleMiss(saleMissEntry.getValue());
+					inDemandIndex.update(book);
 				}
 				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 			}
@@ -296,9 +352,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 
 		try {
 			List<StockBook> listBooks = new ArrayList<>();
-			Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-			for (BookStoreBook book : bookMapValues) {
+			for (BookStoreBook book : bookMap) {
 				listBooks.add(book.immutableStockBook());
 			}
 
@@ -308,6 +362,29 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+		takeReadLock();
+
+		try {
+			int[] isbns = bookMap.keysAfter(continuationToken, maxBooks);
+			List<StockBook> listBooks = new ArrayList<>(isbns.length);
+
+			for (int isbn : isbns) {
+				listBooks.add(bookMap.get(isbn).immutableStockBook());
+			}
+
+			return new StockBookPage(listBooks, maxBooks);
+		} finally {
+			releaseReadLock();
+		}
+	}
+
 
 	/*
 	 * (non-Javadoc)
@@ -352,56 +429,31 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 	 */
 
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
-		takeReadLock();
-		try {
-			if (numBooks < 0) {
-				throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
-			}
-
-			List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
-			List<Book> listEditorPicks = new ArrayList<>();
-			Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-			BookStoreBook book;
-
-			// Get all books that are editor picks.
-			while (it.hasNext()) {
-				Entry<Integer, BookStoreBook> pair = it.next();
-				book = pair.getValue();
-
-				if (book.isEditorPick()) {
-					listAllEditorPicks.add(book);
-				}
-			}
-
-			// Find numBooks random indices of books that will be picked.
-			Random rand = new Random();
-			Set<Integer> tobePicked = new HashSet<>();
-			int rangePicks = listAllEditorPicks.size();
-
-			if (rangePicks <= numBooks) {
-
-				// We need to add all books.
-				for (int i = 0; i < listAllEditorPicks.size(); i++) {
-					tobePicked.add(i);
-				}
-			} else {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
 
-				// We need to pick randomly the books that need to be returned.
-				int randNum;
+		takeReadLock();
 
-				while (tobePicked.size() < numBooks) {
-					randNum = rand.nextInt(rangePicks);
-					tobePicked.add(randNum);
-				}
-			}
+		try {
+			return editorPickIndex.getEditorPicks(numBooks);
+		} finally {
+			releaseReadLock();
+		}
+	}
 
-			// Get the numBooks random books.
-			for (Integer index : tobePicked) {
-				book = listAllEditorPicks.get(index);
-				listEditorPicks.add(book.immutableBook());
-			}
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		takeReadLock();
 
-			return listEditorPicks;
+		try {
+			return editorPickIndex.size();
 		} finally {
 			releaseReadLock();
 		}
@@ -414,79 +466,17 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 	 */
 	@Override
 	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		
 		if (numBooks < 0) {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listSortedRatedBooks = new ArrayList<BookStoreBook>();
-		List<Book> listTopRatedBooks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-
-		BookStoreBook book;
 		takeReadLock();
+
 		try {
-		    //Get all books
-
-		    while (it.hasNext()) {
-				Entry<Integer, BookStoreBook> pair = it.next();
-				book = pair.getValue();
-				listSortedRatedBooks.add(book);
-			}	
-
-	    	// Sort all books that are rated
-
-		    Collections.sort(listSortedRatedBooks,new Comparator <BookStoreBook>(){
-
-		    	public int compare( BookStoreBook b1,BookStoreBook b2){
-
-		    		float averageRate1 = b1.getAverageRating();
-		    		float averageRate2 = b2.getAverageRating();
-		    		if (averageRate1 < averageRate2 )
-		    			return 1;
-		    		else{
-		    			if (averageRate1 == averageRate2 )
-		    				return 0;
-		    			else 
-		    				return -1;
-		    		}  		
-		    	}
-
-		    });
-
-			// Find numBooks descending indices of books that will be picked.
-
-					Set<Integer> tobePicked = new HashSet<>();
-					int rangePicks = listSortedRatedBooks.size();
-					if (rangePicks <= numBooks) {
-						
-						// We need to add all books.
-
-						for (int i = 0; i < rangePicks; i++) {
-							tobePicked.add(i);
-						}
-
-					} else {
-
-						// We need to pick top k rated books that need to be returned.
-						int indexNum = 0;
-						while (tobePicked.size() < numBooks) {
-							tobePicked.add(indexNum);
-							indexNum++;
-						}
-					}
-
-					// Get the numBooks books.
-
-					for (Integer index : tobePicked) {
-						book = listSortedRatedBooks.get(index);
-						listTopRatedBooks.add(book.immutableBook());
-					}
-					return listTopRatedBooks;
-		}finally {
+			return topRatedIndex.getTopRatedBooks(numBooks);
+		} finally {
 			releaseReadLock();
 		}
-	
 	}
 
 	/*
@@ -496,7 +486,13 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 	 */
 	@Override
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException();
+		takeReadLock();
+
+		try {
+			return inDemandIndex.getBooksInDemand();
+		} finally {
+			releaseReadLock();
+		}
 	}
 
 	/*
@@ -551,6 +547,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 				book = bookMap.get(bookToRate.getISBN());
 
 				book.addRating(bookToRate.getRating());
+				topRatedIndex.update(book);
 			}
 		}finally {
 			releaseWriteLock();
@@ -566,6 +563,9 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 		takeWriteLock();
 		try {
 			bookMap.clear();
+			topRatedIndex.clear();
+			editorPickIndex.clear();
+			inDemandIndex.clear();
 		} finally {
 			releaseWriteLock();
 		}
@@ -596,7 +596,11 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 
 			for (int isbn : isbnSet) {
 				bookMap.remove(isbn);
+				topRatedIndex.remove(isbn);
+				inDemandIndex.remove(isbn);
 			}
+
+			editorPickIndex.remove(isbnSet);
 		} finally {
 	    	releaseWriteLock();
 		}
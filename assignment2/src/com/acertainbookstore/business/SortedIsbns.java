@@ -0,0 +1,84 @@
+package com.acertainbookstore.business;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * {@link SortedIsbns} keeps the ISBNs of an unordered table sorted, so that a
+ * page of ISBNs after a given one is found by binary search instead of a sweep
+ * of the whole table. The sorted ISBNs are rebuilt lazily, on the first page
+ * asked for after ISBNs were added or removed; changes to the books themselves
+ * do not invalidate them.
+ *
+ * The owner counts its structural modifications and increments the count
+ * after each one. Pages may be asked for concurrently.
+ */
+final class SortedIsbns {
+
+	/**
+	 * The sorted ISBNs as of a modification count.
+	 */
+	private static final class Snapshot {
+
+		/** The modification count the ISBNs were read at. */
+		private final long modCount;
+
+		/** The ISBNs, in ascending order. */
+		private final int[] isbns;
+
+		/**
+		 * Instantiates a new {@link Snapshot}.
+		 *
+		 * @param modCount
+		 *            the modification count
+		 * @param isbns
+		 *            the ISBNs, in ascending order
+		 */
+		private Snapshot(long modCount, int[] isbns) {
+			this.modCount = modCount;
+			this.isbns = isbns;
+		}
+	}
+
+	/** The latest snapshot, or null. */
+	private volatile Snapshot snapshot = null;
+
+	/**
+	 * Gets the smallest ISBNs greater than the given one.
+	 *
+	 * @param modCount
+	 *            the current modification count of the owner, read before
+	 *            its ISBNs
+	 * @param keys
+	 *            reads the ISBNs of the owner, in any order
+	 * @param isbn
+	 *            the ISBN
+	 * @param maxKeys
+	 *            the maximum number of ISBNs
+	 * @return the ISBNs, in ascending order
+	 */
+	int[] keysAfter(long modCount, Supplier<int[]> keys, int isbn, int maxKeys) {
+		Snapshot s = snapshot;
+
+		if (s == null || s.modCount != modCount) {
+			int[] isbns = keys.get();
+			Arrays.sort(isbns);
+
+			// A snapshot racing a modification is stale as soon as it is
+			// published, since the count it was read at is already old.
+			s = new Snapshot(modCount, isbns);
+			snapshot = s;
+		}
+
+		int from = Arrays.binarySearch(s.isbns, isbn);
+		from = from >= 0 ? from + 1 : -from - 1;
+		return Arrays.copyOfRange(s.isbns, from, from + Math.min(maxKeys, s.isbns.length - from));
+	}
+
+	/**
+	 * Drops the sorted ISBNs, e.g. when the owner is cleared.
+	 */
+	void clear() {
+		snapshot = null;
+	}
+}
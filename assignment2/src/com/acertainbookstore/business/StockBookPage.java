@@ -0,0 +1,103 @@
+package com.acertainbookstore.business;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link StockBookPage} is a page of the books in the bookstore, in ISBN
+ * order, as returned by
+ * {@link com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)}.
+ * The continuation token of a page asks for the page after it, so the whole
+ * store can be listed page by page:
+ *
+ * <pre>
+ * int token = StockBookPage.FIRST_PAGE;
+ *
+ * do {
+ * 	StockBookPage page = stockManager.getBooksPage(token, 1000);
+ * 	process(page.getBooks());
+ * 	token = page.getContinuationToken();
+ * } while (token != StockBookPage.NO_MORE_PAGES);
+ * </pre>
+ *
+ * Every page is consistent on its own, but the pages are not a snapshot:
+ * books added or removed between two pages may or may not be listed. No book
+ * is listed twice.
+ */
+public final class StockBookPage {
+
+	/** The continuation token of the first page. */
+	public static final int FIRST_PAGE = 0;
+
+	/** The continuation token after the last page. */
+	public static final int NO_MORE_PAGES = -1;
+
+	/** The books, in ISBN order. */
+	private final List<StockBook> books;
+
+	/** The continuation token of the next page. */
+	private final int continuationToken;
+
+	/**
+	 * Instantiates a new {@link StockBookPage}. A page with fewer books than
+	 * asked for is the last one.
+	 *
+	 * @param books
+	 *            the books, in ISBN order
+	 * @param maxBooks
+	 *            the number of books asked for
+	 */
+	public StockBookPage(List<StockBook> books, int maxBooks) {
+		this.books = Collections.unmodifiableList(books);
+		this.continuationToken = books.size() < maxBooks ? NO_MORE_PAGES : books.get(books.size() - 1).getISBN();
+	}
+
+	/**
+	 * Validates the arguments of a page request.
+	 *
+	 * @param continuationToken
+	 *            the continuation token
+	 * @param maxBooks
+	 *            the maximum number of books
+	 * @throws BookStoreException
+	 *             if the token or the number of books is invalid
+	 */
+	public static void validate(int continuationToken, int maxBooks) throws BookStoreException {
+		if (continuationToken < FIRST_PAGE) {
+			throw new BookStoreException("continuationToken = " + continuationToken + ", but there is no next page");
+		}
+
+		if (maxBooks <= 0) {
+			throw new BookStoreException("maxBooks = " + maxBooks + ", but it must be positive");
+		}
+	}
+
+	/**
+	 * Gets the books.
+	 *
+	 * @return the books, in ISBN order
+	 */
+	public List<StockBook> getBooks() {
+		return books;
+	}
+
+	/**
+	 * Gets the continuation token of the next page.
+	 *
+	 * @return the token, or {@link #NO_MORE_PAGES}
+	 */
+	public int getContinuationToken() {
+		return continuationToken;
+	}
+
+	/**
+	 * Checks if there may be books after this page.
+	 *
+	 * @return true, if there is a next page
+	 */
+	public boolean hasMore() {
+		return continuationToken != NO_MORE_PAGES;
+	}
+}
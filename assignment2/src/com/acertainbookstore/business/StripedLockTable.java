@@ -0,0 +1,128 @@
+package com.acertainbookstore.business;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link StripedLockTable} maps ISBNs onto a fixed, power-of-two number of
+ * read-write locks. Its size does not grow with the catalog, and finding the
+ * lock of a book is a hash and a mask instead of a map lookup. Books whose
+ * ISBNs share a stripe also share its lock.
+ */
+public class StripedLockTable {
+
+	/** The stripe locks. */
+	private final ReadWriteLock[] stripes;
+
+	/** The mask selecting a stripe from a mixed hash. */
+	private final int mask;
+
+	/**
+	 * Instantiates a new {@link StripedLockTable}.
+	 *
+	 * @param numStripes
+	 *            the minimum number of stripes, rounded up to a power of two
+	 */
+	public StripedLockTable(int numStripes) {
+		if (numStripes < 1 || numStripes > (1 << 30)) {
+			throw new IllegalArgumentException("numStripes = " + numStripes + ", but it must be in [1, 2^30]");
+		}
+
+		int size = Integer.highestOneBit(numStripes);
+		size = (size < numStripes) ? size << 1 : size;
+		stripes = new ReadWriteLock[size];
+		mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	/**
+	 * Mixes the bits of the ISBN (the MurmurHash3 finalizer), so that
+	 * consecutive ISBNs spread over all stripes.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the mixed hash
+	 */
+	private static int mix(int isbn) {
+		int h = isbn;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Gets the number of stripes.
+	 *
+	 * @return the number of stripes
+	 */
+	public int size() {
+		return stripes.length;
+	}
+
+	/**
+	 * Gets the stripe of a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the stripe index
+	 */
+	public int stripeOf(int isbn) {
+		return mix(isbn) & mask;
+	}
+
+	/**
+	 * Gets the lock of a stripe.
+	 *
+	 * @param stripe
+	 *            the stripe index
+	 * @return the lock
+	 */
+	public ReadWriteLock getStripe(int stripe) {
+		return stripes[stripe];
+	}
+
+	/**
+	 * Gets the lock guarding a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the lock
+	 */
+	public ReadWriteLock getLock(int isbn) {
+		return stripes[stripeOf(isbn)];
+	}
+
+	/**
+	 * Gets the distinct stripes of a set of books in ascending order, which is
+	 * the order their locks must be taken in.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the sorted, distinct stripe indices
+	 */
+	public int[] stripesOf(int[] isbns) {
+		int[] lockOrder = new int[isbns.length];
+
+		for (int i = 0; i < isbns.length; i++) {
+			lockOrder[i] = stripeOf(isbns[i]);
+		}
+
+		Arrays.sort(lockOrder);
+		int numDistinct = 0;
+
+		for (int i = 0; i < lockOrder.length; i++) {
+			if (numDistinct == 0 || lockOrder[numDistinct - 1] != lockOrder[i]) {
+				lockOrder[numDistinct++] = lockOrder[i];
+			}
+		}
+
+		return numDistinct == lockOrder.length ? lockOrder : Arrays.copyOf(lockOrder, numDistinct);
+	}
+}
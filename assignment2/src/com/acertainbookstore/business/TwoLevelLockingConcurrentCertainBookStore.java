@@ -1,141 +1,358 @@
 package com.acertainbookstore.business;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreRetryableException;
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /** {@link TwoLevelLockingConcurrentCertainBookStore} implements the {@link BookStore} and
  * {@link StockManager} functionalities.
- * 
+ *
+ * Requests on a set of books first plan their locks: the global intention lock
+ * is taken once and the local locks are then taken in ascending order. The
+ * local locks are the stripes of a {@link StripedLockTable}, so their number
+ * does not grow with the catalog. Since every request locks in the same
+ * canonical order, requests cannot deadlock. Locks that cannot be acquired within the lock
+ * timeout make the request fail with a {@link BookStoreRetryableException}.
+ *
+ * The locks are handed out by a {@link LockManager}, which breaks a deadlock
+ * should a request ever lock out of order, and keeps the wait and hold times
+ * of every lock, see {@link #getLockManager()}.
+ *
+ * In combining mode, purchases whose books share one stripe go through a
+ * {@link FlatCombiner} of that stripe: concurrent purchases of a hot book are
+ * queued and one thread applies them all under a single hold of the stripe
+ * lock, each with its own all-or-nothing check and sale misses.
+ *
+ * In escrow mode, which is off by default, a purchase of a single book first
+ * takes only the read lock of its stripe and buys the copies with a
+ * compare-and-set on their number, so purchases of a hot book do not exclude
+ * each other. Only if too few copies are left does the purchase retry with
+ * the write lock, where its sale miss is recorded exactly. Purchases of
+ * several books always take the write locks, so that no reader sees half of
+ * them. Escrow gives up strict two-phase locking, though: a reader of several
+ * books holds the same read locks, so two such readers may each see one of
+ * two concurrent purchases and not the other, and their reads are then not
+ * serializable.
+ *
  * @see BookStore
  * @see StockManager
  */
-public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, StockManager {
+public class TwoLevelLockingConcurrentCertainBookStore implements SampleableBookStore, CheckpointableStockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
 
 	private ReadWriteLock globalLock = null;
-	private  ConcurrentHashMap<Integer, ReadWriteLock> lockMap = null;
+
+	/** The local locks, striped over the ISBNs. */
+	private final StripedLockTable lockTable;
+
+	/** The manager of the global and local locks. */
+	private final LockManager lockManager;
+
+	/** The combiners of the purchases of every stripe, or null. */
+	private final FlatCombiner<Set<BookCopy>>[] buyCombiners;
+
+	/** Whether purchases of a single book first try under the read lock. */
+	private final boolean escrowBuys;
 
 	/**
 	 * Instantiates a new {@link TwoLevelLockingConcurrentCertainBookStore}.
 	 */
 	public TwoLevelLockingConcurrentCertainBookStore() {
-		// Constructors are not synchronized
-		bookMap = new HashMap<>();
-		globalLock = new ReentrantReadWriteLock();
-		lockMap = new ConcurrentHashMap<Integer, ReadWriteLock>();
+		this(BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS);
 	}
 
-	private void takeLocalReadLock(int isbn) throws BookStoreException {
-		if (!lockMap.containsKey(isbn)) {
-			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
-		}
+	/**
+	 * Instantiates a new {@link TwoLevelLockingConcurrentCertainBookStore}.
+	 *
+	 * @param lockTimeoutMillis
+	 *            the time to wait for a single lock, in milliseconds
+	 */
+	public TwoLevelLockingConcurrentCertainBookStore(long lockTimeoutMillis) {
+		this(lockTimeoutMillis, BookStoreConstants.DEFAULT_LOCK_STRIPES);
+	}
+
+	/**
+	 * Instantiates a new {@link TwoLevelLockingConcurrentCertainBookStore}.
+	 *
+	 * @param lockTimeoutMillis
+	 *            the time to wait for a single lock, in milliseconds
+	 * @param numStripes
+	 *            the number of local lock stripes, rounded up to a power of two
+	 */
+	public TwoLevelLockingConcurrentCertainBookStore(long lockTimeoutMillis, int numStripes) {
+		this(lockTimeoutMillis, numStripes, false);
+	}
+
+	/**
+	 * Instantiates a new {@link TwoLevelLockingConcurrentCertainBookStore}.
+	 *
+	 * @param lockTimeoutMillis
+	 *            the time to wait for a single lock, in milliseconds
+	 * @param numStripes
+	 *            the number of local lock stripes, rounded up to a power of two
+	 * @param combiningBuys
+	 *            whether to combine the purchases of books of the same stripe
+	 */
+	public TwoLevelLockingConcurrentCertainBookStore(long lockTimeoutMillis, int numStripes, boolean combiningBuys) {
+		this(lockTimeoutMillis, numStripes, combiningBuys, false);
+	}
 
-		ReadWriteLock localLock = lockMap.get(isbn);
+	/**
+	 * Instantiates a new {@link TwoLevelLockingConcurrentCertainBookStore}.
+	 *
+	 * @param lockTimeoutMillis
+	 *            the time to wait for a single lock, in milliseconds
+	 * @param numStripes
+	 *            the number of local lock stripes, rounded up to a power of two
+	 * @param combiningBuys
+	 *            whether to combine the purchases of books of the same stripe
+	 * @param escrowBuys
+	 *            whether purchases of a single book first try under the read
+	 *            lock of the book, at the cost of the serializability of reads
+	 *            of several books
+	 */
+	public TwoLevelLockingConcurrentCertainBookStore(long lockTimeoutMillis, int numStripes, boolean combiningBuys,
+			boolean escrowBuys) {
+		// Constructors are not synchronized
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
+		lockManager = new LockManager(numStripes, lockTimeoutMillis, BookStoreConstants.DEFAULT_DEADLOCK_CHECK_MILLIS);
+		globalLock = lockManager.getGlobalLock();
+		lockTable = lockManager.getLockTable();
+
+		if (combiningBuys) {
+			@SuppressWarnings("unchecked")
+			FlatCombiner<Set<BookCopy>>[] combiners = (FlatCombiner<Set<BookCopy>>[]) new FlatCombiner<?>[lockTable
+					.size()];
+
+			for (int stripe = 0; stripe < combiners.length; stripe++) {
+				combiners[stripe] = new FlatCombiner<>(BookStoreConstants.DEFAULT_COMBINING_BATCH_SIZE);
+			}
 
-		if (localLock == null) {
-			throw new BookStoreException("Lock " + isbn + " does not exist");
+			buyCombiners = combiners;
+		} else {
+			buyCombiners = null;
 		}
 
-		globalLock.readLock().lock();
-		localLock.readLock().lock();
+		this.escrowBuys = escrowBuys;
 	}
 
-	private void releaseLocalReadLock(int isbn) {
-		if (!bookMap.containsKey(isbn)) {
-      /* In case of locking errors we should always try to release any
-       * potential lock.  So, if we try to release a nonexistent lock, we just
-       * return instead of throwing an error */
-			return;
-		}
-		
-		ReadWriteLock localLock = lockMap.get(isbn);
-		if (localLock == null) {
-			return;
-		}
-		try{
-			localLock.readLock().unlock();
-			globalLock.readLock().unlock();
-		}catch(IllegalMonitorStateException ex){
-			;
-		}		
+	/**
+	 * Gets the manager of the locks, with the statistics of the locks.
+	 *
+	 * @return the lock manager
+	 */
+	public LockManager getLockManager() {
+		return lockManager;
 	}
 
-	private void takeLocalWriteLock(int isbn) throws BookStoreException {
-		if (!lockMap.containsKey(isbn)) {
-			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
-		}
+	/**
+	 * Copies the ISBNs into an array.
+	 *
+	 * @param isbns
+	 *            the ISBNs of the books to lock
+	 * @return the ISBNs
+	 */
+	private static int[] toArray(Collection<Integer> isbns) {
+		int[] isbnArray = new int[isbns.size()];
+		int numIsbns = 0;
 
-		ReadWriteLock localLock = lockMap.get(isbn);
-		if (localLock == null) {
-			throw new BookStoreException("Lock " + isbn + " does not exist");
+		for (int isbn : isbns) {
+			isbnArray[numIsbns++] = isbn;
 		}
 
-		globalLock.readLock().lock();
-		localLock.writeLock().lock();
+		return isbnArray;
 	}
 
-	private void releaseLocalWriteLock(int isbn) {
-		if (BookStoreUtility.isInvalidISBN(isbn)) {
-			return;
-		}
-		
-		ReadWriteLock localLock = lockMap.get(isbn);
-		if (localLock == null) {
-			return;
+	/**
+	 * Acquires the lock within the lock timeout and records it as held.
+	 *
+	 * @param lock
+	 *            the lock
+	 * @param heldLocks
+	 *            the locks held by the request
+	 * @throws BookStoreException
+	 *             if the lock could not be acquired in time, or the request
+	 *             was aborted to break a deadlock
+	 */
+	private void acquire(Lock lock, Deque<Lock> heldLocks) throws BookStoreException {
+		lockManager.acquire(lock);
+		heldLocks.push(lock);
+	}
+
+	/**
+	 * Releases the held locks in the reverse order of acquisition.
+	 *
+	 * @param heldLocks
+	 *            the locks held by the request
+	 */
+	private void releaseLocks(Deque<Lock> heldLocks) {
+		lockManager.releaseAll(heldLocks);
+	}
+
+	/**
+	 * Takes the stripe locks in ascending stripe order. The global intention
+	 * lock must already be held, so that no book can be added or removed in the
+	 * meantime.
+	 *
+	 * @param stripes
+	 *            the sorted, distinct stripe indices
+	 * @param write
+	 *            whether to take the write locks
+	 * @param heldLocks
+	 *            the locks held by the request
+	 * @throws BookStoreException
+	 *             if a lock could not be acquired
+	 */
+	private void takeStripeLocks(int[] stripes, boolean write, Deque<Lock> heldLocks) throws BookStoreException {
+		for (int stripe : stripes) {
+			ReadWriteLock stripeLock = lockManager.getStripe(stripe);
+			acquire(write ? stripeLock.writeLock() : stripeLock.readLock(), heldLocks);
 		}
+	}
+
+	/**
+	 * Takes the global intention lock and then the stripe locks of the books.
+	 * If any book does not exist or any lock cannot be taken, the locks taken
+	 * so far are released again.
+	 *
+	 * @param isbns
+	 *            the ISBNs of the books to lock
+	 * @param write
+	 *            whether to take the write locks of the books
+	 * @return the held locks
+	 * @throws BookStoreException
+	 *             if a book does not exist or a lock could not be acquired
+	 */
+	private Deque<Lock> takeLocks(Collection<Integer> isbns, boolean write) throws BookStoreException {
+		int[] isbnArray = toArray(isbns);
+		int[] stripes = lockTable.stripesOf(isbnArray);
+		Deque<Lock> heldLocks = new ArrayDeque<>(stripes.length + 1);
 
 		try {
-			localLock.writeLock().unlock();	
-			globalLock.readLock().unlock();
-		} catch (IllegalMonitorStateException ex) {
-			;
+			acquire(globalLock.readLock(), heldLocks);
+
+			for (int isbn : isbnArray) {
+				if (!bookMap.containsKey(isbn)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			takeStripeLocks(stripes, write, heldLocks);
+		} catch (BookStoreException ex) {
+			releaseLocks(heldLocks);
+			throw ex;
 		}
+
+		return heldLocks;
 	}
 
-	private void takeGlobalLock() {
-		globalLock.writeLock().lock();
+	/**
+	 * Takes the global intention lock and then the stripe read locks of all
+	 * books in the bookstore.
+	 *
+	 * @return the held locks
+	 * @throws BookStoreException
+	 *             if a lock could not be acquired
+	 */
+	private Deque<Lock> takeAllReadLocks() throws BookStoreException {
+		Deque<Lock> heldLocks = new ArrayDeque<>();
+
+		try {
+			acquire(globalLock.readLock(), heldLocks);
+			int[] stripes;
+
+			if (bookMap.size() >= lockTable.size()) {
+				// The books most likely cover every stripe anyway.
+				stripes = new int[lockTable.size()];
+
+				for (int i = 0; i < stripes.length; i++) {
+					stripes[i] = i;
+				}
+			} else {
+				stripes = lockTable.stripesOf(bookMap.keys());
+			}
+
+			takeStripeLocks(stripes, false, heldLocks);
+		} catch (BookStoreException ex) {
+			releaseLocks(heldLocks);
+			throw ex;
+		}
+
+		return heldLocks;
 	}
 
-	private void releaseGlobalLock() {
-		globalLock.writeLock().unlock();
+	/**
+	 * Takes the global lock in exclusive mode.
+	 *
+	 * @return the held locks
+	 * @throws BookStoreException
+	 *             if the lock could not be acquired
+	 */
+	private Deque<Lock> takeGlobalLock() throws BookStoreException {
+		Deque<Lock> heldLocks = new ArrayDeque<>(1);
+		acquire(globalLock.writeLock(), heldLocks);
+		return heldLocks;
 	}
 
+	/**
+	 * Checks that the ISBN is valid before any lock is taken.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @throws BookStoreException
+	 *             if the ISBN is invalid
+	 */
+	private static void validateISBN(int isbn) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(isbn)) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
 	 */
 	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
-		takeGlobalLock();
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
 
-		try {
-			if (bookSet == null) {
-				throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-			}
+		Deque<Lock> heldLocks = takeGlobalLock();
 
+		try {
 			// Check if all are there
 			for (StockBook book : bookSet) {
 				int isbn = book.getISBN();
@@ -169,20 +386,58 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 				}
 			}
 
+			List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
 			for (StockBook book : bookSet) {
 				int isbn = book.getISBN();
-				bookMap.put(isbn, new BookStoreBook(book));
-				lockMap.put(isbn, new ReentrantReadWriteLock());
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(isbn, bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
 			}
+
+			editorPickIndex.update(addedBooks);
 		} finally {
-			releaseGlobalLock();
+			releaseLocks(heldLocks);
 		}
+	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		Deque<Lock> heldLocks = takeGlobalLock();
+
+		try {
+			List<BookStoreBook> addedBooks = new ArrayList<>(books.size());
+
+			for (StockBook book : books) {
+				BookStoreBook bookStoreBook = new BookStoreBook(book);
+				bookMap.put(book.getISBN(), bookStoreBook);
+				topRatedIndex.update(bookStoreBook);
+				addedBooks.add(bookStoreBook);
+				inDemandIndex.update(bookStoreBook);
+			}
+
+			editorPickIndex.update(addedBooks);
+		} finally {
+			releaseLocks(heldLocks);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
 	 */
@@ -193,30 +448,25 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 		if (bookCopiesSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
-		
-		try{
-			
-			
-			for (BookCopy bookCopy : bookCopiesSet) {
-				isbn = bookCopy.getISBN();
-				numCopies = bookCopy.getNumCopies();
-				
-				/* take locks */
-				takeLocalWriteLock(isbn);
-				
-				if (BookStoreUtility.isInvalidISBN(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
-				}
 
-				if (!bookMap.containsKey(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
-				}
+		List<Integer> isbns = new ArrayList<>(bookCopiesSet.size());
 
-				if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
-					throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
-				}
+		for (BookCopy bookCopy : bookCopiesSet) {
+			isbn = bookCopy.getISBN();
+			numCopies = bookCopy.getNumCopies();
+			validateISBN(isbn);
+
+			if (BookStoreUtility.isInvalidNoCopies(numCopies)) {
+				throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
 			}
 
+			isbns.add(isbn);
+		}
+
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbns, true);
+
+		try {
 			BookStoreBook book;
 
 			// Update the number of copies
@@ -225,46 +475,62 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 				numCopies = bookCopy.getNumCopies();
 				book = bookMap.get(isbn);
 				book.addCopies(numCopies);
+				inDemandIndex.update(book);
 			}
-
-		}finally{
-			for (BookCopy bc : bookCopiesSet){
-				releaseLocalWriteLock(bc.getISBN());
-			}
+		} finally {
+			releaseLocks(heldLocks);
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
 	 */
 	public List<StockBook> getBooks() throws BookStoreException {
-				
-		List<StockBook> listBooks = new ArrayList<>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-		try{
-            /* take locks */
-			for (BookStoreBook book : bookMapValues) {
-				takeLocalReadLock(book.getISBN());
-			}
+		/* take locks */
+		Deque<Lock> heldLocks = takeAllReadLocks();
 
-			for (BookStoreBook book : bookMapValues) {
+		try {
+			List<StockBook> listBooks = new ArrayList<>();
+			for (BookStoreBook book : bookMap) {
 				listBooks.add(book.immutableStockBook());
 			}
 
 			return listBooks;
 		} finally {
-			for (BookStoreBook book : bookMapValues) {
-                releaseLocalReadLock(book.getISBN());
+			releaseLocks(heldLocks);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+
+		/* take locks */
+		Deque<Lock> heldLocks = takeAllReadLocks();
+
+		try {
+			int[] isbns = bookMap.keysAfter(continuationToken, maxBooks);
+			List<StockBook> listBooks = new ArrayList<>(isbns.length);
+
+			for (int isbn : isbns) {
+				listBooks.add(bookMap.get(isbn).immutableStockBook());
 			}
+
+			return new StockBookPage(listBooks, maxBooks);
+		} finally {
+			releaseLocks(heldLocks);
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
 	 * .Set)
@@ -275,38 +541,34 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		int isbnValue;
-		
-		try{
-			for (BookEditorPick editorPickArg : editorPicks) {
-				isbnValue = editorPickArg.getISBN();
-				
-				/* take locks */
-				takeLocalWriteLock(isbnValue);
+		List<Integer> isbns = new ArrayList<>(editorPicks.size());
 
-				if (BookStoreUtility.isInvalidISBN(isbnValue)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbnValue + BookStoreConstants.INVALID);
-				}
+		for (BookEditorPick editorPickArg : editorPicks) {
+			validateISBN(editorPickArg.getISBN());
+			isbns.add(editorPickArg.getISBN());
+		}
 
-				if (!bookMap.containsKey(isbnValue)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbnValue + BookStoreConstants.NOT_AVAILABLE);
-				}
-			}
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbns, true);
+
+		try {
+			List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
 
 			for (BookEditorPick editorPickArg : editorPicks) {
-				bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
-			}
-		}finally{
-			for (BookEditorPick bp : editorPicks){
-				releaseLocalWriteLock(bp.getISBN());
+				BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+				book.setEditorPick(editorPickArg.isEditorPick());
+				updatedBooks.add(book);
 			}
+
+			editorPickIndex.update(updatedBooks);
+		} finally {
+			releaseLocks(heldLocks);
 		}
-		
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
 	 */
 	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
@@ -314,67 +576,152 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		// Check that all ISBNs that we buy are there first.
+		// Check that all ISBNs that we buy are valid first.
 		int isbn;
-		BookStoreBook book;
-		Boolean saleMiss = false;
+		List<Integer> isbns = new ArrayList<>(bookCopiesToBuy.size());
 
-		Map<Integer, Integer> salesMisses = new HashMap<>();
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			isbn = bookCopyToBuy.getISBN();
 
-		try {
-			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-				isbn = bookCopyToBuy.getISBN();
-				
-				/* take locks */
-				takeLocalWriteLock(isbn);
-				
-				if (bookCopyToBuy.getNumCopies() < 0) {
-					throw new BookStoreException(
-							BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
-				}
+			if (bookCopyToBuy.getNumCopies() < 0) {
+				throw new BookStoreException(
+						BookStoreConstants.NUM_COPIES + bookCopyToBuy.getNumCopies() + BookStoreConstants.INVALID);
+			}
 
-				if (BookStoreUtility.isInvalidISBN(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
-				}
+			validateISBN(isbn);
+			isbns.add(isbn);
+		}
 
-				if (!bookMap.containsKey(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
-				}
+		if (escrowBuys && bookCopiesToBuy.size() == 1 && escrowBuy(bookCopiesToBuy.iterator().next())) {
+			return;
+		}
 
-				book = bookMap.get(isbn);
+		if (buyCombiners != null) {
+			int[] stripes = lockTable.stripesOf(toArray(isbns));
 
-				if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
-					// If we cannot sell the copies of the book, it is a miss.
-					salesMisses.put(isbn, bookCopyToBuy.getNumCopies() - book.getNumCopies());
-					saleMiss = true;
-				}
+			if (stripes.length == 1) {
+				int stripe = stripes[0];
+				buyCombiners[stripe].submit(bookCopiesToBuy, batch -> buyBatch(stripe, batch));
+				return;
 			}
+		}
+
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbns, true);
+
+		try {
+			buy(bookCopiesToBuy);
+		} finally {
+			releaseLocks(heldLocks);
+		}
+	}
+
+	/**
+	 * Buys the copies of a book under the read lock of its stripe, if enough
+	 * copies are left. Other purchases may hold the read lock at the same time,
+	 * but the number of copies is changed atomically.
+	 *
+	 * @param bookCopyToBuy
+	 *            the copies to buy
+	 * @return true if the copies were bought, or false if the purchase has to
+	 *         be retried under the write lock
+	 * @throws BookStoreException
+	 *             if the book does not exist or a lock could not be acquired
+	 */
+	private boolean escrowBuy(BookCopy bookCopyToBuy) throws BookStoreException {
+		Deque<Lock> heldLocks = takeLocks(Collections.singleton(bookCopyToBuy.getISBN()), false);
+
+		try {
+			return bookMap.get(bookCopyToBuy.getISBN()).buyCopies(bookCopyToBuy.getNumCopies());
+		} finally {
+			releaseLocks(heldLocks);
+		}
+	}
+
+	/**
+	 * Applies a batch of purchases of books of one stripe under a single hold
+	 * of the stripe lock. Every purchase is checked and applied on its own.
+	 *
+	 * @param stripe
+	 *            the stripe of the books
+	 * @param batch
+	 *            the purchases
+	 * @throws BookStoreException
+	 *             if the locks could not be acquired
+	 */
+	private void buyBatch(int stripe, List<FlatCombiner.Operation<Set<BookCopy>>> batch) throws BookStoreException {
+		Deque<Lock> heldLocks = new ArrayDeque<>(2);
+
+		try {
+			acquire(globalLock.readLock(), heldLocks);
+			takeStripeLocks(new int[] { stripe }, true, heldLocks);
+
+			for (FlatCombiner.Operation<Set<BookCopy>> purchase : batch) {
+				try {
+					for (BookCopy bookCopyToBuy : purchase.getRequest()) {
+						if (!bookMap.containsKey(bookCopyToBuy.getISBN())) {
+							throw new BookStoreException(BookStoreConstants.ISBN + bookCopyToBuy.getISBN()
+									+ BookStoreConstants.NOT_AVAILABLE);
+						}
+					}
 
-			// We throw exception now since we want to see how many books in the
-			// order incurred misses which is used by books in demand
-			if (saleMiss) {
-				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
-					book = bookMap.get(saleMissEntry.getKey());
-					book.addSaleMiss(saleMissEntry.getValue());
+					buy(purchase.getRequest());
+				} catch (BookStoreException ex) {
+					purchase.fail(ex);
 				}
-				throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 			}
+		} finally {
+			releaseLocks(heldLocks);
+		}
+	}
 
-			// Then make the purchase.
-			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-				book = bookMap.get(bookCopyToBuy.getISBN());
-				book.buyCopies(bookCopyToBuy.getNumCopies());
+	/**
+	 * Buys the copies if all of them are in store, or else records the sale
+	 * misses. The write locks of the books must be held.
+	 *
+	 * @param bookCopiesToBuy
+	 *            the copies to buy
+	 * @throws BookStoreException
+	 *             if some copies are not in store
+	 */
+	private void buy(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		int isbn;
+		BookStoreBook book;
+		Boolean saleMiss = false;
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			isbn = bookCopyToBuy.getISBN();
+			book = bookMap.get(isbn);
+
+			if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+				// If we cannot sell the copies of the book, it is a miss.
+				salesMisses.put(isbn, bookCopyToBuy.getNumCopies() - book.getNumCopies());
+				saleMiss = true;
 			}
-		} finally {
-			for (BookCopy bc : bookCopiesToBuy) {
-				releaseLocalWriteLock(bc.getISBN());
+		}
+
+		// We throw exception now since we want to see how many books in the
+		// order incurred misses which is used by books in demand
+		if (saleMiss) {
+			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+				book = bookMap.get(saleMissEntry.getKey());
+				book.addSaleMiss(saleMissEntry.getValue());
+				inDemandIndex.update(book);
 			}
+			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		// Then make the purchase.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			book = bookMap.get(bookCopyToBuy.getISBN());
+			book.buyCopies(bookCopyToBuy.getNumCopies());
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
 	 * Set)
@@ -384,62 +731,44 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		
-		
-		try{
-			for (Integer ISBN : isbnSet) {
-				/* take locks */
-				takeLocalReadLock(ISBN);	
-				if (BookStoreUtility.isInvalidISBN(ISBN)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
-				}
+		for (Integer ISBN : isbnSet) {
+			validateISBN(ISBN);
+		}
 
-				if (!bookMap.containsKey(ISBN)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
-				}
-			}
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbnSet, false);
 
+		try {
 			List<StockBook> listBooks = new ArrayList<>();
 
 			for (Integer isbn : isbnSet) {
 				listBooks.add(bookMap.get(isbn).immutableStockBook());
 			}
+
 			return listBooks;
-		}finally{
-			for(Integer isbn : isbnSet){
-				releaseLocalReadLock(isbn);			
-			}
-		}		
+		} finally {
+			releaseLocks(heldLocks);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
 	 */
 	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
 		if (isbnSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
-		
-		
 
-		
-		try{
-			// Check that all ISBNs that we rate are there to start with.
-			for (Integer ISBN : isbnSet) {
-				
-				/* take locks */
-				takeLocalReadLock(ISBN);
-				if (BookStoreUtility.isInvalidISBN(ISBN)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
-				}
+		for (Integer ISBN : isbnSet) {
+			validateISBN(ISBN);
+		}
 
-				if (!bookMap.containsKey(ISBN)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
-				}
-			}
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbnSet, false);
 
+		try {
 			List<Book> listBooks = new ArrayList<>();
 
 			for (Integer isbn : isbnSet) {
@@ -447,18 +776,14 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			}
 
 			return listBooks;
-
-		}finally{
-			for(Integer isbn : isbnSet){
-				releaseLocalReadLock(isbn);			
-			}
+		} finally {
+			releaseLocks(heldLocks);
 		}
-
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
 	 */
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
@@ -466,65 +791,37 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
-		List<Book> listEditorPicks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-		BookStoreBook book;
+		// The index is thread-safe and only returns immutable book data, so no
+		// local locks are needed; the intention lock keeps out removals.
+		Deque<Lock> heldLocks = takeLocks(Collections.<Integer>emptyList(), false);
 
+		try {
+			return editorPickIndex.getEditorPicks(numBooks);
+		} finally {
+			releaseLocks(heldLocks);
+		}
+	}
 
-        try{
-
-            // Get all books that are editor picks.
-            while (it.hasNext()) {
-                Entry<Integer, BookStoreBook> pair = it.next();
-                book = pair.getValue();
-                /* take locks */
-                takeLocalReadLock(pair.getKey());
-                if (book.isEditorPick()) {
-                    listAllEditorPicks.add(book);
-                }
-            }
-
-            // Find numBooks random indices of books that will be picked.
-            Random rand = new Random();
-            Set<Integer> tobePicked = new HashSet<>();
-            int rangePicks = listAllEditorPicks.size();
-
-            if (rangePicks <= numBooks) {
-
-                // We need to add all books.
-                for (int i = 0; i < listAllEditorPicks.size(); i++) {
-                    tobePicked.add(i);
-                }
-            } else {
-
-                // We need to pick randomly the books that need to be returned.
-                int randNum;
-
-                while (tobePicked.size() < numBooks) {
-                    randNum = rand.nextInt(rangePicks);
-                    tobePicked.add(randNum);
-                }
-            }
-
-            // Get the numBooks random books.
-            for (Integer index : tobePicked) {
-                book = listAllEditorPicks.get(index);
-                listEditorPicks.add(book.immutableBook());
-            }
-
-            return listEditorPicks;
-		}finally{
-			for (BookStoreBook bs : bookMapValues) {
-                releaseLocalReadLock(bs.getISBN());
-			}
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		Deque<Lock> heldLocks = takeLocks(Collections.<Integer>emptyList(), false);
+
+		try {
+			return editorPickIndex.size();
+		} finally {
+			releaseLocks(heldLocks);
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
 	 */
 	@Override
@@ -533,95 +830,55 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listSortedRatedBooks = new ArrayList<BookStoreBook>();
-		List<Book> listTopRatedBooks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-	    BookStoreBook book;
-
-
-		try{
-   
-		    //Get all books
-		    while (it.hasNext()) {
-				Entry<Integer, BookStoreBook> pair = it.next();
-				book = pair.getValue();
-				
-		         /* take locks */
-				takeLocalReadLock(pair.getKey());
-				listSortedRatedBooks.add(book);
-			}	
-	
-	    	// Sort all books that are rated
-	
-		    Collections.sort(listSortedRatedBooks,new Comparator <BookStoreBook>(){
-	
-		    	public int compare( BookStoreBook b1,BookStoreBook b2){
-	
-		    		float averageRate1 = b1.getAverageRating();
-		    		float averageRate2 = b2.getAverageRating();
-		    		if (averageRate1 < averageRate2 )
-		    			return 1;
-		    		else{
-		    			if (averageRate1 == averageRate2 )
-		    				return 0;
-		    			else 
-		    				return -1;
-		    		}  		
-		    	}
-	
-		    });	
-	
-			// Find numBooks descending indices of books that will be picked.
-	
-					Set<Integer> tobePicked = new HashSet<>();
-					int rangePicks = listSortedRatedBooks.size();
-					if (rangePicks <= numBooks) {
-						
-						// We need to add all books.
-	
-						for (int i = 0; i < rangePicks; i++) {
-							tobePicked.add(i);
-						}
-	
-					} else {
-	
-						// We need to pick top k rated books that need to be returned.
-	
-						int indexNum = 0;
-						while (tobePicked.size() < numBooks) {
-							tobePicked.add(indexNum);
-							indexNum++;
-						}
-					}
-	
-					// Get the numBooks books.
-	
-					for (Integer index : tobePicked) {
-						book = listSortedRatedBooks.get(index);
-						listTopRatedBooks.add(book.immutableBook());
-					}
-					return listTopRatedBooks;
-			}finally{
-				for (BookStoreBook bs : bookMapValues) {
-                    releaseLocalReadLock(bs.getISBN());
-				}
-			}
+		// The index is thread-safe and only returns immutable book data, so no
+		// local locks are needed; the intention lock keeps out removals.
+		Deque<Lock> heldLocks = takeLocks(Collections.<Integer>emptyList(), false);
+
+		try {
+			return topRatedIndex.getTopRatedBooks(numBooks);
+		} finally {
+			releaseLocks(heldLocks);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
 	 */
 	@Override
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException();
+		Deque<Lock> heldLocks = new ArrayDeque<>();
+
+		try {
+			/*
+			 * Books cannot be added or removed while the intention lock is
+			 * held, but they may still be restocked or missed before their
+			 * stripes are locked. Only the books whose stripes are locked are
+			 * read, since the others may be written meanwhile.
+			 */
+			acquire(globalLock.readLock(), heldLocks);
+			int[] isbns = toArray(inDemandIndex.getISBNs());
+			takeStripeLocks(lockTable.stripesOf(isbns), false, heldLocks);
+			List<StockBook> listBooks = new ArrayList<>(isbns.length);
+
+			for (int isbn : isbns) {
+				BookStoreBook book = bookMap.get(isbn);
+
+				if (book.hadSaleMiss()) {
+					listBooks.add(book.immutableStockBook());
+				}
+			}
+
+			return listBooks;
+		} finally {
+			releaseLocks(heldLocks);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
 	 */
 	@Override
@@ -630,71 +887,69 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		// Check that all ISBNs that we rate are there first.
-
+		// Check that all ISBNs that we rate are valid first.
 		int isbn;
 		int ratings;
 		BookStoreBook book;
+		List<Integer> isbns = new ArrayList<>(bookRating.size());
 
-		/* take locks */
-		for (BookRating br : bookRating){
-			takeLocalWriteLock(br.getISBN());
-		}
-        
-		try{
-			for (BookRating bookToRate : bookRating) {
+		for (BookRating bookToRate : bookRating) {
+			isbn = bookToRate.getISBN();
+			ratings = bookToRate.getRating();
+			validateISBN(isbn);
 
-				isbn = bookToRate.getISBN();
-
-				ratings = bookToRate.getRating();
-
-				if (BookStoreUtility.isInvalidISBN(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
-				}
+			if (BookStoreUtility.isInvalidRating(ratings)) {
+				throw new BookStoreException(BookStoreConstants.RATING + ratings + BookStoreConstants.INVALID);
+			}
 
-				if (!bookMap.containsKey(isbn)) {
-					throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
-				}
+			isbns.add(isbn);
+		}
 
-				if (BookStoreUtility.isInvalidRating(ratings)) {
-					throw new BookStoreException(BookStoreConstants.RATING + ratings + BookStoreConstants.INVALID);
-				}
+		/* take locks */
+		Deque<Lock> heldLocks = takeLocks(isbns, true);
 
-				book = bookMap.get(isbn);
+		try {
+			for (BookRating bookToRate : bookRating) {
+				book = bookMap.get(bookToRate.getISBN());
 
 				if (book.hadSaleMiss() == true) {
 					// If the book is not in the collection it will throw a exception.
 					throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 				}
 			}
-			//update the sum of ratings and the number of ratings
 
+			//update the sum of ratings and the number of ratings
 			for (BookRating bookToRate : bookRating) {
-
 				book = bookMap.get(bookToRate.getISBN());
-
 				book.addRating(bookToRate.getRating());
+				topRatedIndex.update(book);
 			}
-
-		}finally{
-			for (BookRating br : bookRating){
-				releaseLocalWriteLock(br.getISBN());
-			}
+		} finally {
+			releaseLocks(heldLocks);
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
 	 */
 	public void removeAllBooks() throws BookStoreException {
-		bookMap.clear();
+		Deque<Lock> heldLocks = takeGlobalLock();
+
+		try {
+			bookMap.clear();
+			topRatedIndex.clear();
+			editorPickIndex.clear();
+			inDemandIndex.clear();
+		} finally {
+			releaseLocks(heldLocks);
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
 	 */
@@ -703,7 +958,7 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		takeGlobalLock();
+		Deque<Lock> heldLocks = takeGlobalLock();
 
 		try {
 			for (Integer ISBN : isbnSet) {
@@ -718,10 +973,13 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 
 			for (int isbn : isbnSet) {
 				bookMap.remove(isbn);
-				lockMap.remove(isbn);
+				topRatedIndex.remove(isbn);
+				inDemandIndex.remove(isbn);
 			}
+
+			editorPickIndex.remove(isbnSet);
 		} finally {
-			releaseGlobalLock();
+			releaseLocks(heldLocks);
 		}
 	}
 }
@@ -0,0 +1,362 @@
+package com.acertainbookstore.business;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+
+/**
+ * {@link WriteAheadLog} is an append-only file of the mutating operations of
+ * a bookstore. Every record is framed as its length, the CRC32 of its payload
+ * and the payload, a Kryo serialized operation.
+ *
+ * Appending only buffers the record in memory. A caller that needs the record
+ * on disk calls {@link #awaitDurable(long)}: the first such caller writes all
+ * buffered records with one <code>force</code> while later callers buffer
+ * theirs, so concurrent operations share a sync (group commit).
+ *
+ * After an I/O error the log refuses all further appends, since records may
+ * have been lost.
+ */
+public class WriteAheadLog implements Closeable {
+
+	/**
+	 * Applies a recovered operation.
+	 */
+	public interface RecordHandler {
+
+		/**
+		 * Applies the operation.
+		 *
+		 * @param tag
+		 *            the operation
+		 * @param inputValue
+		 *            the argument of the operation
+		 */
+		void apply(BookStoreMessageTag tag, Object inputValue);
+	}
+
+	/**
+	 * A logged operation.
+	 */
+	private static final class Record {
+
+		/** The operation. */
+		private final BookStoreMessageTag tag;
+
+		/** The argument of the operation. */
+		private final Object inputValue;
+
+		/**
+		 * Instantiates a new {@link Record}.
+		 *
+		 * @param tag
+		 *            the operation
+		 * @param inputValue
+		 *            the argument of the operation
+		 */
+		Record(BookStoreMessageTag tag, Object inputValue) {
+			this.tag = tag;
+			this.inputValue = inputValue;
+		}
+	}
+
+	/** The size of the length and checksum that precede every payload. */
+	private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+	/** The serializer. Kryo instances are not thread-safe. */
+	private static final ThreadLocal<BookStoreSerializer> serializer = ThreadLocal
+			.withInitial(BookStoreKryoSerializer::new);
+
+	/** The log file. */
+	private final FileChannel channel;
+
+	/** Whether {@link #awaitDurable(long)} forces the records to disk. */
+	private final boolean sync;
+
+	/** The records appended but not written yet. */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	/** The sequence number of the last appended record. */
+	private long appendedLsn = 0;
+
+	/** The file offset just past the last appended record. */
+	private long appendedOffset;
+
+	/** The sequence number of the last record written (and forced). */
+	private long durableLsn = 0;
+
+	/** Whether a caller is writing the pending records. */
+	private boolean flushing = false;
+
+	/** The number of writes, i.e. of syncs if {@link #sync} is set. */
+	private long numFlushes = 0;
+
+	/** The error that broke the log, or null. */
+	private IOException failure = null;
+
+	/**
+	 * Opens the log, creating the file if it does not exist. Call
+	 * {@link #recover(RecordHandler)} before appending to an existing log.
+	 *
+	 * @param file
+	 *            the log file
+	 * @param sync
+	 *            whether records must be forced to disk to become durable
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public WriteAheadLog(Path file, boolean sync) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.sync = sync;
+		this.appendedOffset = channel.size();
+		channel.position(appendedOffset);
+	}
+
+	/**
+	 * Reads the log from the start and applies every complete record.
+	 *
+	 * @param handler
+	 *            the handler of the records
+	 * @return the number of records applied
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public long recover(RecordHandler handler) throws IOException {
+		return recover(handler, 0);
+	}
+
+	/**
+	 * Reads the log from an offset returned by {@link #getAppendedOffset()},
+	 * e.g. the one saved with a checkpoint, and applies every complete record.
+	 * A torn or corrupt record, as left by a crash during a write, ends the
+	 * log: it and everything after it are truncated.
+	 *
+	 * @param handler
+	 *            the handler of the records
+	 * @param fromOffset
+	 *            the offset of the first record to apply
+	 * @return the number of records applied
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public synchronized long recover(RecordHandler handler, long fromOffset) throws IOException {
+		if (fromOffset > channel.size()) {
+			throw new IOException("The log ends before offset " + fromOffset);
+		}
+
+		long position = fromOffset;
+		long numRecords = 0;
+		CRC32 crc = new CRC32();
+
+		while (true) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+			if (!readFully(header, position)) {
+				break;
+			}
+
+			int length = header.getInt(0);
+			int checksum = header.getInt(Integer.BYTES);
+
+			if (length < 0 || length > channel.size() - position - HEADER_BYTES) {
+				break;
+			}
+
+			ByteBuffer payload = ByteBuffer.allocate(length);
+
+			if (!readFully(payload, position + HEADER_BYTES)) {
+				break;
+			}
+
+			crc.reset();
+			crc.update(payload.array(), 0, length);
+
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			Record record = (Record) serializer.get().deserialize(payload.array());
+			handler.apply(record.tag, record.inputValue);
+			position += HEADER_BYTES + length;
+			numRecords++;
+		}
+
+		channel.truncate(position);
+		channel.position(position);
+		appendedOffset = position;
+		return numRecords;
+	}
+
+	/**
+	 * Reads until the buffer is full or the file ends.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 * @param position
+	 *            the file position
+	 * @return true, if the buffer was filled
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Buffers a record.
+	 *
+	 * @param tag
+	 *            the operation
+	 * @param inputValue
+	 *            the argument of the operation
+	 * @return the sequence number of the record
+	 * @throws IOException
+	 *             if the log is broken or the record cannot be serialized
+	 */
+	public long append(BookStoreMessageTag tag, Object inputValue) throws IOException {
+		byte[] payload = serializer.get().serialize(new Record(tag, inputValue));
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(payload.length);
+		header.putInt((int) crc.getValue());
+
+		synchronized (this) {
+			if (failure != null) {
+				throw new IOException("The log is broken", failure);
+			}
+
+			pending.write(header.array(), 0, HEADER_BYTES);
+			pending.write(payload, 0, payload.length);
+			appendedOffset += HEADER_BYTES + payload.length;
+			return ++appendedLsn;
+		}
+	}
+
+	/**
+	 * Waits until the record is written, and forced to disk if the log syncs.
+	 * If no other caller is writing, this caller writes all buffered records.
+	 *
+	 * @param lsn
+	 *            the sequence number of the record
+	 * @throws IOException
+	 *             if the records could not be written
+	 */
+	public void awaitDurable(long lsn) throws IOException {
+		ByteBuffer batch;
+		long batchLsn;
+
+		synchronized (this) {
+			while (durableLsn < lsn && flushing && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for the log");
+				}
+			}
+
+			if (failure != null) {
+				throw new IOException("The log is broken", failure);
+			}
+
+			if (durableLsn >= lsn) {
+				return;
+			}
+
+			flushing = true;
+			batch = ByteBuffer.wrap(pending.toByteArray());
+			batchLsn = appendedLsn;
+			pending.reset();
+		}
+
+		IOException error = null;
+
+		try {
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+
+			if (sync) {
+				channel.force(false);
+			}
+		} catch (IOException ex) {
+			error = ex;
+		}
+
+		synchronized (this) {
+			flushing = false;
+			numFlushes++;
+
+			if (error == null) {
+				durableLsn = batchLsn;
+			} else {
+				failure = error;
+			}
+
+			notifyAll();
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Gets the file offset just past the last appended record, i.e. where the
+	 * next record will be written.
+	 *
+	 * @return the offset
+	 */
+	public synchronized long getAppendedOffset() {
+		return appendedOffset;
+	}
+
+	/**
+	 * Gets the number of batches written so far.
+	 *
+	 * @return the number of batches
+	 */
+	public synchronized long getNumFlushes() {
+		return numFlushes;
+	}
+
+	/**
+	 * Writes the buffered records and closes the file.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		long lsn;
+
+		synchronized (this) {
+			lsn = appendedLsn;
+		}
+
+		try {
+			awaitDurable(lsn);
+		} finally {
+			channel.close();
+		}
+	}
+}
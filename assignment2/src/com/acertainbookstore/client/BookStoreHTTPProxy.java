@@ -5,7 +5,6 @@ import java.net.URLEncoder;
 import java.util.List;
 import java.util.Set;
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
@@ -13,6 +12,7 @@ import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.interfaces.SampleableBookStore;
 import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
@@ -28,7 +28,7 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * @see BookStore
  * @see CertainBookStore
  */
-public class BookStoreHTTPProxy implements BookStore {
+public class BookStoreHTTPProxy implements SampleableBookStore {
 
 	/** The client. */
 	protected HttpClient client;
@@ -62,8 +62,8 @@ public class BookStoreHTTPProxy implements BookStore {
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
-		// Max number of threads.
-		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		// Max number of threads, unless the requests run on virtual threads.
+		client.setExecutor(BookStoreUtility.createClientExecutor());
 
 		// Seconds timeout; if no server reply, the request expires.
 		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
@@ -139,6 +139,21 @@ public class BookStoreHTTPProxy implements BookStore {
 		return (List<Book>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.COUNTEDITORPICKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (Integer) bookStoreResponse.getList().get(0);
+	}
+
 	/**
 	 * Stops the proxy.
 	 */
@@ -157,7 +172,9 @@ public class BookStoreHTTPProxy implements BookStore {
 	 */
 	@Override
 	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		throw new BookStoreException();
+		String urlString = serverAddress + "/" + BookStoreMessageTag.RATEBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookRating);
+		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
 	}
 
 	/*
@@ -166,7 +183,22 @@ public class BookStoreHTTPProxy implements BookStore {
 	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException();
+		String urlEncodedNumBooks = null;
+
+		try {
+			urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks), "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new BookStoreException("unsupported encoding of numbooks", ex);
+		}
+
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETTOPRATEDBOOKS + "?"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks;
+
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (List<Book>) bookStoreResponse.getList();
 	}
 }
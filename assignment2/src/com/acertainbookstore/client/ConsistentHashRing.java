@@ -0,0 +1,256 @@
+package com.acertainbookstore.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link ConsistentHashRing} maps ISBNs onto named nodes. Every node owns
+ * <code>virtualNodes</code> points on a ring of hashes, and a book belongs to
+ * the node owning the first point at or after the hash of its ISBN. Adding or
+ * removing a node only moves the books between that node and its neighbours
+ * on the ring, about 1/N of the books, instead of rehashing all of them.
+ *
+ * The ring is immutable: {@link #withNode(String, Object)} and
+ * {@link #withoutNode(String)} return a new ring, which can be swapped in
+ * atomically. The points only depend on the names of the nodes, so rings
+ * built from the same names agree on every book.
+ *
+ * A node can own fewer points than the others, see
+ * {@link #withVirtualNodes(String, Object, int)}. Giving a node one more
+ * point only moves books to it, and taking one away only moves books from
+ * it, so a node can join or leave the ring a point at a time.
+ *
+ * @param <T>
+ *            the type of the nodes
+ */
+public final class ConsistentHashRing<T> {
+
+	/** The nodes, by name. */
+	private final Map<String, T> nodes;
+
+	/** The number of points of every node. */
+	private final int virtualNodes;
+
+	/** The number of points of the nodes that do not own virtualNodes. */
+	private final Map<String, Integer> nodeVirtualNodes;
+
+	/** The points, in ascending order. */
+	private final int[] points;
+
+	/** The node owning every point. */
+	private final Object[] owners;
+
+	/**
+	 * Instantiates a new {@link ConsistentHashRing}.
+	 *
+	 * @param nodes
+	 *            the nodes, by name
+	 * @param virtualNodes
+	 *            the number of points of every node
+	 */
+	public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+		this(nodes, virtualNodes, Collections.emptyMap());
+	}
+
+	/**
+	 * Instantiates a new {@link ConsistentHashRing} where some nodes own
+	 * another number of points.
+	 *
+	 * @param nodes
+	 *            the nodes, by name
+	 * @param virtualNodes
+	 *            the number of points of every other node
+	 * @param nodeVirtualNodes
+	 *            the number of points of some nodes, by name
+	 */
+	public ConsistentHashRing(Map<String, T> nodes, int virtualNodes, Map<String, Integer> nodeVirtualNodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("The ring needs at least one node");
+		}
+
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes = " + virtualNodes + ", but it must be positive");
+		}
+
+		this.nodes = Collections.unmodifiableMap(new TreeMap<>(nodes));
+		this.virtualNodes = virtualNodes;
+		Map<String, Integer> overrides = new TreeMap<>();
+
+		for (Map.Entry<String, Integer> node : nodeVirtualNodes.entrySet()) {
+			if (node.getValue() < 0) {
+				throw new IllegalArgumentException(
+						"virtualNodes of " + node.getKey() + " = " + node.getValue() + ", but it must not be negative");
+			}
+
+			if (this.nodes.containsKey(node.getKey()) && node.getValue() != virtualNodes) {
+				overrides.put(node.getKey(), node.getValue());
+			}
+		}
+
+		this.nodeVirtualNodes = Collections.unmodifiableMap(overrides);
+
+		// The names are visited in order, so a point two names hash to goes
+		// to the same node on every ring.
+		TreeMap<Integer, T> ring = new TreeMap<>();
+
+		for (Map.Entry<String, T> node : this.nodes.entrySet()) {
+			for (int i = 0; i < getVirtualNodes(node.getKey()); i++) {
+				ring.putIfAbsent(pointOf(node.getKey(), i), node.getValue());
+			}
+		}
+
+		if (ring.isEmpty()) {
+			throw new IllegalArgumentException("The ring needs at least one point");
+		}
+
+		points = new int[ring.size()];
+		owners = new Object[ring.size()];
+		int slot = 0;
+
+		for (Map.Entry<Integer, T> point : ring.entrySet()) {
+			points[slot] = point.getKey();
+			owners[slot++] = point.getValue();
+		}
+	}
+
+	/**
+	 * Mixes the bits of a key (the MurmurHash3 finalizer), so that
+	 * consecutive keys spread over the whole ring.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the mixed hash
+	 */
+	private static int mix(int key) {
+		int h = key;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Gets a point of a node.
+	 *
+	 * @param name
+	 *            the name of the node
+	 * @param virtualNode
+	 *            the index of the point
+	 * @return the point
+	 */
+	private static int pointOf(String name, int virtualNode) {
+		return mix(mix(name.hashCode()) + virtualNode);
+	}
+
+	/**
+	 * Gets the node of a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the node
+	 */
+	@SuppressWarnings("unchecked")
+	public T nodeOf(int isbn) {
+		int slot = Arrays.binarySearch(points, mix(isbn));
+
+		if (slot < 0) {
+			slot = -slot - 1;
+		}
+
+		return (T) owners[slot == points.length ? 0 : slot];
+	}
+
+	/**
+	 * Gets the nodes.
+	 *
+	 * @return the nodes, by name
+	 */
+	public Map<String, T> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the number of points of every node.
+	 *
+	 * @return the number of points
+	 */
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * Gets the number of points of a node.
+	 *
+	 * @param name
+	 *            the name of the node
+	 * @return the number of points, or 0 if the node is not on the ring
+	 */
+	public int getVirtualNodes(String name) {
+		if (!nodes.containsKey(name)) {
+			return 0;
+		}
+
+		return nodeVirtualNodes.getOrDefault(name, virtualNodes);
+	}
+
+	/**
+	 * Gets the nodes that own another number of points than
+	 * {@link #getVirtualNodes()}.
+	 *
+	 * @return the number of points of those nodes, by name
+	 */
+	public Map<String, Integer> getNodeVirtualNodes() {
+		return nodeVirtualNodes;
+	}
+
+	/**
+	 * Creates a ring with one more node.
+	 *
+	 * @param name
+	 *            the name of the node
+	 * @param node
+	 *            the node
+	 * @return the new ring
+	 */
+	public ConsistentHashRing<T> withNode(String name, T node) {
+		return withVirtualNodes(name, node, virtualNodes);
+	}
+
+	/**
+	 * Creates a ring where a node, new or not, owns a number of points. The
+	 * points of a node are the first ones of its full set, so a node owning
+	 * fewer points owns a part of what it owns with more.
+	 *
+	 * @param name
+	 *            the name of the node
+	 * @param node
+	 *            the node
+	 * @param nodePoints
+	 *            the number of points of the node, which may be 0
+	 * @return the new ring
+	 */
+	public ConsistentHashRing<T> withVirtualNodes(String name, T node, int nodePoints) {
+		Map<String, T> newNodes = new TreeMap<>(nodes);
+		newNodes.put(name, node);
+		Map<String, Integer> newNodeVirtualNodes = new TreeMap<>(nodeVirtualNodes);
+		newNodeVirtualNodes.put(name, nodePoints);
+		return new ConsistentHashRing<>(newNodes, virtualNodes, newNodeVirtualNodes);
+	}
+
+	/**
+	 * Creates a ring without a node.
+	 *
+	 * @param name
+	 *            the name of the node
+	 * @return the new ring
+	 */
+	public ConsistentHashRing<T> withoutNode(String name) {
+		Map<String, T> newNodes = new TreeMap<>(nodes);
+		newNodes.remove(name);
+		return new ConsistentHashRing<>(newNodes, virtualNodes, nodeVirtualNodes);
+	}
+}
@@ -0,0 +1,508 @@
+package com.acertainbookstore.client;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
+import com.acertainbookstore.utils.BookStoreConstants;
+
+/**
+ * {@link ShardRebalancer} adds servers to the shards file of the sharded
+ * proxies, or removes them, while the servers run. The books that the new
+ * ring maps to another server are streamed there in batches, with all their
+ * counters, and the file is rewritten as they go, so that the proxies follow
+ * without a restart.
+ *
+ * A server joins or leaves a point of the ring at a time, so that only the
+ * books of one arc move at once. For every batch of books, the rebalancer:
+ * <ol>
+ * <li>fences the books on their server, which rejects writes to them from
+ * then on, and reads them;</li>
+ * <li>restores them on their new server;</li>
+ * <li>releases them on their old server, which removes them and answers
+ * requests on them as moved;</li>
+ * </ol>
+ * and, once the batches of a point are done, writes the ring with that point
+ * to the shards file. A proxy sending a request on a fenced or moved book is
+ * told so, reads the file again and resends the request, so writes are only
+ * held up while their books are copied, and are never lost.
+ *
+ * Books added through a proxy that has not read the file yet can still land
+ * on their old server; they are moved by a last sweep over all servers once
+ * the final ring is written. A rebalancing that fails can be run again.
+ *
+ * The servers must run a store that can restore books, so not a durable one.
+ *
+ * @see ShardedStockManagerProxy
+ * @see ShardedBookStoreProxy
+ */
+public class ShardRebalancer {
+
+	/** The number of books moved at once. */
+	private static final int BATCH_SIZE = 500;
+
+	/** The protocol of the addresses. */
+	private static final String HTTP_PROTOCOL = "http://";
+
+	/** The shards file. */
+	private final String filePath;
+
+	/** The stock managers of the servers, by address. */
+	private final Map<String, StockManagerHTTPProxy> servers = new HashMap<>();
+
+	/** The books moved from every server, by address. */
+	private final Map<String, Set<Integer>> movedIsbns = new HashMap<>();
+
+	/** The number of books moved. */
+	private int numMoved;
+
+	/**
+	 * Initializes a new {@link ShardRebalancer}.
+	 *
+	 * @param filePath
+	 *            the shards file
+	 */
+	public ShardRebalancer(String filePath) {
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Adds a server to the ring and moves its books to it. The server must
+	 * be running.
+	 *
+	 * @param shardAddress
+	 *            the address of the server, as in the shards file
+	 * @return the number of books moved
+	 * @throws Exception
+	 *             if the shards file cannot be read or written, or a server
+	 *             fails
+	 */
+	public synchronized int addShard(String shardAddress) throws Exception {
+		Properties props = load();
+		ConsistentHashRing<String> ring = ringOf(props);
+		return rebalance(props, ring, shardAddress.trim(), ring.getVirtualNodes());
+	}
+
+	/**
+	 * Moves the books of a server to the others and removes it from the ring.
+	 * The server can be stopped once this returns.
+	 *
+	 * @param shardAddress
+	 *            the address of the server, as in the shards file
+	 * @return the number of books moved
+	 * @throws Exception
+	 *             if the shards file cannot be read or written, or a server
+	 *             fails
+	 */
+	public synchronized int removeShard(String shardAddress) throws Exception {
+		Properties props = load();
+		ConsistentHashRing<String> ring = ringOf(props);
+
+		if (!ring.getNodes().containsKey(addressOf(shardAddress.trim()))) {
+			throw new IllegalArgumentException(shardAddress + " is not in " + filePath);
+		}
+
+		if (ring.getNodes().size() == 1) {
+			throw new IllegalArgumentException("Cannot remove the last server " + shardAddress);
+		}
+
+		return rebalance(props, ring, shardAddress.trim(), 0);
+	}
+
+	/**
+	 * Gives a server a number of points, a point at a time, and moves the
+	 * books accordingly. A server given no points leaves the ring.
+	 *
+	 * @param props
+	 *            the shards file
+	 * @param ring
+	 *            the ring of the shards file
+	 * @param shardAddress
+	 *            the address of the server, as in the shards file
+	 * @param targetPoints
+	 *            the number of points of the server
+	 * @return the number of books moved
+	 * @throws Exception
+	 *             if the shards file cannot be written, or a server fails
+	 */
+	private int rebalance(Properties props, ConsistentHashRing<String> ring, String shardAddress, int targetPoints)
+			throws Exception {
+		String address = addressOf(shardAddress);
+		int fromPoints = ring.getVirtualNodes(address);
+		int direction = (targetPoints > fromPoints) ? 1 : -1;
+		List<ConsistentHashRing<String>> rings = new ArrayList<>();
+		rings.add(ring);
+
+		for (int points = fromPoints; points != targetPoints;) {
+			points += direction;
+			rings.add(ring.withVirtualNodes(address, address, points));
+		}
+
+		movedIsbns.clear();
+		numMoved = 0;
+
+		// The books that move with every point, by server.
+		TreeMap<Integer, Map<String, Set<Integer>>> plan = new TreeMap<>();
+		ConsistentHashRing<String> lastRing = rings.get(rings.size() - 1);
+
+		for (String source : ring.getNodes().keySet()) {
+			for (int isbn : isbnsOf(source)) {
+				if (!lastRing.nodeOf(isbn).equals(source)) {
+					plan.computeIfAbsent(firstRingMoving(rings, source, isbn), step -> new TreeMap<>())
+							.computeIfAbsent(source, server -> new HashSet<>()).add(isbn);
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, Map<String, Set<Integer>>> step : plan.entrySet()) {
+			ConsistentHashRing<String> stepRing = rings.get(step.getKey());
+
+			for (Map.Entry<String, Set<Integer>> source : step.getValue().entrySet()) {
+				move(source.getKey(), source.getValue(), stepRing);
+			}
+
+			publish(props, stepRing);
+		}
+
+		ConsistentHashRing<String> finalRing = (targetPoints == 0) ? lastRing.withoutNode(address) : lastRing;
+		publish(props, finalRing);
+
+		// Books added through proxies with an older ring.
+		for (String source : ring.getNodes().keySet()) {
+			Set<Integer> strayIsbns = new HashSet<>();
+
+			for (int isbn : isbnsOf(source)) {
+				if (!lastRing.nodeOf(isbn).equals(source)) {
+					strayIsbns.add(isbn);
+				}
+			}
+
+			move(source, strayIsbns, lastRing);
+		}
+
+		// Once every proxy has read the final ring, the old servers can forget
+		// the books they gave away, which may come back later.
+		Thread.sleep(2 * BookStoreConstants.SHARDS_REFRESH_MILLIS);
+
+		for (Map.Entry<String, Set<Integer>> source : movedIsbns.entrySet()) {
+			server(source.getKey()).unfenceBooks(source.getValue());
+		}
+
+		return numMoved;
+	}
+
+	/**
+	 * Finds the first ring that maps a book away from its server. Once a book
+	 * moves, it stays on its new server on the later rings.
+	 *
+	 * @param rings
+	 *            the rings, a point apart
+	 * @param source
+	 *            the server of the book
+	 * @param isbn
+	 *            the ISBN, which the last ring maps away
+	 * @return the index of the ring
+	 */
+	private static int firstRingMoving(List<ConsistentHashRing<String>> rings, String source, int isbn) {
+		int low = 1;
+		int high = rings.size() - 1;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (rings.get(middle).nodeOf(isbn).equals(source)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Moves books from their server to the servers a ring maps them to, in
+	 * batches.
+	 *
+	 * @param source
+	 *            the address of the server
+	 * @param isbns
+	 *            the ISBNs
+	 * @param ring
+	 *            the ring
+	 * @throws Exception
+	 *             if a server fails
+	 */
+	private void move(String source, Set<Integer> isbns, ConsistentHashRing<String> ring) throws Exception {
+		List<Integer> pending = new ArrayList<>(isbns);
+
+		for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+			Set<Integer> batch = new HashSet<>(pending.subList(from, Math.min(from + BATCH_SIZE, pending.size())));
+			StockManagerHTTPProxy sourceServer = server(source);
+			List<StockBook> books = sourceServer.fenceBooks(batch);
+			Map<String, List<StockBook>> parts = new LinkedHashMap<>();
+
+			for (StockBook book : books) {
+				parts.computeIfAbsent(ring.nodeOf(book.getISBN()), target -> new ArrayList<>()).add(book);
+			}
+
+			List<Map.Entry<String, List<StockBook>>> restoredParts = new ArrayList<>();
+
+			try {
+				for (Map.Entry<String, List<StockBook>> part : parts.entrySet()) {
+					server(part.getKey()).restoreBooks(part.getValue());
+					restoredParts.add(part);
+				}
+			} catch (Exception ex) {
+				undoRestore(restoredParts, ex);
+				sourceServer.unfenceBooks(batch);
+				throw ex;
+			}
+
+			sourceServer.releaseBooks(batch);
+			movedIsbns.computeIfAbsent(source, server -> new HashSet<>()).addAll(batch);
+			numMoved += books.size();
+		}
+	}
+
+	/**
+	 * Removes the books of a batch from the servers they were restored on,
+	 * before the batch is unfenced on its old server, so that no book is left
+	 * on two servers. If a server fails to remove them, the batch must stay
+	 * fenced until the rebalancing is run again.
+	 *
+	 * @param restoredParts
+	 *            the books restored on every server
+	 * @param failure
+	 *            the failure of the batch, which gets the failures to remove
+	 *            the books
+	 * @throws Exception
+	 *             the failure of the batch, if a server failed to remove the
+	 *             books
+	 */
+	private void undoRestore(List<Map.Entry<String, List<StockBook>>> restoredParts, Exception failure)
+			throws Exception {
+		boolean undone = true;
+
+		for (Map.Entry<String, List<StockBook>> part : restoredParts) {
+			Set<Integer> isbns = new HashSet<>();
+
+			for (StockBook book : part.getValue()) {
+				isbns.add(book.getISBN());
+			}
+
+			try {
+				server(part.getKey()).removeBooks(isbns);
+			} catch (Exception ex) {
+				failure.addSuppressed(ex);
+				undone = false;
+			}
+		}
+
+		if (!undone) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Gets the ISBNs of the books of a server, a page at a time.
+	 *
+	 * @param address
+	 *            the address of the server
+	 * @return the ISBNs
+	 * @throws Exception
+	 *             if the server fails
+	 */
+	private List<Integer> isbnsOf(String address) throws Exception {
+		List<Integer> isbns = new ArrayList<>();
+		StockManagerHTTPProxy server = server(address);
+		int continuationToken = StockBookPage.FIRST_PAGE;
+
+		do {
+			StockBookPage page = server.getBooksPage(continuationToken, BATCH_SIZE);
+
+			for (StockBook book : page.getBooks()) {
+				isbns.add(book.getISBN());
+			}
+
+			continuationToken = page.getContinuationToken();
+		} while (continuationToken != StockBookPage.NO_MORE_PAGES);
+
+		return isbns;
+	}
+
+	/**
+	 * Gets the stock manager of a server.
+	 *
+	 * @param address
+	 *            the address of the server
+	 * @return the stock manager
+	 * @throws Exception
+	 *             if the proxy cannot be created
+	 */
+	private StockManagerHTTPProxy server(String address) throws Exception {
+		StockManagerHTTPProxy server = servers.get(address);
+
+		if (server == null) {
+			server = new StockManagerHTTPProxy(address + "/stock");
+			servers.put(address, server);
+		}
+
+		return server;
+	}
+
+	/**
+	 * Reads the shards file.
+	 *
+	 * @return the properties
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private Properties load() throws IOException {
+		Properties props = new Properties();
+
+		try (InputStream in = new FileInputStream(filePath)) {
+			props.load(in);
+		}
+
+		if (props.getProperty(BookStoreConstants.KEY_SHARDS) == null) {
+			throw new IOException("No " + BookStoreConstants.KEY_SHARDS + " in " + filePath);
+		}
+
+		return props;
+	}
+
+	/**
+	 * Builds the ring of a shards file, with the addresses of the servers as
+	 * nodes.
+	 *
+	 * @param props
+	 *            the shards file
+	 * @return the ring
+	 */
+	private static ConsistentHashRing<String> ringOf(Properties props) {
+		String virtualNodes = props.getProperty(BookStoreConstants.KEY_VIRTUAL_NODES);
+		Map<String, String> shards = new TreeMap<>();
+		Map<String, Integer> shardVirtualNodes = new TreeMap<>();
+
+		for (String shardAddress : props.getProperty(BookStoreConstants.KEY_SHARDS)
+				.split(BookStoreConstants.SPLIT_SHARDS_REGEX)) {
+			shardAddress = shardAddress.trim();
+			String address = addressOf(shardAddress);
+			shards.put(address, address);
+			String shardPoints = props.getProperty(BookStoreConstants.KEY_VIRTUAL_NODES + "." + shardAddress);
+
+			if (shardPoints != null) {
+				shardVirtualNodes.put(address, Integer.parseInt(shardPoints.trim()));
+			}
+		}
+
+		return new ConsistentHashRing<>(shards,
+				(virtualNodes != null) ? Integer.parseInt(virtualNodes.trim()) : BookStoreConstants.DEFAULT_VIRTUAL_NODES,
+				shardVirtualNodes);
+	}
+
+	/**
+	 * Writes a ring to the shards file. The file is replaced at once, so the
+	 * proxies never read it half written.
+	 *
+	 * @param props
+	 *            the shards file, whose other properties are kept
+	 * @param ring
+	 *            the ring
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	private void publish(Properties props, ConsistentHashRing<String> ring) throws IOException {
+		for (String key : props.stringPropertyNames()) {
+			if (key.startsWith(BookStoreConstants.KEY_VIRTUAL_NODES + ".")) {
+				props.remove(key);
+			}
+		}
+
+		StringBuilder shards = new StringBuilder();
+
+		for (String address : ring.getNodes().keySet()) {
+			String shardAddress = address.substring(HTTP_PROTOCOL.length());
+			shards.append(shards.length() > 0 ? BookStoreConstants.SPLIT_SHARDS_REGEX : "").append(shardAddress);
+			int points = ring.getVirtualNodes(address);
+
+			if (points != ring.getVirtualNodes()) {
+				props.setProperty(BookStoreConstants.KEY_VIRTUAL_NODES + "." + shardAddress, Integer.toString(points));
+			}
+		}
+
+		props.setProperty(BookStoreConstants.KEY_SHARDS, shards.toString());
+		Path file = Paths.get(filePath).toAbsolutePath();
+		Path newFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+		try (OutputStream out = Files.newOutputStream(newFile)) {
+			props.store(out, null);
+		}
+
+		Files.move(newFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Gets the address of a server from its entry in the shards file.
+	 *
+	 * @param shardAddress
+	 *            the entry
+	 * @return the address, with the protocol
+	 */
+	private static String addressOf(String shardAddress) {
+		return shardAddress.toLowerCase().startsWith(HTTP_PROTOCOL) ? shardAddress : HTTP_PROTOCOL + shardAddress;
+	}
+
+	/**
+	 * Stops the rebalancer.
+	 */
+	public void stop() {
+		for (StockManagerHTTPProxy server : servers.values()) {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Adds a server to, or removes it from, the shards file, e.g.
+	 * <code>add localhost:8084 ./shards.properties</code>.
+	 *
+	 * @param args
+	 *            <code>add</code> or <code>remove</code>, the address of the
+	 *            server, and the shards file, if not the default one
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !(args[0].equals("add") || args[0].equals("remove"))) {
+			System.err.println("Usage: ShardRebalancer add|remove <server> [<shards file>]");
+			System.exit(1);
+		}
+
+		ShardRebalancer rebalancer = new ShardRebalancer(
+				(args.length > 2) ? args[2] : ShardedStockManagerProxy.DEFAULT_SHARDS_FILE);
+
+		try {
+			int numMoved = args[0].equals("add") ? rebalancer.addShard(args[1]) : rebalancer.removeShard(args[1]);
+			System.out.println("Moved " + numMoved + " books");
+		} finally {
+			rebalancer.stop();
+		}
+	}
+}
@@ -0,0 +1,582 @@
+package com.acertainbookstore.client;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMovedException;
+import com.acertainbookstore.utils.BookStorePartialUpdateException;
+
+/**
+ * {@link ShardRouter} routes the calls of a sharded proxy to the proxies of
+ * the shards over a {@link ConsistentHashRing}. It splits the arguments of a
+ * multi-book call by shard, scatters the parts to the shards in parallel and
+ * gathers the results.
+ *
+ * @param <T>
+ *            the type of the proxies of the shards
+ */
+final class ShardRouter<T> {
+
+	/** The longest wait before a call on books being moved is sent again. */
+	private static final long MAX_BACKOFF_MILLIS = 64;
+
+	/**
+	 * Connects to a shard.
+	 *
+	 * @param <T>
+	 *            the type of the proxy
+	 */
+	interface Connector<T> {
+
+		/**
+		 * Creates the proxy of a shard.
+		 *
+		 * @param address
+		 *            the address of the shard
+		 * @return the proxy
+		 * @throws Exception
+		 *             if the proxy cannot be created
+		 */
+		T connect(String address) throws Exception;
+	}
+
+	/**
+	 * A call to one shard.
+	 *
+	 * @param <T>
+	 *            the type of the proxy
+	 * @param <P>
+	 *            the type of the part of the arguments
+	 * @param <R>
+	 *            the type of the result
+	 */
+	interface ShardCall<T, P, R> {
+
+		/**
+		 * Calls the shard.
+		 *
+		 * @param shard
+		 *            the proxy of the shard
+		 * @param part
+		 *            the part of the arguments for the shard
+		 * @return the result
+		 * @throws BookStoreException
+		 *             if the call fails
+		 */
+		R call(T shard, P part) throws BookStoreException;
+	}
+
+	/** The shards file. */
+	private final String filePath;
+
+	/** Connects to the shards. */
+	private final Connector<T> connector;
+
+	/** The proxies of every shard connected so far, by address. */
+	private final Map<String, T> connections = new ConcurrentHashMap<>();
+
+	/** The ring of the proxies of the shards. */
+	private volatile ConsistentHashRing<T> ring;
+
+	/** The contents of the shards file the ring was built from. */
+	private Properties loadedProperties;
+
+	/** When to check the shards file for changes again. */
+	private volatile long nextRefreshMillis;
+
+	/** The executor of the calls scattered to the shards. */
+	private final ExecutorService scatterExecutor;
+
+	/**
+	 * Instantiates a new {@link ShardRouter}.
+	 *
+	 * @param filePath
+	 *            the shards file
+	 * @param connector
+	 *            creates the proxy of a shard from its address
+	 */
+	private ShardRouter(String filePath, Connector<T> connector) {
+		this.filePath = filePath;
+		this.connector = connector;
+		this.scatterExecutor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "shard-scatter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates a {@link ShardRouter} for the shards listed in a properties
+	 * file, e.g.:
+	 *
+	 * <pre>
+	 * shards=localhost\:8081;localhost\:8082;localhost\:8083
+	 * virtualnodes=128
+	 * virtualnodes.localhost\:8083=32
+	 * </pre>
+	 *
+	 * where the last server only owns 32 of its points, e.g. while it joins.
+	 * The file is read again every
+	 * {@link BookStoreConstants#SHARDS_REFRESH_MILLIS}, and when a shard
+	 * answers that a book has moved, so the router follows a rebalancing
+	 * without a restart.
+	 *
+	 * @param <T>
+	 *            the type of the proxies of the shards
+	 * @param filePath
+	 *            the properties file
+	 * @param connector
+	 *            creates the proxy of a shard from its address
+	 * @return the router
+	 * @throws Exception
+	 *             if the file cannot be read or a proxy cannot be created
+	 */
+	static <T> ShardRouter<T> load(String filePath, Connector<T> connector) throws Exception {
+		ShardRouter<T> router = new ShardRouter<>(filePath, connector);
+		router.refresh();
+		return router;
+	}
+
+	/**
+	 * Reads the shards file and swaps in a new ring if it has changed.
+	 *
+	 * @throws Exception
+	 *             if the file cannot be read or a proxy cannot be created
+	 */
+	synchronized void refresh() throws Exception {
+		final String httpProtocol = "http://";
+		Properties props = new Properties();
+
+		try (InputStream in = new FileInputStream(filePath)) {
+			props.load(in);
+		}
+
+		nextRefreshMillis = System.currentTimeMillis() + BookStoreConstants.SHARDS_REFRESH_MILLIS;
+
+		if (props.equals(loadedProperties)) {
+			return;
+		}
+
+		String shardAddresses = props.getProperty(BookStoreConstants.KEY_SHARDS);
+
+		if (shardAddresses == null) {
+			throw new IOException("No " + BookStoreConstants.KEY_SHARDS + " in " + filePath);
+		}
+
+		String virtualNodes = props.getProperty(BookStoreConstants.KEY_VIRTUAL_NODES);
+		Map<String, T> shards = new TreeMap<>();
+		Map<String, Integer> shardVirtualNodes = new TreeMap<>();
+
+		for (String shardAddress : shardAddresses.split(BookStoreConstants.SPLIT_SHARDS_REGEX)) {
+			shardAddress = shardAddress.trim();
+			String address = shardAddress;
+
+			if (!address.toLowerCase().startsWith(httpProtocol)) {
+				address = httpProtocol + address;
+			}
+
+			T shard = connections.get(address);
+
+			if (shard == null) {
+				shard = connector.connect(address);
+				connections.put(address, shard);
+			}
+
+			shards.put(address, shard);
+			String shardPoints = props.getProperty(BookStoreConstants.KEY_VIRTUAL_NODES + "." + shardAddress);
+
+			if (shardPoints != null) {
+				shardVirtualNodes.put(address, Integer.parseInt(shardPoints.trim()));
+			}
+		}
+
+		ring = new ConsistentHashRing<>(shards,
+				(virtualNodes != null) ? Integer.parseInt(virtualNodes.trim()) : BookStoreConstants.DEFAULT_VIRTUAL_NODES,
+				shardVirtualNodes);
+		loadedProperties = props;
+	}
+
+	/**
+	 * Reads the shards file again if it is time to. The current ring is kept
+	 * if the file cannot be read, e.g. while it is replaced.
+	 *
+	 * @param force
+	 *            whether to read the file now
+	 */
+	private void refreshQuietly(boolean force) {
+		if (force || System.currentTimeMillis() >= nextRefreshMillis) {
+			try {
+				refresh();
+			} catch (Exception ex) {
+				;
+			}
+		}
+	}
+
+	/**
+	 * Gets the ring, reading the shards file again if it is time to.
+	 *
+	 * @return the ring
+	 */
+	ConsistentHashRing<T> getRing() {
+		refreshQuietly(false);
+		return ring;
+	}
+
+	/**
+	 * Gets the proxies of every shard connected so far, including those that
+	 * have left the ring.
+	 *
+	 * @return the proxies
+	 */
+	Collection<T> shards() {
+		return connections.values();
+	}
+
+	/**
+	 * Splits the arguments of a multi-book call by shard.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param items
+	 *            the arguments
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @return the arguments of every shard that has any
+	 */
+	<E> Map<T, Set<E>> split(Collection<E> items, ToIntFunction<E> isbnOf) {
+		ConsistentHashRing<T> ring = this.ring;
+		Map<T, Set<E>> parts = new LinkedHashMap<>();
+
+		for (E item : items) {
+			parts.computeIfAbsent(ring.nodeOf(isbnOf.applyAsInt(item)), shard -> new HashSet<>()).add(item);
+		}
+
+		return parts;
+	}
+
+	/**
+	 * Splits the arguments of a multi-book call by shard and calls the shards
+	 * in parallel, like {@link #scatter(Map, ShardCall)}. The parts of shards
+	 * answering that books are being moved or have moved are split again over
+	 * the ring read from the shards file, and sent again until
+	 * {@link BookStoreConstants#DEFAULT_MIGRATION_RETRY_MILLIS} have passed.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param <R>
+	 *            the type of the results
+	 * @param items
+	 *            the arguments
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @param call
+	 *            the call
+	 * @return the results of the calls
+	 * @throws BookStoreException
+	 *             the exception of the first call that failed for good
+	 */
+	<E, R> List<R> route(Collection<E> items, ToIntFunction<E> isbnOf, ShardCall<T, Set<E>, R> call)
+			throws BookStoreException {
+		return route(items, isbnOf, call, null);
+	}
+
+	/**
+	 * Routes an update of several books like
+	 * {@link #route(Collection, ToIntFunction, ShardCall)}. The shards apply
+	 * their parts independently, so if the call fails on a shard after it
+	 * succeeded on others, the applied parts are reported.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param <R>
+	 *            the type of the results
+	 * @param items
+	 *            the arguments
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @param call
+	 *            the call
+	 * @throws BookStorePartialUpdateException
+	 *             if the call failed for good on a shard after it succeeded on
+	 *             another, with the ISBNs of the applied parts
+	 * @throws BookStoreException
+	 *             the exception of the first call that failed for good, if no
+	 *             call succeeded
+	 */
+	<E, R> void update(Collection<E> items, ToIntFunction<E> isbnOf, ShardCall<T, Set<E>, R> call)
+			throws BookStoreException {
+		Set<Integer> appliedISBNs = new HashSet<>();
+
+		try {
+			route(items, isbnOf, call, appliedISBNs);
+		} catch (BookStoreException ex) {
+			if (appliedISBNs.isEmpty()) {
+				throw ex;
+			}
+
+			throw new BookStorePartialUpdateException(appliedISBNs, ex);
+		}
+	}
+
+	/**
+	 * Routes a call of several books, and collects the ISBNs of the parts
+	 * that succeeded.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param <R>
+	 *            the type of the results
+	 * @param items
+	 *            the arguments
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @param call
+	 *            the call
+	 * @param appliedISBNs
+	 *            gets the ISBNs of the parts that succeeded, or null
+	 * @return the results of the calls
+	 * @throws BookStoreException
+	 *             the exception of the first call that failed for good
+	 */
+	private <E, R> List<R> route(Collection<E> items, ToIntFunction<E> isbnOf, ShardCall<T, Set<E>, R> call,
+			Set<Integer> appliedISBNs) throws BookStoreException {
+		refreshQuietly(false);
+		long deadline = System.currentTimeMillis() + BookStoreConstants.DEFAULT_MIGRATION_RETRY_MILLIS;
+		long backoffMillis = 1;
+		List<R> results = new ArrayList<>();
+		Collection<E> pending = items;
+
+		while (true) {
+			Map<T, Set<E>> movedParts = new LinkedHashMap<>();
+			List<Set<E>> succeededParts = new ArrayList<>();
+			BookStoreException failure = gather(split(pending, isbnOf), call, results, movedParts, succeededParts);
+
+			if (appliedISBNs != null) {
+				for (Set<E> part : succeededParts) {
+					for (E item : part) {
+						appliedISBNs.add(isbnOf.applyAsInt(item));
+					}
+				}
+			}
+
+			if (failure == null) {
+				return results;
+			} else if (!(failure instanceof BookStoreMovedException) || System.currentTimeMillis() > deadline) {
+				throw failure;
+			}
+
+			try {
+				Thread.sleep(backoffMillis);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new BookStoreException(ex);
+			}
+
+			backoffMillis = Math.min(2 * backoffMillis, MAX_BACKOFF_MILLIS);
+			refreshQuietly(true);
+			pending = new ArrayList<>();
+
+			for (Set<E> part : movedParts.values()) {
+				pending.addAll(part);
+			}
+		}
+	}
+
+	/**
+	 * Calls the shards in parallel with their parts of the arguments, the
+	 * first one on the caller, and waits for all of them. The shards apply
+	 * their parts independently: if a call fails, the others may have
+	 * succeeded.
+	 *
+	 * @param <P>
+	 *            the type of the parts
+	 * @param <R>
+	 *            the type of the results
+	 * @param parts
+	 *            the part of every shard to call
+	 * @param call
+	 *            the call
+	 * @return the results, in the order of the parts
+	 * @throws BookStoreException
+	 *             the exception of the first failed call
+	 */
+	<P, R> List<R> scatter(Map<T, P> parts, ShardCall<T, P, R> call) throws BookStoreException {
+		List<R> results = new ArrayList<>(parts.size());
+		BookStoreException failure = gather(parts, call, results, new LinkedHashMap<>(), new ArrayList<>());
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		return results;
+	}
+
+	/**
+	 * Calls the shards in parallel, the first one on the caller, and waits for
+	 * all of them.
+	 *
+	 * @param <P>
+	 *            the type of the parts
+	 * @param <R>
+	 *            the type of the results
+	 * @param parts
+	 *            the part of every shard to call
+	 * @param call
+	 *            the call
+	 * @param results
+	 *            gets the results of the calls that succeeded, in the order of
+	 *            the parts
+	 * @param movedParts
+	 *            gets the parts of the calls that failed because books are
+	 *            being moved or have moved
+	 * @param succeededParts
+	 *            gets the parts of the calls that succeeded
+	 * @return the exception of the first call that failed for another reason,
+	 *         else of the first that failed, or null
+	 */
+	private <P, R> BookStoreException gather(Map<T, P> parts, ShardCall<T, P, R> call, List<R> results,
+			Map<T, P> movedParts, List<P> succeededParts) {
+		List<Map.Entry<T, P>> forked = new ArrayList<>(parts.size());
+		List<Future<R>> futures = new ArrayList<>(parts.size());
+		Map.Entry<T, P> first = null;
+
+		for (Map.Entry<T, P> part : parts.entrySet()) {
+			if (first == null) {
+				first = part;
+			} else {
+				forked.add(part);
+				futures.add(scatterExecutor.submit(() -> call.call(part.getKey(), part.getValue())));
+			}
+		}
+
+		BookStoreException failure = null;
+
+		if (first != null) {
+			try {
+				results.add(call.call(first.getKey(), first.getValue()));
+				succeededParts.add(first.getValue());
+			} catch (BookStoreException ex) {
+				failure = fail(failure, ex, first, movedParts);
+			}
+		}
+
+		// Wait for every call, so that none is still running on return.
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+				succeededParts.add(forked.get(i).getValue());
+			} catch (ExecutionException ex) {
+				failure = fail(failure,
+						(ex.getCause() instanceof BookStoreException) ? (BookStoreException) ex.getCause()
+								: new BookStoreException(ex.getCause()),
+						forked.get(i), movedParts);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				failure = fail(failure, new BookStoreException(ex), forked.get(i), movedParts);
+			}
+		}
+
+		return failure;
+	}
+
+	/**
+	 * Records the failure of a call.
+	 *
+	 * @param <P>
+	 *            the type of the parts
+	 * @param failure
+	 *            the failure so far, or null
+	 * @param ex
+	 *            the exception of the call
+	 * @param part
+	 *            the part of the call
+	 * @param movedParts
+	 *            the parts of the calls that failed because books are being
+	 *            moved or have moved
+	 * @return the failure to report
+	 */
+	private static <T, P> BookStoreException fail(BookStoreException failure, BookStoreException ex,
+			Map.Entry<T, P> part, Map<T, P> movedParts) {
+		if (ex instanceof BookStoreMovedException) {
+			movedParts.put(part.getKey(), part.getValue());
+			return (failure == null) ? ex : failure;
+		}
+
+		return (failure == null || failure instanceof BookStoreMovedException) ? ex : failure;
+	}
+
+	/**
+	 * Calls all shards in parallel and waits for all of them.
+	 *
+	 * @param <R>
+	 *            the type of the results
+	 * @param call
+	 *            the call, which gets no part
+	 * @return the results, in the order of the shards
+	 * @throws BookStoreException
+	 *             the exception of the first failed call
+	 */
+	<R> List<R> scatterAll(ShardCall<T, Void, R> call) throws BookStoreException {
+		refreshQuietly(false);
+		Map<T, Void> parts = new LinkedHashMap<>();
+
+		for (T shard : ring.getNodes().values()) {
+			parts.put(shard, null);
+		}
+
+		return scatter(parts, call);
+	}
+
+	/**
+	 * Merges the books of several shards. While a book is moved, it can be on
+	 * two shards for a moment; it is only kept once.
+	 *
+	 * @param <B>
+	 *            the type of the books
+	 * @param lists
+	 *            the books of every shard
+	 * @param isbnOf
+	 *            gets the ISBN of a book
+	 * @return the books, without repeated ISBNs
+	 */
+	static <B> List<B> merge(List<List<B>> lists, ToIntFunction<B> isbnOf) {
+		List<B> merged = new ArrayList<>();
+		Set<Integer> isbns = new HashSet<>();
+
+		for (List<B> books : lists) {
+			for (B book : books) {
+				if (isbns.add(isbnOf.applyAsInt(book))) {
+					merged.add(book);
+				}
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Stops the scatter threads.
+	 */
+	void stop() {
+		scatterExecutor.shutdown();
+	}
+}
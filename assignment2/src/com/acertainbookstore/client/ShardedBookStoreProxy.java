@@ -0,0 +1,267 @@
+package com.acertainbookstore.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.EditorPickIndex;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.SampleableBookStore;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStorePartialUpdateException;
+
+/**
+ * {@link ShardedBookStoreProxy} implements the {@link BookStore} API over the
+ * servers of a {@link ShardedStockManagerProxy}, from the same shards file.
+ * Calls on several books are split by server and sent in parallel, with the
+ * same guarantees: a purchase or rating that fails on one server after it was
+ * applied on another fails with a {@link BookStorePartialUpdateException}.
+ * Calls over the whole store ask every server and merge the answers.
+ *
+ * @see BookStore
+ * @see ShardedStockManagerProxy
+ */
+public class ShardedBookStoreProxy implements SampleableBookStore {
+
+	/** The router to the bookstores of the servers. */
+	private final ShardRouter<BookStoreHTTPProxy> router;
+
+	/** The stock managers of the servers, which know the ratings. */
+	private final ShardedStockManagerProxy stockManager;
+
+	/**
+	 * Initializes a new {@link ShardedBookStoreProxy} with the servers in
+	 * {@link ShardedStockManagerProxy#DEFAULT_SHARDS_FILE}.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public ShardedBookStoreProxy() throws Exception {
+		this(ShardedStockManagerProxy.DEFAULT_SHARDS_FILE);
+	}
+
+	/**
+	 * Initializes a new {@link ShardedBookStoreProxy}.
+	 *
+	 * @param filePath
+	 *            the shards file
+	 * @throws Exception
+	 *             the exception
+	 */
+	public ShardedBookStoreProxy(String filePath) throws Exception {
+		router = ShardRouter.load(filePath, BookStoreHTTPProxy::new);
+		stockManager = new ShardedStockManagerProxy(filePath);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	@Override
+	public void buyBooks(Set<BookCopy> booksToBuy) throws BookStoreException {
+		if (booksToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(booksToBuy, BookCopy::getISBN, (shard, bookCopies) -> {
+			shard.buyBooks(bookCopies);
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(bookRating, BookRating::getISBN, (shard, ratings) -> {
+			shard.rateBooks(ratings);
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	@Override
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<Book> listBooks = new ArrayList<>(isbnSet.size());
+
+		for (List<Book> books : router.route(isbnSet, Integer::intValue, BookStoreHTTPProxy::getBooks)) {
+			listBooks.addAll(books);
+		}
+
+		return listBooks;
+	}
+
+	/**
+	 * Gets <code>numBooks</code> editor picks. Every server counts its picks,
+	 * the sample is split over the servers as drawing it uniformly from all
+	 * picks would, and every server draws its share. A book that is being
+	 * moved may be counted on two servers for a moment, and is then only kept
+	 * once.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the editor picks
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Override
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// Both calls go to the same servers, even if the ring changes.
+		Map<BookStoreHTTPProxy, Void> shards = new LinkedHashMap<>();
+
+		for (BookStoreHTTPProxy shard : router.getRing().getNodes().values()) {
+			shards.put(shard, null);
+		}
+
+		List<Integer> counts = router.scatter(shards, (shard, none) -> shard.getNumEditorPicks());
+		int[] sizes = new int[counts.size()];
+
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = counts.get(i);
+		}
+
+		int[] shares = EditorPickIndex.shares(sizes, numBooks);
+		Map<BookStoreHTTPProxy, Integer> parts = new LinkedHashMap<>();
+		int i = 0;
+
+		for (BookStoreHTTPProxy shard : shards.keySet()) {
+			if (shares[i] > 0) {
+				parts.put(shard, shares[i]);
+			}
+
+			i++;
+		}
+
+		return ShardRouter.merge(router.scatter(parts, (shard, share) -> shard.getEditorPicks(share)),
+				Book::getISBN);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.SampleableBookStore#getNumEditorPicks()
+	 */
+	@Override
+	public int getNumEditorPicks() throws BookStoreException {
+		int numPicks = 0;
+
+		for (int count : router.scatterAll((shard, none) -> shard.getNumEditorPicks())) {
+			numPicks += count;
+		}
+
+		return numPicks;
+	}
+
+	/**
+	 * Gets the top rated books. Every server returns its top
+	 * <code>numBooks</code>, whose ratings are then read to merge them, so a
+	 * book rated in between is ordered by its newer rating, and a book removed
+	 * in between is left out.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the top rated books, in descending rating order
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		List<Book> candidates = ShardRouter.merge(router.scatterAll((shard, none) -> shard.getTopRatedBooks(numBooks)),
+				Book::getISBN);
+
+		Set<Integer> isbns = new HashSet<>();
+
+		for (Book book : candidates) {
+			isbns.add(book.getISBN());
+		}
+
+		Map<Integer, Float> averageRatings = new HashMap<>();
+
+		for (StockBook book : getAvailableBooks(isbns)) {
+			averageRatings.put(book.getISBN(), book.getAverageRating());
+		}
+
+		candidates.removeIf(book -> !averageRatings.containsKey(book.getISBN()));
+
+		// The order of TopRatedIndex: descending rating, then ISBN.
+		candidates.sort(Comparator.comparingDouble((Book book) -> -averageRatings.get(book.getISBN()))
+				.thenComparingInt(Book::getISBN));
+		return new ArrayList<>(candidates.subList(0, Math.min(numBooks, candidates.size())));
+	}
+
+	/**
+	 * Gets the books that are still in the store. If some books are not, which
+	 * fails the whole call, the books are read one by one.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the books that are in the store
+	 * @throws BookStoreException
+	 *             if a book cannot be read for another reason
+	 */
+	private List<StockBook> getAvailableBooks(Set<Integer> isbns) throws BookStoreException {
+		try {
+			return stockManager.getBooksByISBN(isbns);
+		} catch (BookStoreException ex) {
+			List<StockBook> books = new ArrayList<>();
+
+			for (Integer isbn : isbns) {
+				try {
+					books.addAll(stockManager.getBooksByISBN(Collections.singleton(isbn)));
+				} catch (BookStoreException notAvailable) {
+					String message = notAvailable.getMessage();
+
+					if (message == null || !message.endsWith(BookStoreConstants.NOT_AVAILABLE)) {
+						throw notAvailable;
+					}
+				}
+			}
+
+			return books;
+		}
+	}
+
+	/**
+	 * Stops the proxy.
+	 */
+	public void stop() {
+		router.stop();
+		stockManager.stop();
+
+		for (BookStoreHTTPProxy shard : router.shards()) {
+			shard.stop();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.acertainbookstore.client;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStorePartialUpdateException;
+
+/**
+ * {@link ShardedStockManagerProxy} implements the {@link StockManager} API
+ * over several bookstore servers, each holding the books that a
+ * {@link ConsistentHashRing} of the servers maps to it. The servers are listed
+ * in a properties file, <code>./shards.properties</code> by default.
+ *
+ * A call on several books is split by server and sent to the servers in
+ * parallel. Every server applies its part all-or-nothing, but the parts are
+ * independent: if one server fails, the others may have applied theirs, and
+ * the update then fails with a {@link BookStorePartialUpdateException} that
+ * lists the books whose part was applied.
+ *
+ * The file is followed while a {@link ShardRebalancer} moves books between
+ * the servers: a part rejected because its books are being moved is sent
+ * again once the file maps them to their new server.
+ *
+ * @see StockManager
+ * @see ShardedBookStoreProxy
+ */
+public class ShardedStockManagerProxy implements StockManager {
+
+	/** The default shards file. */
+	public static final String DEFAULT_SHARDS_FILE = "./shards.properties";
+
+	/** The router to the stock managers of the servers. */
+	private final ShardRouter<StockManagerHTTPProxy> router;
+
+	/**
+	 * Initializes a new {@link ShardedStockManagerProxy} with the servers in
+	 * {@link #DEFAULT_SHARDS_FILE}.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public ShardedStockManagerProxy() throws Exception {
+		this(DEFAULT_SHARDS_FILE);
+	}
+
+	/**
+	 * Initializes a new {@link ShardedStockManagerProxy}.
+	 *
+	 * @param filePath
+	 *            the shards file
+	 * @throws Exception
+	 *             the exception
+	 */
+	public ShardedStockManagerProxy(String filePath) throws Exception {
+		router = ShardRouter.load(filePath, address -> new StockManagerHTTPProxy(address + "/stock"));
+	}
+
+	/**
+	 * Gets the ring of the servers.
+	 *
+	 * @return the ring, with the stock managers of the servers
+	 */
+	public ConsistentHashRing<StockManagerHTTPProxy> getRing() {
+		return router.getRing();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	@Override
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(bookSet, StockBook::getISBN, (shard, books) -> {
+			shard.addBooks(books);
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	@Override
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(bookCopiesSet, BookCopy::getISBN, (shard, bookCopies) -> {
+			shard.addCopies(bookCopies);
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	@Override
+	public List<StockBook> getBooks() throws BookStoreException {
+		return ShardRouter.merge(router.scatterAll((shard, none) -> shard.getBooks()), StockBook::getISBN);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	@Override
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		StockBookPage.validate(continuationToken, maxBooks);
+		List<List<StockBook>> pages = new ArrayList<>();
+
+		// The page is among the first maxBooks books of every server.
+		for (StockBookPage page : router.scatterAll((shard, none) -> shard.getBooksPage(continuationToken, maxBooks))) {
+			pages.add(page.getBooks());
+		}
+
+		List<StockBook> candidates = ShardRouter.merge(pages, StockBook::getISBN);
+		candidates.sort(Comparator.comparingInt(StockBook::getISBN));
+		return new StockBookPage(new ArrayList<>(candidates.subList(0, Math.min(maxBooks, candidates.size()))),
+				maxBooks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	@Override
+	public List<StockBook> getBooksByISBN(Set<Integer> isbns) throws BookStoreException {
+		if (isbns == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<StockBook> listBooks = new ArrayList<>(isbns.size());
+
+		for (List<StockBook> books : router.route(isbns, Integer::intValue,
+				StockManagerHTTPProxy::getBooksByISBN)) {
+			listBooks.addAll(books);
+		}
+
+		return listBooks;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return ShardRouter.merge(router.scatterAll((shard, none) -> shard.getBooksInDemand()), StockBook::getISBN);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	@Override
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(editorPicks, BookEditorPick::getISBN, (shard, picks) -> {
+			shard.updateEditorPicks(picks);
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	@Override
+	public void removeAllBooks() throws BookStoreException {
+		router.scatterAll((shard, none) -> {
+			shard.removeAllBooks();
+			return null;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	@Override
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		router.update(isbnSet, Integer::intValue, (shard, isbns) -> {
+			shard.removeBooks(isbns);
+			return null;
+		});
+	}
+
+	/**
+	 * Stops the proxy.
+	 */
+	public void stop() {
+		router.stop();
+
+		for (StockManagerHTTPProxy shard : router.shards()) {
+			shard.stop();
+		}
+	}
+}
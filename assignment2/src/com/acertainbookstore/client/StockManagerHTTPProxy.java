@@ -1,16 +1,20 @@
 package com.acertainbookstore.client;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
 import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
@@ -28,7 +32,7 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * @see CertainBookStore
  * @see StockManager
  */
-public class StockManagerHTTPProxy implements StockManager {
+public class StockManagerHTTPProxy implements CheckpointableStockManager {
 
 	/** The client. */
 	protected HttpClient client;
@@ -62,8 +66,8 @@ public class StockManagerHTTPProxy implements StockManager {
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
-		// Max number of threads.
-		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		// Max number of threads, unless the requests run on virtual threads.
+		client.setExecutor(BookStoreUtility.createClientExecutor());
 
 		// Seconds timeout; if no server reply, the request expires.
 		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
@@ -141,14 +145,54 @@ public class StockManagerHTTPProxy implements StockManager {
 		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksPage(int, int)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.LISTBOOKSPAGE + "?"
+				+ BookStoreConstants.CONTINUATION_TOKEN_PARAM + "=" + continuationToken + "&"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + maxBooks;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return new StockBookPage((List<StockBook>) bookStoreResponse.getList(), maxBooks);
+	}
+
+	/**
+	 * Streams all books in ISBN order to the action, as the server sends them
+	 * in chunks. Unlike {@link #getBooks()}, neither side holds all books at
+	 * once. Like the pages of {@link #getBooksPage(int, int)}, the stream is
+	 * not a snapshot of the store.
+	 *
+	 * @param action
+	 *            the action to perform on every book
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@SuppressWarnings("unchecked")
+	public void streamBooks(Consumer<? super StockBook> action) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.STREAMBOOKS;
+		BookStoreUtility.performHttpStreamExchange(client, urlString, serializer.get(),
+				list -> ((List<StockBook>) list).forEach(action));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKSINDEMAND;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
 	/*
@@ -194,6 +238,70 @@ public class StockManagerHTTPProxy implements StockManager {
 		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.CheckpointableStockManager#restoreBooks(
+	 * java.util.Collection)
+	 */
+	@Override
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.RESTOREBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString,
+				(books != null) ? new ArrayList<>(books) : null);
+		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+	}
+
+	/**
+	 * Fences books before moving them to another server: until they are
+	 * released or unfenced, the server rejects writes to them.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the books the server has, as of the fence
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@SuppressWarnings("unchecked")
+	public List<StockBook> fenceBooks(Set<Integer> isbns) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.FENCEBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (List<StockBook>) bookStoreResponse.getList();
+	}
+
+	/**
+	 * Lifts the fence of books that were not moved, or makes the server
+	 * forget that books were moved.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public void unfenceBooks(Set<Integer> isbns) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.UNFENCEBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
+		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+	}
+
+	/**
+	 * Removes fenced books restored on another server. The server answers
+	 * requests on them as moved until they are unfenced.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public void releaseBooks(Set<Integer> isbns) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.RELEASEBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
+		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+	}
+
 	/**
 	 * Stops the proxy.
 	 */
@@ -2,10 +2,20 @@ package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -16,9 +26,15 @@ import org.junit.Test;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.ColumnarConcurrentCertainBookStore;
 import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.LockManager;
+import com.acertainbookstore.business.LockStatistics;
+import com.acertainbookstore.business.OptimisticConcurrentCertainBookStore;
+import com.acertainbookstore.business.PartitionedCertainBookStore;
+import com.acertainbookstore.business.SequencedCertainBookStore;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
@@ -27,6 +43,7 @@ import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreRetryableException;
 
 /**
  * {@link BookStoreTest} tests the {@link BookStore} interface.
@@ -47,6 +64,23 @@ public class BookStoreTest {
 	/** Single lock test */
 	private static boolean singleLock = false;
 
+	/** Optimistic locking test */
+	private static boolean optimistic = false;
+
+	/** Columnar store test */
+	private static boolean columnar = false;
+
+	/** Partitioned store test */
+	private static boolean partitioned = false;
+
+	/** Sequenced store test */
+	private static boolean sequenced = false;
+
+	/** Two-level store combining the purchases test */
+	private static boolean combiningBuys = false;
+
+	/** Two-level store buying single books with escrow test */
+	private static boolean escrowBuys = false;
 	
 	/** The store manager. */
 	private static StockManager storeManager;
@@ -66,13 +100,50 @@ public class BookStoreTest {
 			String singleLockProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_SINGLE_LOCK);
 			singleLock = (singleLockProperty != null) ? Boolean.parseBoolean(singleLockProperty) : singleLock;
 
+			String optimisticProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_OPTIMISTIC);
+			optimistic = (optimisticProperty != null) ? Boolean.parseBoolean(optimisticProperty) : optimistic;
+
+			String columnarProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+			columnar = (columnarProperty != null) ? Boolean.parseBoolean(columnarProperty) : columnar;
+
+			String partitionedProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_PARTITIONED);
+			partitioned = (partitionedProperty != null) ? Boolean.parseBoolean(partitionedProperty) : partitioned;
+
+			String sequencedProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_SEQUENCED);
+			sequenced = (sequencedProperty != null) ? Boolean.parseBoolean(sequencedProperty) : sequenced;
+
+			String combiningBuysProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_COMBINING_BUYS);
+			combiningBuys = (combiningBuysProperty != null) ? Boolean.parseBoolean(combiningBuysProperty)
+					: combiningBuys;
+
+			String escrowBuysProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_ESCROW_BUYS);
+			escrowBuys = (escrowBuysProperty != null) ? Boolean.parseBoolean(escrowBuysProperty) : escrowBuys;
+
 			if (localTest) {
-				if (singleLock) {
+				if (partitioned) {
+					PartitionedCertainBookStore store = new PartitionedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (sequenced) {
+					SequencedCertainBookStore store = new SequencedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (columnar) {
+					ColumnarConcurrentCertainBookStore store = new ColumnarConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (optimistic) {
+					OptimisticConcurrentCertainBookStore store = new OptimisticConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (singleLock) {
 					SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
 					storeManager = store;
 					client = store;
 				} else {
-					TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore();
+					TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore(
+							BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES,
+							combiningBuys, escrowBuys);
 					storeManager = store;
 					client = store;
 				}
@@ -539,6 +610,63 @@ public class BookStoreTest {
 		}
 	}
     
+	/**
+	 * Tests that clients buying and restocking overlapping sets of books
+	 * concurrently neither deadlock nor lose updates.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBuyAndAddOverlappingConcurrent() throws BookStoreException {
+		int ITERATIONS = 10000;
+		int OTHER_ISBN = TEST_ISBN + 1;
+		addBooks(OTHER_ISBN, NUM_COPIES);
+
+		Set<BookCopy> copiesToAdd = new HashSet<>(
+				Arrays.asList(new BookCopy(TEST_ISBN, ITERATIONS), new BookCopy(OTHER_ISBN, ITERATIONS)));
+		storeManager.addCopies(copiesToAdd);
+		HashSet<BookCopy> bothBooks = new HashSet<>(
+				Arrays.asList(new BookCopy(OTHER_ISBN, 1), new BookCopy(TEST_ISBN, 1)));
+		HashSet<BookCopy> otherBook = new HashSet<>(Arrays.asList(new BookCopy(OTHER_ISBN, 1)));
+		HashSet<BookCopy> defaultBook = new HashSet<>(Arrays.asList(new BookCopy(TEST_ISBN, 1)));
+
+		Thread C1 = new Thread(() -> {
+			try {
+				for (int i = 0; i < ITERATIONS; i++) {
+					client.buyBooks(bothBooks);
+				}
+			} catch (BookStoreException ex) {
+				;
+			}
+		});
+
+		Thread C2 = new Thread(() -> {
+			try {
+				for (int i = 0; i < ITERATIONS; i++) {
+					storeManager.addCopies(otherBook);
+					storeManager.addCopies(defaultBook);
+				}
+			} catch (BookStoreException ex) {
+				;
+			}
+		});
+
+		C1.start();
+		C2.start();
+
+		try {
+			C1.join();
+			C2.join();
+		} catch (InterruptedException ex) {
+			fail();
+		}
+
+		for (StockBook book : storeManager.getBooks()) {
+			assertEquals(ITERATIONS + NUM_COPIES, book.getNumCopies());
+		}
+	}
+
 	/**
 	 * Tests that updateEditorPicks 
 	 *
@@ -667,6 +795,339 @@ public class BookStoreTest {
 		}
     }
 	
+	/**
+	 * Tests that a buy spanning the partitions of a
+	 * {@link PartitionedCertainBookStore} is all-or-nothing and that the
+	 * requests over the whole store merge the partitions.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBuyAcrossPartitions() throws BookStoreException {
+		PartitionedCertainBookStore store = new PartitionedCertainBookStore(8, ForkJoinPool.commonPool());
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		HashSet<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+
+		for (int isbn = 1; isbn <= 64; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, (float) 10, NUM_COPIES, 0,
+					0, 0, false));
+			booksToBuy.add(new BookCopy(isbn, (isbn == 64) ? NUM_COPIES + 1 : 1));
+			booksToRate.add(new BookRating(isbn, isbn % 5));
+			editorPicks.add(new BookEditorPick(isbn, isbn % 4 == 0));
+		}
+
+		store.addBooks(booksToAdd);
+		store.rateBooks(booksToRate);
+		store.updateEditorPicks(editorPicks);
+
+		try {
+			store.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		// No copy was sold, and only the missed book is in demand.
+		for (StockBook book : store.getBooks()) {
+			assertEquals(NUM_COPIES, book.getNumCopies());
+		}
+
+		assertEquals(64, store.getBooks().size());
+		assertEquals(1, store.getBooksInDemand().size());
+		assertEquals(64, store.getBooksInDemand().get(0).getISBN());
+
+		// The top rated books are rated 4, in ISBN order.
+		List<Book> topRated = store.getTopRatedBooks(3);
+		assertEquals(Arrays.asList(4, 9, 14), Arrays.asList(topRated.get(0).getISBN(), topRated.get(1).getISBN(),
+				topRated.get(2).getISBN()));
+
+		Set<Integer> picks = new HashSet<Integer>();
+
+		for (Book book : store.getEditorPicks(5)) {
+			assertEquals(0, book.getISBN() % 4);
+			picks.add(book.getISBN());
+		}
+
+		assertEquals(5, picks.size());
+		assertEquals(16, store.getEditorPicks(20).size());
+	}
+
+	/**
+	 * Tests that the {@link LockManager} breaks a deadlock between two requests
+	 * taking the same locks in opposite orders: the younger request fails with
+	 * a retryable exception, and the older one gets its locks.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testDeadlockBroken() throws Exception {
+		LockManager lockManager = new LockManager(16, BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, 10);
+		CyclicBarrier bothLocked = new CyclicBarrier(2);
+		List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+		List<Thread> requests = new ArrayList<Thread>();
+
+		for (int first = 0; first < 2; first++) {
+			Lock firstLock = lockManager.getStripe(first).writeLock();
+			Lock secondLock = lockManager.getStripe(1 - first).writeLock();
+
+			requests.add(new Thread(() -> {
+				try {
+					lockManager.acquire(firstLock);
+
+					try {
+						bothLocked.await();
+						lockManager.acquire(secondLock);
+						secondLock.unlock();
+						outcomes.add("locked");
+					} finally {
+						firstLock.unlock();
+					}
+				} catch (BookStoreRetryableException ex) {
+					outcomes.add(ex.getMessage());
+				} catch (Exception ex) {
+					outcomes.add(ex.toString());
+				}
+			}));
+		}
+
+		for (Thread request : requests) {
+			request.start();
+		}
+
+		for (Thread request : requests) {
+			request.join();
+		}
+
+		assertEquals(2, outcomes.size());
+		assertTrue(outcomes.contains("locked"));
+		assertTrue(outcomes.contains(BookStoreConstants.DEADLOCK));
+		assertEquals(1, lockManager.getDeadlocks());
+		assertTrue(lockManager.getWaitForGraph().isEmpty());
+	}
+
+	/**
+	 * Tests that the lock statistics of a
+	 * {@link TwoLevelLockingConcurrentCertainBookStore} count the locks taken
+	 * for a book and the time they were held.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testLockStatistics() throws BookStoreException {
+		TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore();
+		store.addBooks(Collections.singleton(getDefaultBook()));
+		LockStatistics before = store.getLockManager().getLockStatistics(TEST_ISBN);
+
+		for (int i = 0; i < NUM_COPIES; i++) {
+			store.buyBooks(Collections.singleton(new BookCopy(TEST_ISBN, 1)));
+		}
+
+		LockStatistics after = store.getLockManager().getLockStatistics(TEST_ISBN);
+		assertEquals(NUM_COPIES, after.getAcquisitions() - before.getAcquisitions());
+		assertEquals(0, after.getContentions());
+		assertTrue(after.getHoldNanos() > before.getHoldNanos());
+		assertTrue(store.getLockManager().getGlobalLockStatistics().getAcquisitions() > NUM_COPIES);
+	}
+
+	/**
+	 * Tests that purchases of a hot book combined into batches are each
+	 * all-or-nothing: exactly the copies in store are sold, and every other
+	 * purchase fails and counts as a sale miss.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCombinedBuys() throws Exception {
+		assertHotBookSoldOut(new TwoLevelLockingConcurrentCertainBookStore(
+				BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, true, false));
+	}
+
+	/**
+	 * Tests that purchases of a hot book bought under the read lock never sell
+	 * more copies than there are, and that the purchases that find too few
+	 * copies count as sale misses.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testEscrowBuys() throws Exception {
+		assertHotBookSoldOut(new TwoLevelLockingConcurrentCertainBookStore(
+				BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, false, true));
+	}
+
+	/**
+	 * Tests that reads of several books in the two-level store are
+	 * serializable with purchases of single books, in the default mode without
+	 * escrow. Two readers read the same books in opposite orders while the
+	 * books are bought one at a time. The number of copies only goes down, so
+	 * every two reads must see one state that is below the other for every
+	 * book; a reader that saw one purchase but not another while the other
+	 * reader saw the reverse breaks this.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testMultiBookReadsSerializableWithBuys() throws Exception {
+		final int numBooks = 16;
+		final int buysPerThread = 20000;
+		final int copies = 1000000;
+		TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore(
+				BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, false);
+		Set<StockBook> books = new HashSet<>();
+		Set<Integer> ascending = new LinkedHashSet<>();
+		Set<Integer> descending = new LinkedHashSet<>();
+
+		for (int isbn = 1; isbn <= numBooks; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title", "Author", (float) 10, copies, 0, 0, 0, false));
+			ascending.add(isbn);
+			descending.add(numBooks + 1 - isbn);
+		}
+
+		store.addBooks(books);
+		AtomicBoolean buying = new AtomicBoolean(true);
+		List<int[]> reads = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 2; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < buysPerThread; i++) {
+					try {
+						store.buyBooks(Collections.singleton(
+								new BookCopy(1 + ThreadLocalRandom.current().nextInt(numBooks), 1)));
+					} catch (BookStoreException ex) {
+						;
+					}
+				}
+			}));
+		}
+
+		for (Set<Integer> order : Arrays.asList(ascending, descending)) {
+			threads.add(new Thread(() -> {
+				while (buying.get()) {
+					try {
+						int[] read = new int[numBooks];
+
+						for (StockBook book : store.getBooksByISBN(order)) {
+							read[book.getISBN() - 1] = book.getNumCopies();
+						}
+
+						reads.add(read);
+					} catch (BookStoreException ex) {
+						;
+					}
+				}
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		threads.get(0).join();
+		threads.get(1).join();
+		buying.set(false);
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Serializable reads form a chain, so they are ordered by their total.
+		List<int[]> sortedReads = new ArrayList<>(reads);
+		sortedReads.sort(Comparator.comparingLong((int[] read) -> Arrays.stream(read).asLongStream().sum()).reversed());
+
+		for (int i = 1; i < sortedReads.size(); i++) {
+			int[] before = sortedReads.get(i - 1);
+			int[] after = sortedReads.get(i);
+
+			for (int book = 0; book < numBooks; book++) {
+				assertTrue("Reads " + Arrays.toString(before) + " and " + Arrays.toString(after)
+						+ " are not serializable", after[book] <= before[book]);
+			}
+		}
+	}
+
+	/**
+	 * Tests that the writer of the sequenced store applies the purchases of a
+	 * hot book one at a time, and that the store fails requests once it is
+	 * stopped.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSequencedBuys() throws Exception {
+		SequencedCertainBookStore store = new SequencedCertainBookStore();
+		assertHotBookSoldOut(store);
+		store.stop();
+
+		try {
+			store.buyBooks(Collections.singleton(new BookCopy(TEST_ISBN, 1)));
+			fail();
+		} catch (BookStoreException ex) {
+			assertEquals(BookStoreConstants.STORE_STOPPED, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Buys single copies of a book from several threads until it is sold out,
+	 * and checks that exactly the copies in store were sold and that every
+	 * other purchase failed and counted as a sale miss.
+	 *
+	 * @param <S>
+	 *            the type of the store
+	 * @param store
+	 *            an empty store
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static <S extends BookStore & StockManager> void assertHotBookSoldOut(S store) throws Exception {
+		final int numThreads = 8;
+		final int buysPerThread = 200;
+		final int copies = 1000;
+		store.addBooks(Collections.singleton(new ImmutableStockBook(TEST_ISBN, "Hot", "Author", (float) 10, copies,
+				0, 0, 0, false)));
+		AtomicInteger numSold = new AtomicInteger();
+		AtomicInteger numMissed = new AtomicInteger();
+		List<Thread> buyers = new ArrayList<Thread>();
+
+		for (int t = 0; t < numThreads; t++) {
+			buyers.add(new Thread(() -> {
+				for (int i = 0; i < buysPerThread; i++) {
+					try {
+						store.buyBooks(Collections.singleton(new BookCopy(TEST_ISBN, 1)));
+						numSold.incrementAndGet();
+					} catch (BookStoreException ex) {
+						numMissed.incrementAndGet();
+					}
+				}
+			}));
+		}
+
+		for (Thread buyer : buyers) {
+			buyer.start();
+		}
+
+		for (Thread buyer : buyers) {
+			buyer.join();
+		}
+
+		assertEquals(copies, numSold.get());
+		assertEquals(numThreads * buysPerThread - copies, numMissed.get());
+
+		StockBook book = store.getBooks().get(0);
+		assertEquals(0, book.getNumCopies());
+		assertEquals(numMissed.get(), book.getNumSaleMisses());
+		assertEquals(1, store.getBooksInDemand().size());
+	}
+
 	/**
 	 * Tear down after class.
 	 *
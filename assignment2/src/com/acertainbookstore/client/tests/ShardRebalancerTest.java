@@ -0,0 +1,338 @@
+package com.acertainbookstore.client.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.ConsistentHashRing;
+import com.acertainbookstore.client.ShardRebalancer;
+import com.acertainbookstore.client.ShardedBookStoreProxy;
+import com.acertainbookstore.client.ShardedStockManagerProxy;
+import com.acertainbookstore.client.StockManagerHTTPProxy;
+import com.acertainbookstore.server.BookStoreHTTPServer;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link ShardRebalancerTest} tests the {@link ShardRebalancer} against
+ * bookstore servers started as separate processes, while clients keep buying
+ * books through a {@link ShardedBookStoreProxy}, and reports the latency of
+ * the purchases before, during and after the books are moved.
+ */
+public class ShardRebalancerTest {
+
+	/** The ports of the servers; the last one joins the ring and leaves it. */
+	private static final int[] PORTS = { 8094, 8095, 8096, 8097 };
+
+	/** The number of books. */
+	private static final int NUM_BOOKS = 2000;
+
+	/** The number of copies of every book. */
+	private static final int NUM_COPIES = 100000;
+
+	/** The number of points of every server. */
+	private static final int VIRTUAL_NODES = 32;
+
+	/** The number of clients buying books. */
+	private static final int NUM_BUYERS = 2;
+
+	/** The time to buy books before and after moving them. */
+	private static final long STEADY_MILLIS = 1000;
+
+	/** The time to wait for a server to start. */
+	private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+
+	/** The server processes. */
+	private static List<Process> servers = new ArrayList<>();
+
+	/** The stock managers of the single servers. */
+	private static Map<String, StockManagerHTTPProxy> serverStockManagers = new TreeMap<>();
+
+	/** The shards file. */
+	private static Path shardsFile;
+
+	/**
+	 * Starts the servers, and lists all but the last one in the shards file.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		StringBuilder shards = new StringBuilder();
+
+		for (int port : PORTS) {
+			File log = File.createTempFile("shard-" + port, ".log");
+			log.deleteOnExit();
+			servers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "-Dport=" + port,
+					BookStoreHTTPServer.class.getName()).redirectErrorStream(true)
+							.redirectOutput(log).start());
+
+			String address = "http://localhost:" + port;
+			serverStockManagers.put(address, new StockManagerHTTPProxy(address + "/stock"));
+
+			if (port != PORTS[PORTS.length - 1]) {
+				shards.append(shards.length() > 0 ? ";" : "").append("localhost\\:").append(port);
+			}
+		}
+
+		for (StockManagerHTTPProxy serverStockManager : serverStockManagers.values()) {
+			awaitServer(serverStockManager);
+		}
+
+		shardsFile = Files.createTempFile("shards", ".properties");
+		Files.write(shardsFile, Arrays.asList("shards=" + shards, "virtualnodes=" + VIRTUAL_NODES));
+	}
+
+	/**
+	 * Waits until a server answers.
+	 *
+	 * @param serverStockManager
+	 *            the stock manager of the server
+	 * @throws InterruptedException
+	 *             if the wait is interrupted
+	 */
+	private static void awaitServer(StockManagerHTTPProxy serverStockManager) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+
+		while (true) {
+			try {
+				serverStockManager.removeAllBooks();
+				return;
+			} catch (BookStoreException ex) {
+				if (System.currentTimeMillis() > deadline) {
+					fail("Server " + serverStockManager.getServerAddress() + " did not start");
+				}
+
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Tests that a server joins and leaves the ring while clients buy books:
+	 * the proxies follow the shards file without a restart, every book ends up
+	 * on the server the ring maps it to, and no purchase fails or is lost.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testAddAndRemoveShardWhileBuying() throws Exception {
+		ShardedStockManagerProxy storeManager = new ShardedStockManagerProxy(shardsFile.toString());
+		ShardedBookStoreProxy client = new ShardedBookStoreProxy(shardsFile.toString());
+		ShardRebalancer rebalancer = new ShardRebalancer(shardsFile.toString());
+		String joiningServer = "http://localhost:" + PORTS[PORTS.length - 1];
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, (float) 10, NUM_COPIES, 0,
+					0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+
+		String[] phases = { "warming up", "before adding", "adding", "after adding", "removing", "after removing" };
+		List<List<Long>> latencies = new ArrayList<>();
+
+		for (int i = 0; i < phases.length; i++) {
+			latencies.add(Collections.synchronizedList(new ArrayList<>()));
+		}
+
+		AtomicIntegerArray numBought = new AtomicIntegerArray(NUM_BOOKS + 1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicBoolean buying = new AtomicBoolean(true);
+		int[] phase = { 0 };
+		List<Thread> buyers = new ArrayList<>();
+
+		for (int i = 0; i < NUM_BUYERS; i++) {
+			Thread buyer = new Thread(() -> {
+				while (buying.get()) {
+					int isbn = ThreadLocalRandom.current().nextInt(1, NUM_BOOKS + 1);
+					int currentPhase;
+
+					synchronized (phase) {
+						currentPhase = phase[0];
+					}
+
+					long start = System.nanoTime();
+
+					try {
+						client.buyBooks(Collections.singleton(new BookCopy(isbn, 1)));
+					} catch (BookStoreException ex) {
+						failure.compareAndSet(null, ex);
+						return;
+					}
+
+					latencies.get(currentPhase).add(System.nanoTime() - start);
+					numBought.incrementAndGet(isbn);
+				}
+			});
+
+			buyer.start();
+			buyers.add(buyer);
+		}
+
+		try {
+			Thread.sleep(STEADY_MILLIS);
+			setPhase(phase, 1);
+			Thread.sleep(STEADY_MILLIS);
+			setPhase(phase, 2);
+			int numAdded = rebalancer.addShard("localhost:" + PORTS[PORTS.length - 1]);
+			setPhase(phase, 3);
+			Thread.sleep(STEADY_MILLIS);
+
+			// The proxies have read the new ring.
+			assertTrue(storeManager.getRing().getNodes().containsKey(joiningServer));
+			assertBooksOnRingServers(storeManager.getRing().getNodes().keySet());
+			assertTrue(numAdded > NUM_BOOKS / (2 * PORTS.length));
+			assertEquals(numAdded, serverStockManagers.get(joiningServer).getBooks().size());
+
+			setPhase(phase, 4);
+			int numRemoved = rebalancer.removeShard("localhost:" + PORTS[PORTS.length - 1]);
+			setPhase(phase, 5);
+			Thread.sleep(STEADY_MILLIS);
+
+			assertFalse(storeManager.getRing().getNodes().containsKey(joiningServer));
+			assertBooksOnRingServers(storeManager.getRing().getNodes().keySet());
+			assertTrue(numRemoved >= numAdded);
+			assertTrue(serverStockManagers.get(joiningServer).getBooks().isEmpty());
+		} finally {
+			buying.set(false);
+
+			for (Thread buyer : buyers) {
+				buyer.join();
+			}
+
+			rebalancer.stop();
+		}
+
+		assertNull(failure.get());
+		List<StockBook> books = storeManager.getBooks();
+		assertEquals(NUM_BOOKS, books.size());
+
+		for (StockBook book : books) {
+			assertEquals(NUM_COPIES - numBought.get(book.getISBN()), book.getNumCopies());
+		}
+
+		for (int i = 0; i < phases.length; i++) {
+			printLatencies(phases[i], latencies.get(i));
+		}
+
+		storeManager.removeAllBooks();
+		storeManager.stop();
+		client.stop();
+	}
+
+	/**
+	 * Sets the phase the purchases are counted in.
+	 *
+	 * @param phase
+	 *            the phase
+	 * @param newPhase
+	 *            the new phase
+	 */
+	private static void setPhase(int[] phase, int newPhase) {
+		synchronized (phase) {
+			phase[0] = newPhase;
+		}
+	}
+
+	/**
+	 * Checks that every book is on the server a ring of the given servers maps
+	 * it to.
+	 *
+	 * @param ringServers
+	 *            the addresses of the servers on the ring
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private static void assertBooksOnRingServers(Set<String> ringServers) throws BookStoreException {
+		Map<String, String> addresses = new TreeMap<>();
+
+		for (String address : ringServers) {
+			addresses.put(address, address);
+		}
+
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(addresses, VIRTUAL_NODES);
+		int numBooks = 0;
+
+		for (Map.Entry<String, StockManagerHTTPProxy> server : serverStockManagers.entrySet()) {
+			for (StockBook book : server.getValue().getBooks()) {
+				assertEquals(server.getKey(), ring.nodeOf(book.getISBN()));
+				numBooks++;
+			}
+		}
+
+		assertEquals(NUM_BOOKS, numBooks);
+	}
+
+	/**
+	 * Prints the number and the percentiles of the latencies of a phase.
+	 *
+	 * @param phase
+	 *            the phase
+	 * @param latencies
+	 *            the latencies, in nanoseconds
+	 */
+	private static void printLatencies(String phase, List<Long> latencies) {
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+
+		if (sorted.isEmpty()) {
+			System.out.printf("buyBooks %-15s no purchases%n", phase);
+			return;
+		}
+
+		System.out.printf("buyBooks %-15s %6d purchases, p50 %7.2f ms, p99 %7.2f ms, max %7.2f ms%n", phase,
+				sorted.size(), sorted.get(sorted.size() / 2) / 1e6, sorted.get(sorted.size() * 99 / 100) / 1e6,
+				sorted.get(sorted.size() - 1) / 1e6);
+	}
+
+	/**
+	 * Stops the servers.
+	 *
+	 * @throws IOException
+	 *             if the shards file cannot be deleted
+	 * @throws InterruptedException
+	 *             if the wait for the servers is interrupted
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws IOException, InterruptedException {
+		for (StockManagerHTTPProxy serverStockManager : serverStockManagers.values()) {
+			serverStockManager.stop();
+		}
+
+		for (Process server : servers) {
+			server.destroy();
+			server.waitFor(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		if (shardsFile != null) {
+			Files.deleteIfExists(shardsFile);
+		}
+	}
+}
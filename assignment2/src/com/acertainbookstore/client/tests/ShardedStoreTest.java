@@ -0,0 +1,413 @@
+package com.acertainbookstore.client.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
+import com.acertainbookstore.client.ConsistentHashRing;
+import com.acertainbookstore.client.ShardedBookStoreProxy;
+import com.acertainbookstore.client.ShardedStockManagerProxy;
+import com.acertainbookstore.client.StockManagerHTTPProxy;
+import com.acertainbookstore.server.BookStoreHTTPServer;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStorePartialUpdateException;
+
+/**
+ * {@link ShardedStoreTest} tests the {@link ShardedBookStoreProxy} and the
+ * {@link ShardedStockManagerProxy} against bookstore servers started as
+ * separate processes.
+ */
+public class ShardedStoreTest {
+
+	/** The ports of the servers. */
+	private static final int[] PORTS = { 8091, 8092, 8093 };
+
+	/** The number of books. */
+	private static final int NUM_BOOKS = 300;
+
+	/** The number of copies of every book. */
+	private static final int NUM_COPIES = 5;
+
+	/** The time to wait for a server to start. */
+	private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+
+	/** The server processes. */
+	private static List<Process> servers = new ArrayList<>();
+
+	/** The stock managers of the single servers. */
+	private static Map<String, StockManagerHTTPProxy> serverStockManagers = new TreeMap<>();
+
+	/** The shards file. */
+	private static Path shardsFile;
+
+	/** The sharded store manager. */
+	private static ShardedStockManagerProxy storeManager;
+
+	/** The sharded client. */
+	private static ShardedBookStoreProxy client;
+
+	/**
+	 * Starts the servers and the proxies.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		StringBuilder shards = new StringBuilder();
+
+		for (int port : PORTS) {
+			File log = File.createTempFile("shard-" + port, ".log");
+			log.deleteOnExit();
+			servers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "-Dport=" + port,
+					BookStoreHTTPServer.class.getName()).redirectErrorStream(true)
+							.redirectOutput(log).start());
+
+			String address = "http://localhost:" + port;
+			serverStockManagers.put(address, new StockManagerHTTPProxy(address + "/stock"));
+			shards.append(shards.length() > 0 ? ";" : "").append("localhost\\:").append(port);
+		}
+
+		for (StockManagerHTTPProxy serverStockManager : serverStockManagers.values()) {
+			awaitServer(serverStockManager);
+		}
+
+		shardsFile = Files.createTempFile("shards", ".properties");
+		Files.write(shardsFile, Arrays.asList("shards=" + shards, "virtualnodes=64"));
+		storeManager = new ShardedStockManagerProxy(shardsFile.toString());
+		client = new ShardedBookStoreProxy(shardsFile.toString());
+	}
+
+	/**
+	 * Waits until a server answers.
+	 *
+	 * @param serverStockManager
+	 *            the stock manager of the server
+	 * @throws InterruptedException
+	 *             if the wait is interrupted
+	 */
+	private static void awaitServer(StockManagerHTTPProxy serverStockManager) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+
+		while (true) {
+			try {
+				serverStockManager.removeAllBooks();
+				return;
+			} catch (BookStoreException ex) {
+				if (System.currentTimeMillis() > deadline) {
+					fail("Server " + serverStockManager.getServerAddress() + " did not start");
+				}
+
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Adds NUM_BOOKS books through the sharded store manager.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Before
+	public void initializeBooks() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, (float) 10, NUM_COPIES, 0,
+					0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+	}
+
+	/**
+	 * Removes all books.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@After
+	public void cleanupBooks() throws BookStoreException {
+		storeManager.removeAllBooks();
+	}
+
+	/**
+	 * Tests that every book is stored on the server the ring maps it to, and
+	 * that every server gets a share of the books.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBooksAreSpreadOverServers() throws BookStoreException {
+		Map<String, String> addresses = new TreeMap<>();
+
+		for (String address : serverStockManagers.keySet()) {
+			addresses.put(address, address);
+		}
+
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(addresses, 64);
+		int numBooks = 0;
+
+		for (Map.Entry<String, StockManagerHTTPProxy> server : serverStockManagers.entrySet()) {
+			List<StockBook> books = server.getValue().getBooks();
+			assertTrue(books.size() > NUM_BOOKS / (2 * PORTS.length));
+
+			for (StockBook book : books) {
+				assertEquals(server.getKey(), ring.nodeOf(book.getISBN()));
+			}
+
+			numBooks += books.size();
+		}
+
+		assertEquals(NUM_BOOKS, numBooks);
+		assertEquals(NUM_BOOKS, storeManager.getBooks().size());
+	}
+
+	/**
+	 * Tests that calls on books of several servers are scattered and
+	 * gathered.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testScatterAndGather() throws BookStoreException {
+		Set<Integer> isbns = new HashSet<>();
+		Set<BookCopy> booksToBuy = new HashSet<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn += 3) {
+			isbns.add(isbn);
+			booksToBuy.add(new BookCopy(isbn, 2));
+		}
+
+		client.buyBooks(booksToBuy);
+
+		List<Book> books = client.getBooks(isbns);
+		assertEquals(isbns.size(), books.size());
+
+		for (StockBook book : storeManager.getBooksByISBN(isbns)) {
+			assertTrue(isbns.contains(book.getISBN()));
+			assertEquals(NUM_COPIES - 2, book.getNumCopies());
+		}
+
+		int numCopies = 0;
+
+		for (StockBook book : storeManager.getBooks()) {
+			numCopies += book.getNumCopies();
+		}
+
+		assertEquals(NUM_BOOKS * NUM_COPIES - 2 * isbns.size(), numCopies);
+	}
+
+	/**
+	 * Tests that a purchase spanning servers that fails on one of them after
+	 * it was applied on another reports the books bought, and that one that
+	 * fails everywhere is a plain failure.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testPartialBuyAcrossServers() throws BookStoreException {
+		Map<String, String> addresses = new TreeMap<>();
+
+		for (String address : serverStockManagers.keySet()) {
+			addresses.put(address, address);
+		}
+
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(addresses, 64);
+		int boughtIsbn = 1;
+		int missedIsbn = 2;
+
+		while (ring.nodeOf(missedIsbn).equals(ring.nodeOf(boughtIsbn))) {
+			missedIsbn++;
+		}
+
+		Set<BookCopy> booksToBuy = new HashSet<>();
+		booksToBuy.add(new BookCopy(boughtIsbn, 1));
+		booksToBuy.add(new BookCopy(missedIsbn, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStorePartialUpdateException ex) {
+			assertEquals(new HashSet<>(Arrays.asList(boughtIsbn)), ex.getAppliedISBNs());
+		}
+
+		Map<Integer, Integer> numCopies = new HashMap<>();
+
+		for (StockBook book : storeManager.getBooksByISBN(new HashSet<>(Arrays.asList(boughtIsbn, missedIsbn)))) {
+			numCopies.put(book.getISBN(), book.getNumCopies());
+		}
+
+		assertEquals(NUM_COPIES - 1, (int) numCopies.get(boughtIsbn));
+		assertEquals(NUM_COPIES, (int) numCopies.get(missedIsbn));
+
+		booksToBuy.clear();
+		booksToBuy.add(new BookCopy(boughtIsbn, NUM_COPIES));
+		booksToBuy.add(new BookCopy(missedIsbn, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStorePartialUpdateException ex) {
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Tests that the top rated books and the editor picks of the servers are
+	 * merged.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testMergedGlobalQueries() throws BookStoreException {
+		Set<BookRating> ratings = new HashSet<>();
+		Set<BookEditorPick> editorPicks = new HashSet<>();
+		Map<Integer, Integer> ratingOf = new HashMap<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			int rating = (isbn * 7) % 6;
+			ratings.add(new BookRating(isbn, rating));
+			ratingOf.put(isbn, rating);
+			editorPicks.add(new BookEditorPick(isbn, isbn % 10 == 0));
+		}
+
+		client.rateBooks(ratings);
+		storeManager.updateEditorPicks(editorPicks);
+
+		List<Integer> expected = new ArrayList<>(ratingOf.keySet());
+		expected.sort(Comparator.comparingInt((Integer isbn) -> -ratingOf.get(isbn)).thenComparingInt(isbn -> isbn));
+		List<Integer> topRated = new ArrayList<>();
+
+		for (Book book : client.getTopRatedBooks(10)) {
+			topRated.add(book.getISBN());
+		}
+
+		assertEquals(expected.subList(0, 10), topRated);
+
+		Set<Integer> picks = new HashSet<>();
+
+		for (Book book : client.getEditorPicks(10)) {
+			assertEquals(0, book.getISBN() % 10);
+			picks.add(book.getISBN());
+		}
+
+		assertEquals(10, picks.size());
+		assertEquals(NUM_BOOKS / 10, client.getNumEditorPicks());
+		assertEquals(NUM_BOOKS / 10, client.getEditorPicks(NUM_BOOKS).size());
+	}
+
+	/**
+	 * Tests that the pages of the servers are merged in ISBN order.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testPagesAcrossServers() throws BookStoreException {
+		int token = StockBookPage.FIRST_PAGE;
+		int expectedIsbn = 1;
+
+		do {
+			StockBookPage page = storeManager.getBooksPage(token, 40);
+
+			for (StockBook book : page.getBooks()) {
+				assertEquals(expectedIsbn++, book.getISBN());
+			}
+
+			token = page.getContinuationToken();
+		} while (token != StockBookPage.NO_MORE_PAGES);
+
+		assertEquals(NUM_BOOKS + 1, expectedIsbn);
+	}
+
+	/**
+	 * Tests that adding a node to the ring only moves books to that node, and
+	 * about a quarter of them when going from three to four nodes.
+	 */
+	@Test
+	public void testRingMovesFewBooks() {
+		Map<String, String> nodes = new TreeMap<>();
+
+		for (String node : Arrays.asList("a:8081", "b:8082", "c:8083")) {
+			nodes.put(node, node);
+		}
+
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes, 128);
+		ConsistentHashRing<String> grown = ring.withNode("d:8084", "d:8084");
+		int numMoved = 0;
+
+		for (int isbn = 1; isbn <= 100000; isbn++) {
+			if (!ring.nodeOf(isbn).equals(grown.nodeOf(isbn))) {
+				assertEquals("d:8084", grown.nodeOf(isbn));
+				numMoved++;
+			}
+		}
+
+		assertTrue("moved " + numMoved, numMoved > 15000 && numMoved < 35000);
+		assertEquals(ring.getNodes(), grown.withoutNode("d:8084").getNodes());
+	}
+
+	/**
+	 * Stops the proxies and the servers.
+	 *
+	 * @throws IOException
+	 *             if the shards file cannot be deleted
+	 * @throws InterruptedException
+	 *             if the wait for the servers is interrupted
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws IOException, InterruptedException {
+		if (client != null) {
+			client.stop();
+			storeManager.stop();
+		}
+
+		for (StockManagerHTTPProxy serverStockManager : serverStockManagers.values()) {
+			serverStockManager.stop();
+		}
+
+		for (Process server : servers) {
+			server.destroy();
+			server.waitFor(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		if (shardsFile != null) {
+			Files.delete(shardsFile);
+		}
+	}
+}
@@ -2,7 +2,13 @@ package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -16,9 +22,18 @@ import org.junit.Test;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.CheckpointFile;
+import com.acertainbookstore.business.ColumnarConcurrentCertainBookStore;
+import com.acertainbookstore.business.DurableCertainBookStore;
 import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.OptimisticConcurrentCertainBookStore;
+import com.acertainbookstore.business.PartitionedCertainBookStore;
+import com.acertainbookstore.business.SequencedCertainBookStore;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
+import com.acertainbookstore.business.WriteAheadLog;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
@@ -42,6 +57,18 @@ public class StockManagerTest {
 	/** The local test. */
 	private static boolean localTest = true;
 
+	/** Optimistic locking test */
+	private static boolean optimistic = false;
+
+	/** Columnar store test */
+	private static boolean columnar = false;
+
+	/** Partitioned store test */
+	private static boolean partitioned = false;
+
+	/** Sequenced store test */
+	private static boolean sequenced = false;
+
 	/** The store manager. */
 	private static StockManager storeManager;
 
@@ -56,11 +83,41 @@ public class StockManagerTest {
 		try {
 			String localTestProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_LOCAL_TEST);
 			localTest = (localTestProperty != null) ? Boolean.parseBoolean(localTestProperty) : localTest;
-			
+
+			String optimisticProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_OPTIMISTIC);
+			optimistic = (optimisticProperty != null) ? Boolean.parseBoolean(optimisticProperty) : optimistic;
+
+			String columnarProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+			columnar = (columnarProperty != null) ? Boolean.parseBoolean(columnarProperty) : columnar;
+
+			String partitionedProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_PARTITIONED);
+			partitioned = (partitionedProperty != null) ? Boolean.parseBoolean(partitionedProperty) : partitioned;
+
+			String sequencedProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_SEQUENCED);
+			sequenced = (sequencedProperty != null) ? Boolean.parseBoolean(sequencedProperty) : sequenced;
+
 			if (localTest) {
-				SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
-				storeManager = store;
-				client = store;
+				if (partitioned) {
+					PartitionedCertainBookStore store = new PartitionedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (sequenced) {
+					SequencedCertainBookStore store = new SequencedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (columnar) {
+					ColumnarConcurrentCertainBookStore store = new ColumnarConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (optimistic) {
+					OptimisticConcurrentCertainBookStore store = new OptimisticConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else {
+					SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				}
 			} else {
 				storeManager = new StockManagerHTTPProxy("http://localhost:8081/stock");
 				client = new BookStoreHTTPProxy("http://localhost:8081");
@@ -451,6 +508,57 @@ public class StockManagerTest {
 		assertTrue(booksToAdd.containsAll(listBooks) && booksToAdd.size() == listBooks.size());
 	}
 
+	/**
+	 * Tests that the books are listed page by page in ISBN order, and streamed
+	 * in the same order when running against the server.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetBooksPages() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 4; i > 0; i--) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "Volume " + i, "Donald Knuth", (float) 300,
+					NUM_COPIES, 0, 0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+
+		List<Integer> isbns = new ArrayList<Integer>();
+		int continuationToken = StockBookPage.FIRST_PAGE;
+		int numPages = 0;
+
+		do {
+			StockBookPage page = storeManager.getBooksPage(continuationToken, 2);
+			assertTrue(page.getBooks().size() <= 2);
+
+			for (StockBook book : page.getBooks()) {
+				isbns.add(book.getISBN());
+			}
+
+			continuationToken = page.getContinuationToken();
+			numPages++;
+		} while (continuationToken != StockBookPage.NO_MORE_PAGES);
+
+		assertEquals(3, numPages);
+		assertEquals(Arrays.asList(TEST_ISBN, TEST_ISBN + 1, TEST_ISBN + 2, TEST_ISBN + 3, TEST_ISBN + 4), isbns);
+
+		try {
+			storeManager.getBooksPage(StockBookPage.NO_MORE_PAGES, 2);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		if (!localTest) {
+			List<Integer> streamedIsbns = new ArrayList<Integer>();
+			((StockManagerHTTPProxy) storeManager).streamBooks(book -> streamedIsbns.add(book.getISBN()));
+			assertEquals(isbns, streamedIsbns);
+		}
+	}
+
 	/**
 	 * Tests basic removeAllBooks functionality.
 	 *
@@ -475,6 +583,179 @@ public class StockManagerTest {
 		assertTrue(booksInStoreList.size() == 0);
 	}
 
+	/**
+	 * Tests that a book is in demand after a sale miss and no longer in demand
+	 * after it is restocked.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBooksInDemand() throws BookStoreException {
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInDemand = storeManager.getBooksInDemand();
+		assertEquals(1, booksInDemand.size());
+		assertEquals(TEST_ISBN.intValue(), booksInDemand.get(0).getISBN());
+		assertEquals(1, booksInDemand.get(0).getNumSaleMisses());
+
+		Set<BookCopy> copiesToAdd = new HashSet<BookCopy>();
+		copiesToAdd.add(new BookCopy(TEST_ISBN, 1));
+		storeManager.addCopies(copiesToAdd);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+	}
+
+	/**
+	 * Tests that a store rebuilt from the write-ahead log has the same books,
+	 * including the sale misses of a failed buy, and that a torn record at
+	 * the end of the log is dropped.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRecoverFromWriteAheadLog() throws BookStoreException, IOException {
+		Path logFile = Files.createTempFile("bookstore", ".wal");
+		List<StockBook> booksBefore;
+
+		try {
+			try (WriteAheadLog log = new WriteAheadLog(logFile, true)) {
+				DurableCertainBookStore store = new DurableCertainBookStore(
+						new SingleLockConcurrentCertainBookStore(), log);
+				Set<StockBook> booksToAdd = new HashSet<StockBook>();
+				booksToAdd.add(getDefaultBook());
+				booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "The Art of Computer Programming",
+						"Donald Knuth", (float) 300, NUM_COPIES, 0, 0, 0, false));
+				store.addBooks(booksToAdd);
+
+				Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+				booksToBuy.add(new BookCopy(TEST_ISBN, 2));
+				store.buyBooks(booksToBuy);
+
+				booksToBuy.clear();
+				booksToBuy.add(new BookCopy(TEST_ISBN + 1, NUM_COPIES + 1));
+
+				try {
+					store.buyBooks(booksToBuy);
+					fail();
+				} catch (BookStoreException ex) {
+					;
+				}
+
+				Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+				editorPicks.add(new BookEditorPick(TEST_ISBN, true));
+				store.updateEditorPicks(editorPicks);
+
+				Set<BookRating> ratings = new HashSet<BookRating>();
+				ratings.add(new BookRating(TEST_ISBN, 4));
+				store.rateBooks(ratings);
+
+				booksBefore = store.getBooks();
+			}
+
+			// A crash in the middle of a write leaves a torn record behind.
+			Files.write(logFile, new byte[] { 0, 0, 1, 0, 42 }, StandardOpenOption.APPEND);
+
+			try (WriteAheadLog log = new WriteAheadLog(logFile, true)) {
+				DurableCertainBookStore recovered = new DurableCertainBookStore(
+						new SingleLockConcurrentCertainBookStore(), log);
+				List<StockBook> booksAfter = recovered.getBooks();
+				assertTrue(booksAfter.containsAll(booksBefore) && booksAfter.size() == booksBefore.size());
+				assertEquals(1, recovered.getBooksInDemand().size());
+
+				// The log must accept appends after the torn record was dropped.
+				recovered.removeBooks(Collections.singleton(TEST_ISBN + 1));
+			}
+
+			try (WriteAheadLog log = new WriteAheadLog(logFile, true)) {
+				DurableCertainBookStore recovered = new DurableCertainBookStore(
+						new SingleLockConcurrentCertainBookStore(), log);
+				assertEquals(1, recovered.getBooks().size());
+			}
+		} finally {
+			Files.deleteIfExists(logFile);
+		}
+	}
+
+	/**
+	 * Tests that a store restored from a checkpoint, including books without
+	 * copies, and the log written after it reaches the state before the
+	 * restart, without applying the operations before the checkpoint twice.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRecoverFromCheckpoint() throws BookStoreException, IOException {
+		Path logFile = Files.createTempFile("bookstore", ".wal");
+		Path checkpointFile = Files.createTempFile("bookstore", ".ckpt");
+		List<StockBook> booksBefore;
+
+		try {
+			try (WriteAheadLog log = new WriteAheadLog(logFile, true)) {
+				DurableCertainBookStore store = new DurableCertainBookStore(
+						new SingleLockConcurrentCertainBookStore(), log);
+				Set<StockBook> booksToAdd = new HashSet<StockBook>();
+				booksToAdd.add(getDefaultBook());
+				booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "Structure and Interpretation",
+						"Harold Abelson, Gerald Jay Sussman", (float) 45, NUM_COPIES, 0, 0, 0, false));
+				store.addBooks(booksToAdd);
+
+				Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+				booksToBuy.add(new BookCopy(TEST_ISBN + 1, NUM_COPIES));
+				store.buyBooks(booksToBuy);
+
+				Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+				editorPicks.add(new BookEditorPick(TEST_ISBN, true));
+				store.updateEditorPicks(editorPicks);
+
+				Set<BookRating> ratings = new HashSet<BookRating>();
+				ratings.add(new BookRating(TEST_ISBN, 3));
+				store.rateBooks(ratings);
+
+				store.checkpoint().write(checkpointFile);
+
+				booksToBuy.clear();
+				booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+				store.buyBooks(booksToBuy);
+
+				booksBefore = store.getBooks();
+			}
+
+			CheckpointFile checkpoint = CheckpointFile.read(checkpointFile);
+			assertEquals(2, checkpoint.getBooks().size());
+
+			ColumnarConcurrentCertainBookStore restored = new ColumnarConcurrentCertainBookStore();
+			restored.restoreBooks(checkpoint.getBooks());
+
+			try (WriteAheadLog log = new WriteAheadLog(logFile, true)) {
+				DurableCertainBookStore recovered = new DurableCertainBookStore(restored, log,
+						checkpoint.getSequence());
+				List<StockBook> booksAfter = recovered.getBooks();
+				assertTrue(booksAfter.containsAll(booksBefore) && booksAfter.size() == booksBefore.size());
+				assertEquals(1, recovered.getEditorPicks(1).size());
+				assertEquals(TEST_ISBN.intValue(), recovered.getTopRatedBooks(1).get(0).getISBN());
+			}
+		} finally {
+			Files.deleteIfExists(logFile);
+			Files.deleteIfExists(checkpointFile);
+		}
+	}
+
 	/**
 	 * Tear down after class.
 	 *
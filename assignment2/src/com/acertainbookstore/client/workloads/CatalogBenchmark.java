@@ -0,0 +1,174 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.acertainbookstore.business.BookStoreBook;
+import com.acertainbookstore.business.IntHashBookCatalog;
+import com.acertainbookstore.business.ImmutableStockBook;
+
+/**
+ * {@link CatalogBenchmark} compares the memory footprint and the lookup time
+ * of a {@link HashMap} from boxed ISBNs to books against an
+ * {@link IntHashBookCatalog}. The books themselves are shared by both and are
+ * not counted.
+ *
+ * Usage: CatalogBenchmark [numBooks,...] [lookups]. The defaults are
+ * 1000000,10000000 books and 20000000 lookups.
+ */
+public class CatalogBenchmark {
+
+	/**
+	 * Looks up a book.
+	 */
+	private interface Lookup {
+
+		/**
+		 * Gets the book with the ISBN.
+		 *
+		 * @param isbn
+		 *            the ISBN
+		 * @return the book
+		 */
+		BookStoreBook get(int isbn);
+	}
+
+	/**
+	 * Prevents the instantiation of a new {@link CatalogBenchmark}.
+	 */
+	private CatalogBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 */
+	public static void main(String[] args) {
+		String[] bookCounts = (args.length > 0 ? args[0] : "1000000,10000000").split(",");
+		int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 20000000;
+
+		System.out.println("books\tcatalog\tbytes\tbytes/book\tns/get");
+
+		for (String bookCount : bookCounts) {
+			int numBooks = Integer.parseInt(bookCount.trim());
+			BookStoreBook[] books = new BookStoreBook[numBooks];
+
+			for (int i = 0; i < numBooks; i++) {
+				books[i] = new BookStoreBook(new ImmutableStockBook(i + 1, "Title", "Author", 10, 1, 0, 0, 0, false));
+			}
+
+			runIntHashCatalog(books, numLookups);
+			runHashMap(books, numLookups);
+		}
+	}
+
+	/**
+	 * Measures a {@link HashMap}, as the stores used to keep the books.
+	 *
+	 * @param books
+	 *            the books
+	 * @param numLookups
+	 *            the number of lookups
+	 */
+	private static void runHashMap(BookStoreBook[] books, int numLookups) {
+		long before = usedMemory();
+		Map<Integer, BookStoreBook> bookMap = new HashMap<>();
+
+		for (BookStoreBook book : books) {
+			bookMap.put(book.getISBN(), book);
+		}
+
+		long bytes = usedMemory() - before;
+		report(books.length, "hashmap", bytes, measure(books.length, numLookups, bookMap::get));
+	}
+
+	/**
+	 * Measures an {@link IntHashBookCatalog}.
+	 *
+	 * @param books
+	 *            the books
+	 * @param numLookups
+	 *            the number of lookups
+	 */
+	private static void runIntHashCatalog(BookStoreBook[] books, int numLookups) {
+		long before = usedMemory();
+		IntHashBookCatalog bookMap = new IntHashBookCatalog();
+
+		for (BookStoreBook book : books) {
+			bookMap.put(book.getISBN(), book);
+		}
+
+		long bytes = usedMemory() - before;
+		report(books.length, "int-hash", bytes, measure(books.length, numLookups, bookMap::get));
+	}
+
+	/**
+	 * Looks up random books, once to warm up and once timed.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param numLookups
+	 *            the number of lookups
+	 * @param lookup
+	 *            the lookup
+	 * @return the nanoseconds per lookup
+	 */
+	private static double measure(int numBooks, int numLookups, Lookup lookup) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long found = 0;
+		long start = 0;
+
+		for (int round = 0; round < 2; round++) {
+			start = System.nanoTime();
+
+			for (int i = 0; i < numLookups; i++) {
+				if (lookup.get(1 + random.nextInt(numBooks)) != null) {
+					found++;
+				}
+			}
+		}
+
+		double nanos = (System.nanoTime() - start) / (double) numLookups;
+
+		if (found != 2L * numLookups) {
+			throw new IllegalStateException("Lost books: " + (2L * numLookups - found));
+		}
+
+		return nanos;
+	}
+
+	/**
+	 * Gets the heap in use after a garbage collection.
+	 *
+	 * @return the used heap in bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Prints a result line.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param catalog
+	 *            the name of the catalog
+	 * @param bytes
+	 *            the memory footprint
+	 * @param nanos
+	 *            the nanoseconds per lookup
+	 */
+	private static void report(int numBooks, String catalog, long bytes, double nanos) {
+		System.out.printf("%d\t%s\t%d\t%.1f\t%.1f%n", numBooks, catalog, bytes, bytes / (double) numBooks, nanos);
+	}
+}
@@ -0,0 +1,145 @@
+package com.acertainbookstore.client.workloads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.CheckpointFile;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link CheckpointBenchmark} measures how long a checkpoint pauses a
+ * {@link SingleLockConcurrentCertainBookStore}, how long it takes to write
+ * and to load, and how many buys go through while it is written. Loading is
+ * compared with adding the same books through the stock manager.
+ *
+ * Usage: CheckpointBenchmark [numBooks,...] [directory]. The defaults are
+ * 1000000 books and the temporary directory.
+ */
+public class CheckpointBenchmark {
+
+	/** The number of threads that keep buying during the checkpoint. */
+	private static final int NUM_BUYERS = 4;
+
+	/**
+	 * Prevents the instantiation of a new {@link CheckpointBenchmark}.
+	 */
+	private CheckpointBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] bookCounts = (args.length > 0 ? args[0] : "1000000").split(",");
+		Path directory = Paths.get(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+
+		System.out.println("books\tbytes\tpause ms\twrite ms\tbuys during write\tload ms\trestore ms\tadd ms");
+
+		for (String bookCount : bookCounts) {
+			int numBooks = Integer.parseInt(bookCount.trim());
+			Path file = directory.resolve("bookstore-benchmark.ckpt");
+
+			try {
+				run(numBooks, file);
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Checkpoints and reloads a store of <code>numBooks</code> books.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param file
+	 *            the checkpoint file
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private static void run(int numBooks, Path file) throws BookStoreException, IOException, InterruptedException {
+		Set<StockBook> books = new HashSet<>();
+
+		for (int i = 1; i <= numBooks; i++) {
+			books.add(new ImmutableStockBook(i, "Title " + i, "Author " + i, 10, Integer.MAX_VALUE / 2, 0, 0, 0,
+					i % 100 == 0));
+		}
+
+		SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
+		long start = System.nanoTime();
+		store.addBooks(books);
+		long addNanos = System.nanoTime() - start;
+
+		AtomicBoolean writing = new AtomicBoolean(false);
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicLong buysDuringWrite = new AtomicLong();
+		Thread[] buyers = new Thread[NUM_BUYERS];
+
+		for (int i = 0; i < NUM_BUYERS; i++) {
+			buyers[i] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				while (!done.get()) {
+					try {
+						store.buyBooks(Collections.singleton(new BookCopy(random.nextInt(numBooks) + 1, 1)));
+					} catch (BookStoreException ex) {
+						throw new IllegalStateException(ex);
+					}
+
+					if (writing.get()) {
+						buysDuringWrite.incrementAndGet();
+					}
+				}
+			});
+			buyers[i].start();
+		}
+
+		start = System.nanoTime();
+		CheckpointFile checkpoint = new CheckpointFile(0, store.getBooks());
+		long pauseNanos = System.nanoTime() - start;
+
+		writing.set(true);
+		start = System.nanoTime();
+		checkpoint.write(file);
+		long writeNanos = System.nanoTime() - start;
+		writing.set(false);
+		done.set(true);
+
+		for (Thread buyer : buyers) {
+			buyer.join();
+		}
+
+		start = System.nanoTime();
+		CheckpointFile loaded = CheckpointFile.read(file);
+		long loadNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		new SingleLockConcurrentCertainBookStore().restoreBooks(loaded.getBooks());
+		long restoreNanos = System.nanoTime() - start;
+
+		System.out.printf("%d\t%d\t%.1f\t%.1f\t%d\t%.1f\t%.1f\t%.1f%n", numBooks, Files.size(file), pauseNanos / 1e6,
+				writeNanos / 1e6, buysDuringWrite.get(), loadNanos / 1e6, restoreNanos / 1e6, addNanos / 1e6);
+	}
+}
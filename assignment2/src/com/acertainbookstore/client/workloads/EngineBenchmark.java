@@ -0,0 +1,200 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.SequencedCertainBookStore;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link EngineBenchmark} compares the throughput and the latency of a mixed
+ * workload in a {@link SingleLockConcurrentCertainBookStore}, a
+ * {@link TwoLevelLockingConcurrentCertainBookStore} and a
+ * {@link SequencedCertainBookStore}. Every thread gets a random book, or with
+ * the given probability buys one copy of it or rates it.
+ *
+ * Usage: EngineBenchmark [numThreads,...] [writePercent] [seconds]. The
+ * defaults are 1, 4, 16 and 64 threads, 20% writes and 5 seconds.
+ */
+public class EngineBenchmark {
+
+	/** The number of books in the store. */
+	private static final int NUM_BOOKS = 1000;
+
+	/** The most latencies recorded by a thread. */
+	private static final int MAX_SAMPLES = 1 << 18;
+
+	/**
+	 * Prevents the instantiation of a new {@link EngineBenchmark}.
+	 */
+	private EngineBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] threadCounts = (args.length > 0 ? args[0] : "1,4,16,64").split(",");
+		int writePercent = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println("threads\tstore\treq/s\tp50 us\tp99 us");
+
+		for (String threadCount : threadCounts) {
+			int numThreads = Integer.parseInt(threadCount.trim());
+
+			SingleLockConcurrentCertainBookStore singleLock = new SingleLockConcurrentCertainBookStore();
+			measure(numThreads, "single-lock", singleLock, singleLock, writePercent, seconds);
+
+			TwoLevelLockingConcurrentCertainBookStore twoLevel = new TwoLevelLockingConcurrentCertainBookStore();
+			measure(numThreads, "two-level", twoLevel, twoLevel, writePercent, seconds);
+
+			SequencedCertainBookStore sequenced = new SequencedCertainBookStore();
+			measure(numThreads, "sequenced", sequenced, sequenced, writePercent, seconds);
+			sequenced.stop();
+		}
+	}
+
+	/**
+	 * Adds the books, runs the threads until the time is up and prints a row
+	 * of the results.
+	 *
+	 * @param numThreads
+	 *            the number of threads
+	 * @param store
+	 *            the name of the store
+	 * @param bookStore
+	 *            the store
+	 * @param stockManager
+	 *            the same store
+	 * @param writePercent
+	 *            the percentage of requests that buy or rate a book
+	 * @param seconds
+	 *            the duration of the run
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static void measure(int numThreads, String store, BookStore bookStore, StockManager stockManager,
+			int writePercent, int seconds) throws Exception {
+		Set<StockBook> books = new HashSet<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10, Integer.MAX_VALUE / 2, 0, 0,
+					0, false));
+		}
+
+		stockManager.addBooks(books);
+
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		long[][] samples = new long[numThreads][];
+		int[] numSamples = new int[numThreads];
+		long[] requests = new long[numThreads];
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long[] latencies = new long[MAX_SAMPLES / numThreads + 1];
+				int recorded = 0;
+				long count = 0;
+
+				try {
+					while (true) {
+						long start = System.nanoTime();
+
+						if (start >= deadline) {
+							break;
+						}
+
+						int isbn = 1 + random.nextInt(NUM_BOOKS);
+						int operation = random.nextInt(100);
+
+						if (operation >= writePercent) {
+							bookStore.getBooks(Collections.singleton(isbn));
+						} else if (operation % 2 == 0) {
+							bookStore.buyBooks(Collections.singleton(new BookCopy(isbn, 1)));
+						} else {
+							bookStore.rateBooks(Collections.singleton(new BookRating(isbn, 1 + random.nextInt(5))));
+						}
+
+						long latency = System.nanoTime() - start;
+						count++;
+
+						if (recorded < latencies.length) {
+							latencies[recorded++] = latency;
+						} else {
+							// Keep a uniform sample of all latencies.
+							long slot = random.nextLong(count);
+
+							if (slot < latencies.length) {
+								latencies[(int) slot] = latency;
+							}
+						}
+					}
+				} catch (BookStoreException ex) {
+					throw new IllegalStateException(ex);
+				}
+
+				samples[thread] = latencies;
+				numSamples[thread] = recorded;
+				requests[thread] = count;
+			});
+			threads[t].start();
+		}
+
+		long totalRequests = 0;
+		int totalSamples = 0;
+
+		for (int t = 0; t < numThreads; t++) {
+			threads[t].join();
+			totalRequests += requests[t];
+			totalSamples += numSamples[t];
+		}
+
+		long[] latencies = new long[totalSamples];
+
+		for (int t = 0, offset = 0; t < numThreads; t++) {
+			System.arraycopy(samples[t], 0, latencies, offset, numSamples[t]);
+			offset += numSamples[t];
+		}
+
+		Arrays.sort(latencies);
+		System.out.printf("%d\t%s\t%.0f\t%.1f\t%.1f%n", numThreads, store, totalRequests / (double) seconds,
+				percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0);
+	}
+
+	/**
+	 * Gets a percentile of sorted latencies.
+	 *
+	 * @param latencies
+	 *            the latencies, sorted
+	 * @param fraction
+	 *            the percentile, between 0 and 1
+	 * @return the latency, or 0 if there is none
+	 */
+	private static long percentile(long[] latencies, double fraction) {
+		if (latencies.length == 0) {
+			return 0;
+		}
+
+		return latencies[(int) Math.min(latencies.length - 1, (long) (fraction * latencies.length))];
+	}
+}
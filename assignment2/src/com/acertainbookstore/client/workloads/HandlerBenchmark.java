@@ -0,0 +1,250 @@
+package com.acertainbookstore.client.workloads;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.server.BookStoreHTTPMessageHandler;
+import com.acertainbookstore.server.BookStoreHTTPServerUtility;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+
+/**
+ * {@link BookStoreHTTPMessageHandler} benchmark, with the store invoked on the
+ * bounded pool of threads of the server, with the asynchronous handler, and on
+ * a new virtual thread for every request if the JDK has them (Java 21 or
+ * later). Every connection sends one request after the other: mostly
+ * single-book buys, which wait for the write lock of a
+ * {@link SingleLockConcurrentCertainBookStore}, and some listings of the whole
+ * store, which hold its read lock.
+ *
+ * Usage: HandlerBenchmark [numConnections,...] [seconds] [storeThreads]. The
+ * defaults are 100,1000,2000 connections, 10 seconds and
+ * {@link BookStoreConstants#DEFAULT_STORE_THREADS}.
+ */
+public class HandlerBenchmark {
+
+	/** The port of the server. */
+	private static final int PORT = 8089;
+
+	/** The number of books in the store. */
+	private static final int NUM_BOOKS = 10000;
+
+	/** The percentage of requests that list the whole store. */
+	private static final int PERCENT_LISTINGS = 5;
+
+	/** The threads of the server, as in BookStoreHTTPServer. */
+	private static final int MIN_THREADPOOL_SIZE = 10;
+	private static final int MAX_THREADPOOL_SIZE = 100;
+
+	/** The serializer. */
+	private static final ThreadLocal<BookStoreSerializer> serializer = ThreadLocal
+			.withInitial(() -> BookStoreConstants.BINARY_SERIALIZATION ? new BookStoreKryoSerializer()
+					: new BookStoreXStreamSerializer());
+
+	/**
+	 * Prevents the instantiation of a new {@link HandlerBenchmark}.
+	 */
+	private HandlerBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] connectionCounts = (args.length > 0 ? args[0] : "100,1000,2000").split(",");
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int storeThreads = args.length > 2 ? Integer.parseInt(args[2]) : BookStoreConstants.DEFAULT_STORE_THREADS;
+
+		System.out.println("connections\thandler\trequests/s\tmean ms\tmax ms\tfailures");
+
+		for (String connectionCount : connectionCounts) {
+			int numConnections = Integer.parseInt(connectionCount.trim());
+			run(numConnections, seconds, 0, false);
+			run(numConnections, seconds, storeThreads, false);
+			run(numConnections, seconds, 0, true);
+		}
+	}
+
+	/**
+	 * Runs the connections against a new server for <code>seconds</code>.
+	 *
+	 * @param numConnections
+	 *            the number of connections
+	 * @param seconds
+	 *            the duration
+	 * @param storeThreads
+	 *            the threads of the asynchronous handler, or 0 for the
+	 *            blocking handler
+	 * @param virtualThreads
+	 *            whether the server runs every request on a new virtual
+	 *            thread; the run is skipped if the JDK has none
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static void run(int numConnections, int seconds, int storeThreads, boolean virtualThreads)
+			throws Exception {
+		ExecutorService serverExecutor = virtualThreads ? BookStoreUtility.newVirtualThreadExecutor() : null;
+
+		if (virtualThreads && serverExecutor == null) {
+			return;
+		}
+
+		SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
+		Set<StockBook> books = new HashSet<>();
+
+		for (int i = 1; i <= NUM_BOOKS; i++) {
+			books.add(new ImmutableStockBook(i, "Title " + i, "Author " + i, 10, Integer.MAX_VALUE / 2, 0, 0, 0, false));
+		}
+
+		store.addBooks(books);
+
+		ExecutorService storeExecutor = storeThreads > 0 ? Executors.newFixedThreadPool(storeThreads) : null;
+		ThreadPool threadpool = (serverExecutor != null) ? new ExecutorThreadPool(serverExecutor)
+				: new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
+		Server server = BookStoreHTTPServerUtility.startServer(PORT,
+				new BookStoreHTTPMessageHandler(store, store, storeExecutor), threadpool);
+
+		HttpClient client = new HttpClient();
+		client.setMaxConnectionsPerDestination(numConnections);
+		client.setMaxRequestsQueuedPerDestination(numConnections);
+		client.setConnectTimeout(BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS);
+		client.start();
+
+		LongAdder completed = new LongAdder();
+		LongAdder failures = new LongAdder();
+		LongAdder totalNanos = new LongAdder();
+		long[] maxNanos = new long[1];
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		CountDownLatch done = new CountDownLatch(numConnections);
+		long start = System.nanoTime();
+
+		for (int i = 0; i < numConnections; i++) {
+			sendNext(client, deadline, done, completed, failures, totalNanos, maxNanos);
+		}
+
+		done.await();
+		long elapsedNanos = System.nanoTime() - start;
+
+		client.stop();
+		server.stop();
+
+		if (storeExecutor != null) {
+			storeExecutor.shutdown();
+		}
+
+		long numCompleted = completed.sum();
+		System.out.printf("%d\t%s\t%.0f\t%.1f\t%.1f\t%d%n", numConnections,
+				virtualThreads ? "virtual" : storeThreads > 0 ? "async/" + storeThreads : "blocking", numCompleted * 1e9 / elapsedNanos,
+				numCompleted > 0 ? totalNanos.sum() / 1e6 / numCompleted : 0.0, maxNanos[0] / 1e6, failures.sum());
+	}
+
+	/**
+	 * Sends the next request of a connection, unless the deadline has passed.
+	 *
+	 * @param client
+	 *            the client
+	 * @param deadline
+	 *            the deadline, in nanoseconds
+	 * @param done
+	 *            counted down when the connection stops
+	 * @param completed
+	 *            the number of completed requests
+	 * @param failures
+	 *            the number of failed requests
+	 * @param totalNanos
+	 *            the total latency of the completed requests
+	 * @param maxNanos
+	 *            the maximum latency
+	 */
+	private static void sendNext(HttpClient client, long deadline, CountDownLatch done, LongAdder completed,
+			LongAdder failures, LongAdder totalNanos, long[] maxNanos) {
+		long sent = System.nanoTime();
+
+		if (sent - deadline >= 0) {
+			done.countDown();
+			return;
+		}
+
+		newRequest(client).send(new BufferingResponseListener() {
+			@Override
+			public void onComplete(Result result) {
+				long latencyNanos = System.nanoTime() - sent;
+
+				if (result.isFailed() || result.getResponse().getStatus() != 200) {
+					failures.increment();
+				} else {
+					completed.increment();
+					totalNanos.add(latencyNanos);
+
+					synchronized (maxNanos) {
+						maxNanos[0] = Math.max(maxNanos[0], latencyNanos);
+					}
+				}
+
+				sendNext(client, deadline, done, completed, failures, totalNanos, maxNanos);
+			}
+		});
+	}
+
+	/**
+	 * Creates a listing of the whole store or a buy of one copy of a random
+	 * book.
+	 *
+	 * @param client
+	 *            the client
+	 * @return the request
+	 */
+	private static Request newRequest(HttpClient client) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String serverAddress = "http://localhost:" + PORT;
+
+		if (random.nextInt(100) < PERCENT_LISTINGS) {
+			return client.newRequest(serverAddress + "/stock/" + BookStoreMessageTag.LISTBOOKS).method(HttpMethod.GET);
+		}
+
+		Set<BookCopy> booksToBuy = Collections.singleton(new BookCopy(random.nextInt(NUM_BOOKS) + 1, 1));
+		byte[] serializedValue;
+
+		try {
+			serializedValue = serializer.get().serialize(booksToBuy);
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		return client.POST(serverAddress + "/" + BookStoreMessageTag.BUYBOOKS)
+				.content(new BytesContentProvider(serializedValue));
+	}
+}
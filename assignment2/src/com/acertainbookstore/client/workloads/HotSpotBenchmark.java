@@ -0,0 +1,145 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link HotSpotBenchmark} compares the throughput of purchases of a few hot
+ * books in a {@link SingleLockConcurrentCertainBookStore}, and in a
+ * {@link TwoLevelLockingConcurrentCertainBookStore} that takes the write locks
+ * of the books, that combines the purchases of every stripe, or that buys
+ * under the read locks with escrow. Every thread buys one copy of a random hot
+ * book.
+ *
+ * Usage: HotSpotBenchmark [numThreads,...] [numHotBooks] [seconds]. The
+ * defaults are 1, 4, 16 and 64 threads, 4 hot books and 5 seconds.
+ */
+public class HotSpotBenchmark {
+
+	/**
+	 * Prevents the instantiation of a new {@link HotSpotBenchmark}.
+	 */
+	private HotSpotBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] threadCounts = (args.length > 0 ? args[0] : "1,4,16,64").split(",");
+		int numHotBooks = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println("threads\tstore\treq/s");
+
+		for (String threadCount : threadCounts) {
+			int numThreads = Integer.parseInt(threadCount.trim());
+
+			SingleLockConcurrentCertainBookStore singleLock = new SingleLockConcurrentCertainBookStore();
+			report(numThreads, "single-lock", measure(singleLock, singleLock, numThreads, numHotBooks, seconds));
+
+			TwoLevelLockingConcurrentCertainBookStore twoLevel = new TwoLevelLockingConcurrentCertainBookStore(
+					BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, false,
+					false);
+			report(numThreads, "two-level", measure(twoLevel, twoLevel, numThreads, numHotBooks, seconds));
+
+			TwoLevelLockingConcurrentCertainBookStore combining = new TwoLevelLockingConcurrentCertainBookStore(
+					BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, true,
+					false);
+			report(numThreads, "combining", measure(combining, combining, numThreads, numHotBooks, seconds));
+
+			TwoLevelLockingConcurrentCertainBookStore escrow = new TwoLevelLockingConcurrentCertainBookStore(
+					BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, BookStoreConstants.DEFAULT_LOCK_STRIPES, false,
+					true);
+			report(numThreads, "escrow", measure(escrow, escrow, numThreads, numHotBooks, seconds));
+		}
+	}
+
+	/**
+	 * Adds the hot books and runs the threads until the time is up.
+	 *
+	 * @param bookStore
+	 *            the store
+	 * @param stockManager
+	 *            the same store
+	 * @param numThreads
+	 *            the number of threads
+	 * @param numHotBooks
+	 *            the number of hot books
+	 * @param seconds
+	 *            the duration of the run
+	 * @return the requests per second
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static double measure(BookStore bookStore, StockManager stockManager, int numThreads, int numHotBooks,
+			int seconds) throws Exception {
+		Set<StockBook> books = new HashSet<>();
+
+		for (int isbn = 1; isbn <= numHotBooks; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10, Integer.MAX_VALUE / 2, 0,
+					0, 0, false));
+		}
+
+		stockManager.addBooks(books);
+
+		LongAdder requests = new LongAdder();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				try {
+					while (System.nanoTime() < deadline) {
+						bookStore.buyBooks(Collections.singleton(new BookCopy(1 + random.nextInt(numHotBooks), 1)));
+						requests.increment();
+					}
+				} catch (BookStoreException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return requests.sum() / (double) seconds;
+	}
+
+	/**
+	 * Prints a row of the results.
+	 *
+	 * @param numThreads
+	 *            the number of threads
+	 * @param store
+	 *            the store
+	 * @param throughput
+	 *            the requests per second
+	 */
+	private static void report(int numThreads, String store, double throughput) {
+		System.out.printf("%d\t%s\t%.0f%n", numThreads, store, throughput);
+	}
+}
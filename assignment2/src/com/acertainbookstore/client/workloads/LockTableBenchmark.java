@@ -0,0 +1,230 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.acertainbookstore.business.StripedLockTable;
+import com.acertainbookstore.utils.BookStoreConstants;
+
+/**
+ * {@link LockTableBenchmark} compares the memory footprint and the throughput
+ * of one {@link ReentrantReadWriteLock} per ISBN in a {@link ConcurrentHashMap}
+ * against a {@link StripedLockTable}.
+ *
+ * Usage: LockTableBenchmark [numBooks,...] [numThreads] [seconds]. The
+ * defaults are 1000000,10000000 books, one thread per processor and 5
+ * seconds. The per-ISBN locks for 10M books need a heap of several GB.
+ */
+public class LockTableBenchmark {
+
+	/** The number of books locked by every request. */
+	private static final int BOOKS_PER_REQUEST = 4;
+
+	/**
+	 * Plans the locks of a request.
+	 */
+	private interface LockPlanner {
+
+		/**
+		 * Gets the locks of the books, in the order to take them.
+		 *
+		 * @param isbns
+		 *            the ISBNs, sorted
+		 * @return the locks
+		 */
+		ReadWriteLock[] plan(int[] isbns);
+	}
+
+	/**
+	 * Prevents the instantiation of a new {@link LockTableBenchmark}.
+	 */
+	private LockTableBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		String[] bookCounts = (args.length > 0 ? args[0] : "1000000,10000000").split(",");
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println("books\ttable\tbytes\tbytes/book\treq/s");
+
+		for (String bookCount : bookCounts) {
+			int numBooks = Integer.parseInt(bookCount.trim());
+			runStripedLocks(numBooks, numThreads, seconds);
+			runPerIsbnLocks(numBooks, numThreads, seconds);
+		}
+	}
+
+	/**
+	 * Measures one lock per ISBN, looked up as the two-level store used to.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	private static void runPerIsbnLocks(int numBooks, int numThreads, int seconds) throws InterruptedException {
+		long before = usedMemory();
+		ConcurrentHashMap<Integer, ReadWriteLock> lockMap;
+
+		try {
+			lockMap = new ConcurrentHashMap<>();
+
+			for (int isbn = 1; isbn <= numBooks; isbn++) {
+				lockMap.put(isbn, new ReentrantReadWriteLock());
+			}
+		} catch (OutOfMemoryError ex) {
+			System.out.println(numBooks + "\tper-isbn\tout of memory");
+			return;
+		}
+
+		long bytes = usedMemory() - before;
+		final ConcurrentHashMap<Integer, ReadWriteLock> locks = lockMap;
+		double throughput = measure(numBooks, numThreads, seconds, isbns -> {
+			ReadWriteLock[] plan = new ReadWriteLock[isbns.length];
+
+			// Every book exists, so the check only pays for the extra lookup.
+			for (int i = 0; i < isbns.length; i++) {
+				plan[i] = locks.containsKey(isbns[i]) ? locks.get(isbns[i]) : null;
+			}
+
+			return plan;
+		});
+
+		report(numBooks, "per-isbn", bytes, throughput);
+	}
+
+	/**
+	 * Measures a {@link StripedLockTable} with the default number of stripes.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	private static void runStripedLocks(int numBooks, int numThreads, int seconds) throws InterruptedException {
+		long before = usedMemory();
+		StripedLockTable lockTable = new StripedLockTable(BookStoreConstants.DEFAULT_LOCK_STRIPES);
+		long bytes = usedMemory() - before;
+
+		double throughput = measure(numBooks, numThreads, seconds, isbns -> {
+			int[] stripes = lockTable.stripesOf(isbns);
+			ReadWriteLock[] plan = new ReadWriteLock[stripes.length];
+
+			for (int i = 0; i < stripes.length; i++) {
+				plan[i] = lockTable.getStripe(stripes[i]);
+			}
+
+			return plan;
+		});
+
+		report(numBooks, "striped-" + lockTable.size(), bytes, throughput);
+	}
+
+	/**
+	 * Runs requests that write lock random books until the time is up.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @param planner
+	 *            the lock planner
+	 * @return the requests per second
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	private static double measure(int numBooks, int numThreads, int seconds, LockPlanner planner)
+			throws InterruptedException {
+		LongAdder requests = new LongAdder();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int[] isbns = new int[BOOKS_PER_REQUEST];
+
+				while (System.nanoTime() < deadline) {
+					for (int i = 0; i < isbns.length; i++) {
+						isbns[i] = 1 + random.nextInt(numBooks);
+					}
+
+					Arrays.sort(isbns);
+					ReadWriteLock[] plan = planner.plan(isbns);
+
+					for (ReadWriteLock lock : plan) {
+						lock.writeLock().lock();
+					}
+
+					for (int i = plan.length - 1; i >= 0; i--) {
+						plan[i].writeLock().unlock();
+					}
+
+					requests.increment();
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return requests.sum() / (double) seconds;
+	}
+
+	/**
+	 * Gets the heap in use after a garbage collection.
+	 *
+	 * @return the used heap in bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Prints a result line.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @param table
+	 *            the name of the lock table
+	 * @param bytes
+	 *            the memory footprint
+	 * @param throughput
+	 *            the requests per second
+	 */
+	private static void report(int numBooks, String table, long bytes, double throughput) {
+		System.out.printf("%d\t%s\t%d\t%.1f\t%.0f%n", numBooks, table, bytes, bytes / (double) numBooks, throughput);
+	}
+}
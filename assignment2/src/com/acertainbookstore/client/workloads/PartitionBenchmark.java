@@ -0,0 +1,155 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.PartitionedCertainBookStore;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link PartitionBenchmark} compares the throughput of a
+ * {@link SingleLockConcurrentCertainBookStore} against a
+ * {@link PartitionedCertainBookStore} with one partition per thread. Every
+ * thread buys single books, with a few multi-book buys and listings of the
+ * whole store in between.
+ *
+ * Usage: PartitionBenchmark [numThreads,...] [seconds]. The defaults are 1, 2,
+ * 4 and 8 threads and 5 seconds.
+ */
+public class PartitionBenchmark {
+
+	/** The number of books in the store. */
+	private static final int NUM_BOOKS = 100000;
+
+	/** The number of books bought by a multi-book buy. */
+	private static final int BOOKS_PER_MULTI_BUY = 8;
+
+	/** Every thread lists the whole store once per this many requests. */
+	private static final int REQUESTS_PER_LISTING = 10000;
+
+	/** Every thread buys several books once per this many requests. */
+	private static final int REQUESTS_PER_MULTI_BUY = 10;
+
+	/**
+	 * Prevents the instantiation of a new {@link PartitionBenchmark}.
+	 */
+	private PartitionBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] threadCounts = (args.length > 0 ? args[0] : "1,2,4,8").split(",");
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		System.out.println("threads\tstore\treq/s");
+
+		for (String threadCount : threadCounts) {
+			int numThreads = Integer.parseInt(threadCount.trim());
+
+			SingleLockConcurrentCertainBookStore singleLock = new SingleLockConcurrentCertainBookStore();
+			report(numThreads, "single-lock", measure(singleLock, singleLock, numThreads, seconds));
+
+			PartitionedCertainBookStore partitioned = new PartitionedCertainBookStore(numThreads,
+					ForkJoinPool.commonPool());
+			report(numThreads, "partitioned", measure(partitioned, partitioned, numThreads, seconds));
+		}
+	}
+
+	/**
+	 * Fills the store and runs the threads until the time is up.
+	 *
+	 * @param bookStore
+	 *            the store
+	 * @param stockManager
+	 *            the same store
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @return the requests per second
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static double measure(BookStore bookStore, StockManager stockManager, int numThreads, int seconds)
+			throws Exception {
+		Set<StockBook> books = new HashSet<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10, Integer.MAX_VALUE / 2, 0,
+					0, 0, false));
+		}
+
+		stockManager.addBooks(books);
+
+		LongAdder requests = new LongAdder();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				try {
+					for (int count = 1; System.nanoTime() < deadline; count++) {
+						if (count % REQUESTS_PER_LISTING == 0) {
+							stockManager.getBooks();
+						} else if (count % REQUESTS_PER_MULTI_BUY == 0) {
+							Set<BookCopy> booksToBuy = new HashSet<>();
+
+							while (booksToBuy.size() < BOOKS_PER_MULTI_BUY) {
+								booksToBuy.add(new BookCopy(1 + random.nextInt(NUM_BOOKS), 1));
+							}
+
+							bookStore.buyBooks(booksToBuy);
+						} else {
+							bookStore.buyBooks(Collections.singleton(new BookCopy(1 + random.nextInt(NUM_BOOKS), 1)));
+						}
+
+						requests.increment();
+					}
+				} catch (BookStoreException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return requests.sum() / (double) seconds;
+	}
+
+	/**
+	 * Prints a row of the results.
+	 *
+	 * @param numThreads
+	 *            the number of threads
+	 * @param store
+	 *            the store
+	 * @param throughput
+	 *            the requests per second
+	 */
+	private static void report(int numThreads, String store, double throughput) {
+		System.out.printf("%d\t%s\t%.0f%n", numThreads, store, throughput);
+	}
+}
@@ -0,0 +1,147 @@
+package com.acertainbookstore.client.workloads;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.DurableCertainBookStore;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
+import com.acertainbookstore.business.WriteAheadLog;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link WriteAheadLogBenchmark} measures the throughput of single-book buys
+ * without a log, with a {@link WriteAheadLog} that only writes, and with one
+ * that forces every group commit to disk.
+ *
+ * Usage: WriteAheadLogBenchmark [numThreads,...] [seconds] [directory]. The
+ * defaults are 1,8,64 threads, 5 seconds and the temporary directory.
+ */
+public class WriteAheadLogBenchmark {
+
+	/** The number of books in the store. */
+	private static final int NUM_BOOKS = 1000;
+
+	/**
+	 * Prevents the instantiation of a new {@link WriteAheadLogBenchmark}.
+	 */
+	private WriteAheadLogBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] threadCounts = (args.length > 0 ? args[0] : "1,8,64").split(",");
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Path parent = Paths.get(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"));
+		Path directory = Files.createTempDirectory(parent, "wal");
+
+		System.out.println("threads\tlog\tbuys/s\tbuys/flush");
+
+		try {
+			for (String threadCount : threadCounts) {
+				int numThreads = Integer.parseInt(threadCount.trim());
+				run(numThreads, seconds, null, false);
+				run(numThreads, seconds, directory, false);
+				run(numThreads, seconds, directory, true);
+			}
+		} finally {
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	/**
+	 * Runs buys until the time is up.
+	 *
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @param directory
+	 *            the directory of the log, or null for no log
+	 * @param sync
+	 *            whether the log forces its writes
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static void run(int numThreads, int seconds, Path directory, boolean sync) throws Exception {
+		TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			booksToAdd.add(new ImmutableStockBook(isbn, "Title", "Author", 10, Integer.MAX_VALUE / 2, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+		Path logFile = (directory != null) ? Files.createTempFile(directory, "bench", ".wal") : null;
+
+		try (WriteAheadLog log = (logFile != null) ? new WriteAheadLog(logFile, sync) : null) {
+			BookStore client = (log != null) ? new DurableCertainBookStore(store, log) : store;
+			long buys = measure(client, numThreads, seconds);
+			String name = (log == null) ? "off" : (sync ? "fsync" : "write");
+			double perFlush = (log == null) ? 0 : buys / (double) Math.max(1, log.getNumFlushes());
+			System.out.printf("%d\t%s\t%.0f\t%.1f%n", numThreads, name, buys / (double) seconds, perFlush);
+		} finally {
+			if (logFile != null) {
+				Files.deleteIfExists(logFile);
+			}
+		}
+	}
+
+	/**
+	 * Runs threads that buy one copy of a random book until the time is up.
+	 *
+	 * @param client
+	 *            the book store
+	 * @param numThreads
+	 *            the number of threads
+	 * @param seconds
+	 *            the duration of the run
+	 * @return the number of buys
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	private static long measure(BookStore client, int numThreads, int seconds) throws InterruptedException {
+		LongAdder buys = new LongAdder();
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				while (System.nanoTime() < deadline) {
+					try {
+						client.buyBooks(Collections.singleton(new BookCopy(1 + random.nextInt(NUM_BOOKS), 1)));
+						buys.increment();
+					} catch (BookStoreException ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return buys.sum();
+	}
+}
@@ -0,0 +1,27 @@
+package com.acertainbookstore.interfaces;
+
+import java.util.Collection;
+
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link CheckpointableStockManager} is a {@link StockManager} that can be
+ * loaded from a checkpoint of its books, as written from
+ * {@link StockManager#getBooks()}.
+ */
+public interface CheckpointableStockManager extends StockManager {
+
+	/**
+	 * Adds the books with all their counters and editor pick flags, replacing
+	 * any books with the same ISBNs. Unlike
+	 * {@link StockManager#addBooks(java.util.Set)}, books without copies are
+	 * accepted, since the books come from a checkpoint of a valid store.
+	 *
+	 * @param books
+	 *            the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public void restoreBooks(Collection<StockBook> books) throws BookStoreException;
+}
@@ -0,0 +1,20 @@
+package com.acertainbookstore.interfaces;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link SampleableBookStore} is a {@link BookStore} that tells how many
+ * editor picks {@link BookStore#getEditorPicks(int)} draws from, so that the
+ * picks of several stores can be sampled together uniformly.
+ */
+public interface SampleableBookStore extends BookStore {
+
+	/**
+	 * Gets the number of editor picks.
+	 *
+	 * @return the number of editor picks
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public int getNumEditorPicks() throws BookStoreException;
+}
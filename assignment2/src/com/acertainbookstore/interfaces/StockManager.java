@@ -6,6 +6,7 @@ import java.util.Set;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
 import com.acertainbookstore.utils.BookStoreException;
 
 /**
@@ -43,6 +44,21 @@ public interface StockManager {
 	 */
 	public List<StockBook> getBooks() throws BookStoreException;
 
+	/**
+	 * Gets a page of the books in the bookstore, in ISBN order. Unlike
+	 * {@link #getBooks()}, the store can be listed in pages of bounded size.
+	 *
+	 * @param continuationToken
+	 *            {@link StockBookPage#FIRST_PAGE}, or the continuation token of
+	 *            the previous page
+	 * @param maxBooks
+	 *            the maximum number of books in the page
+	 * @return the page
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public StockBookPage getBooksPage(int continuationToken, int maxBooks) throws BookStoreException;
+
 	/**
 	 * Gets the books matching the set of ISBNs given, is different to getBooks
 	 * in the BookStore interface because of the return type of the books.
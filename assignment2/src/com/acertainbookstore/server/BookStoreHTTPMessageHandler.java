@@ -1,22 +1,36 @@
 package com.acertainbookstore.server;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StockBookPage;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
@@ -24,7 +38,6 @@ import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link BookStoreHTTPMessageHandler} implements the message handler class
@@ -37,24 +50,57 @@ import com.esotericsoftware.kryo.io.Input;
  * @see CertainBookStore
  */
 public class BookStoreHTTPMessageHandler extends AbstractHandler {
+	/** The request attribute that holds the request content once it is decoded. */
+	private static final String REQUEST_CONTENT_ATTRIBUTE = BookStoreHTTPMessageHandler.class.getName() + ".content";
+
+	/** The value of the request attribute when the content decodes to null. */
+	private static final Object NULL_CONTENT = new Object();
+
 	/** The book store. */
 	private BookStore bookStore = null;
 	
 	/** The stock manager. */
 	private StockManager stockManager = null;
 
+	/** The executor that invokes the store, or null to invoke it directly. */
+	private Executor storeExecutor = null;
+
+	/** The fence of the books moved to other servers. */
+	private final MigrationFence migrationFence = new MigrationFence();
+
 	/** The serializer. */
 	private static ThreadLocal<BookStoreSerializer> serializer;
 
 	/**
-	 * Instantiates a new {@link BookStoreHTTPMessageHandler}.
+	 * Instantiates a new {@link BookStoreHTTPMessageHandler} that handles
+	 * requests on the threads of the server.
 	 *
 	 * @param bookStore
 	 *            the book store
+	 * @param stockManager
+	 *            the stock manager
 	 */
 	public BookStoreHTTPMessageHandler(BookStore bookStore, StockManager stockManager) {
+		this(bookStore, stockManager, null);
+	}
+
+	/**
+	 * Instantiates a new {@link BookStoreHTTPMessageHandler}. With a store
+	 * executor, the threads of the server only hand requests over to it as
+	 * asynchronous requests, so that they are not blocked while the store
+	 * waits for locks.
+	 *
+	 * @param bookStore
+	 *            the book store
+	 * @param stockManager
+	 *            the stock manager
+	 * @param storeExecutor
+	 *            the executor that invokes the store, or null
+	 */
+	public BookStoreHTTPMessageHandler(BookStore bookStore, StockManager stockManager, Executor storeExecutor) {
 		this.bookStore = bookStore;
 		this.stockManager = stockManager;
+		this.storeExecutor = storeExecutor;
 
 		// Setup the type of serializer.
 		if (BookStoreConstants.BINARY_SERIALIZATION) {
@@ -88,6 +134,91 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 			messageTag = BookStoreUtility.convertURItoMessageTag(requestURI);
 		}
 
+		if (storeExecutor == null) {
+			dispatch(messageTag, request, response);
+		} else {
+			dispatchAsync(messageTag, request, response);
+		}
+
+		// Mark the request as handled so that the HTTP response can be sent
+		baseRequest.setHandled(true);
+	}
+
+	/**
+	 * Hands the request over to the store executor and returns. The response
+	 * is sent when the executor has handled the request.
+	 *
+	 * @param messageTag
+	 *            the message tag, or null
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void dispatchAsync(BookStoreMessageTag messageTag, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		// The body is read here, so that store threads never wait for it. Only
+		// POST requests have one, which may come without a Content-Length.
+		if (HttpMethod.POST.is(request.getMethod())) {
+			Object content = readRequestContent(request);
+			request.setAttribute(REQUEST_CONTENT_ATTRIBUTE, (content != null) ? content : NULL_CONTENT);
+		}
+
+		AsyncContext asyncContext = request.startAsync();
+
+		// Requests are only bounded by the store, e.g. its lock timeout.
+		asyncContext.setTimeout(0);
+
+		try {
+			storeExecutor.execute(() -> {
+				try {
+					dispatch(messageTag, request, response);
+				} catch (IOException | RuntimeException ex) {
+					sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				} finally {
+					asyncContext.complete();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			asyncContext.complete();
+		}
+	}
+
+	/**
+	 * Sends an error status, unless the response has been committed.
+	 *
+	 * @param response
+	 *            the response
+	 * @param status
+	 *            the status
+	 */
+	private void sendError(HttpServletResponse response, int status) {
+		try {
+			if (!response.isCommitted()) {
+				response.sendError(status);
+			}
+		} catch (IOException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Decodes the request and invokes the store.
+	 *
+	 * @param messageTag
+	 *            the message tag, or null
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void dispatch(BookStoreMessageTag messageTag, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
 		// The RequestURI before the switch.
 		if (messageTag == null) {
 			System.err.println("No message tag.");
@@ -113,6 +244,14 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				listBooks(response);
 				break;
 
+			case LISTBOOKSPAGE:
+				listBooksPage(request, response);
+				break;
+
+			case STREAMBOOKS:
+				streamBooks(response);
+				break;
+
 			case UPDATEEDITORPICKS:
 				updateEditorPicks(request, response);
 				break;
@@ -129,18 +268,47 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				getEditorPicks(request, response);
 				break;
 
+			case COUNTEDITORPICKS:
+				countEditorPicks(response);
+				break;
+
 			case GETSTOCKBOOKSBYISBN:
 				getStockBooksByISBN(request, response);
 				break;
 
+			case GETBOOKSINDEMAND:
+				getBooksInDemand(response);
+				break;
+
+			case RATEBOOKS:
+				rateBooks(request, response);
+				break;
+
+			case GETTOPRATEDBOOKS:
+				getTopRatedBooks(request, response);
+				break;
+
+			case FENCEBOOKS:
+				fenceBooks(request, response);
+				break;
+
+			case UNFENCEBOOKS:
+				unfenceBooks(request, response);
+				break;
+
+			case RESTOREBOOKS:
+				restoreBooks(request, response);
+				break;
+
+			case RELEASEBOOKS:
+				releaseBooks(request, response);
+				break;
+
 			default:
 				System.err.println("Unsupported message tag.");
 				break;
 			}
 		}
-
-		// Mark the request as handled so that the HTTP response can be sent
-		baseRequest.setHandled(true);
 	}
 
 	/**
@@ -155,13 +323,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			bookStoreResponse.setList(stockManager.getBooksByISBN(isbnSet));
+			MigrationFence.Admission admitted = migrationFence.admit(isbnSet, Integer::intValue, false);
+
+			try {
+				bookStoreResponse.setList(stockManager.getBooksByISBN(isbnSet));
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -195,6 +367,89 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		response.getOutputStream().write(serializedResponseContent);
 	}
 
+	/**
+	 * Counts the editor picks, as a list holding the count.
+	 *
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void countEditorPicks(HttpServletResponse response) throws IOException {
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			if (!(bookStore instanceof SampleableBookStore)) {
+				throw new BookStoreException(BookStoreConstants.COUNT_UNSUPPORTED);
+			}
+
+			List<Integer> numPicks = new ArrayList<>(1);
+			numPicks.add(((SampleableBookStore) bookStore).getNumEditorPicks());
+			bookStoreResponse.setList(numPicks);
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Gets the top rated books.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void getTopRatedBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String numBooksString = URLDecoder.decode(request.getParameter(BookStoreConstants.BOOK_NUM_PARAM), "UTF-8");
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			int numBooks = BookStoreUtility.convertStringToInt(numBooksString);
+			bookStoreResponse.setList(bookStore.getTopRatedBooks(numBooks));
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Rates books.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void rateBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Set<BookRating> bookRatings = (Set<BookRating>) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			MigrationFence.Admission admitted = migrationFence.admit(bookRatings, BookRating::getISBN, true);
+
+			try {
+				bookStore.rateBooks(bookRatings);
+			} finally {
+				admitted.release();
+			}
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
 	/**
 	 * Gets the books.
 	 *
@@ -207,13 +462,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			bookStoreResponse.setList(bookStore.getBooks(isbnSet));
+			MigrationFence.Admission admitted = migrationFence.admit(isbnSet, Integer::intValue, false);
+
+			try {
+				bookStoreResponse.setList(bookStore.getBooks(isbnSet));
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -234,13 +493,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void buyBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			bookStore.buyBooks(bookCopiesToBuy);
+			MigrationFence.Admission admitted = migrationFence.admit(bookCopiesToBuy, BookCopy::getISBN, true);
+
+			try {
+				bookStore.buyBooks(bookCopiesToBuy);
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -261,14 +524,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void updateEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) serializer.get()
-				.deserialize(serializedRequestContent);
+		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			stockManager.updateEditorPicks(mapEditorPicksValues);
+			MigrationFence.Admission admitted = migrationFence.admit(mapEditorPicksValues, BookEditorPick::getISBN, true);
+
+			try {
+				stockManager.updateEditorPicks(mapEditorPicksValues);
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -297,6 +563,90 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		response.getOutputStream().write(serializedResponseContent);
 	}
 
+	/**
+	 * Lists a page of the books.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void listBooksPage(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			int continuationToken = BookStoreUtility
+					.convertStringToInt(request.getParameter(BookStoreConstants.CONTINUATION_TOKEN_PARAM));
+			int maxBooks = BookStoreUtility.convertStringToInt(request.getParameter(BookStoreConstants.BOOK_NUM_PARAM));
+			bookStoreResponse.setList(new ArrayList<>(stockManager.getBooksPage(continuationToken, maxBooks).getBooks()));
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Streams the books page by page. Every page is written as its length and
+	 * a serialized response and flushed, so the response is sent in chunks;
+	 * a length of zero ends the stream. An error ends the stream after the
+	 * response that holds it.
+	 *
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void streamBooks(HttpServletResponse response) throws IOException {
+		DataOutputStream out = new DataOutputStream(response.getOutputStream());
+		int continuationToken = StockBookPage.FIRST_PAGE;
+
+		do {
+			BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+			try {
+				StockBookPage page = stockManager.getBooksPage(continuationToken, BookStoreConstants.STREAM_PAGE_SIZE);
+				bookStoreResponse.setList(new ArrayList<>(page.getBooks()));
+				continuationToken = page.getContinuationToken();
+			} catch (BookStoreException ex) {
+				bookStoreResponse.setException(ex);
+				continuationToken = StockBookPage.NO_MORE_PAGES;
+			}
+
+			byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+			out.writeInt(serializedResponseContent.length);
+			out.write(serializedResponseContent);
+			out.flush();
+		} while (continuationToken != StockBookPage.NO_MORE_PAGES);
+
+		out.writeInt(0);
+		out.flush();
+	}
+
+	/**
+	 * Gets the books in demand.
+	 *
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void getBooksInDemand(HttpServletResponse response) throws IOException {
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			bookStoreResponse.setList(stockManager.getBooksInDemand());
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
 	/**
 	 * Adds the copies.
 	 *
@@ -309,13 +659,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addCopies(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> listBookCopies = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> listBookCopies = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			stockManager.addCopies(listBookCopies);
+			MigrationFence.Admission admitted = migrationFence.admit(listBookCopies, BookCopy::getISBN, true);
+
+			try {
+				stockManager.addCopies(listBookCopies);
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -336,13 +690,17 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<StockBook> newBooks = (Set<StockBook>) serializer.get().deserialize(serializedRequestContent);
+		Set<StockBook> newBooks = (Set<StockBook>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			stockManager.addBooks(newBooks);
+			MigrationFence.Admission admitted = migrationFence.admit(newBooks, StockBook::getISBN, true);
+
+			try {
+				stockManager.addBooks(newBooks);
+			} finally {
+				admitted.release();
+			}
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -364,6 +722,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 
 		try {
 			stockManager.removeAllBooks();
+			migrationFence.clear();
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -384,13 +743,147 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void removeBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
+		Set<Integer> bookSet = (Set<Integer>) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			MigrationFence.Admission admitted = migrationFence.admit(bookSet, Integer::intValue, true);
 
-		Set<Integer> bookSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+			try {
+				stockManager.removeBooks(bookSet);
+			} finally {
+				admitted.release();
+			}
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Fences books before they are moved to another server, and returns
+	 * those in the store. The books can be read but not written until they
+	 * are released or unfenced.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void fenceBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		if (isbnSet == null) {
+			bookStoreResponse.setException(new BookStoreException(BookStoreConstants.NULL_INPUT));
+		} else {
+			migrationFence.fence(isbnSet);
+			bookStoreResponse.setList(getPresentBooks(isbnSet));
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Lifts the fence of books that were not moved, or forgets that books were
+	 * moved.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void unfenceBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		if (isbnSet == null) {
+			bookStoreResponse.setException(new BookStoreException(BookStoreConstants.NULL_INPUT));
+		} else {
+			migrationFence.lift(isbnSet);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Restores books moved from another server, with all their counters.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void restoreBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Collection<StockBook> books = (Collection<StockBook>) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			if (books == null) {
+				throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+			} else if (!(stockManager instanceof CheckpointableStockManager)) {
+				throw new BookStoreException(BookStoreConstants.RESTORE_UNSUPPORTED);
+			}
+
+			List<Integer> isbns = new ArrayList<>(books.size());
+
+			for (StockBook book : books) {
+				isbns.add(book.getISBN());
+			}
+
+			// The books may come back to a server they were moved from.
+			migrationFence.lift(isbns);
+			((CheckpointableStockManager) stockManager).restoreBooks(books);
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
+	/**
+	 * Removes fenced books once they are restored on another server. Until
+	 * the mark is lifted, requests on them fail as moved.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void releaseBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
-			stockManager.removeBooks(bookSet);
+			if (isbnSet == null) {
+				throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+			}
+
+			migrationFence.move(isbnSet);
+			Set<Integer> presentIsbns = new HashSet<>();
+
+			for (StockBook book : getPresentBooks(isbnSet)) {
+				presentIsbns.add(book.getISBN());
+			}
+
+			stockManager.removeBooks(presentIsbns);
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
@@ -400,16 +893,48 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	}
 
 	/**
-	 * Gets the serialized request content.
+	 * Gets the books in the store among the given ones. Books being moved can
+	 * have been removed in the meantime.
+	 *
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @return the books in the store
+	 */
+	private List<StockBook> getPresentBooks(Set<Integer> isbnSet) {
+		try {
+			return stockManager.getBooksByISBN(isbnSet);
+		} catch (BookStoreException ex) {
+			List<StockBook> books = new ArrayList<>();
+
+			for (Integer isbn : isbnSet) {
+				try {
+					books.addAll(stockManager.getBooksByISBN(Collections.singleton(isbn)));
+				} catch (BookStoreException notAvailable) {
+					;
+				}
+			}
+
+			return books;
+		}
+	}
+
+	/**
+	 * Decodes the request content directly from the input stream of the
+	 * request, so that bodies of unknown length, e.g. chunked ones, are read
+	 * too. If the content was decoded before the request was handed over to
+	 * the store executor, that content is returned.
 	 *
 	 * @param request the request
-	 * @return the serialized request content
+	 * @return the request content
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+	private Object readRequestContent(HttpServletRequest request) throws IOException {
+		Object readContent = request.getAttribute(REQUEST_CONTENT_ATTRIBUTE);
+
+		if (readContent != null) {
+			return (readContent != NULL_CONTENT) ? readContent : null;
+		}
+
+		return serializer.get().deserialize(request.getInputStream());
 	}
 }
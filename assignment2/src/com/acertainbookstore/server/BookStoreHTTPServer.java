@@ -1,10 +1,28 @@
 package com.acertainbookstore.server;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import com.acertainbookstore.business.CheckpointFile;
+import com.acertainbookstore.business.Checkpointer;
+import com.acertainbookstore.business.ColumnarConcurrentCertainBookStore;
+import com.acertainbookstore.business.DurableCertainBookStore;
+import com.acertainbookstore.business.OptimisticConcurrentCertainBookStore;
+import com.acertainbookstore.business.PartitionedCertainBookStore;
+import com.acertainbookstore.business.SequencedCertainBookStore;
 import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
 import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
+import com.acertainbookstore.business.WriteAheadLog;
+import com.acertainbookstore.interfaces.CheckpointableStockManager;
+import com.acertainbookstore.interfaces.SampleableBookStore;
 
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
 
 /**
  * Starts the {@link BookStoreHTTPServer} that the clients will communicate
@@ -19,7 +37,8 @@ public class BookStoreHTTPServer {
 	
 	/** The constant, defining which locking scheme implementation to use
 	 *  true - single lock 
-	 *  false - two-level locking */
+	 *  false - two-level locking
+	 *  Can be overridden with the singlelock system property. */
 	private static final boolean SINGLE_LOCK = true;
 
 	/**
@@ -39,15 +58,60 @@ public class BookStoreHTTPServer {
 		int listenOnPort = DEFAULT_PORT;
 		
 		BookStoreHTTPMessageHandler handler = null;
-		
-		if (SINGLE_LOCK) {
+
+		String singleLockString = System.getProperty(BookStoreConstants.PROPERTY_KEY_SINGLE_LOCK);
+		boolean singleLock = (singleLockString != null) ? Boolean.parseBoolean(singleLockString) : SINGLE_LOCK;
+		boolean optimistic = Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_OPTIMISTIC));
+		boolean columnar = Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR));
+		boolean partitioned = Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_PARTITIONED));
+		boolean sequenced = Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_SEQUENCED));
+		Executor storeExecutor = createStoreExecutor();
+
+		if (partitioned) {
+			int partitions = BookStoreConstants.DEFAULT_PARTITIONS;
+			String partitionsString = System.getProperty(BookStoreConstants.PROPERTY_KEY_PARTITIONS);
+
+			if (partitionsString != null) {
+				try {
+					partitions = Integer.parseInt(partitionsString);
+				} catch (NumberFormatException ex) {
+					System.err.println("Unsupported number of partitions: " + partitionsString);
+				}
+			}
+
+			PartitionedCertainBookStore bookStore = new PartitionedCertainBookStore(partitions,
+					ForkJoinPool.commonPool());
+			handler = createHandler(bookStore, storeExecutor);
+		} else if (sequenced) {
+			SequencedCertainBookStore bookStore = new SequencedCertainBookStore();
+			handler = createHandler(bookStore, storeExecutor);
+		} else if (columnar) {
+			ColumnarConcurrentCertainBookStore bookStore = new ColumnarConcurrentCertainBookStore();
+			handler = createHandler(bookStore, storeExecutor);
+		} else if (optimistic) {
+			OptimisticConcurrentCertainBookStore bookStore = new OptimisticConcurrentCertainBookStore();
+			handler = createHandler(bookStore, storeExecutor);
+		} else if (singleLock) {
 			SingleLockConcurrentCertainBookStore bookStore = new SingleLockConcurrentCertainBookStore();
-			/* we pass bookStore to BookStoreHTTPMessageHandler constructor twice, 
-			 * since it implements both interfaces: BookStore and StockManager */
-			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
+			handler = createHandler(bookStore, storeExecutor);
 		} else {
-			TwoLevelLockingConcurrentCertainBookStore bookStore = new TwoLevelLockingConcurrentCertainBookStore();
-			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
+			int lockStripes = BookStoreConstants.DEFAULT_LOCK_STRIPES;
+			String lockStripesString = System.getProperty(BookStoreConstants.PROPERTY_KEY_LOCK_STRIPES);
+
+			if (lockStripesString != null) {
+				try {
+					lockStripes = Integer.parseInt(lockStripesString);
+				} catch (NumberFormatException ex) {
+					System.err.println("Unsupported number of lock stripes: " + lockStripesString);
+				}
+			}
+
+			boolean combiningBuys = Boolean
+					.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_COMBINING_BUYS));
+			boolean escrowBuys = Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_ESCROW_BUYS));
+			TwoLevelLockingConcurrentCertainBookStore bookStore = new TwoLevelLockingConcurrentCertainBookStore(
+					BookStoreConstants.DEFAULT_LOCK_TIMEOUT_MILLIS, lockStripes, combiningBuys, escrowBuys);
+			handler = createHandler(bookStore, storeExecutor);
 		}		
 		
 		String serverPortString = System.getProperty(BookStoreConstants.PROPERTY_KEY_SERVER_PORT);
@@ -60,7 +124,128 @@ public class BookStoreHTTPServer {
 			}
 		}
 
-		QueuedThreadPool threadpool = new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
+		ThreadPool threadpool = BookStoreHTTPServerUtility.createThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
 		BookStoreHTTPServerUtility.createServer(listenOnPort, handler, threadpool);
 	}
+
+	/**
+	 * Creates the executor that invokes the store if the asynchandler system
+	 * property is set, with as many threads as the storethreads system
+	 * property.
+	 *
+	 * @return the executor, or null to invoke the store on the threads of the
+	 *         server
+	 */
+	private static Executor createStoreExecutor() {
+		if (!Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_ASYNC_HANDLER))) {
+			return null;
+		}
+
+		int storeThreads = BookStoreConstants.DEFAULT_STORE_THREADS;
+		String storeThreadsString = System.getProperty(BookStoreConstants.PROPERTY_KEY_STORE_THREADS);
+
+		if (storeThreadsString != null) {
+			try {
+				storeThreads = Integer.parseInt(storeThreadsString);
+			} catch (NumberFormatException ex) {
+				System.err.println("Unsupported number of store threads: " + storeThreadsString);
+			}
+		}
+
+		return Executors.newFixedThreadPool(storeThreads);
+	}
+
+	/**
+	 * Creates the handler of the store, logging its operations to the file
+	 * given by the walfile system property, if any. If the checkpointfile
+	 * system property is set, the store is first loaded from that checkpoint
+	 * and checkpointed again periodically and on shutdown; only the log after
+	 * the checkpoint is replayed.
+	 *
+	 * @param <T>
+	 *            the type of the store
+	 * @param bookStore
+	 *            the store
+	 * @param storeExecutor
+	 *            the executor that invokes the store, or null
+	 * @return the handler
+	 */
+	private static <T extends SampleableBookStore & CheckpointableStockManager> BookStoreHTTPMessageHandler
+			createHandler(T bookStore, Executor storeExecutor) {
+		long start = System.nanoTime();
+		String walFile = System.getProperty(BookStoreConstants.PROPERTY_KEY_WAL_FILE);
+		String checkpointFile = System.getProperty(BookStoreConstants.PROPERTY_KEY_CHECKPOINT_FILE);
+		Path checkpointPath = (checkpointFile != null) ? Paths.get(checkpointFile) : null;
+		long fromOffset = 0;
+
+		try {
+			if (checkpointPath != null) {
+				CheckpointFile checkpoint = Checkpointer.load(checkpointPath);
+
+				if (checkpoint != null) {
+					bookStore.restoreBooks(checkpoint.getBooks());
+					fromOffset = checkpoint.getSequence();
+				}
+			}
+
+			BookStoreHTTPMessageHandler handler;
+			Checkpointer.Source source;
+
+			if (walFile == null) {
+				/* we pass bookStore to BookStoreHTTPMessageHandler constructor twice,
+				 * since it implements both interfaces: BookStore and StockManager */
+				handler = new BookStoreHTTPMessageHandler(bookStore, bookStore, storeExecutor);
+				source = () -> new CheckpointFile(0, bookStore.getBooks());
+			} else {
+				String walSyncString = System.getProperty(BookStoreConstants.PROPERTY_KEY_WAL_SYNC);
+				boolean walSync = (walSyncString != null) ? Boolean.parseBoolean(walSyncString) : true;
+
+				DurableCertainBookStore durableStore = new DurableCertainBookStore(bookStore,
+						new WriteAheadLog(Paths.get(walFile), walSync), fromOffset);
+				handler = new BookStoreHTTPMessageHandler(durableStore, durableStore, storeExecutor);
+				source = durableStore::checkpoint;
+			}
+
+			if (checkpointPath != null) {
+				startCheckpointer(source, checkpointPath);
+			}
+
+			System.out.printf("Recovered the store in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+			return handler;
+		} catch (IOException | BookStoreException ex) {
+			throw new IllegalStateException("Could not recover the store", ex);
+		}
+	}
+
+	/**
+	 * Writes checkpoints at the interval given by the checkpointinterval
+	 * system property and a last one when the server shuts down.
+	 *
+	 * @param source
+	 *            the source of the checkpoints
+	 * @param checkpointPath
+	 *            the checkpoint file
+	 */
+	private static void startCheckpointer(Checkpointer.Source source, Path checkpointPath) {
+		long interval = BookStoreConstants.DEFAULT_CHECKPOINT_INTERVAL_SECONDS;
+		String intervalString = System.getProperty(BookStoreConstants.PROPERTY_KEY_CHECKPOINT_INTERVAL);
+
+		if (intervalString != null) {
+			try {
+				interval = Long.parseLong(intervalString);
+			} catch (NumberFormatException ex) {
+				System.err.println("Unsupported checkpoint interval: " + intervalString);
+			}
+		}
+
+		Checkpointer checkpointer = new Checkpointer(source, checkpointPath);
+		checkpointer.start(interval);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				checkpointer.close();
+			} catch (IOException ex) {
+				System.err.println("Checkpoint failed: " + ex);
+			}
+		}));
+	}
 }
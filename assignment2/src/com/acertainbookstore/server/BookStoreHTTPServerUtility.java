@@ -3,17 +3,28 @@ package com.acertainbookstore.server;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * {@link BookStoreHTTPServerUtility} creates Jetty server instances.
  */
 public class BookStoreHTTPServerUtility {
 
+	/**
+	 * The number of connections that may wait to be accepted; the default of
+	 * the JVM, 50, drops connections when thousands of clients connect at once.
+	 */
+	private static final int ACCEPT_QUEUE_SIZE = 1024;
+
 	/**
 	 * Prevents the instantiation of a new {@link BookStoreHTTPServerUtility}.
 	 */
@@ -21,6 +32,29 @@ public class BookStoreHTTPServerUtility {
 		// Prevent instances from being created.
 	}
 
+	/**
+	 * Creates the thread pool of a server: a new virtual thread for every task
+	 * if the virtualthreads system property is set and the JDK has them, or
+	 * else a bounded pool of platform threads, which saturates when the
+	 * requests block on the locks of the store.
+	 *
+	 * @param maxThreads
+	 *            the most platform threads
+	 * @param minThreads
+	 *            the fewest platform threads
+	 * @return the thread pool
+	 */
+	public static ThreadPool createThreadPool(int maxThreads, int minThreads) {
+		ExecutorService virtualThreads = BookStoreUtility.useVirtualThreads()
+				? BookStoreUtility.newVirtualThreadExecutor() : null;
+
+		if (virtualThreads != null) {
+			return new ExecutorThreadPool(virtualThreads);
+		}
+
+		return new QueuedThreadPool(maxThreads, minThreads);
+	}
+
 	/**
 	 * Creates a server on the port and blocks the calling thread.
 	 *
@@ -30,12 +64,36 @@ public class BookStoreHTTPServerUtility {
 	 *            the handler
 	 * @return true, if successful
 	 */
-	public static void createServer(int port, AbstractHandler handler, QueuedThreadPool threadpool) {
+	public static void createServer(int port, AbstractHandler handler, ThreadPool threadpool) {
+		try {
+			startServer(port, handler, threadpool).join();
+		} catch (Exception ex) {
+			System.err.println(ex.getStackTrace());
+		}
+
+	}
+
+	/**
+	 * Starts a server on the port without blocking the calling thread.
+	 *
+	 * @param port
+	 *            the port
+	 * @param handler
+	 *            the handler
+	 * @param threadpool
+	 *            the thread pool, or null for the default one
+	 * @return the started server
+	 * @throws Exception
+	 *             if the server cannot be started
+	 */
+	public static Server startServer(int port, AbstractHandler handler, ThreadPool threadpool)
+			throws Exception {
 		Server server = null;
 		if (threadpool != null) {
 			server = new Server(threadpool);
 			ServerConnector myConnector = new ServerConnector(server);
 			myConnector.setPort(port);
+			myConnector.setAcceptQueueSize(ACCEPT_QUEUE_SIZE);
 			server.addConnector(myConnector);
 		} else {
 			server = new Server(port);
@@ -45,13 +103,8 @@ public class BookStoreHTTPServerUtility {
 			server.setHandler(handler);
 		}
 
-		try {
-			server.start();
-			server.join();
-		} catch (Exception ex) {
-			System.err.println(ex.getStackTrace());
-		}
-
+		server.start();
+		return server;
 	}
 
 	/**
@@ -0,0 +1,257 @@
+package com.acertainbookstore.server;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+import com.acertainbookstore.business.StripedLockTable;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreMovedException;
+
+/**
+ * {@link MigrationFence} keeps the requests of a server off the books that
+ * are moved to another server while the shards are rebalanced. A fenced book
+ * is being copied, so it can be read but not written; a moved book is gone
+ * and can be neither. Either way the request fails with a
+ * {@link BookStoreMovedException}, without changing the store, and the client
+ * sends it again to the server the shards file then maps the book to.
+ *
+ * While no book is fenced or moved, requests are admitted without a lock;
+ * they are only counted, so that the first fence can wait for them. From
+ * then on, until no book is fenced or moved anymore, a request on books is
+ * admitted under the shared locks of their stripes, which it holds until the
+ * store has handled it. Fencing and moving take the locks of the stripes of
+ * their books exclusively, so once they return, no admitted request is still
+ * changing the books, and requests on other stripes are not held up.
+ */
+final class MigrationFence {
+
+	/** The number of counters of the requests admitted without a lock. */
+	private static final int NUM_COUNTERS = 64;
+
+	/**
+	 * The distance between two counters, so that they sit on different cache
+	 * lines.
+	 */
+	private static final int COUNTER_PADDING = 16;
+
+	/** The time a fence waits before it looks at the counters again. */
+	private static final long DRAIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/** The admission of a request that holds nothing. */
+	private static final Admission NOTHING_HELD = () -> {
+		// Nothing to release.
+	};
+
+	/**
+	 * The admission of a request, released once the store has handled it.
+	 */
+	interface Admission {
+
+		/**
+		 * Releases the admission, on the thread it was taken on.
+		 */
+		void release();
+	}
+
+	/**
+	 * Held shared by admitted requests on the books of a stripe, and
+	 * exclusively to fence them.
+	 */
+	private final StripedLockTable lockTable = new StripedLockTable(BookStoreConstants.DEFAULT_LOCK_STRIPES);
+
+	/**
+	 * The requests admitted without a lock and not yet released, counted by
+	 * thread.
+	 */
+	private final AtomicIntegerArray unlockedRequests = new AtomicIntegerArray(NUM_COUNTERS * COUNTER_PADDING);
+
+	/** Whether requests are admitted under the stripe locks. */
+	private volatile boolean engaged = false;
+
+	/** The books being copied to another server. */
+	private final Set<Integer> fencedIsbns = ConcurrentHashMap.newKeySet();
+
+	/** The books moved to another server. */
+	private final Set<Integer> movedIsbns = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Admits a request on books.
+	 *
+	 * @param <E>
+	 *            the type of the arguments
+	 * @param items
+	 *            the arguments of the request, or null
+	 * @param isbnOf
+	 *            gets the ISBN of an argument
+	 * @param write
+	 *            whether the request changes the books
+	 * @return the admission to release once the store has handled the request
+	 * @throws BookStoreMovedException
+	 *             if a book is fenced, for a write, or moved
+	 */
+	<E> Admission admit(Collection<E> items, ToIntFunction<E> isbnOf, boolean write) throws BookStoreMovedException {
+		if (items == null) {
+			// The store rejects the request.
+			return NOTHING_HELD;
+		}
+
+		int counter = (int) (Thread.currentThread().getId() & (NUM_COUNTERS - 1)) * COUNTER_PADDING;
+		unlockedRequests.incrementAndGet(counter);
+
+		// A fence engages before it waits for the counters, so either it sees
+		// this request or this request sees it.
+		if (!engaged) {
+			return () -> unlockedRequests.decrementAndGet(counter);
+		}
+
+		unlockedRequests.decrementAndGet(counter);
+		int[] isbns = new int[items.size()];
+		int numIsbns = 0;
+
+		for (E item : items) {
+			isbns[numIsbns++] = isbnOf.applyAsInt(item);
+		}
+
+		int[] stripes = lockTable.stripesOf(isbns);
+
+		for (int stripe : stripes) {
+			lockTable.getStripe(stripe).readLock().lock();
+		}
+
+		Admission admission = () -> {
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				lockTable.getStripe(stripes[i]).readLock().unlock();
+			}
+		};
+
+		for (int isbn : isbns) {
+			if (movedIsbns.contains(isbn)) {
+				admission.release();
+				throw new BookStoreMovedException(BookStoreConstants.ISBN + isbn + BookStoreConstants.MOVED);
+			} else if (write && fencedIsbns.contains(isbn)) {
+				admission.release();
+				throw new BookStoreMovedException(BookStoreConstants.ISBN + isbn + BookStoreConstants.FENCED);
+			}
+		}
+
+		return admission;
+	}
+
+	/**
+	 * Fences books, and waits for the admitted requests on their stripes.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 */
+	synchronized void fence(Collection<Integer> isbns) {
+		engage();
+		int[] stripes = lockStripes(isbns);
+
+		try {
+			fencedIsbns.addAll(isbns);
+		} finally {
+			unlockStripes(stripes);
+		}
+	}
+
+	/**
+	 * Lifts the fence of books that stay on the server, or forgets that books
+	 * were moved once every client routes them to their new server.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 */
+	synchronized void lift(Collection<Integer> isbns) {
+		fencedIsbns.removeAll(isbns);
+		movedIsbns.removeAll(isbns);
+		engaged = !(fencedIsbns.isEmpty() && movedIsbns.isEmpty());
+	}
+
+	/**
+	 * Marks fenced books as moved, and waits for the admitted requests on
+	 * their stripes, which may be reads. The books can then be removed from
+	 * the store.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 */
+	synchronized void move(Collection<Integer> isbns) {
+		engage();
+		int[] stripes = lockStripes(isbns);
+
+		try {
+			movedIsbns.addAll(isbns);
+			fencedIsbns.removeAll(isbns);
+		} finally {
+			unlockStripes(stripes);
+		}
+	}
+
+	/**
+	 * Forgets all fenced and moved books, when the store is emptied.
+	 */
+	synchronized void clear() {
+		fencedIsbns.clear();
+		movedIsbns.clear();
+		engaged = false;
+	}
+
+	/**
+	 * Makes the requests take the stripe locks, and waits for those admitted
+	 * without a lock.
+	 */
+	private void engage() {
+		if (engaged) {
+			return;
+		}
+
+		engaged = true;
+
+		for (int counter = 0; counter < NUM_COUNTERS * COUNTER_PADDING; counter += COUNTER_PADDING) {
+			while (unlockedRequests.get(counter) != 0) {
+				LockSupport.parkNanos(this, DRAIN_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Takes the locks of the stripes of books exclusively, in ascending order.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the stripes
+	 */
+	private int[] lockStripes(Collection<Integer> isbns) {
+		int[] isbnArray = new int[isbns.size()];
+		int numIsbns = 0;
+
+		for (int isbn : isbns) {
+			isbnArray[numIsbns++] = isbn;
+		}
+
+		int[] stripes = lockTable.stripesOf(isbnArray);
+
+		for (int stripe : stripes) {
+			lockTable.getStripe(stripe).writeLock().lock();
+		}
+
+		return stripes;
+	}
+
+	/**
+	 * Releases the exclusive locks of stripes.
+	 *
+	 * @param stripes
+	 *            the stripes
+	 */
+	private void unlockStripes(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			lockTable.getStripe(stripes[i]).writeLock().unlock();
+		}
+	}
+}
@@ -19,6 +19,9 @@ public final class BookStoreConstants {
 	/** The Constant BOOK_NUM_PARAM. */
 	public static final String BOOK_NUM_PARAM = "number_of_books";
 
+	/** The Constant CONTINUATION_TOKEN_PARAM. */
+	public static final String CONTINUATION_TOKEN_PARAM = "continuation_token";
+
 	/** The Constant XMLSTRINGLEN_PARAM. */
 	public static final String XMLSTRINGLEN_PARAM = "len";
 
@@ -54,12 +57,159 @@ public final class BookStoreConstants {
 	/** The Constant NULL_INPUT. */
 	public static final String NULL_INPUT = "null input parameters";
 
+	/** The Constant FENCED when the book is being moved to another server. */
+	public static final String FENCED = " is being moved to another server";
+
+	/** The Constant MOVED when the book has moved to another server. */
+	public static final String MOVED = " has moved to another server";
+
+	/**
+	 * The Constant PARTIAL_UPDATE when an update failed on some servers after
+	 * it was applied on others.
+	 */
+	public static final String PARTIAL_UPDATE = "The update was applied only to the ISBNs ";
+
+	/** The Constant RESTORE_UNSUPPORTED when the store cannot take moved books. */
+	public static final String RESTORE_UNSUPPORTED = "The store cannot restore books";
+
+	/**
+	 * The Constant COUNT_UNSUPPORTED when the store cannot count its editor
+	 * picks.
+	 */
+	public static final String COUNT_UNSUPPORTED = "The store cannot count its editor picks";
+
+	/** The Constant LOCK_TIMEOUT when a lock could not be acquired in time. */
+	public static final String LOCK_TIMEOUT = "Timed out waiting for a lock after ms: ";
+
+	/** The Constant DEADLOCK when a request was aborted to break a deadlock. */
+	public static final String DEADLOCK = "Aborted to break a deadlock between requests waiting for locks";
+
+	/** The Constant STORE_STOPPED when the store no longer takes requests. */
+	public static final String STORE_STOPPED = "The store is stopped";
+
+	/**
+	 * The Constant DEFAULT_DEADLOCK_CHECK_MILLIS, how long a request waits for
+	 * a lock before it looks for a deadlock, and again in between.
+	 */
+	public static final long DEFAULT_DEADLOCK_CHECK_MILLIS = 100;
+
+	/** The Constant DEFAULT_LOCK_TIMEOUT_MILLIS. */
+	public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = 5000;
+
+	/** The Constant DEFAULT_LOCK_STRIPES, the number of local lock stripes. */
+	public static final int DEFAULT_LOCK_STRIPES = 1024;
+
+	/**
+	 * The Constant DEFAULT_PARTITIONS, the partitions of a partitioned store:
+	 * one per core.
+	 */
+	public static final int DEFAULT_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
+	/** The Constant STREAM_PAGE_SIZE, the books in a chunk of a stream. */
+	public static final int STREAM_PAGE_SIZE = 1000;
+
+	/** The Constant KEY_SHARDS, the servers in the shards file. */
+	public static final String KEY_SHARDS = "shards";
+
+	/**
+	 * The Constant KEY_VIRTUAL_NODES, the points of every server on the ring,
+	 * unless <code>virtualnodes.&lt;server&gt;</code> sets those of one server.
+	 */
+	public static final String KEY_VIRTUAL_NODES = "virtualnodes";
+
+	/**
+	 * The Constant DEFAULT_MIGRATION_RETRY_MILLIS, how long a call on books
+	 * being moved is retried.
+	 */
+	public static final long DEFAULT_MIGRATION_RETRY_MILLIS = 10000;
+
+	/**
+	 * The Constant SHARDS_REFRESH_MILLIS, how often the shards file is checked
+	 * for changes.
+	 */
+	public static final long SHARDS_REFRESH_MILLIS = 1000;
+
+	/** The Constant SPLIT_SHARDS_REGEX. */
+	public static final String SPLIT_SHARDS_REGEX = ";";
+
+	/** The Constant DEFAULT_VIRTUAL_NODES. */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
 	/** The Constant PROPERTY_KEY_LOCAL_TEST. */
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 	
 	/** The Constant PROPERTY_KEY_SINGLE_LOCK. */
 	public static final String PROPERTY_KEY_SINGLE_LOCK = "singlelock";
 
+	/** The Constant PROPERTY_KEY_OPTIMISTIC. */
+	public static final String PROPERTY_KEY_OPTIMISTIC = "optimistic";
+
+	/** The Constant PROPERTY_KEY_COLUMNAR. */
+	public static final String PROPERTY_KEY_COLUMNAR = "columnar";
+
+	/** The Constant PROPERTY_KEY_PARTITIONED. */
+	public static final String PROPERTY_KEY_PARTITIONED = "partitioned";
+
+	/** The Constant PROPERTY_KEY_PARTITIONS. */
+	public static final String PROPERTY_KEY_PARTITIONS = "partitions";
+
+	/** The Constant PROPERTY_KEY_WAL_FILE. */
+	public static final String PROPERTY_KEY_WAL_FILE = "walfile";
+
+	/** The Constant PROPERTY_KEY_WAL_SYNC. */
+	public static final String PROPERTY_KEY_WAL_SYNC = "walsync";
+
+	/** The Constant PROPERTY_KEY_CHECKPOINT_FILE. */
+	public static final String PROPERTY_KEY_CHECKPOINT_FILE = "checkpointfile";
+
+	/** The Constant PROPERTY_KEY_CHECKPOINT_INTERVAL, in seconds. */
+	public static final String PROPERTY_KEY_CHECKPOINT_INTERVAL = "checkpointinterval";
+
+	/** The Constant DEFAULT_CHECKPOINT_INTERVAL_SECONDS. */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 300;
+
+	/** The Constant PROPERTY_KEY_LOCK_STRIPES. */
+	public static final String PROPERTY_KEY_LOCK_STRIPES = "lockstripes";
+
+	/** The Constant PROPERTY_KEY_COMBINING_BUYS. */
+	public static final String PROPERTY_KEY_COMBINING_BUYS = "combiningbuys";
+
+	/**
+	 * The Constant DEFAULT_COMBINING_BATCH_SIZE, the most purchases of a
+	 * stripe applied under one hold of its lock.
+	 */
+	public static final int DEFAULT_COMBINING_BATCH_SIZE = 256;
+
+	/** The Constant PROPERTY_KEY_ESCROW_BUYS, false unless set otherwise. */
+	public static final String PROPERTY_KEY_ESCROW_BUYS = "escrowbuys";
+
+	/** The Constant PROPERTY_KEY_SEQUENCED. */
+	public static final String PROPERTY_KEY_SEQUENCED = "sequenced";
+
+	/**
+	 * The Constant DEFAULT_COMMAND_RING_SIZE, the most commands waiting for
+	 * the writer of the sequenced store.
+	 */
+	public static final int DEFAULT_COMMAND_RING_SIZE = 1024;
+
+	/** The Constant PROPERTY_KEY_ASYNC_HANDLER. */
+	public static final String PROPERTY_KEY_ASYNC_HANDLER = "asynchandler";
+
+	/** The Constant PROPERTY_KEY_STORE_THREADS. */
+	public static final String PROPERTY_KEY_STORE_THREADS = "storethreads";
+
+	/**
+	 * The Constant DEFAULT_STORE_THREADS, the threads that invoke the store
+	 * for the asynchronous handler.
+	 */
+	public static final int DEFAULT_STORE_THREADS = 16;
+
+	/**
+	 * The Constant PROPERTY_KEY_VIRTUAL_THREADS, whether the servers and the
+	 * clients run requests on virtual threads.
+	 */
+	public static final String PROPERTY_KEY_VIRTUAL_THREADS = "virtualthreads";
+
 	/** The Constant PROPERTY_KEY_SERVER_PORT. */
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
 
@@ -7,6 +7,7 @@ import java.io.InputStream;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.objenesis.strategy.StdInstantiatorStrategy;
@@ -19,6 +20,44 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
  */
 public final class BookStoreKryoSerializer implements BookStoreSerializer {
 
+	/**
+	 * Serializes the message of a {@link BookStoreException}. The fields of
+	 * {@link Throwable} cannot be reflected on since Java 9, and the client has
+	 * no use for the stack trace of the server.
+	 */
+	private static final class ExceptionSerializer extends Serializer<BookStoreException> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.
+		 * kryo.Kryo, com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, BookStoreException exception) {
+			output.writeString(exception.getMessage());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.esotericsoftware.kryo.Serializer#read(com.esotericsoftware.
+		 * kryo.Kryo, com.esotericsoftware.kryo.io.Input, java.lang.Class)
+		 */
+		@Override
+		public BookStoreException read(Kryo kryo, Input input, Class<BookStoreException> type) {
+			String message = input.readString();
+
+			if (BookStoreMovedException.class.equals(type)) {
+				return new BookStoreMovedException(message);
+			} else if (BookStoreRetryableException.class.equals(type)) {
+				return new BookStoreRetryableException(message);
+			}
+
+			return new BookStoreException(message);
+		}
+	}
+
 	/** The binary stream. */
 	private final Kryo binaryStream;
 
@@ -29,6 +68,9 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 		binaryStream = new Kryo();
 		binaryStream.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
 		binaryStream.register(ImmutableStockBook.class);
+		binaryStream.register(BookStoreException.class, new ExceptionSerializer());
+		binaryStream.register(BookStoreRetryableException.class, new ExceptionSerializer());
+		binaryStream.register(BookStoreMovedException.class, new ExceptionSerializer());
 	}
 
 	/*
@@ -58,4 +100,17 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 			return binaryStream.readClassAndObject(in);
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) {
+		// The input is not closed, which would close the stream.
+		return binaryStream.readClassAndObject(new Input(in));
+	}
 }
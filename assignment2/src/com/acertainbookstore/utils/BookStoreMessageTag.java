@@ -12,6 +12,12 @@ public enum BookStoreMessageTag {
 	/** The tag for the list books message. */
 	LISTBOOKS,
 
+	/** The tag for the list books page message. */
+	LISTBOOKSPAGE,
+
+	/** The tag for the stream books message. */
+	STREAMBOOKS,
+
 	/** The tag for the add copies message. */
 	ADDCOPIES,
 
@@ -34,5 +40,29 @@ public enum BookStoreMessageTag {
 	REMOVEBOOKS,
 
 	/** The tag for the get stock books by ISBN message. */
-	GETSTOCKBOOKSBYISBN;
+	GETSTOCKBOOKSBYISBN,
+
+	/** The tag for the get books in demand message. */
+	GETBOOKSINDEMAND,
+
+	/** The tag for the rate books message. */
+	RATEBOOKS,
+
+	/** The tag for the top rated books message. */
+	GETTOPRATEDBOOKS,
+
+	/** The tag for the message that fences books before moving them. */
+	FENCEBOOKS,
+
+	/** The tag for the message that lifts the fence or moved mark of books. */
+	UNFENCEBOOKS,
+
+	/** The tag for the message that hands moved books over to a server. */
+	RESTOREBOOKS,
+
+	/** The tag for the message that removes books moved to another server. */
+	RELEASEBOOKS,
+
+	/** The tag for the message that counts the editor picks. */
+	COUNTEDITORPICKS;
 }
@@ -0,0 +1,23 @@
+package com.acertainbookstore.utils;
+
+/**
+ * {@link BookStoreMovedException} signals that a book is being moved to
+ * another server, or has been moved, while the shards are rebalanced. The
+ * request did not change the bookstore state and can be sent again once the
+ * shards file maps the book to its new server.
+ */
+public class BookStoreMovedException extends BookStoreRetryableException {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Instantiates a new {@link BookStoreMovedException}.
+	 *
+	 * @param message
+	 *            the message
+	 */
+	public BookStoreMovedException(String message) {
+		super(message);
+	}
+}
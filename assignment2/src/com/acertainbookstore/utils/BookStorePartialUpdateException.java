@@ -0,0 +1,43 @@
+package com.acertainbookstore.utils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@link BookStorePartialUpdateException} signals that an update of books on
+ * several servers failed on some of them after it was applied on others. The
+ * servers apply their parts independently, so the applied parts stay applied;
+ * the exception lists the books they are about, and its cause is the failure
+ * of the other parts.
+ */
+public class BookStorePartialUpdateException extends BookStoreException {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The ISBNs of the books whose part of the update was applied. */
+	private final Set<Integer> appliedISBNs;
+
+	/**
+	 * Instantiates a new {@link BookStorePartialUpdateException}.
+	 *
+	 * @param appliedISBNs
+	 *            the ISBNs of the books whose part of the update was applied
+	 * @param cause
+	 *            the failure of the other parts
+	 */
+	public BookStorePartialUpdateException(Set<Integer> appliedISBNs, BookStoreException cause) {
+		super(BookStoreConstants.PARTIAL_UPDATE + new TreeSet<>(appliedISBNs) + ": " + cause.getMessage(), cause);
+		this.appliedISBNs = Collections.unmodifiableSet(new TreeSet<>(appliedISBNs));
+	}
+
+	/**
+	 * Gets the ISBNs of the books whose part of the update was applied.
+	 *
+	 * @return the ISBNs
+	 */
+	public Set<Integer> getAppliedISBNs() {
+		return appliedISBNs;
+	}
+}
@@ -0,0 +1,41 @@
+package com.acertainbookstore.utils;
+
+/**
+ * {@link BookStoreRetryableException} signals a transient book store error,
+ * e.g. a lock that could not be acquired in time. The request did not change
+ * the bookstore state and can safely be sent again.
+ */
+public class BookStoreRetryableException extends BookStoreException {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Instantiates a new {@link BookStoreRetryableException}.
+	 */
+	public BookStoreRetryableException() {
+		super();
+	}
+
+	/**
+	 * Instantiates a new {@link BookStoreRetryableException}.
+	 *
+	 * @param message
+	 *            the message
+	 */
+	public BookStoreRetryableException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Instantiates a new {@link BookStoreRetryableException}.
+	 *
+	 * @param message
+	 *            the message
+	 * @param cause
+	 *            the cause
+	 */
+	public BookStoreRetryableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
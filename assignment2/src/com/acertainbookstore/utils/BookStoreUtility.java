@@ -1,15 +1,24 @@
 package com.acertainbookstore.utils;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.client.BookStoreClientConstants;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
@@ -213,4 +222,98 @@ public final class BookStoreUtility {
 
 		return bookStoreResponse;
 	}
+
+	/**
+	 * Performs an HTTP GET whose response is a stream of serialized responses,
+	 * as written by the server for {@link BookStoreMessageTag#STREAMBOOKS}.
+	 * The list of every response is passed on as soon as it is read, so the
+	 * whole stream is never held in memory.
+	 *
+	 * @param client
+	 *            the client
+	 * @param urlString
+	 *            the URL
+	 * @param serializer
+	 *            the serializer
+	 * @param consumer
+	 *            the consumer of the lists
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public static void performHttpStreamExchange(HttpClient client, String urlString, BookStoreSerializer serializer,
+			Consumer<List<?>> consumer) throws BookStoreException {
+		InputStreamResponseListener listener = new InputStreamResponseListener();
+		client.newRequest(urlString).method(HttpMethod.GET).send(listener);
+
+		try {
+			listener.get(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_SENDING, ex);
+		} catch (TimeoutException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_TIMEOUT, ex);
+		} catch (ExecutionException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
+		}
+
+		// Closing the stream early aborts the rest of the response.
+		try (DataInputStream in = new DataInputStream(listener.getInputStream())) {
+			int length;
+
+			while ((length = in.readInt()) > 0) {
+				byte[] serializedResponseContent = new byte[length];
+				in.readFully(serializedResponseContent);
+				BookStoreResponse bookStoreResponse = (BookStoreResponse) serializer
+						.deserialize(serializedResponseContent);
+
+				if (bookStoreResponse.getException() != null) {
+					throw bookStoreResponse.getException();
+				}
+
+				consumer.accept(bookStoreResponse.getList());
+			}
+		} catch (IOException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_RESPONSE_DECODING, ex);
+		}
+	}
+
+	/**
+	 * Checks if the virtualthreads system property asks for virtual threads.
+	 *
+	 * @return true, if requests should run on virtual threads
+	 */
+	public static boolean useVirtualThreads() {
+		return Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_VIRTUAL_THREADS));
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread. The
+	 * factory is looked up reflectively, so the code still builds for Java 8.
+	 *
+	 * @return the executor, or null if the JDK has no virtual threads
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			System.err.println("Virtual threads need Java 21 or later, using platform threads");
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the executor of the HTTP client of a proxy: virtual threads if
+	 * the virtualthreads system property is set and the JDK has them, or else
+	 * a bounded pool of platform threads.
+	 *
+	 * @return the executor
+	 */
+	public static Executor createClientExecutor() {
+		ExecutorService virtualThreads = useVirtualThreads() ? newVirtualThreadExecutor() : null;
+
+		if (virtualThreads != null) {
+			return virtualThreads;
+		}
+
+		return new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS);
+	}
 }
@@ -0,0 +1,253 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.utils.BookStoreMessageTag;
+
+/**
+ * {@link BookStoreBatch} is a sequence of bookstore operations that is sent to
+ * the server in one request and answered in one response. Every method adds a
+ * step and returns its index. A step can take its ISBNs from the books
+ * returned by an earlier step, e.g. to buy the editor picks that were just
+ * fetched:
+ *
+ * <pre>
+ * BookStoreBatch batch = new BookStoreBatch();
+ * int picks = batch.getEditorPicks(10);
+ * int books = batch.getBooks(picks, 3);
+ * batch.buyBooks(books, 1);
+ * List&lt;List&lt;?&gt;&gt; results = bookStore.runBatch(batch);
+ * </pre>
+ *
+ * @see com.acertainbookstore.interfaces.BookStore#runBatch(BookStoreBatch)
+ */
+public class BookStoreBatch {
+
+	/** The source of a step that does not refer to an earlier step. */
+	public static final int NO_SOURCE = -1;
+
+	/**
+	 * One operation of a {@link BookStoreBatch}.
+	 */
+	public static final class Step {
+
+		/** The operation. */
+		private final BookStoreMessageTag tag;
+
+		/** The argument of the operation, if it has no source. */
+		private final Object inputValue;
+
+		/** The index of the step whose books are the argument. */
+		private final int source;
+
+		/**
+		 * The number of books or of copies, depending on the operation.
+		 */
+		private final int count;
+
+		/**
+		 * Instantiates a new {@link Step}.
+		 *
+		 * @param tag
+		 *            the operation
+		 * @param inputValue
+		 *            the argument
+		 * @param source
+		 *            the source step, or {@link BookStoreBatch#NO_SOURCE}
+		 * @param count
+		 *            the number of books or of copies
+		 */
+		private Step(BookStoreMessageTag tag, Object inputValue, int source, int count) {
+			this.tag = tag;
+			this.inputValue = inputValue;
+			this.source = source;
+			this.count = count;
+		}
+
+		/**
+		 * Gets the operation.
+		 *
+		 * @return the operation
+		 */
+		public BookStoreMessageTag getTag() {
+			return tag;
+		}
+
+		/**
+		 * Gets the argument of the operation, if it has no source.
+		 *
+		 * @return the argument
+		 */
+		public Object getInputValue() {
+			return inputValue;
+		}
+
+		/**
+		 * Gets the index of the step whose books are the argument.
+		 *
+		 * @return the source step, or {@link BookStoreBatch#NO_SOURCE}
+		 */
+		public int getSource() {
+			return source;
+		}
+
+		/**
+		 * Gets the number of books to get, at most, or of copies to buy or
+		 * add, depending on the operation.
+		 *
+		 * @return the count
+		 */
+		public int getCount() {
+			return count;
+		}
+	}
+
+	/** The steps. */
+	private final List<Step> steps = new ArrayList<>();
+
+	/**
+	 * Gets the steps.
+	 *
+	 * @return the steps, in order
+	 */
+	public List<Step> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * Adds a step.
+	 *
+	 * @param tag
+	 *            the operation
+	 * @param inputValue
+	 *            the argument
+	 * @param source
+	 *            the source step
+	 * @param count
+	 *            the number of books or of copies
+	 * @return the index of the step
+	 */
+	private int addStep(BookStoreMessageTag tag, Object inputValue, int source, int count) {
+		if (source != NO_SOURCE && (source < 0 || source >= steps.size())) {
+			throw new IllegalArgumentException("Step " + source + " is not an earlier step");
+		}
+
+		steps.add(new Step(tag, inputValue, source, count));
+		return steps.size() - 1;
+	}
+
+	/**
+	 * Adds a step that gets editor picks.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public int getEditorPicks(int numBooks) {
+		return addStep(BookStoreMessageTag.GETEDITORPICKS, null, NO_SOURCE, numBooks);
+	}
+
+	/**
+	 * Adds a step that gets books.
+	 *
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(Set)
+	 */
+	public int getBooks(Set<Integer> isbnSet) {
+		return addStep(BookStoreMessageTag.GETBOOKS, isbnSet, NO_SOURCE, 0);
+	}
+
+	/**
+	 * Adds a step that gets a random sample of at most <code>maxBooks</code>
+	 * of the books returned by an earlier step.
+	 *
+	 * @param source
+	 *            the earlier step
+	 * @param maxBooks
+	 *            the maximum number of books
+	 * @return the index of the step
+	 */
+	public int getBooks(int source, int maxBooks) {
+		return addStep(BookStoreMessageTag.GETBOOKS, null, source, maxBooks);
+	}
+
+	/**
+	 * Adds a step that gets all books with their stock.
+	 *
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public int listBooks() {
+		return addStep(BookStoreMessageTag.LISTBOOKS, null, NO_SOURCE, 0);
+	}
+
+	/**
+	 * Adds a step that gets books with their stock.
+	 *
+	 * @param isbnSet
+	 *            the ISBNs
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksByISBN(Set)
+	 */
+	public int getBooksByISBN(Set<Integer> isbnSet) {
+		return addStep(BookStoreMessageTag.GETSTOCKBOOKSBYISBN, isbnSet, NO_SOURCE, 0);
+	}
+
+	/**
+	 * Adds a step that buys books.
+	 *
+	 * @param booksToBuy
+	 *            the copies to buy
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(Set)
+	 */
+	public int buyBooks(Set<BookCopy> booksToBuy) {
+		return addStep(BookStoreMessageTag.BUYBOOKS, booksToBuy, NO_SOURCE, 0);
+	}
+
+	/**
+	 * Adds a step that buys <code>numCopies</code> of each book returned by an
+	 * earlier step.
+	 *
+	 * @param source
+	 *            the earlier step
+	 * @param numCopies
+	 *            the number of copies of each book
+	 * @return the index of the step
+	 */
+	public int buyBooks(int source, int numCopies) {
+		return addStep(BookStoreMessageTag.BUYBOOKS, null, source, numCopies);
+	}
+
+	/**
+	 * Adds a step that adds copies of books.
+	 *
+	 * @param bookCopiesSet
+	 *            the copies to add
+	 * @return the index of the step
+	 * @see com.acertainbookstore.interfaces.StockManager#addCopies(Set)
+	 */
+	public int addCopies(Set<BookCopy> bookCopiesSet) {
+		return addStep(BookStoreMessageTag.ADDCOPIES, bookCopiesSet, NO_SOURCE, 0);
+	}
+
+	/**
+	 * Adds a step that adds <code>numCopies</code> of each book returned by an
+	 * earlier step.
+	 *
+	 * @param source
+	 *            the earlier step
+	 * @param numCopies
+	 *            the number of copies of each book
+	 * @return the index of the step
+	 */
+	public int addCopies(int source, int numCopies) {
+		return addStep(BookStoreMessageTag.ADDCOPIES, null, source, numCopies);
+	}
+}
@@ -1,15 +1,13 @@
 package com.acertainbookstore.business;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
@@ -27,7 +25,16 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class CertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
 
 	/**
 	 * Instantiates a new {@link CertainBookStore}.
@@ -35,7 +42,10 @@ public class CertainBookStore implements BookStore, StockManager {
 	public CertainBookStore() {
 
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
 	}
 
 	/*
@@ -82,10 +92,18 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
 		for (StockBook book : bookSet) {
 			int isbn = book.getISBN();
-			bookMap.put(isbn, new BookStoreBook(book));
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(isbn, bookStoreBook);
+			topRatedIndex.update(bookStoreBook);
+			addedBooks.add(bookStoreBook);
+			inDemandIndex.update(bookStoreBook);
 		}
+
+		editorPickIndex.update(addedBooks);
 	}
 
 	/*
@@ -127,6 +145,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			numCopies = bookCopy.getNumCopies();
 			book = bookMap.get(isbn);
 			book.addCopies(numCopies);
+			inDemandIndex.update(book);
 		}
 	}
 
@@ -137,9 +156,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized List<StockBook> getBooks() {
 		List<StockBook> listBooks = new ArrayList<>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-		for (BookStoreBook book : bookMapValues) {
+		for (BookStoreBook book : bookMap) {
 			listBooks.add(book.immutableStockBook());
 		}
 
@@ -174,9 +191,15 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
 		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+			BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+			book.setEditorPick(editorPickArg.isEditorPick());
+			updatedBooks.add(book);
 		}
+
+		editorPickIndex.update(updatedBooks);
 	}
 
 	/*
@@ -227,6 +250,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
 				book = bookMap.get(saleMissEntry.getKey());
 				book.addSaleMiss(saleMissEntry.getValue());
+				inDemandIndex.update(book);
 			}
 			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 		}
@@ -309,50 +333,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
-		List<Book> listEditorPicks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-		BookStoreBook book;
-
-		// Get all books that are editor picks.
-		while (it.hasNext()) {
-			Entry<Integer, BookStoreBook> pair = it.next();
-			book = pair.getValue();
-
-			if (book.isEditorPick()) {
-				listAllEditorPicks.add(book);
-			}
-		}
-
-		// Find numBooks random indices of books that will be picked.
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<>();
-		int rangePicks = listAllEditorPicks.size();
-
-		if (rangePicks <= numBooks) {
-
-			// We need to add all books.
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-
-			// We need to pick randomly the books that need to be returned.
-			int randNum;
-
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
-			}
-		}
-
-		// Get the numBooks random books.
-		for (Integer index : tobePicked) {
-			book = listAllEditorPicks.get(index);
-			listEditorPicks.add(book.immutableBook());
-		}
-
-		return listEditorPicks;
+		return editorPickIndex.getEditorPicks(numBooks);
 	}
 
 	/*
@@ -362,7 +343,11 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException();
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		return topRatedIndex.getTopRatedBooks(numBooks);
 	}
 
 	/*
@@ -372,7 +357,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException();
+		return inDemandIndex.getBooksInDemand();
 	}
 
 	/*
@@ -392,6 +377,9 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized void removeAllBooks() throws BookStoreException {
 		bookMap.clear();
+		topRatedIndex.clear();
+		editorPickIndex.clear();
+		inDemandIndex.clear();
 	}
 
 	/*
@@ -417,6 +405,151 @@ public class CertainBookStore implements BookStore, StockManager {
 
 		for (int isbn : isbnSet) {
 			bookMap.remove(isbn);
+			topRatedIndex.remove(isbn);
+			inDemandIndex.remove(isbn);
 		}
+
+		editorPickIndex.remove(isbnSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStore#runBatch(com.acertainbookstore.
+	 * business.BookStoreBatch)
+	 */
+	@Override
+	public synchronized List<List<?>> runBatch(BookStoreBatch batch) throws BookStoreException {
+		if (batch == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<List<?>> results = new ArrayList<>();
+
+		// The monitor is reentrant, so the steps run without interleaving.
+		for (BookStoreBatch.Step step : batch.getSteps()) {
+			results.add(runStep(step, results));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Runs a step of a batch.
+	 *
+	 * @param step
+	 *            the step
+	 * @param results
+	 *            the results of the earlier steps
+	 * @return the result of the step
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@SuppressWarnings("unchecked")
+	private List<?> runStep(BookStoreBatch.Step step, List<List<?>> results) throws BookStoreException {
+		boolean hasSource = step.getSource() != BookStoreBatch.NO_SOURCE;
+
+		switch (step.getTag()) {
+		case GETEDITORPICKS:
+			return getEditorPicks(step.getCount());
+
+		case GETBOOKS:
+			return getBooks(hasSource ? sampleSource(step, results) : (Set<Integer>) step.getInputValue());
+
+		case LISTBOOKS:
+			return getBooks();
+
+		case GETSTOCKBOOKSBYISBN:
+			return getBooksByISBN((Set<Integer>) step.getInputValue());
+
+		case BUYBOOKS:
+			buyBooks(hasSource ? copiesOfSource(step, results) : (Set<BookCopy>) step.getInputValue());
+			return null;
+
+		case ADDCOPIES:
+			addCopies(hasSource ? copiesOfSource(step, results) : (Set<BookCopy>) step.getInputValue());
+			return null;
+
+		default:
+			throw new BookStoreException("Unsupported batch step " + step.getTag());
+		}
+	}
+
+	/**
+	 * Gets the ISBNs of the books returned by the source of a step.
+	 *
+	 * @param step
+	 *            the step
+	 * @param results
+	 *            the results of the earlier steps
+	 * @return the ISBNs
+	 * @throws BookStoreException
+	 *             if the source is not an earlier step that returned books
+	 */
+	private static List<Integer> getSourceISBNs(BookStoreBatch.Step step, List<List<?>> results)
+			throws BookStoreException {
+		int source = step.getSource();
+
+		if (source < 0 || source >= results.size() || results.get(source) == null) {
+			throw new BookStoreException("Step " + source + " is not an earlier step that returned books");
+		}
+
+		List<Integer> isbns = new ArrayList<>();
+
+		for (Object book : results.get(source)) {
+			isbns.add(((Book) book).getISBN());
+		}
+
+		return isbns;
+	}
+
+	/**
+	 * Samples at most the count of a step of the ISBNs returned by its source.
+	 *
+	 * @param step
+	 *            the step
+	 * @param results
+	 *            the results of the earlier steps
+	 * @return the ISBNs
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private static Set<Integer> sampleSource(BookStoreBatch.Step step, List<List<?>> results)
+			throws BookStoreException {
+		if (step.getCount() < 0) {
+			throw new BookStoreException("numBooks = " + step.getCount() + ", but it must be positive");
+		}
+
+		List<Integer> isbns = getSourceISBNs(step, results);
+
+		if (isbns.size() > step.getCount()) {
+			Collections.shuffle(isbns, ThreadLocalRandom.current());
+			isbns = isbns.subList(0, step.getCount());
+		}
+
+		return new HashSet<>(isbns);
+	}
+
+	/**
+	 * Gets the count of a step in copies of each book returned by its source.
+	 *
+	 * @param step
+	 *            the step
+	 * @param results
+	 *            the results of the earlier steps
+	 * @return the copies
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private static Set<BookCopy> copiesOfSource(BookStoreBatch.Step step, List<List<?>> results)
+			throws BookStoreException {
+		Set<BookCopy> copies = new HashSet<>();
+
+		for (int isbn : getSourceISBNs(step, results)) {
+			copies.add(new BookCopy(isbn, step.getCount()));
+		}
+
+		return copies;
 	}
 }
@@ -0,0 +1,147 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link TopRatedIndex} keeps the books ordered by descending average rating,
+ * with ties broken by ascending ISBN, so that the top rated books can be read
+ * without sorting the catalog.
+ *
+ * The index is thread-safe. The store must call {@link #update(BookStoreBook)}
+ * whenever the rating of a book changes and {@link #remove(int)} when the book
+ * is removed, while holding whatever lock protects the book itself.
+ */
+public class TopRatedIndex {
+
+	/**
+	 * The position of a book in the index.
+	 */
+	private static final class RatingKey implements Comparable<RatingKey> {
+
+		/** The average rating at the time the key was created. */
+		private final float averageRating;
+
+		/** The ISBN. */
+		private final int isbn;
+
+		/**
+		 * Instantiates a new {@link RatingKey}.
+		 *
+		 * @param averageRating
+		 *            the average rating
+		 * @param isbn
+		 *            the ISBN
+		 */
+		RatingKey(float averageRating, int isbn) {
+			this.averageRating = averageRating;
+			this.isbn = isbn;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(RatingKey other) {
+			int byRating = Float.compare(other.averageRating, averageRating);
+			return (byRating != 0) ? byRating : Integer.compare(isbn, other.isbn);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof RatingKey) && compareTo((RatingKey) obj) == 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * Float.floatToIntBits(averageRating) + isbn;
+		}
+	}
+
+	/** The books in rating order. */
+	private final ConcurrentSkipListMap<RatingKey, BookStoreBook> index = new ConcurrentSkipListMap<>();
+
+	/** The current key of every book. */
+	private final Map<Integer, RatingKey> keys = new ConcurrentHashMap<>();
+
+	/**
+	 * Inserts the book or moves it to its current average rating.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void update(BookStoreBook book) {
+		RatingKey key = new RatingKey(book.getAverageRating(), book.getISBN());
+		index.put(key, book);
+		RatingKey oldKey = keys.put(book.getISBN(), key);
+
+		if (oldKey != null && !oldKey.equals(key)) {
+			index.remove(oldKey);
+		}
+	}
+
+	/**
+	 * Removes the book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	public void remove(int isbn) {
+		RatingKey oldKey = keys.remove(isbn);
+
+		if (oldKey != null) {
+			index.remove(oldKey);
+		}
+	}
+
+	/**
+	 * Removes all books.
+	 */
+	public void clear() {
+		keys.clear();
+		index.clear();
+	}
+
+	/**
+	 * Gets the top rated books by walking the first entries of the index. A
+	 * book being moved by a concurrent update may briefly appear twice, so
+	 * only its first, i.e. highest, position is returned.
+	 *
+	 * @param numBooks
+	 *            the number of books to return
+	 * @return the top rated books, in descending rating order
+	 */
+	public List<Book> getTopRatedBooks(int numBooks) {
+		List<Book> listTopRatedBooks = new ArrayList<>(Math.min(numBooks, keys.size()));
+		Set<Integer> seen = new HashSet<>();
+
+		for (BookStoreBook book : index.values()) {
+			if (listTopRatedBooks.size() >= numBooks) {
+				break;
+			}
+
+			if (seen.add(book.getISBN())) {
+				listTopRatedBooks.add(book.immutableBook());
+			}
+		}
+
+		return listTopRatedBooks;
+	}
+}
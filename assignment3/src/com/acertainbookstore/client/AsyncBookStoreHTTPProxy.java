@@ -0,0 +1,225 @@
+package com.acertainbookstore.client;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreBatch;
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreRequest;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+
+/**
+ * {@link AsyncBookStoreHTTPProxy} implements the client level asynchronous
+ * {@link CertainBookStore} API declared in the {@link AsyncBookStore} class.
+ * Requests are sent without blocking the caller and the futures are completed
+ * by the threads of the HTTP client, so dependent stages should not block.
+ * 
+ * @see AsyncBookStore
+ * @see BookStoreHTTPProxy
+ */
+public class AsyncBookStoreHTTPProxy implements AsyncBookStore {
+
+	/** The client. */
+	protected HttpClient client;
+
+	/** The server address. */
+	protected String serverAddress;
+
+	/** The serializer. */
+	private static ThreadLocal<BookStoreSerializer> serializer;
+
+	/**
+	 * Initializes a new {@link AsyncBookStoreHTTPProxy}.
+	 *
+	 * @param serverAddress
+	 *            the server address
+	 * @throws Exception
+	 *             the exception
+	 */
+	public AsyncBookStoreHTTPProxy(String serverAddress) throws Exception {
+
+		// Setup the type of serializer.
+		if (BookStoreConstants.BINARY_SERIALIZATION) {
+			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
+		} else {
+			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
+		}
+
+		setServerAddress(serverAddress);
+		client = new HttpClient();
+
+		// Max concurrent connections to every address.
+		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
+
+		// Max number of requests waiting for a connection.
+		client.setMaxRequestsQueuedPerDestination(BookStoreClientConstants.CLIENT_MAX_QUEUED_REQUESTS_ADDRESS);
+
+		// Max number of threads, which also complete the futures.
+		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+
+		// Seconds timeout; if no server reply, the request expires.
+		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
+
+		client.start();
+	}
+
+	/**
+	 * Gets the server address.
+	 *
+	 * @return the server address
+	 */
+	public String getServerAddress() {
+		return serverAddress;
+	}
+
+	/**
+	 * Sets the server address.
+	 *
+	 * @param serverAddress
+	 *            the new server address
+	 */
+	public void setServerAddress(String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+
+	/**
+	 * Sends a request and gets the future response.
+	 *
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @return the future response
+	 */
+	private CompletableFuture<BookStoreResponse> send(BookStoreRequest bookStoreRequest) {
+		return BookStoreUtility.performHttpExchangeAsync(client, bookStoreRequest, serializer::get);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#buyBooks(java.util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> buyBooks(Set<BookCopy> booksToBuy) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BUYBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, booksToBuy);
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getBooks(java.util.Set)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<Book>> getBooks(Set<Integer> isbnSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
+		return send(bookStoreRequest).thenApply(response -> (List<Book>) response.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getEditorPicks(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<Book>> getEditorPicks(int numBooks) {
+		String urlEncodedNumBooks = null;
+
+		try {
+			urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks), "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			return failedFuture(new BookStoreException("unsupported encoding of numbooks", ex));
+		}
+
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETEDITORPICKS + "?"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks;
+
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		return send(bookStoreRequest).thenApply(response -> (List<Book>) response.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> rateBooks(Set<BookRating> bookRating) {
+		return failedFuture(new BookStoreException());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public CompletableFuture<List<Book>> getTopRatedBooks(int numBooks) {
+		return failedFuture(new BookStoreException());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#runBatch(com.
+	 * acertainbookstore.business.BookStoreBatch)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<List<?>>> runBatch(BookStoreBatch batch) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BATCH;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, batch);
+		return send(bookStoreRequest).thenApply(response -> (List<List<?>>) response.getList());
+	}
+
+	/**
+	 * Gets a future that has already failed.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param ex
+	 *            the exception
+	 * @return the failed future
+	 */
+	private static <T> CompletableFuture<T> failedFuture(BookStoreException ex) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(ex);
+		return future;
+	}
+
+	/**
+	 * Stops the proxy.
+	 */
+	public void stop() {
+		try {
+			client.stop();
+		} catch (Exception ex) {
+			System.err.println(ex.getStackTrace());
+		}
+	}
+}
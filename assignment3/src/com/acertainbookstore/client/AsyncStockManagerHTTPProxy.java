@@ -0,0 +1,244 @@
+package com.acertainbookstore.client;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.AsyncStockManager;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreRequest;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+
+/**
+ * {@link AsyncStockManagerHTTPProxy} implements the client level asynchronous
+ * {@link CertainBookStore} API declared in the {@link AsyncStockManager}
+ * class. Requests are sent without blocking the caller and the futures are
+ * completed by the threads of the HTTP client, so dependent stages should not
+ * block.
+ * 
+ * @see AsyncStockManager
+ * @see StockManagerHTTPProxy
+ */
+public class AsyncStockManagerHTTPProxy implements AsyncStockManager {
+
+	/** The client. */
+	protected HttpClient client;
+
+	/** The server address. */
+	protected String serverAddress;
+
+	/** The serializer. */
+	private static ThreadLocal<BookStoreSerializer> serializer;
+
+	/**
+	 * Initializes a new {@link AsyncStockManagerHTTPProxy}.
+	 *
+	 * @param serverAddress
+	 *            the server address
+	 * @throws Exception
+	 *             the exception
+	 */
+	public AsyncStockManagerHTTPProxy(String serverAddress) throws Exception {
+
+		// Setup the type of serializer.
+		if (BookStoreConstants.BINARY_SERIALIZATION) {
+			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
+		} else {
+			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
+		}
+
+		setServerAddress(serverAddress);
+		client = new HttpClient();
+
+		// Max concurrent connections to every address.
+		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
+
+		// Max number of requests waiting for a connection.
+		client.setMaxRequestsQueuedPerDestination(BookStoreClientConstants.CLIENT_MAX_QUEUED_REQUESTS_ADDRESS);
+
+		// Max number of threads, which also complete the futures.
+		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+
+		// Seconds timeout; if no server reply, the request expires.
+		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
+
+		client.start();
+	}
+
+	/**
+	 * Gets the server address.
+	 *
+	 * @return the server address
+	 */
+	public String getServerAddress() {
+		return serverAddress;
+	}
+
+	/**
+	 * Sets the server address.
+	 *
+	 * @param serverAddress
+	 *            the new server address
+	 */
+	public void setServerAddress(String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+
+	/**
+	 * Sends a request and gets the future response.
+	 *
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @return the future response
+	 */
+	private CompletableFuture<BookStoreResponse> send(BookStoreRequest bookStoreRequest) {
+		return BookStoreUtility.performHttpExchangeAsync(client, bookStoreRequest, serializer::get);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#addBooks(java.util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> addBooks(Set<StockBook> bookSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookSet);
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#addCopies(java.util.
+	 * Set)
+	 */
+	@Override
+	public CompletableFuture<Void> addCopies(Set<BookCopy> bookCopiesSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDCOPIES;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookCopiesSet);
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.AsyncStockManager#getBooks()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooks() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.LISTBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
+		return send(bookStoreRequest).thenApply(response -> (List<StockBook>) response.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#getBooksByISBN(java.
+	 * util.Set)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksByISBN(Set<Integer> isbns) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETSTOCKBOOKSBYISBN;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
+		return send(bookStoreRequest).thenApply(response -> (List<StockBook>) response.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#getBooksInDemand()
+	 */
+	@Override
+	public CompletableFuture<List<StockBook>> getBooksInDemand() {
+		CompletableFuture<List<StockBook>> future = new CompletableFuture<>();
+		future.completeExceptionally(new BookStoreException("Not implemented"));
+		return future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#updateEditorPicks(java.
+	 * util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> updateEditorPicks(Set<BookEditorPick> editorPicks) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.UPDATEEDITORPICKS + "?";
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, editorPicks);
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.AsyncStockManager#removeAllBooks()
+	 */
+	@Override
+	public CompletableFuture<Void> removeAllBooks() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEALLBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, "");
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#removeBooks(java.util.
+	 * Set)
+	 */
+	@Override
+	public CompletableFuture<Void> removeBooks(Set<Integer> isbnSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEBOOKS;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
+		return send(bookStoreRequest).thenApply(response -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#runBatch(com.
+	 * acertainbookstore.business.BookStoreBatch)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<List<?>>> runBatch(BookStoreBatch batch) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BATCH;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, batch);
+		return send(bookStoreRequest).thenApply(response -> (List<List<?>>) response.getList());
+	}
+
+	/**
+	 * Stops the proxy.
+	 */
+	public void stop() {
+		try {
+			client.stop();
+		} catch (Exception ex) {
+			System.err.println(ex.getStackTrace());
+		}
+	}
+}
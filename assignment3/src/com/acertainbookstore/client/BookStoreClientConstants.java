@@ -11,6 +11,12 @@ public final class BookStoreClientConstants {
 	/** The Constant CLIENT_MAX_CONNECTION_ADDRESS. */
 	public static final int CLIENT_MAX_CONNECTION_ADDRESS = 200;
 
+	/**
+	 * The Constant CLIENT_MAX_QUEUED_REQUESTS_ADDRESS, the requests an
+	 * asynchronous client may have waiting for a connection.
+	 */
+	public static final int CLIENT_MAX_QUEUED_REQUESTS_ADDRESS = 4096;
+
 	/** The Constant CLIENT_MAX_THREADSPOOL_THREADS. */
 	public static final int CLIENT_MAX_THREADSPOOL_THREADS = 250;
 
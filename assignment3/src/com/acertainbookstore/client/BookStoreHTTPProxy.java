@@ -10,6 +10,7 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
@@ -139,6 +140,22 @@ public class BookStoreHTTPProxy implements BookStore {
 		return (List<Book>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStore#runBatch(com.acertainbookstore.
+	 * business.BookStoreBatch)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<List<?>> runBatch(BookStoreBatch batch) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BATCH;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, batch);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (List<List<?>>) bookStoreResponse.getList();
+	}
+
 	/**
 	 * Stops the proxy.
 	 */
@@ -8,6 +8,7 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
@@ -194,6 +195,22 @@ public class StockManagerHTTPProxy implements StockManager {
 		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#runBatch(com.acertainbookstore.
+	 * business.BookStoreBatch)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<List<?>> runBatch(BookStoreBatch batch) throws BookStoreException {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BATCH;
+		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, batch);
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+				serializer.get());
+		return (List<List<?>>) bookStoreResponse.getList();
+	}
+
 	/**
 	 * Stops the proxy.
 	 */
@@ -1,10 +1,14 @@
 package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -14,9 +18,12 @@ import org.junit.Test;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.AsyncBookStoreHTTPProxy;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
@@ -349,6 +356,101 @@ public class BookStoreTest {
 				&& booksInStorePreTest.size() == booksInStorePostTest.size());
 	}
 
+	/**
+	 * Tests that a batch buys the editor picks it fetched in one request.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBatchBuyEditorPicks() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, NUM_COPIES);
+		Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+		editorPicks.add(new BookEditorPick(TEST_ISBN, true));
+		storeManager.updateEditorPicks(editorPicks);
+
+		BookStoreBatch batch = new BookStoreBatch();
+		int picks = batch.getEditorPicks(2);
+		int books = batch.getBooks(picks, 2);
+		int bought = batch.buyBooks(books, 2);
+		List<List<?>> results = client.runBatch(batch);
+
+		assertEquals(3, results.size());
+		assertEquals(1, results.get(picks).size());
+		assertEquals(TEST_ISBN, ((Book) results.get(books).get(0)).getISBN());
+		assertNull(results.get(bought));
+
+		for (StockBook book : storeManager.getBooks()) {
+			assertEquals(book.getISBN() == TEST_ISBN ? NUM_COPIES - 2 : NUM_COPIES, book.getNumCopies());
+		}
+	}
+
+	/**
+	 * Tests that a batch stops at the first step that fails and keeps the
+	 * effects of the steps before it.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBatchStopsAtFailedStep() throws BookStoreException {
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		isbnSet.add(TEST_ISBN);
+
+		BookStoreBatch batch = new BookStoreBatch();
+		int books = batch.getBooks(isbnSet);
+		batch.buyBooks(booksToBuy);
+		batch.buyBooks(books, NUM_COPIES);
+		batch.buyBooks(booksToBuy);
+
+		try {
+			client.runBatch(batch);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		assertEquals(NUM_COPIES - 1, storeManager.getBooks().get(0).getNumCopies());
+	}
+
+	/**
+	 * Tests that buys sent together through the asynchronous client all
+	 * complete and that one copy too many fails its future. Only runs against
+	 * the server.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testAsyncBuysInFlight() throws Exception {
+		assumeFalse(localTest);
+		AsyncBookStoreHTTPProxy asyncClient = new AsyncBookStoreHTTPProxy("http://localhost:8081");
+
+		try {
+			Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+			booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+			List<CompletableFuture<Void>> buys = new ArrayList<CompletableFuture<Void>>();
+
+			for (int i = 0; i < NUM_COPIES; i++) {
+				buys.add(asyncClient.buyBooks(booksToBuy));
+			}
+
+			CompletableFuture.allOf(buys.toArray(new CompletableFuture<?>[buys.size()])).get();
+			assertEquals(0, storeManager.getBooks().get(0).getNumCopies());
+
+			try {
+				asyncClient.buyBooks(booksToBuy).get();
+				fail();
+			} catch (ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof BookStoreException);
+			}
+		} finally {
+			asyncClient.stop();
+		}
+	}
+
 	/**
 	 * Tear down after class.
 	 *
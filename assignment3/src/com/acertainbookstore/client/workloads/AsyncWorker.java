@@ -0,0 +1,190 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.interfaces.AsyncStockManager;
+
+/**
+ *
+ * AsyncWorker runs the same interactions as {@link Worker} through the
+ * asynchronous clients, so that a single thread keeps up to
+ * numInFlight interactions running at the same time instead of one
+ *
+ */
+public class AsyncWorker implements Callable<WorkerRunResult> {
+    private WorkloadConfiguration configuration = null;
+    private AsyncBookStore bookStore = null;
+    private AsyncStockManager stockManager = null;
+    private int numInFlight;
+    private AtomicInteger numSuccessfulInteractions = new AtomicInteger();
+    private AtomicInteger numSuccessfulFrequentBookStoreInteraction = new AtomicInteger();
+    private AtomicInteger numTotalFrequentBookStoreInteraction = new AtomicInteger();
+
+    public AsyncWorker(WorkloadConfiguration config, AsyncBookStore bookStore, AsyncStockManager stockManager,
+	    int numInFlight) {
+	this.configuration = config;
+	this.bookStore = bookStore;
+	this.stockManager = stockManager;
+	this.numInFlight = numInFlight;
+    }
+
+    /**
+     * Starts the appropriate interaction while trying to maintain the
+     * configured distributions
+     *
+     * @param chooseInteraction
+     * @return the future completion of the interaction
+     */
+    private CompletableFuture<Void> startInteraction(float chooseInteraction) {
+	float percentRareStockManagerInteraction = configuration.getPercentRareStockManagerInteraction();
+	float percentFrequentStockManagerInteraction = configuration.getPercentFrequentStockManagerInteraction();
+
+	if (chooseInteraction < percentRareStockManagerInteraction) {
+	    return startRareStockManagerInteraction();
+	} else if (chooseInteraction < percentRareStockManagerInteraction + percentFrequentStockManagerInteraction) {
+	    return startFrequentStockManagerInteraction();
+	} else {
+	    numTotalFrequentBookStoreInteraction.incrementAndGet();
+	    return startFrequentBookStoreInteraction()
+		    .thenRun(numSuccessfulFrequentBookStoreInteraction::incrementAndGet);
+	}
+    }
+
+    /**
+     * Runs numRuns interactions, at most numInFlight at a time, and waits
+     * until all of them are done
+     *
+     * @param numRuns
+     * @throws InterruptedException
+     */
+    private void runInteractions(int numRuns) throws InterruptedException {
+	Semaphore inFlight = new Semaphore(numInFlight);
+	Random rand = new Random();
+
+	for (int count = 0; count < numRuns; count++) {
+	    inFlight.acquire();
+	    startInteraction(rand.nextFloat() * 100f).whenComplete((result, ex) -> {
+		if (ex == null) {
+		    numSuccessfulInteractions.incrementAndGet();
+		}
+
+		inFlight.release();
+	    });
+	}
+
+	inFlight.acquire(numInFlight);
+    }
+
+    /**
+     * Run the workloads trying to respect the distributions of the interactions
+     * and return result in the end
+     */
+    public WorkerRunResult call() throws Exception {
+	// Perform the warmup runs
+	runInteractions(configuration.getWarmUpRuns());
+
+	numSuccessfulInteractions.set(0);
+	numTotalFrequentBookStoreInteraction.set(0);
+	numSuccessfulFrequentBookStoreInteraction.set(0);
+
+	// Perform the actual runs
+	long startTimeInNanoSecs = System.nanoTime();
+	runInteractions(configuration.getNumActualRuns());
+	long timeForRunsInNanoSecs = System.nanoTime() - startTimeInNanoSecs;
+
+	return new WorkerRunResult(numSuccessfulInteractions.get(), timeForRunsInNanoSecs,
+		configuration.getNumActualRuns(), numSuccessfulFrequentBookStoreInteraction.get(),
+		numTotalFrequentBookStoreInteraction.get());
+    }
+
+    /**
+     * Starts the new stock acquisition interaction
+     *
+     * @return the future completion
+     */
+    private CompletableFuture<Void> startRareStockManagerInteraction() {
+	return stockManager.getBooks().thenCompose(books -> {
+	    Set<Integer> isbns = new HashSet<>();
+
+	    for (StockBook book : books) {
+		isbns.add(book.getISBN());
+	    }
+
+	    Set<StockBook> booksToAdd = new HashSet<>();
+
+	    synchronized (this) {
+		for (StockBook book : BookSetGenerator.nextSetOfStockBooks(configuration.getNumBooksToAdd())) {
+		    if (!isbns.contains(book.getISBN())) {
+			booksToAdd.add(book);
+		    }
+		}
+	    }
+
+	    return stockManager.addBooks(booksToAdd);
+	});
+    }
+
+    /**
+     * Starts the stock replenishment interaction
+     *
+     * @return the future completion
+     */
+    private CompletableFuture<Void> startFrequentStockManagerInteraction() {
+	return stockManager.getBooks().thenCompose(books -> {
+	    List<StockBook> sortedBooks = new ArrayList<>(books);
+	    sortedBooks.sort(Comparator.comparingInt(StockBook::getNumCopies));
+
+	    // Add copies to the k books with smallest quantities in stock
+	    Set<BookCopy> bookCopiesSet = new HashSet<>();
+	    int numBooks = Math.min(configuration.getNumBooksWithLeastCopies(), sortedBooks.size());
+
+	    for (StockBook book : sortedBooks.subList(0, numBooks)) {
+		bookCopiesSet.add(new BookCopy(book.getISBN(), configuration.getNumAddCopies()));
+	    }
+
+	    return stockManager.addCopies(bookCopiesSet);
+	});
+    }
+
+    /**
+     * Starts the customer interaction
+     *
+     * @return the future completion
+     */
+    private CompletableFuture<Void> startFrequentBookStoreInteraction() {
+	int numEditorPicks = configuration.getNumEditorPicksToGet();
+	int numOfPicked = ThreadLocalRandom.current().nextInt(numEditorPicks) + 1;
+
+	return bookStore.getEditorPicks(numEditorPicks).thenCompose(editorPicks -> {
+	    Set<Integer> isbnSet = new HashSet<>();
+
+	    for (Book book : editorPicks) {
+		isbnSet.add(book.getISBN());
+	    }
+
+	    return bookStore.getBooks(configuration.getBookSetGenerator().sampleFromSetOfISBNs(isbnSet, numOfPicked));
+	}).thenCompose(sampledBooks -> {
+	    Set<BookCopy> booksToBuy = new HashSet<>();
+
+	    for (Book book : sampledBooks) {
+		booksToBuy.add(new BookCopy(book.getISBN(), configuration.getNumBookCopiesToBuy()));
+	    }
+
+	    return bookStore.buyBooks(booksToBuy);
+	});
+    }
+}
@@ -2,6 +2,7 @@ package com.acertainbookstore.client.workloads;
 
 import java.awt.Font;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -12,10 +13,15 @@ import java.util.concurrent.Future;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.AsyncBookStoreHTTPProxy;
+import com.acertainbookstore.client.AsyncStockManagerHTTPProxy;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.interfaces.AsyncStockManager;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 
 import org.jfree.chart.ChartFactory;
@@ -50,7 +56,7 @@ public class CertainWorkload {
     //Initialise the local store
 		CertainBookStore store = new CertainBookStore();
     //Run the workers
-    List<List<WorkerRunResult>> localResults = runWorkers(store, store);
+    List<List<WorkerRunResult>> localResults = runWorkers(store, store, false);
 
     //Initialise the remote store
 		BookStoreHTTPProxy storeRPC = new BookStoreHTTPProxy(serverAddress);
@@ -58,7 +64,23 @@ public class CertainWorkload {
 
     //Run the workers
 //		List<List<WorkerRunResult>> rpcResults = null;
-    List<List<WorkerRunResult>> rpcResults = runWorkers(storeRPC, managerRPC);
+    List<List<WorkerRunResult>> rpcResults = runWorkers(storeRPC, managerRPC, false);
+
+    //With the batch property, run the customer interactions in one round trip too
+    if (Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_BATCH))) {
+      List<List<WorkerRunResult>> batchedResults = runWorkers(storeRPC, managerRPC, true);
+      reportRoundTripSavings(rpcResults, batchedResults);
+    }
+
+    //With the async property, run one thread with many interactions in flight too
+    if (Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_ASYNC))) {
+      AsyncBookStoreHTTPProxy asyncStoreRPC = new AsyncBookStoreHTTPProxy(serverAddress);
+      AsyncStockManagerHTTPProxy asyncManagerRPC = new AsyncStockManagerHTTPProxy(serverAddress + "/stock");
+      List<WorkerRunResult> asyncResults = runAsyncWorker(storeRPC, managerRPC, asyncStoreRPC, asyncManagerRPC);
+      reportAsyncThroughput(rpcResults, asyncResults);
+      asyncStoreRPC.stop();
+      asyncManagerRPC.stop();
+    }
 
     //Remember to stop the server again
     storeRPC.stop();
@@ -68,8 +90,8 @@ public class CertainWorkload {
     reportMetric(localResults,rpcResults);
 	}
 
-  private static List<List<WorkerRunResult>> runWorkers(BookStore bookstore, StockManager stockmanager)
-  	throws Exception {
+  private static List<List<WorkerRunResult>> runWorkers(BookStore bookstore, StockManager stockmanager,
+  	boolean batched) throws Exception {
 		List<List<WorkerRunResult>> totalWorkersRunResults = new ArrayList<>();
 
 		// Generate data in the bookstore before running the workload
@@ -85,6 +107,7 @@ public class CertainWorkload {
 			
 			for (int j = 0; j <= i; j++) {
 				WorkloadConfiguration config = new WorkloadConfiguration(bookstore, stockmanager);
+				config.setBatched(batched);
 				Worker workerTask = new Worker(config);
 				
 				// Keep the futures to wait for the result from the thread
@@ -106,6 +129,109 @@ public class CertainWorkload {
     return totalWorkersRunResults;
   }
 
+	/**
+	 * Runs a single AsyncWorker thread with as many interactions in flight as
+	 * the threaded runs have workers, from 1 to numConcurrentWorkloadThreads
+	 * 
+	 * @param bookstore
+	 * @param stockmanager
+	 * @param asyncBookStore
+	 * @param asyncStockManager
+	 * @return the result of each run
+	 */
+	private static List<WorkerRunResult> runAsyncWorker(BookStore bookstore, StockManager stockmanager,
+			AsyncBookStore asyncBookStore, AsyncStockManager asyncStockManager) throws Exception {
+		List<WorkerRunResult> asyncRunResults = new ArrayList<>();
+
+		for (int i = 1; i <= numConcurrentWorkloadThreads; i++) {
+			stockmanager.removeAllBooks();
+			initializeBookStoreData(stockmanager);
+
+			WorkloadConfiguration config = new WorkloadConfiguration(bookstore, stockmanager);
+			asyncRunResults.add(new AsyncWorker(config, asyncBookStore, asyncStockManager, i).call());
+		}
+
+		stockmanager.removeAllBooks();
+		return asyncRunResults;
+	}
+
+	/**
+	 * Prints the throughput of the threaded RPC runs next to that of one
+	 * thread with the same number of interactions in flight
+	 * 
+	 * @param rpcResults
+	 * @param asyncResults
+	 */
+	private static void reportAsyncThroughput(List<List<WorkerRunResult>> rpcResults,
+			List<WorkerRunResult> asyncResults) {
+		System.out.println("in flight	throughput	async throughput	ms/interaction	async ms/interaction");
+
+		for (int i = 0; i < rpcResults.size(); i++) {
+			List<WorkerRunResult> asyncResult = Collections.singletonList(asyncResults.get(i));
+
+			System.out.printf("%d\t%.0f\t%.0f\t%.3f\t%.3f%n", rpcResults.get(i).size(), throughput(rpcResults.get(i)),
+					throughput(asyncResult), latency(rpcResults.get(i)), latency(asyncResult));
+		}
+	}
+
+	/**
+	 * Prints the throughput and the latency of the RPC runs with one round
+	 * trip per customer request and with one per customer interaction
+	 * 
+	 * @param rpcResults
+	 * @param batchedResults
+	 */
+	private static void reportRoundTripSavings(List<List<WorkerRunResult>> rpcResults,
+			List<List<WorkerRunResult>> batchedResults) {
+		System.out.println("clients\tround trips saved\tthroughput\tbatched throughput\tms/interaction\tbatched ms/interaction");
+
+		for (int i = 0; i < rpcResults.size(); i++) {
+			long roundTripsSaved = 0;
+
+			// A batched customer interaction takes one round trip instead of three
+			for (WorkerRunResult runResult : batchedResults.get(i)) {
+				roundTripsSaved += 2 * runResult.getTotalFrequentBookStoreInteractionRuns();
+			}
+
+			System.out.printf("%d\t%d\t%.0f\t%.0f\t%.3f\t%.3f%n", rpcResults.get(i).size(), roundTripsSaved,
+					throughput(rpcResults.get(i)), throughput(batchedResults.get(i)), latency(rpcResults.get(i)),
+					latency(batchedResults.get(i)));
+		}
+	}
+
+	/**
+	 * Computes the aggregate throughput of the workers, in successful
+	 * interactions per second
+	 * 
+	 * @param workerRunResults
+	 * @return the throughput
+	 */
+	private static double throughput(List<WorkerRunResult> workerRunResults) {
+		double aggThroughPut = 0;
+
+		for (WorkerRunResult runResult : workerRunResults) {
+			aggThroughPut += 1000000000.0 * runResult.getSuccessfulInteractions() / runResult.getElapsedTimeInNanoSecs();
+		}
+
+		return aggThroughPut;
+	}
+
+	/**
+	 * Computes the average latency of an interaction, in milliseconds
+	 * 
+	 * @param workerRunResults
+	 * @return the latency
+	 */
+	private static double latency(List<WorkerRunResult> workerRunResults) {
+		double totalLatency = 0;
+
+		for (WorkerRunResult runResult : workerRunResults) {
+			totalLatency += runResult.getElapsedTimeInNanoSecs() / (1000000.0 * runResult.getTotalRuns());
+		}
+
+		return totalLatency / workerRunResults.size();
+	}
+
 	/**
 	 * Computes the metrics and prints them
 	 * 
@@ -15,6 +15,7 @@ import java.util.concurrent.Callable;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.interfaces.BookStore;
@@ -201,6 +202,11 @@ public class Worker implements Callable<WorkerRunResult> {
      */
     private synchronized void runFrequentBookStoreInteraction() throws BookStoreException {
 	// TODO: Add code for Customer Interaction
+    	if (configuration.isBatched()) {
+    		runBatchedFrequentBookStoreInteraction();
+    		return;
+    	}
+
     	Random random = new Random();
    	    int numOfPicked = random.nextInt(configuration.getNumEditorPicksToGet())+1;
    	    BookStore storeBook = configuration.getBookStore();
@@ -227,4 +233,21 @@ public class Worker implements Callable<WorkerRunResult> {
     	storeBook.buyBooks(bookToBuy);   	
     }
 
+    /**
+     * Runs the customer interaction in one round trip: the server samples the
+     * editor picks and buys them without sending them to the client first.
+     * 
+     * @throws BookStoreException
+     */
+    private void runBatchedFrequentBookStoreInteraction() throws BookStoreException {
+	Random random = new Random();
+	int numOfPicked = random.nextInt(configuration.getNumEditorPicksToGet()) + 1;
+
+	BookStoreBatch batch = new BookStoreBatch();
+	int editorPicks = batch.getEditorPicks(configuration.getNumEditorPicksToGet());
+	int sampledBooks = batch.getBooks(editorPicks, numOfPicked);
+	batch.buyBooks(sampledBooks, configuration.getNumBookCopiesToBuy());
+	configuration.getBookStore().runBatch(batch);
+    }
+
 }
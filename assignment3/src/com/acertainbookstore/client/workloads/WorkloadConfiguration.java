@@ -20,6 +20,7 @@ public class WorkloadConfiguration {
 	private int numActualRuns = 500;
 	private float percentRareStockManagerInteraction = 10f;
 	private float percentFrequentStockManagerInteraction = 30f;
+	private boolean batched = false; // customer interactions in one round trip
 	private BookSetGenerator bookSetGenerator = null;
 	private StockManager stockManager = null;
 	private BookStore bookStore = null;
@@ -129,6 +130,14 @@ public class WorkloadConfiguration {
 		this.numAddCopies = numAddCopies;
 	}
 
+	public boolean isBatched() {
+		return batched;
+	}
+
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
 	public BookSetGenerator getBookSetGenerator() {
 		return bookSetGenerator;
 	}
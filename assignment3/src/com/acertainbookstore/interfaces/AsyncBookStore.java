@@ -0,0 +1,83 @@
+package com.acertainbookstore.interfaces;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreBatch;
+
+/**
+ * {@link AsyncBookStore} declares the methods of {@link BookStore} without
+ * blocking the caller: each method returns at once with a future of the
+ * result, so one thread can keep many requests in flight. A future that fails
+ * does so with the {@link com.acertainbookstore.utils.BookStoreException} the
+ * blocking method would have thrown.
+ *
+ * @see BookStore
+ */
+public interface AsyncBookStore {
+
+	/**
+	 * Buys the sets of books specified.
+	 *
+	 * @param booksToBuy
+	 *            the books to buy
+	 * @return the future completion
+	 * @see BookStore#buyBooks(Set)
+	 */
+	public CompletableFuture<Void> buyBooks(Set<BookCopy> booksToBuy);
+
+	/**
+	 * Applies the BookRatings in the set, i.e. rates each book with their
+	 * respective rating.
+	 *
+	 * @param bookRating
+	 *            the book rating
+	 * @return the future completion
+	 * @see BookStore#rateBooks(Set)
+	 */
+	public CompletableFuture<Void> rateBooks(Set<BookRating> bookRating);
+
+	/**
+	 * Returns the list of books corresponding to the set of ISBNs.
+	 *
+	 * @param isbnSet
+	 *            the ISBN set
+	 * @return the future books
+	 * @see BookStore#getBooks(Set)
+	 */
+	public CompletableFuture<List<Book>> getBooks(Set<Integer> isbnSet);
+
+	/**
+	 * Returns the list of books containing numBooks top rated books.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the future top rated books
+	 * @see BookStore#getTopRatedBooks(int)
+	 */
+	public CompletableFuture<List<Book>> getTopRatedBooks(int numBooks);
+
+	/**
+	 * Gets the list of books containing numBooks editor picks.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the future editor picks
+	 * @see BookStore#getEditorPicks(int)
+	 */
+	public CompletableFuture<List<Book>> getEditorPicks(int numBooks);
+
+	/**
+	 * Runs the steps of a batch in order.
+	 *
+	 * @param batch
+	 *            the batch
+	 * @return the future results of the steps
+	 * @see BookStore#runBatch(BookStoreBatch)
+	 */
+	public CompletableFuture<List<List<?>>> runBatch(BookStoreBatch batch);
+}
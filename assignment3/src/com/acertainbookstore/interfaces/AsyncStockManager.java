@@ -0,0 +1,106 @@
+package com.acertainbookstore.interfaces;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
+import com.acertainbookstore.business.StockBook;
+
+/**
+ * {@link AsyncStockManager} declares the methods of {@link StockManager}
+ * without blocking the caller: each method returns at once with a future of
+ * the result. A future that fails does so with the
+ * {@link com.acertainbookstore.utils.BookStoreException} the blocking method
+ * would have thrown.
+ *
+ * @see StockManager
+ */
+public interface AsyncStockManager {
+
+	/**
+	 * Adds the books in bookSet to the stock.
+	 *
+	 * @param bookSet
+	 *            the book set
+	 * @return the future completion
+	 * @see StockManager#addBooks(Set)
+	 */
+	public CompletableFuture<Void> addBooks(Set<StockBook> bookSet);
+
+	/**
+	 * Add copies of the existing book to the bookstore.
+	 *
+	 * @param bookCopiesSet
+	 *            the book copies set
+	 * @return the future completion
+	 * @see StockManager#addCopies(Set)
+	 */
+	public CompletableFuture<Void> addCopies(Set<BookCopy> bookCopiesSet);
+
+	/**
+	 * Returns the list of books in the bookstore.
+	 *
+	 * @return the future books
+	 * @see StockManager#getBooks()
+	 */
+	public CompletableFuture<List<StockBook>> getBooks();
+
+	/**
+	 * Returns the list of books which has the ISBNs in the set.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the future books
+	 * @see StockManager#getBooksByISBN(Set)
+	 */
+	public CompletableFuture<List<StockBook>> getBooksByISBN(Set<Integer> isbns);
+
+	/**
+	 * Returns the list of books which have sale misses.
+	 *
+	 * @return the future books in demand
+	 * @see StockManager#getBooksInDemand()
+	 */
+	public CompletableFuture<List<StockBook>> getBooksInDemand();
+
+	/**
+	 * Books are marked as editor picks or not.
+	 *
+	 * @param editorPicks
+	 *            the editor picks
+	 * @return the future completion
+	 * @see StockManager#updateEditorPicks(Set)
+	 */
+	public CompletableFuture<Void> updateEditorPicks(Set<BookEditorPick> editorPicks);
+
+	/**
+	 * Clean up the bookstore.
+	 *
+	 * @return the future completion
+	 * @see StockManager#removeAllBooks()
+	 */
+	public CompletableFuture<Void> removeAllBooks();
+
+	/**
+	 * Cleans up the bookstore selectively for the list of provided ISBNs.
+	 *
+	 * @param isbnSet
+	 *            the ISBN set
+	 * @return the future completion
+	 * @see StockManager#removeBooks(Set)
+	 */
+	public CompletableFuture<Void> removeBooks(Set<Integer> isbnSet);
+
+	/**
+	 * Runs the steps of a batch in order.
+	 *
+	 * @param batch
+	 *            the batch
+	 * @return the future results of the steps
+	 * @see StockManager#runBatch(BookStoreBatch)
+	 */
+	public CompletableFuture<List<List<?>>> runBatch(BookStoreBatch batch);
+}
@@ -6,6 +6,7 @@ import java.util.Set;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.utils.BookStoreException;
 
 /**
@@ -67,4 +68,18 @@ public interface BookStore {
 	 *             the book store exception
 	 */
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException;
+
+	/**
+	 * Runs the steps of a batch in order, as one operation with respect to
+	 * other operations on the bookstore, and returns the result of each step:
+	 * the books it got, or null for steps that return nothing. The batch stops
+	 * at the first step that fails; the steps before it keep their effects.
+	 *
+	 * @param batch
+	 *            the batch
+	 * @return the results of the steps
+	 * @throws BookStoreException
+	 *             the book store exception of the step that failed
+	 */
+	public List<List<?>> runBatch(BookStoreBatch batch) throws BookStoreException;
 }
@@ -5,6 +5,7 @@ import java.util.Set;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreException;
 
@@ -87,4 +88,17 @@ public interface StockManager {
 	 *             the book store exception
 	 */
 	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException;
+
+	/**
+	 * Runs the steps of a batch in order, as one operation with respect to
+	 * other operations on the bookstore.
+	 *
+	 * @param batch
+	 *            the batch
+	 * @return the results of the steps
+	 * @throws BookStoreException
+	 *             the book store exception of the step that failed
+	 * @see BookStore#runBatch(BookStoreBatch)
+	 */
+	public List<List<?>> runBatch(BookStoreBatch batch) throws BookStoreException;
 }
@@ -13,6 +13,7 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreBatch;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreKryoSerializer;
@@ -23,7 +24,6 @@ import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link BookStoreHTTPMessageHandler} implements the message handler class
@@ -129,6 +129,10 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				getStockBooksByISBN(request, response);
 				break;
 
+			case BATCH:
+				runBatch(request, response);
+				break;
+
 			default:
 				System.err.println("Unsupported message tag.");
 				break;
@@ -139,6 +143,30 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		baseRequest.setHandled(true);
 	}
 
+	/**
+	 * Runs a batch of operations.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void runBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		BookStoreBatch batch = (BookStoreBatch) readRequestContent(request);
+		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+
+		try {
+			bookStoreResponse.setList(myBookStore.runBatch(batch));
+		} catch (BookStoreException ex) {
+			bookStoreResponse.setException(ex);
+		}
+
+		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
+		response.getOutputStream().write(serializedResponseContent);
+	}
+
 	/**
 	 * Gets the stock books by ISBN.
 	 *
@@ -151,9 +179,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -203,9 +229,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -230,9 +254,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void buyBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -257,10 +279,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void updateEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) serializer.get()
-				.deserialize(serializedRequestContent);
+		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -301,9 +320,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addCopies(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> listBookCopies = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> listBookCopies = (Set<BookCopy>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -328,9 +345,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<StockBook> newBooks = (Set<StockBook>) serializer.get().deserialize(serializedRequestContent);
+		Set<StockBook> newBooks = (Set<StockBook>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -376,9 +391,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void removeBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> bookSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> bookSet = (Set<Integer>) readRequestContent(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -392,16 +405,15 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	}
 
 	/**
-	 * Gets the serialized request content.
+	 * Decodes the request content directly from the input stream of the
+	 * request, so that bodies of unknown length, e.g. chunked ones, are read
+	 * too.
 	 *
 	 * @param request the request
-	 * @return the serialized request content
+	 * @return the request content
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+	private Object readRequestContent(HttpServletRequest request) throws IOException {
+		return serializer.get().deserialize(request.getInputStream());
 	}
 }
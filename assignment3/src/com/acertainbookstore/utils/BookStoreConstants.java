@@ -60,6 +60,12 @@ public final class BookStoreConstants {
 	/** The Constant PROPERTY_KEY_SERVER_PORT. */
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
 
+	/** The Constant PROPERTY_KEY_BATCH. */
+	public static final String PROPERTY_KEY_BATCH = "batch";
+
+	/** The Constant PROPERTY_KEY_ASYNC. */
+	public static final String PROPERTY_KEY_ASYNC = "async";
+
 	/** The Constant EPSILON used for floating point number comparison */
 	public static final float EPSILON = 0.000001F;
 
@@ -1,13 +1,17 @@
 package com.acertainbookstore.utils;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.http.HttpMethod;
 
@@ -163,44 +167,119 @@ public final class BookStoreUtility {
 	 */
 	public static BookStoreResponse performHttpExchange(HttpClient client, BookStoreRequest bookStoreRequest,
 			BookStoreSerializer serializer) throws BookStoreException {
+		Request request = newHttpRequest(client, bookStoreRequest, serializer);
+		ContentResponse response;
+
+		try {
+			response = request.send();
+		} catch (InterruptedException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_SENDING, ex);
+		} catch (TimeoutException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_TIMEOUT, ex);
+		} catch (ExecutionException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
+		}
+
+		return decodeResponse(response.getContent(), serializer);
+	}
+
+	/**
+	 * Perform HTTP exchange without blocking. The request is serialized by the
+	 * calling thread and the response is deserialized by a thread of the
+	 * client, so each thread gets its own serializer from the supplier.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @param serializer
+	 *            the supplier of the serializer of the current thread
+	 * @return the future book store response, which fails with a
+	 *         {@link BookStoreException}
+	 */
+	public static CompletableFuture<BookStoreResponse> performHttpExchangeAsync(HttpClient client,
+			BookStoreRequest bookStoreRequest, Supplier<BookStoreSerializer> serializer) {
+		CompletableFuture<BookStoreResponse> future = new CompletableFuture<>();
 		Request request;
 
+		try {
+			request = newHttpRequest(client, bookStoreRequest, serializer.get());
+		} catch (BookStoreException ex) {
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		request.send(new BufferingResponseListener() {
+
+			@Override
+			public void onComplete(Result result) {
+				if (result.isFailed()) {
+					future.completeExceptionally(new BookStoreException(
+							BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, result.getFailure()));
+					return;
+				}
+
+				try {
+					future.complete(decodeResponse(getContent(), serializer.get()));
+				} catch (BookStoreException ex) {
+					future.completeExceptionally(ex);
+				}
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Creates the HTTP request of a book store request.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @param serializer
+	 *            the serializer
+	 * @return the HTTP request
+	 * @throws BookStoreException
+	 *             if the input value cannot be serialized
+	 */
+	private static Request newHttpRequest(HttpClient client, BookStoreRequest bookStoreRequest,
+			BookStoreSerializer serializer) throws BookStoreException {
 		switch (bookStoreRequest.getMethod()) {
 		case GET:
-			request = client.newRequest(bookStoreRequest.getURLString()).method(HttpMethod.GET);
-			break;
+			return client.newRequest(bookStoreRequest.getURLString()).method(HttpMethod.GET);
 
 		case POST:
 			try {
 				byte[] serializedValue = serializer.serialize(bookStoreRequest.getInputValue());
 				ContentProvider contentProvider = new BytesContentProvider(serializedValue);
-				request = client.POST(bookStoreRequest.getURLString()).content(contentProvider);
+				return client.POST(bookStoreRequest.getURLString()).content(contentProvider);
 			} catch (IOException ex) {
 				throw new BookStoreException("Serialization error", ex);
 			}
 
-			break;
-
 		default:
 			throw new IllegalArgumentException("HTTP Method not supported.");
 		}
+	}
 
-		ContentResponse response;
-
-		try {
-			response = request.send();
-		} catch (InterruptedException ex) {
-			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_SENDING, ex);
-		} catch (TimeoutException ex) {
-			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_TIMEOUT, ex);
-		} catch (ExecutionException ex) {
-			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
-		}
-
+	/**
+	 * Deserializes a response and throws the exception it carries, if any.
+	 *
+	 * @param content
+	 *            the content of the HTTP response
+	 * @param serializer
+	 *            the serializer
+	 * @return the book store response
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private static BookStoreResponse decodeResponse(byte[] content, BookStoreSerializer serializer)
+			throws BookStoreException {
 		BookStoreResponse bookStoreResponse;
 
 		try {
-			bookStoreResponse = (BookStoreResponse) serializer.deserialize(response.getContent());
+			bookStoreResponse = (BookStoreResponse) serializer.deserialize(content);
 		} catch (IOException ex) {
 			throw new BookStoreException("Deserialization error", ex);
 		}
@@ -3,12 +3,8 @@ package com.acertainbookstore.business;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 
 import com.acertainbookstore.interfaces.BookStore;
@@ -27,7 +23,16 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class CertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookCatalog bookMap = null;
+
+	/** The books ordered by average rating. */
+	private TopRatedIndex topRatedIndex = null;
+
+	/** The books that are editor picks. */
+	private EditorPickIndex editorPickIndex = null;
+
+	/** The books that had sale misses since they were last restocked. */
+	private InDemandIndex inDemandIndex = null;
 
 	/**
 	 * Instantiates a new {@link CertainBookStore}.
@@ -35,7 +40,10 @@ public class CertainBookStore implements BookStore, StockManager {
 	public CertainBookStore() {
 
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntHashBookCatalog();
+		topRatedIndex = new TopRatedIndex();
+		editorPickIndex = new EditorPickIndex();
+		inDemandIndex = new InDemandIndex();
 	}
 
 	/*
@@ -82,10 +90,47 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> addedBooks = new ArrayList<>(bookSet.size());
+
 		for (StockBook book : bookSet) {
 			int isbn = book.getISBN();
-			bookMap.put(isbn, new BookStoreBook(book));
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(isbn, bookStoreBook);
+			topRatedIndex.update(bookStoreBook);
+			addedBooks.add(bookStoreBook);
+			inDemandIndex.update(bookStoreBook);
 		}
+
+		editorPickIndex.update(addedBooks);
+	}
+
+	/**
+	 * Adds the books with all their counters and editor pick flags, replacing
+	 * any books with the same ISBNs. Unlike {@link #addBooks(Set)}, books
+	 * without copies are accepted, since the books come from a checkpoint of a
+	 * valid store.
+	 *
+	 * @param books
+	 *            the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public synchronized void restoreBooks(Collection<StockBook> books) throws BookStoreException {
+		if (books == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<BookStoreBook> addedBooks = new ArrayList<>(books.size());
+
+		for (StockBook book : books) {
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(book.getISBN(), bookStoreBook);
+			topRatedIndex.update(bookStoreBook);
+			addedBooks.add(bookStoreBook);
+			inDemandIndex.update(bookStoreBook);
+		}
+
+		editorPickIndex.update(addedBooks);
 	}
 
 	/*
@@ -127,6 +172,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			numCopies = bookCopy.getNumCopies();
 			book = bookMap.get(isbn);
 			book.addCopies(numCopies);
+			inDemandIndex.update(book);
 		}
 	}
 
@@ -137,9 +183,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized List<StockBook> getBooks() {
 		List<StockBook> listBooks = new ArrayList<>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-		for (BookStoreBook book : bookMapValues) {
+		for (BookStoreBook book : bookMap) {
 			listBooks.add(book.immutableStockBook());
 		}
 
@@ -174,9 +218,15 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		List<BookStoreBook> updatedBooks = new ArrayList<>(editorPicks.size());
+
 		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+			BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+			book.setEditorPick(editorPickArg.isEditorPick());
+			updatedBooks.add(book);
 		}
+
+		editorPickIndex.update(updatedBooks);
 	}
 
 	/*
@@ -227,6 +277,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
 				book = bookMap.get(saleMissEntry.getKey());
 				book.addSaleMiss(saleMissEntry.getValue());
+				inDemandIndex.update(book);
 			}
 			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 		}
@@ -309,50 +360,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
-		List<Book> listEditorPicks = new ArrayList<>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet().iterator();
-		BookStoreBook book;
-
-		// Get all books that are editor picks.
-		while (it.hasNext()) {
-			Entry<Integer, BookStoreBook> pair = it.next();
-			book = pair.getValue();
-
-			if (book.isEditorPick()) {
-				listAllEditorPicks.add(book);
-			}
-		}
-
-		// Find numBooks random indices of books that will be picked.
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<>();
-		int rangePicks = listAllEditorPicks.size();
-
-		if (rangePicks <= numBooks) {
-
-			// We need to add all books.
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-
-			// We need to pick randomly the books that need to be returned.
-			int randNum;
-
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
-			}
-		}
-
-		// Get the numBooks random books.
-		for (Integer index : tobePicked) {
-			book = listAllEditorPicks.get(index);
-			listEditorPicks.add(book.immutableBook());
-		}
-
-		return listEditorPicks;
+		return editorPickIndex.getEditorPicks(numBooks);
 	}
 
 	/*
@@ -362,7 +370,11 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		return topRatedIndex.getTopRatedBooks(numBooks);
 	}
 
 	/*
@@ -372,7 +384,7 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		return inDemandIndex.getBooksInDemand();
 	}
 
 	/*
@@ -392,6 +404,9 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized void removeAllBooks() throws BookStoreException {
 		bookMap.clear();
+		topRatedIndex.clear();
+		editorPickIndex.clear();
+		inDemandIndex.clear();
 	}
 
 	/*
@@ -417,6 +432,10 @@ public class CertainBookStore implements BookStore, StockManager {
 
 		for (int isbn : isbnSet) {
 			bookMap.remove(isbn);
+			topRatedIndex.remove(isbn);
+			inDemandIndex.remove(isbn);
 		}
+
+		editorPickIndex.remove(isbnSet);
 	}
 }
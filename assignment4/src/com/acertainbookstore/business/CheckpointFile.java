@@ -0,0 +1,190 @@
+package com.acertainbookstore.business;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CheckpointFile} is a snapshot of every book of a bookstore, with all
+ * its counters and its editor pick flag, and the sequence number of the last
+ * operation it contains. The file is a fixed header followed by one record per
+ * book; strings are stored as their length and UTF-8 bytes.
+ *
+ * A checkpoint is written to a temporary file that replaces the old one only
+ * once it is on disk, so a crash never leaves a torn checkpoint behind. It is
+ * read through a {@link MappedByteBuffer}, which limits it to 2 GB.
+ */
+public class CheckpointFile {
+
+	/** The magic number that starts every checkpoint. */
+	private static final int MAGIC = 0x4253434b;
+
+	/** The version of the format. */
+	private static final int VERSION = 1;
+
+	/** The size of the buffer used to write a checkpoint. */
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	/** The sequence number of the last operation in the checkpoint. */
+	private final long sequence;
+
+	/** The books. */
+	private final List<StockBook> books;
+
+	/**
+	 * Instantiates a new {@link CheckpointFile}.
+	 *
+	 * @param sequence
+	 *            the sequence number of the last operation in the checkpoint
+	 * @param books
+	 *            the books
+	 */
+	public CheckpointFile(long sequence, List<StockBook> books) {
+		this.sequence = sequence;
+		this.books = books;
+	}
+
+	/**
+	 * Gets the sequence number of the last operation in the checkpoint.
+	 *
+	 * @return the sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the books.
+	 *
+	 * @return the books
+	 */
+	public List<StockBook> getBooks() {
+		return books;
+	}
+
+	/**
+	 * Writes the checkpoint and atomically replaces the file with it.
+	 *
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void write(Path file) throws IOException {
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sequence);
+			out.writeInt(books.size());
+
+			for (StockBook book : books) {
+				out.writeInt(book.getISBN());
+				out.writeFloat(book.getPrice());
+				out.writeInt(book.getNumCopies());
+				out.writeLong(book.getNumSaleMisses());
+				out.writeLong(book.getNumTimesRated());
+				out.writeLong(book.getTotalRating());
+				out.writeBoolean(book.isEditorPick());
+				writeString(out, book.getTitle());
+				writeString(out, book.getAuthor());
+			}
+
+			out.flush();
+			channel.force(true);
+		}
+
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes a string as its length and UTF-8 bytes.
+	 *
+	 * @param out
+	 *            the output
+	 * @param string
+	 *            the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a checkpoint by mapping the file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the checkpoint
+	 * @throws IOException
+	 *             if the file cannot be read or is not a checkpoint
+	 */
+	public static CheckpointFile read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The checkpoint " + file + " is larger than 2 GB");
+			}
+
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+					throw new IOException(file + " is not a checkpoint");
+				}
+
+				long sequence = in.getLong();
+				int numBooks = in.getInt();
+				List<StockBook> books = new ArrayList<>(numBooks);
+
+				for (int i = 0; i < numBooks; i++) {
+					int isbn = in.getInt();
+					float price = in.getFloat();
+					int numCopies = in.getInt();
+					long numSaleMisses = in.getLong();
+					long numTimesRated = in.getLong();
+					long totalRating = in.getLong();
+					boolean editorPick = in.get() != 0;
+					String title = readString(in);
+					String author = readString(in);
+					books.add(new ImmutableStockBook(isbn, title, author, price, numCopies, numSaleMisses,
+							numTimesRated, totalRating, editorPick));
+				}
+
+				return new CheckpointFile(sequence, books);
+			} catch (RuntimeException ex) {
+				// Buffer underflows and bad lengths mean a damaged file.
+				throw new IOException("The checkpoint " + file + " is damaged", ex);
+			}
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string
+	 */
+	private static String readString(MappedByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
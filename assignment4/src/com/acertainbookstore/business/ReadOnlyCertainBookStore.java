@@ -25,6 +25,30 @@ public class ReadOnlyCertainBookStore implements ReplicatedReadOnlyBookStore, Re
 		bookStore = new CertainBookStore();
 	}
 
+	/**
+	 * Copies the books together with the snapshot id they correspond to.
+	 *
+	 * @return the checkpoint, whose sequence number is the snapshot id
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public synchronized CheckpointFile checkpoint() throws BookStoreException {
+		return new CheckpointFile(snapshotId, bookStore.getBooks());
+	}
+
+	/**
+	 * Loads the books and the snapshot id of a checkpoint.
+	 *
+	 * @param checkpoint
+	 *            the checkpoint
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public synchronized void restore(CheckpointFile checkpoint) throws BookStoreException {
+		bookStore.restoreBooks(checkpoint.getBooks());
+		snapshotId = checkpoint.getSequence();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -43,7 +67,7 @@ public class ReadOnlyCertainBookStore implements ReplicatedReadOnlyBookStore, Re
 	 * getBooksInDemand()
 	 */
 	public synchronized BookStoreResult getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		return new BookStoreResult(bookStore.getBooksInDemand(), snapshotId);
 	}
 
 	/*
@@ -64,7 +88,7 @@ public class ReadOnlyCertainBookStore implements ReplicatedReadOnlyBookStore, Re
 	 * getTopRatedBooks(int)
 	 */
 	public synchronized BookStoreResult getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		return new BookStoreResult(bookStore.getTopRatedBooks(numBooks), snapshotId);
 	}
 
 	/*
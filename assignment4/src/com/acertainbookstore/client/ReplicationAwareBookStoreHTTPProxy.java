@@ -7,22 +7,19 @@ import java.net.URLEncoder;
 import java.util.*;
 
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.interfaces.BookStore;
-import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreRequest;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreSerializerRegistry;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 
 /**
  * {@link ReplicationAwareBookStoreHTTPProxy} implements the client level
@@ -32,9 +29,6 @@ import com.acertainbookstore.utils.BookStoreXStreamSerializer;
  */
 public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 
-	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
-
 	/** The client. */
 	private HttpClient client;
 
@@ -62,20 +56,13 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 	public ReplicationAwareBookStoreHTTPProxy() throws Exception {
 		initializeReplicationAwareMappings();
 
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
-
 		client = new HttpClient();
 
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
-		// Max number of threads.
-		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		// Max number of threads, unless the requests run on virtual threads.
+		client.setExecutor(BookStoreUtility.createClientExecutor());
 
 		// Seconds timeout; if no server reply, the request expires.
 		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
@@ -150,7 +137,7 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 		String urlString = getMasterServerAddress() + "/" + BookStoreMessageTag.BUYBOOKS;
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -168,7 +155,8 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 		do {
 			String urlString = getReplicaAddress() + "/" + BookStoreMessageTag.GETBOOKS;
 			BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
-			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+					BookStoreSerializerRegistry.getDefault());
 			bookStoreResult = bookStoreResponse.getResult();
 		} while (bookStoreResult.getSnapshotId() < this.getSnapshotId());
 
@@ -198,7 +186,8 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 			String urlString = getReplicaAddress() + "/" + BookStoreMessageTag.GETEDITORPICKS + "?"
 					+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks;
 			BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
-			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+					BookStoreSerializerRegistry.getDefault());
 			bookStoreResult = bookStoreResponse.getResult();
 		} while (bookStoreResult.getSnapshotId() < this.getSnapshotId());
 
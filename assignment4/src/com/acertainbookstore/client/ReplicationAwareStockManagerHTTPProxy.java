@@ -5,22 +5,19 @@ import java.io.IOException;
 import java.util.*;
 
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.StockBook;
-import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreRequest;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreSerializerRegistry;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 
 /**
  * {@link ReplicationAwareStockManagerHTTPProxy} implements the client level
@@ -30,9 +27,6 @@ import com.acertainbookstore.utils.BookStoreXStreamSerializer;
  */
 public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 
-	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
-
 	/** The client. */
 	private HttpClient client;
 
@@ -60,20 +54,13 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 	public ReplicationAwareStockManagerHTTPProxy() throws Exception {
 		initializeReplicationAwareMappings();
 
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
-
 		client = new HttpClient();
 
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
-		// Max number of threads.
-		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		// Max number of threads, unless the requests run on virtual threads.
+		client.setExecutor(BookStoreUtility.createClientExecutor());
 
 		// Seconds timeout; if no server reply, the request expires.
 		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
@@ -149,7 +136,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		String urlString = getMasterServerAddress() + "/" + BookStoreMessageTag.ADDBOOKS;
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookSet);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -164,7 +151,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		String urlString = getMasterServerAddress() + "/" + BookStoreMessageTag.ADDCOPIES;
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookCopiesSet);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -182,7 +169,8 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		do {
 			String urlString = getReplicaAddress() + "/" + BookStoreMessageTag.LISTBOOKS;
 			BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
-			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+					BookStoreSerializerRegistry.getDefault());
 			bookStoreResult = bookStoreResponse.getResult();
 		} while (bookStoreResult.getSnapshotId() < this.getSnapshotId());
 
@@ -201,7 +189,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		String urlString = getMasterServerAddress() + "/" + BookStoreMessageTag.UPDATEEDITORPICKS + "?";
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, editorPicksValues);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -219,7 +207,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		// books.
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, "");
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -234,7 +222,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		String urlString = getMasterServerAddress() + "/" + BookStoreMessageTag.REMOVEBOOKS;
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 		this.setSnapshotId(bookStoreResult.getSnapshotId());
 	}
@@ -254,7 +242,8 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		do {
 			String urlString = getReplicaAddress() + "/" + BookStoreMessageTag.GETSTOCKBOOKSBYISBN;
 			BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
-			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+			bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+					BookStoreSerializerRegistry.getDefault());
 			bookStoreResult = bookStoreResponse.getResult();
 		} while (bookStoreResult.getSnapshotId() < this.getSnapshotId());
 
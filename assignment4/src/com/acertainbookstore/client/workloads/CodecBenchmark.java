@@ -0,0 +1,180 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Server;
+
+import com.acertainbookstore.business.CheckpointFile;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.SlaveCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.server.SlaveBookStoreHTTPMessageHandler;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreRequest;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreSerializerRegistry;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ * {@link CodecBenchmark} measures the throughput of every codec against the
+ * same slave server, with clients of both codecs running at once. Every
+ * thread gets a random set of books over HTTP; even threads use Kryo and odd
+ * threads use XML.
+ *
+ * Usage: CodecBenchmark [numThreads] [booksPerRequest] [seconds]. The
+ * defaults are 8 threads, 10 books per request and 10 seconds, after a warmup
+ * of 5 seconds.
+ */
+public class CodecBenchmark {
+
+	/** The number of books in the store. */
+	private static final int NUM_BOOKS = 1000;
+
+	/**
+	 * The time before the requests are counted, while both sides build their
+	 * serializers and the JIT compiles them.
+	 */
+	private static final int WARMUP_SECONDS = 5;
+
+	/** The port of the server. */
+	private static final int PORT = 8090;
+
+	/** The codecs, by content type. */
+	private static final String[] CONTENT_TYPES = { BookStoreConstants.CONTENT_TYPE_KRYO,
+			BookStoreConstants.CONTENT_TYPE_XML };
+
+	/**
+	 * Prevents the instantiation of a new {@link CodecBenchmark}.
+	 */
+	private CodecBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int booksPerRequest = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		List<StockBook> books = new ArrayList<>();
+
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10, 100, 0, 0, 0, false));
+		}
+
+		SlaveCertainBookStore bookStore = new SlaveCertainBookStore();
+		bookStore.restore(new CheckpointFile(0, books));
+
+		Server server = new Server(PORT);
+		server.setHandler(new SlaveBookStoreHTTPMessageHandler(bookStore));
+		server.start();
+
+		HttpClient client = new HttpClient();
+		client.setMaxConnectionsPerDestination(Math.max(numThreads, 1));
+		client.start();
+
+		try {
+			run(client, bookStore, numThreads, booksPerRequest, seconds);
+		} finally {
+			client.stop();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Runs the threads until the time is up and prints a row for every codec.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStore
+	 *            the store behind the server
+	 * @param numThreads
+	 *            the number of threads
+	 * @param booksPerRequest
+	 *            the number of books in every request
+	 * @param seconds
+	 *            the duration of the run
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	private static void run(HttpClient client, SlaveCertainBookStore bookStore, int numThreads, int booksPerRequest,
+			int seconds) throws Exception {
+		String urlString = "http://localhost:" + PORT + "/" + BookStoreMessageTag.GETBOOKS;
+		LongAdder[] requests = new LongAdder[CONTENT_TYPES.length];
+
+		for (int codec = 0; codec < CONTENT_TYPES.length; codec++) {
+			requests[codec] = new LongAdder();
+		}
+
+		long warmedUp = System.nanoTime() + WARMUP_SECONDS * 1000000000L;
+		long deadline = warmedUp + seconds * 1000000000L;
+		Thread[] threads = new Thread[numThreads];
+
+		for (int t = 0; t < numThreads; t++) {
+			int codec = t % CONTENT_TYPES.length;
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				BookStoreSerializer serializer = BookStoreSerializerRegistry.get(CONTENT_TYPES[codec]);
+
+				try {
+					long now;
+
+					while ((now = System.nanoTime()) < deadline) {
+						Set<Integer> isbns = new HashSet<>();
+
+						while (isbns.size() < booksPerRequest) {
+							isbns.add(1 + random.nextInt(NUM_BOOKS));
+						}
+
+						BookStoreUtility.performHttpExchange(client,
+								BookStoreRequest.newPostRequest(urlString, isbns), serializer);
+
+						if (now >= warmedUp) {
+							requests[codec].increment();
+						}
+					}
+				} catch (BookStoreException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// The size of a typical response, encoded by every codec.
+		Set<Integer> isbns = new HashSet<>();
+
+		for (int isbn = 1; isbn <= booksPerRequest; isbn++) {
+			isbns.add(isbn);
+		}
+
+		BookStoreResponse sample = new BookStoreResponse();
+		sample.setResult(bookStore.getBooks(isbns));
+
+		System.out.println("codec\treq/s\tresponse bytes");
+
+		for (int codec = 0; codec < CONTENT_TYPES.length; codec++) {
+			int size = BookStoreSerializerRegistry.get(CONTENT_TYPES[codec]).serialize(sample).length;
+			System.out.printf("%s\t%.0f\t%d%n", CONTENT_TYPES[codec], requests[codec].sum() / (double) seconds, size);
+		}
+	}
+}
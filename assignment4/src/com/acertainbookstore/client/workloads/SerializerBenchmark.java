@@ -0,0 +1,310 @@
+package com.acertainbookstore.client.workloads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * {@link SerializerBenchmark} measures the time and the memory allocated by
+ * every codec to encode and decode one request and its response: a set of
+ * book copies to buy, and a list of books. The baseline is a Kryo codec that
+ * creates its streams for every message and registers no message class. It
+ * then measures the decoding of a bulk request to add books, when the body is
+ * first copied into an array as the message handlers used to do, and when it
+ * is decoded from the stream.
+ *
+ * Usage: SerializerBenchmark [booksPerMessage] [iterations] [bulkBooks]. The
+ * defaults are 10 books per message, 100000 iterations after as many for
+ * warmup, and 10000 books in the bulk request.
+ */
+public class SerializerBenchmark {
+
+	/**
+	 * Prevents the instantiation of a new {@link SerializerBenchmark}.
+	 */
+	private SerializerBenchmark() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * A round trip of a message through a codec.
+	 */
+	@FunctionalInterface
+	private interface RoundTrip {
+
+		/**
+		 * Encodes and decodes a message.
+		 *
+		 * @param message
+		 *            the message
+		 * @return the size of the encoded message
+		 * @throws Exception
+		 *             if the codec fails
+		 */
+		int run(Object message) throws Exception;
+	}
+
+	/**
+	 * A decoding of a request body.
+	 */
+	@FunctionalInterface
+	private interface Decoder {
+
+		/**
+		 * Decodes a request body.
+		 *
+		 * @param body
+		 *            the body
+		 * @param length
+		 *            the length of the body
+		 * @throws Exception
+		 *             if the codec fails
+		 */
+		void decode(InputStream body, int length) throws Exception;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int booksPerMessage = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int bulkBooks = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+		Set<BookCopy> request = new HashSet<>();
+		List<Book> books = new ArrayList<>();
+
+		for (int isbn = 1; isbn <= booksPerMessage; isbn++) {
+			request.add(new BookCopy(isbn, 1));
+			books.add(new ImmutableBook(isbn, "Title " + isbn, "Author " + isbn, 10));
+		}
+
+		BookStoreResponse response = new BookStoreResponse();
+		response.setResult(new BookStoreResult(books, 0));
+
+		System.out.println("codec\tns/op\tbytes allocated/op\tbytes sent/op");
+
+		Kryo baseline = new Kryo();
+		baseline.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+		baseline.register(ImmutableStockBook.class);
+		measure("kryo-baseline", iterations, request, response, message -> {
+			byte[] bytes;
+
+			try (ByteArrayOutputStream outStream = new ByteArrayOutputStream(); Output out = new Output(outStream)) {
+				baseline.writeClassAndObject(out, message);
+				out.flush();
+				bytes = outStream.toByteArray();
+			}
+
+			try (Input in = new Input(new ByteArrayInputStream(bytes))) {
+				baseline.readClassAndObject(in);
+			}
+
+			return bytes.length;
+		});
+
+		BookStoreSerializer kryo = new BookStoreKryoSerializer();
+		measure("kryo-bytes", iterations, request, response, bytesRoundTrip(kryo));
+		measure("kryo-stream", iterations, request, response, streamRoundTrip(kryo));
+
+		BookStoreSerializer xml = new BookStoreXStreamSerializer();
+		measure("xml-bytes", iterations / 10, request, response, bytesRoundTrip(xml));
+		measure("xml-stream", iterations / 10, request, response, streamRoundTrip(xml));
+
+		Set<StockBook> bulkRequest = new HashSet<>();
+
+		for (int isbn = 1; isbn <= bulkBooks; isbn++) {
+			bulkRequest.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10, 100, 0, 0, 0, false));
+		}
+
+		int bulkIterations = Math.max(1, iterations * 10 / bulkBooks);
+		System.out.println();
+		System.out.println("bulk decode	ns/op	bytes allocated/op	bytes received/op");
+		measureDecode("kryo-copied", bulkIterations, kryo.serialize(bulkRequest), copiedDecoder(kryo));
+		measureDecode("kryo-streamed", bulkIterations, kryo.serialize(bulkRequest),
+				(body, length) -> kryo.deserialize(body));
+		measureDecode("xml-copied", bulkIterations / 10 + 1, xml.serialize(bulkRequest), copiedDecoder(xml));
+		measureDecode("xml-streamed", bulkIterations / 10 + 1, xml.serialize(bulkRequest),
+				(body, length) -> xml.deserialize(body));
+	}
+
+	/**
+	 * Makes a decoding that reads the whole body into an array first.
+	 *
+	 * @param serializer
+	 *            the codec
+	 * @return the decoding
+	 */
+	private static Decoder copiedDecoder(BookStoreSerializer serializer) {
+		return (body, length) -> {
+			byte[] bytes;
+
+			try (Input in = new Input(body)) {
+				bytes = in.readBytes(length);
+			}
+
+			serializer.deserialize(bytes);
+		};
+	}
+
+	/**
+	 * Makes a round trip through the array API of a codec.
+	 *
+	 * @param serializer
+	 *            the codec
+	 * @return the round trip
+	 */
+	private static RoundTrip bytesRoundTrip(BookStoreSerializer serializer) {
+		return message -> {
+			byte[] bytes = serializer.serialize(message);
+			serializer.deserialize(bytes);
+			return bytes.length;
+		};
+	}
+
+	/**
+	 * Makes a round trip through the stream API of a codec, with a stream
+	 * reused across messages as a server reuses its connection buffers.
+	 *
+	 * @param serializer
+	 *            the codec
+	 * @return the round trip
+	 */
+	private static RoundTrip streamRoundTrip(BookStoreSerializer serializer) {
+		ReusableStream stream = new ReusableStream();
+		return message -> {
+			stream.reset();
+			serializer.serialize(message, stream);
+			int size = stream.size();
+			serializer.deserialize(stream.toInputStream());
+			return size;
+		};
+	}
+
+	/**
+	 * Runs the round trips of a request and its response, and prints a row of
+	 * the results.
+	 *
+	 * @param codec
+	 *            the name of the codec
+	 * @param iterations
+	 *            the number of round trips of each message
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param roundTrip
+	 *            the round trip
+	 * @throws Exception
+	 *             if the codec fails
+	 */
+	private static void measure(String codec, int iterations, Object request, Object response, RoundTrip roundTrip)
+			throws Exception {
+		for (int i = 0; i < iterations; i++) {
+			roundTrip.run(request);
+			roundTrip.run(response);
+		}
+
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long sent = 0;
+
+		for (int i = 0; i < iterations; i++) {
+			sent += roundTrip.run(request);
+			sent += roundTrip.run(response);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		System.out.printf("%s\t%.0f\t%d\t%d%n", codec, elapsed / (double) iterations, allocated / iterations,
+				sent / iterations);
+	}
+
+	/**
+	 * Decodes a body over and over, and prints a row of the results.
+	 *
+	 * @param codec
+	 *            the name of the codec and the decoding
+	 * @param iterations
+	 *            the number of decodings
+	 * @param body
+	 *            the body
+	 * @param decoder
+	 *            the decoding
+	 * @throws Exception
+	 *             if the codec fails
+	 */
+	private static void measureDecode(String codec, int iterations, byte[] body, Decoder decoder) throws Exception {
+		for (int i = 0; i < iterations; i++) {
+			decoder.decode(new ByteArrayInputStream(body), body.length);
+		}
+
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++) {
+			decoder.decode(new ByteArrayInputStream(body), body.length);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		System.out.printf("%s	%.0f	%d	%d%n", codec, elapsed / (double) iterations, allocated / iterations,
+				body.length);
+	}
+
+	/**
+	 * Gets the bytes allocated by the current thread so far.
+	 *
+	 * @return the bytes, or 0 if the JVM does not count them
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0;
+	}
+
+	/**
+	 * {@link ReusableStream} is an output stream whose content is read back
+	 * without copying it.
+	 */
+	private static final class ReusableStream extends ByteArrayOutputStream {
+
+		/**
+		 * Gets an input stream over the content.
+		 *
+		 * @return the input stream
+		 */
+		ByteArrayInputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
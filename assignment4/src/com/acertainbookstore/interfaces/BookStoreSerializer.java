@@ -1,6 +1,9 @@
 package com.acertainbookstore.interfaces;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * {@link BookStoreSerializer} specifies the serialization and de-serialization
@@ -29,4 +32,59 @@ public interface BookStoreSerializer {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	Object deserialize(byte[] bytes) throws IOException;
+
+	/**
+	 * Serializes an object into a stream, without an intermediate array.
+	 *
+	 * @param object
+	 *            the object
+	 * @param out
+	 *            the stream, left open
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void serialize(Object object, OutputStream out) throws IOException;
+
+	/**
+	 * De-serializes an object from a stream, without an intermediate array.
+	 *
+	 * @param in
+	 *            the stream, left open
+	 * @return the object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	Object deserialize(InputStream in) throws IOException;
+
+	/**
+	 * Serializes an object into a buffer. The buffer may be owned by the
+	 * serializer and overwritten by its next call, so it must be consumed
+	 * first.
+	 *
+	 * @param object
+	 *            the object
+	 * @return the buffer, positioned at the start of the serialized object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	ByteBuffer serializeToBuffer(Object object) throws IOException;
+
+	/**
+	 * De-serializes an object from the remaining bytes of a buffer, without
+	 * copying them.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 * @return the object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	Object deserialize(ByteBuffer buffer) throws IOException;
+
+	/**
+	 * Gets the content type of the serialized messages.
+	 *
+	 * @return the content type
+	 */
+	String getContentType();
 }
@@ -1,13 +1,33 @@
 package com.acertainbookstore.server;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import com.acertainbookstore.business.CheckpointFile;
+import com.acertainbookstore.business.Checkpointer;
+import com.acertainbookstore.business.ReadOnlyCertainBookStore;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreSerializerRegistry;
+import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * {@link BookStoreHTTPServerUtility} creates Jetty server instances.
@@ -21,6 +41,151 @@ public class BookStoreHTTPServerUtility {
 		// Prevent instances from being created.
 	}
 
+	/**
+	 * Loads the store from the file given by the checkpointfile system
+	 * property, if it exists, and checkpoints the store to it at the interval
+	 * given by the checkpointinterval system property and on shutdown. Does
+	 * nothing if the property is not set.
+	 *
+	 * @param bookStore
+	 *            the store
+	 * @throws BookStoreException
+	 *             if the checkpoint cannot be loaded
+	 */
+	public static void recoverFromCheckpoint(ReadOnlyCertainBookStore bookStore) throws BookStoreException {
+		String checkpointFile = System.getProperty(BookStoreConstants.PROPERTY_KEY_CHECKPOINT_FILE);
+
+		if (checkpointFile == null) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		Path checkpointPath = Paths.get(checkpointFile);
+
+		try {
+			CheckpointFile checkpoint = Checkpointer.load(checkpointPath);
+
+			if (checkpoint != null) {
+				bookStore.restore(checkpoint);
+			}
+		} catch (IOException ex) {
+			throw new BookStoreException(ex);
+		}
+
+		System.out.printf("Recovered the store in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+		long interval = BookStoreConstants.DEFAULT_CHECKPOINT_INTERVAL_SECONDS;
+		String intervalString = System.getProperty(BookStoreConstants.PROPERTY_KEY_CHECKPOINT_INTERVAL);
+
+		if (intervalString != null) {
+			try {
+				interval = Long.parseLong(intervalString);
+			} catch (NumberFormatException ex) {
+				System.err.println("Unsupported checkpoint interval: " + intervalString);
+			}
+		}
+
+		Checkpointer checkpointer = new Checkpointer(bookStore::checkpoint, checkpointPath);
+		checkpointer.start(interval);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				checkpointer.close();
+			} catch (IOException ex) {
+				System.err.println("Checkpoint failed: " + ex);
+			}
+		}));
+	}
+
+	/**
+	 * Negotiates the codecs of a request: the request is decoded according to
+	 * its <code>Content-Type</code>, and the response is encoded in the first
+	 * codec of its <code>Accept</code> header, or else in the codec of the
+	 * request. Sets the content type of the response.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @return true, if both codecs are supported; otherwise the status of the
+	 *         response is set to the error
+	 */
+	public static boolean negotiateCodecs(HttpServletRequest request, HttpServletResponse response) {
+		BookStoreSerializer requestSerializer = BookStoreSerializerRegistry.forContentType(request.getContentType());
+
+		if (requestSerializer == null) {
+			response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+			return false;
+		}
+
+		BookStoreSerializer responseSerializer = BookStoreSerializerRegistry
+				.forAccept(request.getHeader(HttpHeader.ACCEPT.asString()), requestSerializer);
+
+		if (responseSerializer == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
+			return false;
+		}
+
+		response.setContentType(responseSerializer.getContentType());
+		return true;
+	}
+
+	/**
+	 * Decodes the content of a request with the codec of its content type,
+	 * directly from the input stream of the request, so that bodies of unknown
+	 * length are read too and large bodies are never copied into an array.
+	 *
+	 * @param request
+	 *            the request
+	 * @return the decoded object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static Object readRequest(HttpServletRequest request) throws IOException {
+		return BookStoreSerializerRegistry.forContentType(request.getContentType())
+				.deserialize(request.getInputStream());
+	}
+
+	/**
+	 * Encodes a response with the codec negotiated for it, directly into the
+	 * output stream of the response.
+	 *
+	 * @param response
+	 *            the response
+	 * @param bookStoreResponse
+	 *            the book store response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @see #negotiateCodecs(HttpServletRequest, HttpServletResponse)
+	 */
+	public static void writeResponse(HttpServletResponse response, BookStoreResponse bookStoreResponse)
+			throws IOException {
+		BookStoreSerializerRegistry.forContentType(response.getContentType()).serialize(bookStoreResponse,
+				response.getOutputStream());
+	}
+
+	/**
+	 * Creates the thread pool of a server: a new virtual thread for every task
+	 * if the virtualthreads system property is set and the JDK has them, or
+	 * else a bounded pool of platform threads, which saturates when the
+	 * requests block on the locks of the store.
+	 *
+	 * @param maxThreads
+	 *            the most platform threads
+	 * @param minThreads
+	 *            the fewest platform threads
+	 * @return the thread pool
+	 */
+	public static ThreadPool createThreadPool(int maxThreads, int minThreads) {
+		ExecutorService virtualThreads = BookStoreUtility.useVirtualThreads()
+				? BookStoreUtility.newVirtualThreadExecutor() : null;
+
+		if (virtualThreads != null) {
+			return new ExecutorThreadPool(virtualThreads);
+		}
+
+		return new QueuedThreadPool(maxThreads, minThreads);
+	}
+
 	/**
 	 * Creates a server on the port and blocks the calling thread.
 	 *
@@ -30,7 +195,7 @@ public class BookStoreHTTPServerUtility {
 	 *            the handler
 	 * @return true, if successful
 	 */
-	public static void createServer(int port, AbstractHandler handler, QueuedThreadPool threadpool) {
+	public static void createServer(int port, AbstractHandler handler, ThreadPool threadpool) {
 		Server server = null;
 		if (threadpool != null) {
 			server = new Server(threadpool);
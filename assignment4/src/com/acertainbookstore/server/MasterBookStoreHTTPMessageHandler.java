@@ -15,16 +15,12 @@ import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.MasterCertainBookStore;
 import com.acertainbookstore.business.StockBook;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
-import com.acertainbookstore.interfaces.BookStoreSerializer;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreResult;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link MasterBookStoreHTTPMessageHandler} implements the message handler
@@ -41,9 +37,6 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	/** The book store. */
 	private MasterCertainBookStore myBookStore = null;
 
-	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
-
 	/**
 	 * Instantiates a new {@link BookStoreHTTPMessageHandler}.
 	 *
@@ -52,13 +45,6 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	public MasterBookStoreHTTPMessageHandler(MasterCertainBookStore bookStore) {
 		myBookStore = bookStore;
-
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
 	}
 
 	/*
@@ -76,6 +62,11 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 		response.setStatus(HttpServletResponse.SC_OK);
 		requestURI = request.getRequestURI();
 
+		if (!BookStoreHTTPServerUtility.negotiateCodecs(request, response)) {
+			baseRequest.setHandled(true);
+			return;
+		}
+
 		// Need to do request multiplexing
 		if (!BookStoreUtility.isEmpty(requestURI) && requestURI.toLowerCase().startsWith("/stock")) {
 			// The request is from the store manager; more sophisticated.
@@ -152,9 +143,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -164,8 +153,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -190,8 +178,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -206,9 +193,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -218,8 +203,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -234,9 +218,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void buyBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -246,8 +228,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -262,10 +243,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void updateEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) serializer.get()
-				.deserialize(serializedRequestContent);
+		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -275,8 +253,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -297,8 +274,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(e);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -313,9 +289,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addCopies(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> listBookCopies = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
+		Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -325,8 +299,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -341,9 +314,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void addBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<StockBook> newBooks = (Set<StockBook>) serializer.get().deserialize(serializedRequestContent);
+		Set<StockBook> newBooks = (Set<StockBook>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -353,8 +324,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -375,8 +345,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -391,9 +360,7 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void removeBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> bookSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> bookSet = (Set<Integer>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -403,23 +370,6 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
-	}
-
-	/**
-	 * Gets the serialized request content.
-	 *
-	 * @param request
-	 *            the request
-	 * @return the serialized request content
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 }
@@ -1,6 +1,6 @@
 package com.acertainbookstore.server;
 
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 import com.acertainbookstore.business.MasterCertainBookStore;
 import com.acertainbookstore.utils.BookStoreConstants;
@@ -37,6 +37,7 @@ public class MasterBookStoreHTTPServer {
 	 */
 	public static void main(String[] args) throws BookStoreException {
 		MasterCertainBookStore bookStore = new MasterCertainBookStore();
+		BookStoreHTTPServerUtility.recoverFromCheckpoint(bookStore);
 		int listenOnPort = DEFAULT_PORT;
 
 		MasterBookStoreHTTPMessageHandler handler = new MasterBookStoreHTTPMessageHandler(bookStore);
@@ -50,7 +51,7 @@ public class MasterBookStoreHTTPServer {
 			}
 		}
 
-		QueuedThreadPool threadpool = new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
+		ThreadPool threadpool = BookStoreHTTPServerUtility.createThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
 		BookStoreHTTPServerUtility.createServer(listenOnPort, handler, threadpool);
 	}
 }
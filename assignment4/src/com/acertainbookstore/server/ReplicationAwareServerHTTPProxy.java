@@ -3,11 +3,9 @@ package com.acertainbookstore.server;
 import com.acertainbookstore.business.ReplicationRequest;
 import com.acertainbookstore.business.ReplicationResult;
 import com.acertainbookstore.client.BookStoreClientConstants;
-import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.acertainbookstore.interfaces.Replication;
 import com.acertainbookstore.utils.*;
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
  * {@link ReplicationAwareServerHTTPProxy} implements the client side code for
@@ -18,7 +16,6 @@ public class ReplicationAwareServerHTTPProxy implements Replication {
 
 	private String slaveAddress = null;
 	private HttpClient client = null;
-	private static ThreadLocal<BookStoreSerializer> serializer;
 
 	/**
 	 * Instantiates a new replication aware server HTTP proxy.
@@ -29,20 +26,13 @@ public class ReplicationAwareServerHTTPProxy implements Replication {
 	public ReplicationAwareServerHTTPProxy(String destinationServerAddress) {
 		slaveAddress = destinationServerAddress;
 
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
-
 		client = new HttpClient();
 
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
-		// Max number of threads.
-		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		// Max number of threads, unless the requests run on virtual threads.
+		client.setExecutor(BookStoreUtility.createClientExecutor());
 
 		// Seconds timeout; if no server reply, the request expires.
 		client.setConnectTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
@@ -54,7 +44,6 @@ public class ReplicationAwareServerHTTPProxy implements Replication {
 		}
 	}
 
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -66,7 +55,7 @@ public class ReplicationAwareServerHTTPProxy implements Replication {
 		String urlString = slaveAddress + BookStoreMessageTag.REPLICATE;
 		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, req);
 		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+				BookStoreSerializerRegistry.getDefault());
 		BookStoreResult bookStoreResult = bookStoreResponse.getResult();
 
 		ReplicationResult replicationResult = (ReplicationResult) bookStoreResult.getList().get(0);
@@ -16,16 +16,12 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.SlaveCertainBookStore;
-import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreResult;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link SlaveBookStoreHTTPMessageHandler} implements the message handler class
@@ -38,9 +34,6 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 	/** The book store. */
 	private SlaveCertainBookStore myBookStore = null;
 
-	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
-
 	/**
 	 * Instantiates a new slave book store HTTP message handler.
 	 *
@@ -49,13 +42,6 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	public SlaveBookStoreHTTPMessageHandler(SlaveCertainBookStore bookStore) {
 		myBookStore = bookStore;
-
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
 	}
 
 	/*
@@ -73,6 +59,11 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 		response.setStatus(HttpServletResponse.SC_OK);
 		requestURI = request.getRequestURI();
 
+		if (!BookStoreHTTPServerUtility.negotiateCodecs(request, response)) {
+			baseRequest.setHandled(true);
+			return;
+		}
+
 		// Need to do request multiplexing
 		if (!BookStoreUtility.isEmpty(requestURI) && requestURI.toLowerCase().startsWith("/stock")) {
 			// The request is from the store manager; more sophisticated.
@@ -131,9 +122,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -143,8 +132,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -170,8 +158,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -187,9 +174,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 	 */
 	@SuppressWarnings("unchecked")
 	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
+		Set<Integer> isbnSet = (Set<Integer>) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -199,8 +184,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -221,8 +205,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(e);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 
 	/**
@@ -237,9 +220,7 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	private void replicate(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		ReplicationRequest req = (ReplicationRequest) serializer.get().deserialize(serializedRequestContent);
+		ReplicationRequest req = (ReplicationRequest) BookStoreHTTPServerUtility.readRequest(request);
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
 		try {
@@ -251,23 +232,6 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
-	}
-
-	/**
-	 * Gets the serialized request content.
-	 *
-	 * @param request
-	 *            the request
-	 * @return the serialized request content
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+		BookStoreHTTPServerUtility.writeResponse(response, bookStoreResponse);
 	}
 }
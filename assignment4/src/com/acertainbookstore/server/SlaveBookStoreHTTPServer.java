@@ -1,9 +1,10 @@
 package com.acertainbookstore.server;
 
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 import com.acertainbookstore.business.SlaveCertainBookStore;
 import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
 
 /**
  * Starts the {@link SlaveBookStoreHTTPServer}.
@@ -25,9 +26,12 @@ public class SlaveBookStoreHTTPServer {
 	/**
 	 * @param args
 	 *            Not being used now
+	 * @throws BookStoreException
+	 *             if the checkpoint cannot be loaded
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws BookStoreException {
 		SlaveCertainBookStore bookStore = new SlaveCertainBookStore();
+		BookStoreHTTPServerUtility.recoverFromCheckpoint(bookStore);
 		int listenOnPort = DEFAULT_PORT;
 
 		SlaveBookStoreHTTPMessageHandler handler = new SlaveBookStoreHTTPMessageHandler(bookStore);
@@ -41,7 +45,7 @@ public class SlaveBookStoreHTTPServer {
 			}
 		}
 
-		QueuedThreadPool threadpool = new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
+		ThreadPool threadpool = BookStoreHTTPServerUtility.createThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
 		BookStoreHTTPServerUtility.createServer(listenOnPort, handler, threadpool);
 	}
 }
@@ -6,10 +6,20 @@ package com.acertainbookstore.utils;
  */
 public final class BookStoreConstants {
 
+	/** The Constant CONTENT_TYPE_KRYO of messages serialized with Kryo. */
+	public static final String CONTENT_TYPE_KRYO = "application/x-kryo";
+
+	/** The Constant CONTENT_TYPE_XML of messages serialized with XStream. */
+	public static final String CONTENT_TYPE_XML = "application/xml";
+
 	/**
-	 * The Constant BINARY_SERIALIZATION decides whether we use Kryo or XStream.
+	 * The Constant PROPERTY_KEY_SERIALIZATION, the default codec: kryo unless
+	 * set to xml.
 	 */
-	public static final boolean BINARY_SERIALIZATION = false;
+	public static final String PROPERTY_KEY_SERIALIZATION = "serialization";
+
+	/** The Constant SERIALIZATION_XML, to make XStream the default codec. */
+	public static final String SERIALIZATION_XML = "xml";
 
 	// Constants used when creating URLs
 
@@ -66,9 +76,24 @@ public final class BookStoreConstants {
 	/** The Constant PROPERTY_KEY_LOCAL_TEST. */
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 
+	/**
+	 * The Constant PROPERTY_KEY_VIRTUAL_THREADS, whether the servers and the
+	 * clients run requests on virtual threads.
+	 */
+	public static final String PROPERTY_KEY_VIRTUAL_THREADS = "virtualthreads";
+
 	/** The Constant PROPERTY_KEY_SERVER_PORT. */
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
 
+	/** The Constant PROPERTY_KEY_CHECKPOINT_FILE. */
+	public static final String PROPERTY_KEY_CHECKPOINT_FILE = "checkpointfile";
+
+	/** The Constant PROPERTY_KEY_CHECKPOINT_INTERVAL, in seconds. */
+	public static final String PROPERTY_KEY_CHECKPOINT_INTERVAL = "checkpointinterval";
+
+	/** The Constant DEFAULT_CHECKPOINT_INTERVAL_SECONDS. */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 300;
+
 	/** The Constant EPSILON used for floating point number comparison */
 	public static final float EPSILON = 0.000001F;
 
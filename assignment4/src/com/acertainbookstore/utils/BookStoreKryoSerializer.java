@@ -1,13 +1,22 @@
 package com.acertainbookstore.utils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableBook;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ReplicationRequest;
+import com.acertainbookstore.business.ReplicationResult;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.objenesis.strategy.StdInstantiatorStrategy;
@@ -15,21 +24,98 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
 /**
  * {@link BookStoreKryoSerializer} serializes objects to arrays of bytes
  * representing strings using the Kryo library.
- * 
+ *
+ * Every message class is registered with a fixed id, so that only the id goes
+ * over the wire instead of the class name; the ids must therefore match on
+ * both sides and new classes are appended at the end. The serializer reuses
+ * its buffers across calls, so an instance must not be shared between
+ * threads.
+ *
  * @see BookStoreSerializer
  */
 public final class BookStoreKryoSerializer implements BookStoreSerializer {
 
+	/** The first id after those Kryo registers for the primitive types. */
+	private static final int FIRST_REGISTRATION_ID = 10;
+
+	/** The initial size of the buffers. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * The largest buffer kept between calls; a bulk message that grows a
+	 * buffer beyond it does not pin the memory to the thread.
+	 */
+	private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+	/** The empty buffer of the input between calls. */
+	private static final byte[] EMPTY_BUFFER = new byte[0];
+
 	/** The binary stream. */
 	private final Kryo binaryStream;
 
+	/** The output buffer. */
+	private final Output output = new Output(BUFFER_SIZE, -1);
+
+	/** The input over the arrays of bytes, which has no buffer of its own. */
+	private final Input arrayInput = new Input();
+
+	/** The input buffer of the streams. */
+	private final Input streamInput = new Input(BUFFER_SIZE);
+
 	/**
 	 * Instantiates a new {@link BookStoreKryoSerializer}.
 	 */
 	public BookStoreKryoSerializer() {
 		binaryStream = new Kryo();
 		binaryStream.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-		binaryStream.register(ImmutableStockBook.class);
+
+		// The messages are trees, so there are no shared references to track.
+		binaryStream.setReferences(false);
+
+		int id = FIRST_REGISTRATION_ID;
+		binaryStream.register(BookStoreResponse.class, id++);
+		binaryStream.register(BookStoreResult.class, id++);
+		binaryStream.register(BookStoreException.class, new BookStoreExceptionSerializer(), id++);
+		binaryStream.register(BookStoreMessageTag.class, id++);
+		binaryStream.register(ArrayList.class, id++);
+		binaryStream.register(HashSet.class, id++);
+		binaryStream.register(ImmutableBook.class, id++);
+		binaryStream.register(ImmutableStockBook.class, id++);
+		binaryStream.register(BookCopy.class, id++);
+		binaryStream.register(BookRating.class, id++);
+		binaryStream.register(BookEditorPick.class, id++);
+		binaryStream.register(ReplicationRequest.class, id++);
+		binaryStream.register(ReplicationResult.class, id++);
+	}
+
+	/**
+	 * {@link BookStoreExceptionSerializer} encodes a {@link BookStoreException}
+	 * by its message only, since the fields of {@link Throwable} cannot be
+	 * reached by reflection on recent JVMs.
+	 */
+	private static final class BookStoreExceptionSerializer extends Serializer<BookStoreException> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.
+		 * kryo.Kryo, com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, BookStoreException exception) {
+			output.writeString(exception.getMessage());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.esotericsoftware.kryo.Serializer#read(com.esotericsoftware.
+		 * kryo.Kryo, com.esotericsoftware.kryo.io.Input, java.lang.Class)
+		 */
+		@Override
+		public BookStoreException read(Kryo kryo, Input input, Class<BookStoreException> type) {
+			return new BookStoreException(input.readString());
+		}
 	}
 
 	/*
@@ -40,11 +126,31 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 	 * Object)
 	 */
 	@Override
-	public byte[] serialize(Object object) throws IOException {
-		try (ByteArrayOutputStream outStream = new ByteArrayOutputStream(); Output out = new Output(outStream)) {
-			binaryStream.writeClassAndObject(out, object);
-			out.flush();
-			return outStream.toByteArray();
+	public byte[] serialize(Object object) {
+		try {
+			output.clear();
+			binaryStream.writeClassAndObject(output, object);
+			return output.toBytes();
+		} finally {
+			releaseOutput();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serialize(java.lang.
+	 * Object, java.io.OutputStream)
+	 */
+	@Override
+	public void serialize(Object object, OutputStream out) {
+		try {
+			output.setOutputStream(out);
+			binaryStream.writeClassAndObject(output, object);
+			output.flush();
+		} finally {
+			releaseOutput();
 		}
 	}
 
@@ -54,9 +160,87 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 	 * @see com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(byte[])
 	 */
 	@Override
-	public Object deserialize(byte[] bytes) throws IOException {
-		try (InputStream inStream = new ByteArrayInputStream(bytes); Input in = new Input(inStream)) {
-			return binaryStream.readClassAndObject(in);
+	public Object deserialize(byte[] bytes) {
+		try {
+			arrayInput.setBuffer(bytes);
+			return binaryStream.readClassAndObject(arrayInput);
+		} finally {
+			arrayInput.setBuffer(EMPTY_BUFFER);
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) {
+		try {
+			streamInput.setInputStream(in);
+			return binaryStream.readClassAndObject(streamInput);
+		} finally {
+			streamInput.setInputStream(null);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serializeToBuffer(
+	 * java.lang.Object)
+	 */
+	@Override
+	public ByteBuffer serializeToBuffer(Object object) {
+		// The buffer of the previous call is consumed, so it can shrink now.
+		releaseOutput();
+		binaryStream.writeClassAndObject(output, object);
+		return ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.nio.
+	 * ByteBuffer)
+	 */
+	@Override
+	public Object deserialize(ByteBuffer buffer) {
+		if (!buffer.hasArray()) {
+			return deserialize(new ByteBufferInputStream(buffer));
+		}
+
+		try {
+			arrayInput.setBuffer(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return binaryStream.readClassAndObject(arrayInput);
+		} finally {
+			arrayInput.setBuffer(EMPTY_BUFFER);
+		}
+	}
+
+	/**
+	 * Detaches the output from its stream, and shrinks its buffer if a large
+	 * message grew it.
+	 */
+	private void releaseOutput() {
+		if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+			output.setBuffer(new byte[BUFFER_SIZE], -1);
+		}
+
+		output.setOutputStream(null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.BookStoreSerializer#getContentType()
+	 */
+	@Override
+	public String getContentType() {
+		return BookStoreConstants.CONTENT_TYPE_KRYO;
+	}
 }
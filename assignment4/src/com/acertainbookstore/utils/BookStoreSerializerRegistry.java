@@ -0,0 +1,141 @@
+package com.acertainbookstore.utils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+
+/**
+ * {@link BookStoreSerializerRegistry} maps the content types of HTTP messages
+ * to the {@link BookStoreSerializer} that encodes them, so that every request
+ * can choose its codec through its <code>Content-Type</code> and
+ * <code>Accept</code> headers. Serializers are not thread-safe, so every
+ * thread gets its own instance of each codec.
+ *
+ * Kryo is the default codec; the serialization system property set to "xml"
+ * makes XStream the default instead, e.g. for debugging.
+ *
+ * @see BookStoreSerializer
+ */
+public final class BookStoreSerializerRegistry {
+
+	/** The serializers of every thread, by content type. */
+	private static final Map<String, ThreadLocal<BookStoreSerializer>> SERIALIZERS = new ConcurrentHashMap<>();
+
+	/** The content type of the default codec. */
+	private static final String DEFAULT_CONTENT_TYPE = BookStoreConstants.SERIALIZATION_XML
+			.equalsIgnoreCase(System.getProperty(BookStoreConstants.PROPERTY_KEY_SERIALIZATION))
+					? BookStoreConstants.CONTENT_TYPE_XML : BookStoreConstants.CONTENT_TYPE_KRYO;
+
+	static {
+		register(BookStoreConstants.CONTENT_TYPE_KRYO, BookStoreKryoSerializer::new);
+		register(BookStoreConstants.CONTENT_TYPE_XML, BookStoreXStreamSerializer::new);
+	}
+
+	/**
+	 * Prevents the instantiation of a new {@link BookStoreSerializerRegistry}.
+	 */
+	private BookStoreSerializerRegistry() {
+		// Prevent instantiation.
+	}
+
+	/**
+	 * Registers a codec, replacing the codec of the same content type if any.
+	 *
+	 * @param contentType
+	 *            the content type
+	 * @param factory
+	 *            creates a serializer for every thread
+	 */
+	public static void register(String contentType, Supplier<BookStoreSerializer> factory) {
+		SERIALIZERS.put(normalize(contentType), ThreadLocal.withInitial(factory));
+	}
+
+	/**
+	 * Gets the serializer of the default codec.
+	 *
+	 * @return the serializer
+	 */
+	public static BookStoreSerializer getDefault() {
+		return SERIALIZERS.get(DEFAULT_CONTENT_TYPE).get();
+	}
+
+	/**
+	 * Gets the serializer of a content type, ignoring its parameters.
+	 *
+	 * @param contentType
+	 *            the content type
+	 * @return the serializer, or null if no codec is registered for the
+	 *         content type
+	 */
+	public static BookStoreSerializer get(String contentType) {
+		if (BookStoreUtility.isEmpty(contentType)) {
+			return null;
+		}
+
+		ThreadLocal<BookStoreSerializer> serializer = SERIALIZERS.get(normalize(contentType));
+		return (serializer != null) ? serializer.get() : null;
+	}
+
+	/**
+	 * Gets the serializer that decodes a request.
+	 *
+	 * @param contentType
+	 *            the <code>Content-Type</code> header of the request, or null
+	 * @return the serializer, the default one if the request has no content
+	 *         type, or null if no codec is registered for it
+	 */
+	public static BookStoreSerializer forContentType(String contentType) {
+		return BookStoreUtility.isEmpty(contentType) ? getDefault() : get(contentType);
+	}
+
+	/**
+	 * Gets the serializer that encodes the response to a request: the first
+	 * registered codec the request accepts, in the order of its
+	 * <code>Accept</code> header. Quality values are ignored.
+	 *
+	 * @param accept
+	 *            the <code>Accept</code> header of the request, or null
+	 * @param requestSerializer
+	 *            the serializer of the request, used if the request accepts
+	 *            any content type
+	 * @return the serializer, or null if the request accepts no registered
+	 *         codec
+	 */
+	public static BookStoreSerializer forAccept(String accept, BookStoreSerializer requestSerializer) {
+		if (BookStoreUtility.isEmpty(accept)) {
+			return requestSerializer;
+		}
+
+		for (String mediaRange : accept.split(",")) {
+			String mediaType = normalize(mediaRange);
+
+			if ("*/*".equals(mediaType) || "application/*".equals(mediaType)) {
+				return requestSerializer;
+			}
+
+			BookStoreSerializer serializer = get(mediaType);
+
+			if (serializer != null) {
+				return serializer;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Strips the parameters of a content type, e.g. its charset.
+	 *
+	 * @param contentType
+	 *            the content type
+	 * @return the media type, in lower case
+	 */
+	private static String normalize(String contentType) {
+		int parameters = contentType.indexOf(';');
+		String mediaType = (parameters >= 0) ? contentType.substring(0, parameters) : contentType;
+		return mediaType.trim().toLowerCase(Locale.ROOT);
+	}
+}
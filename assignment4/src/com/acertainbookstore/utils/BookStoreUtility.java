@@ -3,15 +3,22 @@ package com.acertainbookstore.utils;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
-import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.client.BookStoreClientConstants;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
@@ -151,7 +158,9 @@ public final class BookStoreUtility {
 	}
 
 	/**
-	 * Perform HTTP exchange.
+	 * Perform HTTP exchange. The request is sent in the codec of the
+	 * serializer and asks for a response in the same codec; the response is
+	 * decoded in the codec it declares.
 	 *
 	 * @param client
 	 *            the client
@@ -174,9 +183,12 @@ public final class BookStoreUtility {
 
 		case POST:
 			try {
-				byte[] serializedValue = serializer.serialize(bookStoreRequest.getInputValue());
-				ContentProvider contentProvider = new BytesContentProvider(serializedValue);
-				request = client.POST(bookStoreRequest.getURLString()).content(contentProvider);
+				// The buffer may be the serializer's own, which this thread does
+				// not touch again until the exchange completes.
+				ByteBuffer serializedValue = serializer.serializeToBuffer(bookStoreRequest.getInputValue());
+				ContentProvider contentProvider = new ByteBufferContentProvider(serializedValue);
+				request = client.POST(bookStoreRequest.getURLString()).content(contentProvider,
+						serializer.getContentType());
 			} catch (IOException ex) {
 				throw new BookStoreException("Serialization error", ex);
 			}
@@ -188,6 +200,7 @@ public final class BookStoreUtility {
 		}
 
 		ContentResponse response;
+		request.header(HttpHeader.ACCEPT, serializer.getContentType());
 
 		try {
 			response = request.send();
@@ -199,10 +212,22 @@ public final class BookStoreUtility {
 			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
 		}
 
+		if (response.getStatus() != HttpStatus.OK_200) {
+			throw new BookStoreException(
+					BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION + ": HTTP " + response.getStatus());
+		}
+
 		BookStoreResponse bookStoreResponse;
+		String mediaType = response.getMediaType();
+		BookStoreSerializer responseSerializer = (mediaType != null) ? BookStoreSerializerRegistry.get(mediaType)
+				: serializer;
+
+		if (responseSerializer == null) {
+			throw new BookStoreException("Unsupported content type: " + mediaType);
+		}
 
 		try {
-			bookStoreResponse = (BookStoreResponse) serializer.deserialize(response.getContent());
+			bookStoreResponse = (BookStoreResponse) responseSerializer.deserialize(response.getContent());
 		} catch (IOException ex) {
 			throw new BookStoreException("Deserialization error", ex);
 		}
@@ -215,4 +240,45 @@ public final class BookStoreUtility {
 		
 		return bookStoreResponse;
 	}
+
+	/**
+	 * Checks if the virtualthreads system property asks for virtual threads.
+	 *
+	 * @return true, if requests should run on virtual threads
+	 */
+	public static boolean useVirtualThreads() {
+		return Boolean.parseBoolean(System.getProperty(BookStoreConstants.PROPERTY_KEY_VIRTUAL_THREADS));
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread. The
+	 * factory is looked up reflectively, so the code still builds for Java 8.
+	 *
+	 * @return the executor, or null if the JDK has no virtual threads
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			System.err.println("Virtual threads need Java 21 or later, using platform threads");
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the executor of the HTTP client of a proxy: virtual threads if
+	 * the virtualthreads system property is set and the JDK has them, or else
+	 * a bounded pool of platform threads.
+	 *
+	 * @return the executor
+	 */
+	public static Executor createClientExecutor() {
+		ExecutorService virtualThreads = useVirtualThreads() ? newVirtualThreadExecutor() : null;
+
+		if (virtualThreads != null) {
+			return virtualThreads;
+		}
+
+		return new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS);
+	}
 }
@@ -1,6 +1,17 @@
 package com.acertainbookstore.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
 
@@ -25,7 +36,7 @@ public final class BookStoreXStreamSerializer implements BookStoreSerializer {
 	@Override
 	public byte[] serialize(Object object) {
 		String xml = xmlStream.toXML(object);
-		return xml.getBytes();
+		return xml.getBytes(StandardCharsets.UTF_8);
 	}
 
 	/*
@@ -36,7 +47,72 @@ public final class BookStoreXStreamSerializer implements BookStoreSerializer {
 	 */
 	@Override
 	public Object deserialize(byte[] bytes) {
-		String xml = new String(bytes);
+		String xml = new String(bytes, StandardCharsets.UTF_8);
 		return xmlStream.fromXML(xml);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serialize(java.lang.
+	 * Object, java.io.OutputStream)
+	 */
+	@Override
+	public void serialize(Object object, OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		xmlStream.toXML(object, writer);
+		writer.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) {
+		return xmlStream.fromXML(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serializeToBuffer(
+	 * java.lang.Object)
+	 */
+	@Override
+	public ByteBuffer serializeToBuffer(Object object) {
+		return ByteBuffer.wrap(serialize(object));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.nio.
+	 * ByteBuffer)
+	 */
+	@Override
+	public Object deserialize(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			return deserialize(new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.remaining()));
+		}
+
+		return deserialize(new ByteBufferInputStream(buffer));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.BookStoreSerializer#getContentType()
+	 */
+	@Override
+	public String getContentType() {
+		return BookStoreConstants.CONTENT_TYPE_XML;
+	}
 }